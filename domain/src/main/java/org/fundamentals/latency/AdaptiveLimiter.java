@@ -0,0 +1,282 @@
+package org.fundamentals.latency;
+
+import io.vavr.control.Option;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Adaptive concurrency limit per upstream host.
+ *
+ * The requests in flight of a host are limited, the limit follows
+ * the measured RTT and errors instead of a static pool size:
+ *
+ * - AIMD: +1 on every success while at least half of the limit is in use,
+ *   limit x backoffRatio on an error or a RTT over dropRtt.
+ * - GRADIENT: limit x (longRtt / rtt), bounded to [0.5, 1], plus sqrt(limit) of headroom,
+ *   so the limit shrinks as soon as the queues of the upstream make the RTT grow.
+ *   Errors back off as in AIMD.
+ *
+ * Requests over the limit wait in a queue of maxQueued, the rest are rejected
+ * with a RejectedExecutionException.
+ */
+@Slf4j
+public class AdaptiveLimiter {
+
+    public enum Algorithm {
+        AIMD,
+        GRADIENT
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Config {
+
+        private Algorithm algorithm;
+        private int initialLimit;
+        private int minLimit;
+        private int maxLimit;
+        private double backoffRatio;
+        private Duration dropRtt;
+        private int maxQueued;
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Stats {
+
+        private int limit;
+        private int inFlight;
+        private int queued;
+        private long rejected;
+    }
+
+    static final Config DEFAULT_CONFIG = new Config(Algorithm.GRADIENT, 10, 1, 200, 0.9, Duration.ofSeconds(5), 100);
+
+    //Weight of a sample in the long RTT (about the last 600 samples) and of a new limit
+    static final double LONG_RTT_WEIGHT = 2.0 / 601;
+    static final double SMOOTHING = 0.2;
+
+    private final class Limit {
+
+        final String host;
+        double limit = config.getInitialLimit();
+        double longRtt = 0;
+        int inFlight = 0;
+        long rejected = 0;
+        final Queue<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+
+        Limit(String host) {
+            this.host = host;
+        }
+
+        synchronized CompletableFuture<Void> acquire() {
+            if (inFlight < (int) limit) {
+                inFlight++;
+                return CompletableFuture.completedFuture(null);
+            }
+            if (waiters.size() < config.getMaxQueued()) {
+                CompletableFuture<Void> waiter = new CompletableFuture<>();
+                waiters.add(waiter);
+                return waiter;
+            }
+            rejected++;
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Concurrency limit reached: " + host));
+        }
+
+        //A waiter which gives up does not keep a place in the queue
+        synchronized void leave(CompletableFuture<Void> waiter) {
+            waiters.remove(waiter);
+        }
+
+        void release(long rttNanos, boolean didDrop) {
+            synchronized (this) {
+                update(rttNanos, didDrop);
+            }
+            free();
+        }
+
+        //Waiters are completed outside of the lock, they start the next request
+        void free() {
+            while (true) {
+                CompletableFuture<Void> next;
+                synchronized (this) {
+                    inFlight--;
+                    next = poll();
+                }
+                //A waiter cancelled after the poll does not take the slot, it goes to the next one
+                if (Objects.isNull(next) || next.complete(null)) {
+                    return;
+                }
+            }
+        }
+
+        private CompletableFuture<Void> poll() {
+            while (inFlight < (int) limit && !waiters.isEmpty()) {
+                CompletableFuture<Void> waiter = waiters.poll();
+                //A cancelled waiter does not take the slot
+                if (!waiter.isDone()) {
+                    inFlight++;
+                    return waiter;
+                }
+            }
+            return null;
+        }
+
+        private void update(long rttNanos, boolean didDrop) {
+
+            double previous = limit;
+            if (didDrop) {
+                limit = limit * config.getBackoffRatio();
+            } else if (config.getAlgorithm() == Algorithm.AIMD) {
+                if (inFlight * 2 >= limit) {
+                    limit = limit + 1;
+                }
+            } else {
+                longRtt = longRtt == 0 ? rttNanos : longRtt * (1 - LONG_RTT_WEIGHT) + rttNanos * LONG_RTT_WEIGHT;
+                //The long RTT follows a faster upstream at once
+                if (rttNanos < longRtt) {
+                    longRtt = rttNanos;
+                }
+                double gradient = Math.max(0.5, Math.min(1.0, longRtt / Math.max(1, rttNanos)));
+                double candidate = limit * gradient + Math.sqrt(limit);
+                limit = limit * (1 - SMOOTHING) + candidate * SMOOTHING;
+            }
+            limit = Math.max(config.getMinLimit(), Math.min(config.getMaxLimit(), limit));
+            if ((int) limit != (int) previous) {
+                LOGGER.debug("New limit for {}: {}", host, (int) limit);
+            }
+        }
+
+        synchronized Stats stats() {
+            return new Stats((int) limit, inFlight, waiters.size(), rejected);
+        }
+    }
+
+    private final Config config;
+    private final Map<String, Limit> limits = new ConcurrentHashMap<>();
+
+    public AdaptiveLimiter(Config config) {
+        this.config = Objects.requireNonNull(config);
+    }
+
+    /**
+     * The call starts when the host has a free slot, its RTT and outcome update the limit.
+     */
+    public <T> CompletableFuture<T> executeAsync(URI uri, Supplier<CompletableFuture<T>> call) {
+
+        Limit limit = limit(HttpMetrics.host(uri));
+        CompletableFuture<Void> slot = limit.acquire();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        slot.whenComplete((ignored, error) -> {
+            if (Objects.nonNull(error)) {
+                result.completeExceptionally(error);
+            } else if (result.isDone()) {
+                //The caller gave up when the slot was already given, it goes to the next one
+                limit.free();
+            } else {
+                CompletableFuture<T> running = start(limit, call);
+                running.whenComplete((value, ex) -> {
+                    if (Objects.isNull(ex)) {
+                        result.complete(value);
+                    } else {
+                        result.completeExceptionally(ex);
+                    }
+                });
+                //A caller which gives up cancels the running call
+                Cancellation.propagate(result, running);
+            }
+        });
+        //A caller which gives up while queued leaves the queue
+        result.whenComplete((value, ex) -> {
+            if (slot.cancel(false)) {
+                limit.leave(slot);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Blocking version of executeAsync, the caller waits in the queue
+     * up to its Deadline and the call runs in the caller thread.
+     */
+    public <T> T execute(URI uri, Supplier<T> call) {
+        Limit limit = limit(HttpMetrics.host(uri));
+        CompletableFuture<Void> slot = limit.acquire();
+        Option<Deadline> deadline = Deadline.current();
+        try {
+            if (deadline.isEmpty()) {
+                slot.get();
+            } else {
+                slot.get(deadline.get().remainingNanos(), TimeUnit.NANOSECONDS);
+            }
+        } catch (ExecutionException ex) {
+            throw new CompletionException(ex.getCause());
+        } catch (TimeoutException | InterruptedException ex) {
+            if (ex instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            //A slot given while the caller gives up goes to the next one
+            if (slot.cancel(false)) {
+                limit.leave(slot);
+            } else {
+                limit.free();
+            }
+            throw new CompletionException(ex);
+        }
+        return start(limit, () -> CompletableFuture.completedFuture(call.get())).join();
+    }
+
+    //Runs the call in a slot already taken, the slot is released when the call completes
+    private <T> CompletableFuture<T> start(Limit limit, Supplier<CompletableFuture<T>> call) {
+        long start = System.nanoTime();
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException ex) {
+            future = CompletableFuture.failedFuture(ex);
+        }
+        future.whenComplete((value, ex) -> {
+            long rtt = System.nanoTime() - start;
+            //A call cancelled by the caller says nothing about the upstream
+            boolean cancelled = ex instanceof CancellationException
+                    || (ex instanceof CompletionException && ex.getCause() instanceof CancellationException);
+            limit.release(rtt, !cancelled && (Objects.nonNull(ex) || rtt > config.getDropRtt().toNanos()));
+        });
+        return future;
+    }
+
+    public Stats stats(String host) {
+        Limit limit = limits.get(host);
+        return Objects.isNull(limit) ? new Stats(config.getInitialLimit(), 0, 0, 0) : limit.stats();
+    }
+
+    //Updates the limit of a host with a sample, used to test the algorithms
+    void record(String host, long rttNanos, boolean didDrop) {
+        Limit limit = limit(host);
+        synchronized (limit) {
+            limit.inFlight++;
+        }
+        limit.release(rttNanos, didDrop);
+    }
+
+    private Limit limit(String host) {
+        return limits.computeIfAbsent(host, Limit::new);
+    }
+
+}
@@ -0,0 +1,129 @@
+package org.fundamentals.latency;
+
+import io.vavr.control.Option;
+import java.net.URI;
+import java.net.URL;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Timeout per upstream learnt from its latencies.
+ *
+ * The latencies of every upstream host are kept in a LatencyHistogram
+ * which is halved every halfLife samples, so the timeout follows the recent latencies.
+ * The timeout is the percentile plus the margin, between the floor and the ceiling.
+ * Until minSamples are recorded the ceiling is used, so a new upstream is not cut off.
+ *
+ * The requests which time out are recorded with the timeout, otherwise the
+ * histogram would only see the fast ones and the timeout would only go down.
+ * When the thread has a Deadline, the timeout never goes beyond it.
+ *
+ * The upstream is the host of the URL, replicas of the same host
+ * with their own latencies use the address as the key.
+ */
+public class AdaptiveTimeout {
+
+    @Data
+    @AllArgsConstructor
+    public static class Config {
+
+        private double percentile;
+        private Duration margin;
+        private Duration floor;
+        private Duration ceiling;
+        private int minSamples;
+        private int halfLife;
+    }
+
+    /**
+     * p99 + 50 ms, at least 100 ms and at most the fixed timeout used until now.
+     */
+    public static Config config(Duration ceiling) {
+        Duration floor = Duration.ofMillis(100);
+        return new Config(0.99, Duration.ofMillis(50), floor.compareTo(ceiling) < 0 ? floor : ceiling, ceiling, 20, 500);
+    }
+
+    private static class Upstream {
+
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final AtomicLong samples = new AtomicLong();
+    }
+
+    private final Config config;
+    private final Function<URL, String> key;
+    private final Map<String, Upstream> upstreams = new ConcurrentHashMap<>();
+
+    public AdaptiveTimeout(Config config) {
+        this(config, AdaptiveTimeout::key);
+    }
+
+    public AdaptiveTimeout(Config config, Function<URL, String> key) {
+        this.config = Objects.requireNonNull(config);
+        this.key = Objects.requireNonNull(key);
+    }
+
+    public Duration timeout(URL url) {
+
+        Upstream upstream = upstreams.get(key.apply(url));
+        Duration timeout = config.getCeiling();
+        if (Objects.nonNull(upstream) && upstream.samples.get() >= config.getMinSamples()) {
+            Duration learnt = upstream.histogram.percentile(config.getPercentile()).plus(config.getMargin());
+            timeout = learnt.compareTo(config.getFloor()) < 0
+                    ? config.getFloor()
+                    : learnt.compareTo(config.getCeiling()) > 0 ? config.getCeiling() : learnt;
+        }
+        Option<Deadline> deadline = Deadline.current();
+        return deadline.isEmpty() || timeout.compareTo(deadline.get().remaining()) < 0
+                ? timeout
+                : deadline.get().remaining();
+    }
+
+    public void record(URL url, long nanos) {
+        Upstream upstream = upstreams.computeIfAbsent(key.apply(url), name -> new Upstream());
+        upstream.histogram.record(nanos);
+        if (upstream.samples.incrementAndGet() % config.getHalfLife() == 0) {
+            upstream.histogram.decay();
+        }
+    }
+
+    /**
+     * future.orTimeout with the timeout of the upstream, the latency of the future is recorded.
+     */
+    public <T> CompletableFuture<T> orTimeout(URL url, CompletableFuture<T> future) {
+        return timed(url, future.orTimeout(timeout(url).toNanos(), TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * future.completeOnTimeout with the timeout of the upstream, the latency of the future is recorded.
+     */
+    public <T> CompletableFuture<T> completeOnTimeout(URL url, CompletableFuture<T> future, T fallback) {
+        return timed(url, future.completeOnTimeout(fallback, timeout(url).toNanos(), TimeUnit.NANOSECONDS));
+    }
+
+    //Errors other than the timeout say nothing about the latency of the upstream
+    private <T> CompletableFuture<T> timed(URL url, CompletableFuture<T> future) {
+        long start = System.nanoTime();
+        future.whenComplete((value, ex) -> {
+            Throwable cause = ex instanceof CompletionException ? ex.getCause() : ex;
+            if (Objects.isNull(cause) || cause instanceof TimeoutException) {
+                record(url, System.nanoTime() - start);
+            }
+        });
+        return future;
+    }
+
+    static String key(URL url) {
+        return HttpMetrics.host(URI.create(url.toString()));
+    }
+
+}
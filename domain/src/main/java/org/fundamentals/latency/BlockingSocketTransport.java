@@ -0,0 +1,303 @@
+package org.fundamentals.latency;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.OptionalLong;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * HTTP/1.1 client on a blocking socket.
+ *
+ * One connection per request (Connection: close). The socket is read with
+ * blocking I/O in a thread of the executor, so a request holds one thread
+ * until its body is read, and the body is read only while the subscriber
+ * has demand. The connection setup is recorded as the CONNECT phase of HttpMetrics.
+ *
+ * The default executor is bounded, MAX_THREADS threads and QUEUE_CAPACITY
+ * waiting requests, beyond that a request fails with RejectedExecutionException.
+ *
+ * Notes:
+ * - Only http and requests without a body (GET, HEAD...).
+ * - Content-Length, chunked and read until close bodies.
+ */
+@Slf4j
+public class BlockingSocketTransport implements Transport {
+
+    static final int BUFFER_SIZE = 16 * 1024;
+    static final int MAX_LINE_SIZE = 8 * 1024;
+    static final int MAX_THREADS = 64;
+    static final int QUEUE_CAPACITY = 256;
+
+    private static class Holder {
+        static final ExecutorService EXECUTOR = newExecutor(MAX_THREADS, QUEUE_CAPACITY);
+    }
+
+    /**
+     * Up to threads daemon threads, idle ones are stopped after a minute.
+     */
+    static ExecutorService newExecutor(int threads, int queueCapacity) {
+
+        BlockingQueue<Runnable> queue = queueCapacity > 0
+                ? new ArrayBlockingQueue<>(queueCapacity)
+                : new SynchronousQueue<>();
+        AtomicInteger counter = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, queue,
+                runnable -> {
+                    Thread thread = new Thread(runnable, "socket-transport-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private final HttpMetrics metrics;
+    private final Executor executor;
+    private final Duration connectTimeout;
+
+    public BlockingSocketTransport() {
+        this(SimpleCurl.metrics, Holder.EXECUTOR, HttpClientFactory.DEFAULT_CONFIG.getConnectTimeout());
+    }
+
+    public BlockingSocketTransport(HttpMetrics metrics, Executor executor, Duration connectTimeout) {
+        this.metrics = Objects.requireNonNull(metrics);
+        this.executor = Objects.requireNonNull(executor);
+        this.connectTimeout = Objects.requireNonNull(connectTimeout);
+    }
+
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+
+        URI uri = request.uri();
+        if (!"http".equalsIgnoreCase(uri.getScheme())) {
+            return CompletableFuture.failedFuture(new UnsupportedOperationException("Only http is supported: " + uri));
+        }
+        if (request.bodyPublisher().map(publisher -> publisher.contentLength() != 0).orElse(false)) {
+            return CompletableFuture.failedFuture(new UnsupportedOperationException("Request bodies are not supported"));
+        }
+        CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> exchange(request, handler, result));
+        } catch (RejectedExecutionException ex) {
+            result.completeExceptionally(ex);
+        }
+        return result;
+    }
+
+    private <T> void exchange(HttpRequest request, HttpResponse.BodyHandler<T> handler,
+                              CompletableFuture<HttpResponse<T>> result) {
+
+        URI uri = request.uri();
+        BodyEmitter emitter = null;
+        try (SocketChannel channel = SocketChannel.open()) {
+
+            result.whenComplete((response, ex) -> {
+                if (result.isCancelled()) {
+                    closeQuietly(channel);
+                }
+            });
+
+            long start = System.nanoTime();
+            channel.socket().connect(
+                    new InetSocketAddress(uri.getHost(), uri.getPort() == -1 ? 80 : uri.getPort()),
+                    Math.toIntExact(connectTimeout.toMillis()));
+            metrics.record(HttpMetrics.host(uri), HttpMetrics.Phase.CONNECT, System.nanoTime() - start);
+            if (request.timeout().isPresent()) {
+                channel.socket().setSoTimeout(Math.toIntExact(request.timeout().get().toMillis()));
+            }
+
+            ByteBuffer head = ByteBuffer.wrap(head(request).getBytes(StandardCharsets.ISO_8859_1));
+            while (head.hasRemaining()) {
+                channel.write(head);
+            }
+
+            InputStream input = new BufferedInputStream(channel.socket().getInputStream(), BUFFER_SIZE);
+            int status;
+            HttpHeaders headers;
+            do {
+                status = status(readLine(input));
+                headers = headers(input);
+            } while (status == 100);
+
+            TransportResponse<Void> info = new TransportResponse<>(request, status, headers, null);
+            HttpResponse.BodySubscriber<T> subscriber = handler.apply(info);
+            emitter = new BodyEmitter(subscriber);
+            BodyEmitter body = emitter;
+            result.whenComplete((response, ex) -> {
+                if (result.isCancelled()) {
+                    body.cancel();
+                }
+            });
+            subscriber.getBody().whenComplete((value, ex) -> {
+                if (Objects.isNull(ex)) {
+                    result.complete(info.withBody(value));
+                } else {
+                    result.completeExceptionally(ex);
+                }
+            });
+            emitter.start();
+
+            OptionalLong contentLength = headers.firstValueAsLong("Content-Length");
+            if ("HEAD".equals(request.method()) || status == 204 || status == 304) {
+                LOGGER.debug("Response without body: {}", status);
+            } else if (headers.firstValue("Transfer-Encoding").map(value -> value.contains("chunked")).orElse(false)) {
+                readChunked(input, emitter);
+            } else if (contentLength.isPresent()) {
+                readFixed(input, emitter, contentLength.getAsLong());
+            } else {
+                readToEnd(input, emitter);
+            }
+            emitter.complete();
+
+        } catch (IOException | RuntimeException ex) {
+            LOGGER.debug("Exchange failed: {}", ex.getLocalizedMessage());
+            fail(emitter, result, ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            fail(emitter, result, ex);
+        }
+    }
+
+    private static void fail(BodyEmitter emitter, CompletableFuture<?> result, Exception ex) {
+        if (Objects.nonNull(emitter)) {
+            emitter.error(ex);
+        }
+        result.completeExceptionally(ex);
+    }
+
+    private static String head(HttpRequest request) {
+
+        URI uri = request.uri();
+        String path = Objects.isNull(uri.getRawPath()) || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+        StringBuilder head = new StringBuilder()
+                .append(request.method()).append(' ')
+                .append(path).append(Objects.isNull(uri.getRawQuery()) ? "" : "?" + uri.getRawQuery())
+                .append(" HTTP/1.1\r\n")
+                .append("Host: ").append(uri.getRawAuthority()).append("\r\n")
+                .append("Connection: close\r\n");
+        request.headers().map().forEach((name, values) ->
+                values.forEach(value -> head.append(name).append(": ").append(value).append("\r\n")));
+        return head.append("\r\n").toString();
+    }
+
+    private static int status(String statusLine) throws IOException {
+        String[] parts = statusLine.split(" ", 3);
+        if (parts.length < 2 || !parts[0].startsWith("HTTP/")) {
+            throw new IOException("Bad status line: " + statusLine);
+        }
+        return Integer.parseInt(parts[1]);
+    }
+
+    private static HttpHeaders headers(InputStream input) throws IOException {
+
+        Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        String line;
+        while (!(line = readLine(input)).isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                throw new IOException("Bad header: " + line);
+            }
+            headers.computeIfAbsent(line.substring(0, colon).trim(), name -> new ArrayList<>())
+                    .add(line.substring(colon + 1).trim());
+        }
+        return HttpHeaders.of(headers, (name, value) -> true);
+    }
+
+    private static void readChunked(InputStream input, BodyEmitter emitter) throws IOException, InterruptedException {
+
+        while (true) {
+            String line = readLine(input);
+            int extension = line.indexOf(';');
+            long size = Long.parseLong((extension == -1 ? line : line.substring(0, extension)).trim(), 16);
+            if (size == 0) {
+                //Trailer headers are ignored
+                headers(input);
+                return;
+            }
+            readFixed(input, emitter, size);
+            readLine(input);
+        }
+    }
+
+    private static void readFixed(InputStream input, BodyEmitter emitter, long length) throws IOException, InterruptedException {
+
+        long remaining = length;
+        while (remaining > 0 && !emitter.isCancelled()) {
+            byte[] buffer = new byte[(int) Math.min(BUFFER_SIZE, remaining)];
+            int read = input.read(buffer);
+            if (read == -1) {
+                throw new EOFException("Connection closed with " + remaining + " bytes pending");
+            }
+            remaining -= read;
+            emit(emitter, buffer, read);
+        }
+    }
+
+    private static void readToEnd(InputStream input, BodyEmitter emitter) throws IOException, InterruptedException {
+
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while (!emitter.isCancelled() && (read = input.read(buffer)) != -1) {
+            emit(emitter, buffer, read);
+            buffer = new byte[BUFFER_SIZE];
+        }
+    }
+
+    //The socket is not read again until the subscriber has taken the chunk
+    private static void emit(BodyEmitter emitter, byte[] buffer, int length) throws InterruptedException {
+        emitter.next(List.of(ByteBuffer.wrap(buffer, 0, length)));
+        emitter.awaitDrained();
+    }
+
+    private static String readLine(InputStream input) throws IOException {
+
+        StringBuilder line = new StringBuilder();
+        int value;
+        while ((value = input.read()) != '\n') {
+            if (value == -1) {
+                throw new EOFException("Connection closed");
+            }
+            if (line.length() > MAX_LINE_SIZE) {
+                throw new IOException("Line too long");
+            }
+            line.append((char) value);
+        }
+        int length = line.length();
+        return length > 0 && line.charAt(length - 1) == '\r' ? line.substring(0, length - 1) : line.toString();
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            LOGGER.debug("Error closing the channel: {}", ex.getLocalizedMessage());
+        }
+    }
+
+}
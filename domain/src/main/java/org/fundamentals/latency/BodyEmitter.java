@@ -0,0 +1,110 @@
+package org.fundamentals.latency;
+
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Feeds a BodySubscriber of the transports which are not the JDK HttpClient.
+ *
+ * Items are queued and delivered with the demand of the subscriber,
+ * a blocking producer waits with awaitDrained before reading more.
+ */
+class BodyEmitter implements Flow.Subscription {
+
+    private final HttpResponse.BodySubscriber<?> subscriber;
+    private final Queue<List<ByteBuffer>> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicInteger wip = new AtomicInteger();
+    private volatile boolean done = false;
+    private volatile boolean cancelled = false;
+    private volatile Throwable error;
+    private boolean terminated = false;
+
+    BodyEmitter(HttpResponse.BodySubscriber<?> subscriber) {
+        this.subscriber = subscriber;
+    }
+
+    void start() {
+        subscriber.onSubscribe(this);
+    }
+
+    void next(List<ByteBuffer> items) {
+        queue.offer(items);
+        drain();
+    }
+
+    void complete() {
+        done = true;
+        drain();
+    }
+
+    void error(Throwable throwable) {
+        error = throwable;
+        done = true;
+        drain();
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Blocks the producer until the subscriber has taken every queued item.
+     */
+    synchronized void awaitDrained() throws InterruptedException {
+        while (!queue.isEmpty() && !cancelled) {
+            wait();
+        }
+    }
+
+    @Override
+    public void request(long n) {
+        if (n <= 0) {
+            error(new IllegalArgumentException("Non positive request: " + n));
+            return;
+        }
+        demand.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+        drain();
+    }
+
+    @Override
+    public void cancel() {
+        cancelled = true;
+        queue.clear();
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    private void drain() {
+
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        do {
+            while (!cancelled && Objects.isNull(error) && demand.get() > 0 && !queue.isEmpty()) {
+                demand.decrementAndGet();
+                subscriber.onNext(queue.poll());
+            }
+            if (!cancelled && !terminated && done && (Objects.nonNull(error) || queue.isEmpty())) {
+                terminated = true;
+                if (Objects.nonNull(error)) {
+                    subscriber.onError(error);
+                } else {
+                    subscriber.onComplete();
+                }
+            }
+            synchronized (this) {
+                notifyAll();
+            }
+        } while (wip.decrementAndGet() != 0);
+    }
+
+}
@@ -0,0 +1,149 @@
+package org.fundamentals.latency;
+
+import io.vavr.control.Try;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Objects;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+
+/**
+ * Body handlers which measure a response instead of materializing it.
+ *
+ * - BYTES: the Content-Length header is used when the upstream sends it,
+ *   in other case the bytes are counted while they arrive and dropped.
+ * - CHARACTERS: the body is decoded into a small reusable buffer, so the result
+ *   is the same as String::length without keeping the String in the heap.
+ */
+public class BodyLength {
+
+    public enum Unit {
+        BYTES,
+        CHARACTERS
+    }
+
+    private static final int BUFFER_SIZE = 4096;
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0).asReadOnlyBuffer();
+
+    private BodyLength() {}
+
+    public static HttpResponse.BodyHandler<Long> of(Unit unit) {
+        return responseInfo -> {
+            if (unit == Unit.BYTES) {
+                OptionalLong contentLength = contentLength(responseInfo.headers());
+                if (contentLength.isPresent()) {
+                    return HttpResponse.BodySubscribers.replacing(contentLength.getAsLong());
+                }
+                return new CountingSubscriber(null);
+            }
+            return new CountingSubscriber(charset(responseInfo.headers()).newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE));
+        };
+    }
+
+    /**
+     * Content-Length is only meaningful for the caller if the body is not encoded.
+     */
+    static OptionalLong contentLength(HttpHeaders headers) {
+        if (headers.firstValue("Content-Encoding").filter(e -> !e.equalsIgnoreCase("identity")).isPresent()) {
+            return OptionalLong.empty();
+        }
+        return headers.firstValueAsLong("Content-Length");
+    }
+
+    static Charset charset(HttpHeaders headers) {
+        return headers.firstValue("Content-Type")
+                .flatMap(type -> List.of(type.split(";")).stream()
+                        .map(String::trim)
+                        .filter(param -> param.toLowerCase().startsWith("charset="))
+                        .map(param -> param.substring("charset=".length()).replace("\"", ""))
+                        .findFirst())
+                .flatMap(name -> Try.of(() -> Charset.forName(name)).toJavaOptional())
+                .orElse(StandardCharsets.UTF_8);
+    }
+
+    private static class CountingSubscriber implements HttpResponse.BodySubscriber<Long> {
+
+        private final CompletableFuture<Long> result = new CompletableFuture<>();
+        private final CharsetDecoder decoder;
+        private final CharBuffer chars;
+        private ByteBuffer leftover = EMPTY;
+        private Flow.Subscription subscription;
+        private long count = 0;
+
+        CountingSubscriber(CharsetDecoder decoder) {
+            this.decoder = decoder;
+            this.chars = Objects.isNull(decoder) ? null : CharBuffer.allocate(BUFFER_SIZE);
+        }
+
+        @Override
+        public CompletionStage<Long> getBody() {
+            return result;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> items) {
+            for (ByteBuffer item : items) {
+                if (Objects.isNull(decoder)) {
+                    count += item.remaining();
+                } else {
+                    decode(item, false);
+                }
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            result.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            if (Objects.nonNull(decoder)) {
+                decode(EMPTY, true);
+                decoder.flush(chars);
+                count += chars.position();
+            }
+            result.complete(count);
+        }
+
+        private void decode(ByteBuffer item, boolean endOfInput) {
+
+            ByteBuffer input = item;
+            if (leftover.hasRemaining()) {
+                input = ByteBuffer.allocate(leftover.remaining() + item.remaining());
+                input.put(leftover).put(item).flip();
+            }
+            while (true) {
+                boolean overflow = decoder.decode(input, chars, endOfInput).isOverflow();
+                count += chars.position();
+                chars.clear();
+                if (!overflow) {
+                    break;
+                }
+            }
+            //Incomplete multi byte sequence at the end of the chunk
+            leftover = input.hasRemaining()
+                    ? ByteBuffer.allocate(input.remaining()).put(input).flip()
+                    : EMPTY;
+        }
+    }
+
+}
@@ -0,0 +1,103 @@
+package org.fundamentals.latency;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Cancellation which reaches the work behind a CompletableFuture.
+ *
+ * cancel, orTimeout and completeOnTimeout only complete a CompletableFuture,
+ * the task which computes it keeps running: a blocking fetch holds its pool
+ * thread and its connection until the upstream answers.
+ *
+ * - supplyAsync: the thread of the task is interrupted when the future is
+ *   completed from outside, so a blocked Transport.send returns at once.
+ * - propagate: the source of a chain (exceptionally, thenApply...) is cancelled
+ *   when the last stage completes first, so the exchange is aborted.
+ */
+@Slf4j
+public final class Cancellation {
+
+    private Cancellation() {}
+
+    private static final class Task<T> implements Runnable {
+
+        private final CompletableFuture<T> future;
+        private final Supplier<T> supplier;
+        private Thread runner;
+        //The interrupt was delivered by this task, not by the executor (shutdownNow) or the caller
+        private boolean interrupted;
+
+        Task(CompletableFuture<T> future, Supplier<T> supplier) {
+            this.future = future;
+            this.supplier = supplier;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (future.isDone()) {
+                    return;
+                }
+                runner = Thread.currentThread();
+            }
+            try {
+                future.complete(supplier.get());
+            } catch (Throwable ex) {
+                future.completeExceptionally(ex);
+            } finally {
+                synchronized (this) {
+                    runner = null;
+                    //Clears the interrupt of this task which arrived after the supplier,
+                    //the thread goes back to the pool. Other interrupts are kept
+                    if (interrupted) {
+                        Thread.interrupted();
+                    }
+                }
+            }
+        }
+
+        synchronized void interrupt() {
+            if (Objects.nonNull(runner) && runner != Thread.currentThread()) {
+                LOGGER.debug("Interrupting {}", runner.getName());
+                interrupted = true;
+                runner.interrupt();
+            }
+        }
+    }
+
+    /**
+     * CompletableFuture.supplyAsync, the task is interrupted if the future
+     * is cancelled or completed (timeout) while it runs.
+     */
+    public static <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier, Executor executor) {
+
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Task<T> task = new Task<>(future, supplier);
+        future.whenComplete((value, ex) -> task.interrupt());
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException ex) {
+            future.completeExceptionally(ex);
+        }
+        return future;
+    }
+
+    /**
+     * The upstream is cancelled when the downstream completes before it.
+     */
+    public static <T> CompletableFuture<T> propagate(CompletableFuture<T> downstream, Future<?> upstream) {
+        downstream.whenComplete((value, ex) -> {
+            if (!upstream.isDone()) {
+                upstream.cancel(true);
+            }
+        });
+        return downstream;
+    }
+
+}
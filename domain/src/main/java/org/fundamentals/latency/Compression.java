@@ -0,0 +1,319 @@
+package org.fundamentals.latency;
+
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Transparent gzip / deflate support for the JDK HttpClient.
+ *
+ * The requests advertise ACCEPT_ENCODING and the responses with a Content-Encoding
+ * are inflated inside the body subscriber: every compressed chunk is inflated into
+ * small buffers which are passed to the original subscriber, so the compressed
+ * body is never buffered.
+ *
+ * Notes:
+ * - deflate is accepted with and without the zlib wrapper, servers send both.
+ * - The gzip trailer (CRC32 and size) is verified when the body completes.
+ */
+public class Compression {
+
+    public static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    @Data
+    @AllArgsConstructor
+    public static class Stats {
+
+        private long responses;
+        private long compressedBytes;
+        private long uncompressedBytes;
+    }
+
+    static final int OUTPUT_BUFFER_SIZE = 16 * 1024;
+
+    private static final LongAdder responses = new LongAdder();
+    private static final LongAdder compressedBytes = new LongAdder();
+    private static final LongAdder uncompressedBytes = new LongAdder();
+
+    private Compression() {}
+
+    /**
+     * Wraps a BodyHandler, the body is inflated if the response is compressed.
+     */
+    public static <T> HttpResponse.BodyHandler<T> decoding(HttpResponse.BodyHandler<T> handler) {
+        return responseInfo -> {
+            HttpResponse.BodySubscriber<T> subscriber = handler.apply(responseInfo);
+            String encoding = encoding(responseInfo.headers());
+            switch (encoding) {
+                case "gzip":
+                case "x-gzip":
+                    return new InflatingSubscriber<>(subscriber, true);
+                case "deflate":
+                    return new InflatingSubscriber<>(subscriber, false);
+                default:
+                    return subscriber;
+            }
+        };
+    }
+
+    public static Stats stats() {
+        return new Stats(responses.sum(), compressedBytes.sum(), uncompressedBytes.sum());
+    }
+
+    static String encoding(HttpHeaders headers) {
+        return headers.firstValue("Content-Encoding")
+                .map(value -> value.trim().toLowerCase(Locale.ROOT))
+                .orElse("identity");
+    }
+
+    private static class InflatingSubscriber<T> implements HttpResponse.BodySubscriber<T> {
+
+        private static final int GZIP_MAGIC = 0x8b1f;
+        private static final int FHCRC = 2;
+        private static final int FEXTRA = 4;
+        private static final int FNAME = 8;
+        private static final int FCOMMENT = 16;
+        private static final int GZIP_TRAILER_SIZE = 8;
+
+        private final HttpResponse.BodySubscriber<T> delegate;
+        private final boolean gzip;
+        private final CRC32 crc = new CRC32();
+        //Bytes of the header or the trailer which are not complete yet
+        private ByteBuffer pending = ByteBuffer.allocate(0);
+        private Inflater inflater;
+        private Flow.Subscription subscription;
+        private long compressed = 0;
+        private long uncompressed = 0;
+        private boolean failed = false;
+
+        InflatingSubscriber(HttpResponse.BodySubscriber<T> delegate, boolean gzip) {
+            this.delegate = delegate;
+            this.gzip = gzip;
+        }
+
+        @Override
+        public CompletionStage<T> getBody() {
+            return delegate.getBody();
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            delegate.onSubscribe(subscription);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> items) {
+
+            if (failed) {
+                return;
+            }
+            List<ByteBuffer> output = new ArrayList<>();
+            try {
+                for (ByteBuffer item : items) {
+                    compressed += item.remaining();
+                    inflate(item, output);
+                }
+            } catch (ZipException | DataFormatException ex) {
+                fail(ex);
+                return;
+            }
+            if (output.isEmpty()) {
+                //Nothing for the delegate yet, the demand is renewed here
+                subscription.request(1);
+            } else {
+                delegate.onNext(output);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            end();
+            if (!failed) {
+                delegate.onError(throwable);
+            }
+        }
+
+        @Override
+        public void onComplete() {
+
+            if (failed) {
+                return;
+            }
+            //Empty bodies, example: 304 or 204 with a Content-Encoding
+            if (compressed == 0) {
+                delegate.onComplete();
+                return;
+            }
+            try {
+                if (Objects.isNull(inflater) || !inflater.finished()) {
+                    throw new ZipException("Unexpected end of the compressed body");
+                }
+                if (gzip) {
+                    checkTrailer();
+                }
+            } catch (ZipException ex) {
+                fail(ex);
+                return;
+            }
+            end();
+            responses.increment();
+            compressedBytes.add(compressed);
+            uncompressedBytes.add(uncompressed);
+            delegate.onComplete();
+        }
+
+        private void inflate(ByteBuffer item, List<ByteBuffer> output) throws ZipException, DataFormatException {
+
+            ByteBuffer input = item;
+            if (Objects.isNull(inflater)) {
+                input = append(pending, item);
+                if (!readHeader(input)) {
+                    pending = input;
+                    return;
+                }
+                pending = ByteBuffer.allocate(0);
+            }
+            if (inflater.finished()) {
+                pending = append(pending, input);
+                return;
+            }
+
+            inflater.setInput(input);
+            while (!inflater.finished()) {
+                ByteBuffer buffer = ByteBuffer.allocate(OUTPUT_BUFFER_SIZE);
+                int length = inflater.inflate(buffer);
+                if (length == 0) {
+                    if (inflater.needsDictionary()) {
+                        throw new ZipException("A preset dictionary is not supported");
+                    }
+                    if (inflater.needsInput()) {
+                        break;
+                    }
+                }
+                buffer.flip();
+                if (gzip) {
+                    crc.update(buffer.duplicate());
+                }
+                uncompressed += length;
+                output.add(buffer);
+            }
+            if (inflater.finished() && input.hasRemaining()) {
+                //Trailer of gzip
+                pending = append(pending, input);
+            }
+        }
+
+        //Creates the inflater once the header is complete
+        private boolean readHeader(ByteBuffer input) throws ZipException {
+
+            if (!gzip) {
+                if (input.remaining() < 2) {
+                    return false;
+                }
+                int cmf = input.get(input.position()) & 0xff;
+                int flg = input.get(input.position() + 1) & 0xff;
+                boolean zlib = (cmf & 0x0f) == 8 && ((cmf << 8) | flg) % 31 == 0;
+                inflater = new Inflater(!zlib);
+                return true;
+            }
+
+            ByteBuffer header = input.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            if (header.remaining() < 10) {
+                return false;
+            }
+            if ((header.getShort() & 0xffff) != GZIP_MAGIC) {
+                throw new ZipException("Not in GZIP format");
+            }
+            if (header.get() != 8) {
+                throw new ZipException("Unsupported compression method");
+            }
+            int flags = header.get() & 0xff;
+            header.position(header.position() + 6);
+            if ((flags & FEXTRA) == FEXTRA) {
+                if (header.remaining() < 2) {
+                    return false;
+                }
+                int extra = header.getShort() & 0xffff;
+                if (header.remaining() < extra) {
+                    return false;
+                }
+                header.position(header.position() + extra);
+            }
+            if ((flags & FNAME) == FNAME && !skipZeroTerminated(header)) {
+                return false;
+            }
+            if ((flags & FCOMMENT) == FCOMMENT && !skipZeroTerminated(header)) {
+                return false;
+            }
+            if ((flags & FHCRC) == FHCRC) {
+                if (header.remaining() < 2) {
+                    return false;
+                }
+                header.getShort();
+            }
+            input.position(header.position());
+            inflater = new Inflater(true);
+            return true;
+        }
+
+        private void checkTrailer() throws ZipException {
+
+            if (pending.remaining() < GZIP_TRAILER_SIZE) {
+                throw new ZipException("Corrupt GZIP trailer");
+            }
+            ByteBuffer trailer = pending.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            long expectedCrc = trailer.getInt() & 0xffffffffL;
+            long expectedSize = trailer.getInt() & 0xffffffffL;
+            if (expectedCrc != crc.getValue() || expectedSize != (uncompressed & 0xffffffffL)) {
+                throw new ZipException("Corrupt GZIP trailer");
+            }
+        }
+
+        private void fail(Exception ex) {
+            failed = true;
+            end();
+            subscription.cancel();
+            delegate.onError(ex);
+        }
+
+        private void end() {
+            if (Objects.nonNull(inflater)) {
+                inflater.end();
+            }
+        }
+
+        private static boolean skipZeroTerminated(ByteBuffer header) {
+            while (header.hasRemaining()) {
+                if (header.get() == 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static ByteBuffer append(ByteBuffer pending, ByteBuffer item) {
+            if (!pending.hasRemaining()) {
+                return item;
+            }
+            ByteBuffer joined = ByteBuffer.allocate(pending.remaining() + item.remaining());
+            joined.put(pending.duplicate()).put(item).flip();
+            return joined;
+        }
+    }
+
+}
@@ -0,0 +1,130 @@
+package org.fundamentals.latency;
+
+import io.vavr.control.Option;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Point in time (System.nanoTime) when a request has to be answered.
+ *
+ * A Deadline is created once per request and every hop uses only the
+ * remaining budget, instead of a fixed timeout per hop, so the worst case
+ * of a solution is the budget and not N x timeout.
+ *
+ * The current Deadline of a thread is used by SimpleCurl (request timeout),
+ * by the executors returned by propagating and by Hedging. Reactor pipelines
+ * carry it in the subscriber Context (see ReactorCurl).
+ */
+public final class Deadline {
+
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    private final long nanoTime;
+
+    private Deadline(long nanoTime) {
+        this.nanoTime = nanoTime;
+    }
+
+    public static Deadline after(Duration budget) {
+        return new Deadline(System.nanoTime() + budget.toNanos());
+    }
+
+    public static Option<Deadline> current() {
+        return Option.of(CURRENT.get());
+    }
+
+    /**
+     * The current Deadline or a new one with the budget of a single hop.
+     */
+    public static Deadline currentOr(Duration budget) {
+        return current().getOrElse(() -> after(budget));
+    }
+
+    public long remainingNanos() {
+        return Math.max(0, nanoTime - System.nanoTime());
+    }
+
+    public Duration remaining() {
+        return Duration.ofNanos(remainingNanos());
+    }
+
+    public boolean isExpired() {
+        return remainingNanos() == 0;
+    }
+
+    /**
+     * The earliest of this Deadline and a timeout from now.
+     */
+    public Deadline min(Duration timeout) {
+        long other = System.nanoTime() + timeout.toNanos();
+        return other - nanoTime < 0 ? new Deadline(other) : this;
+    }
+
+    /**
+     * Runs the supplier with this Deadline as the current one.
+     */
+    public <T> T call(Supplier<T> supplier) {
+        Deadline previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return supplier.get();
+        } finally {
+            if (Objects.isNull(previous)) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    public void run(Runnable runnable) {
+        call(() -> {
+            runnable.run();
+            return null;
+        });
+    }
+
+    /**
+     * The function runs with this Deadline, useful for the stages of a CompletableFuture
+     * which are executed in other threads.
+     */
+    public <T, R> Function<T, R> bind(Function<T, R> function) {
+        return value -> call(() -> function.apply(value));
+    }
+
+    /**
+     * The future is completed with the fallback when the Deadline expires.
+     */
+    public <T> CompletableFuture<T> bound(CompletableFuture<T> future, T fallback) {
+        return future.completeOnTimeout(fallback, remainingNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * The future fails with a TimeoutException when the Deadline expires.
+     */
+    public <T> CompletableFuture<T> orTimeout(CompletableFuture<T> future) {
+        return future.orTimeout(remainingNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * The tasks run with the Deadline which was current when they were submitted.
+     */
+    public static Executor propagating(Executor executor) {
+        Objects.requireNonNull(executor);
+        return task -> {
+            Option<Deadline> deadline = current();
+            executor.execute(deadline.isDefined() ? () -> deadline.get().run(task) : task);
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "Deadline(remaining=" + remaining() + ")";
+    }
+
+}
@@ -0,0 +1,151 @@
+package org.fundamentals.latency;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Rate limiter with the Generic Cell Rate Algorithm (GCRA).
+ *
+ * The whole state is one AtomicLong, the theoretical arrival time (TAT) of the next permit:
+ * every permit moves it an emission interval (limitRefreshPeriod / limitForPeriod) forward,
+ * and a permit is free while the TAT is less than a burst of limitForPeriod permits ahead of now.
+ * Taking a permit is a compareAndSet, there is no refresh of the permits in a timer.
+ *
+ * acquireAsync reserves the permit at once and returns a future completed by
+ * CompletableFuture.delayedExecutor when the permit is due, so a waiting caller holds no thread.
+ * A caller which would wait longer than timeoutDuration (or than its Deadline) is rejected
+ * without a reservation. A reserved permit is not given back when the caller cancels its future.
+ */
+@Slf4j
+public class GcraRateLimiter {
+
+    @Data
+    @AllArgsConstructor
+    public static class Config {
+
+        private Duration limitRefreshPeriod;
+        private int limitForPeriod;
+        private Duration timeoutDuration;
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Stats {
+
+        private int availablePermits;
+        private int waiting;
+    }
+
+    private static final long REJECTED = -1;
+
+    private final String name;
+    private final Config config;
+    private final LongSupplier clock;
+    //Nanos between two permits
+    private final long interval;
+    //How far ahead of now the TAT can be, a burst of limitForPeriod permits
+    private final long tolerance;
+    private final AtomicLong tat;
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    public GcraRateLimiter(String name, Config config) {
+        this(name, config, System::nanoTime);
+    }
+
+    GcraRateLimiter(String name, Config config, LongSupplier clock) {
+        this.name = Objects.requireNonNull(name);
+        this.config = Objects.requireNonNull(config);
+        this.clock = Objects.requireNonNull(clock);
+        int limit = Math.max(1, config.getLimitForPeriod());
+        this.interval = Math.max(1, config.getLimitRefreshPeriod().toNanos() / limit);
+        this.tolerance = interval * (limit - 1);
+        this.tat = new AtomicLong(clock.getAsLong());
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * A permit if one is free now, it never waits.
+     */
+    public boolean tryAcquire() {
+        return reserve(0) != REJECTED;
+    }
+
+    /**
+     * A future completed when the permit is due, or failed with a RejectedExecutionException
+     * when the wait is longer than the timeout.
+     */
+    public CompletableFuture<Void> acquireAsync() {
+
+        long maxWait = Deadline.current()
+                .map(deadline -> Math.min(deadline.remainingNanos(), config.getTimeoutDuration().toNanos()))
+                .getOrElse(() -> config.getTimeoutDuration().toNanos());
+        long wait = reserve(maxWait);
+        if (wait == REJECTED) {
+            LOGGER.debug("Rate limiter {} rejected a call", name);
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Rate limiter " + name + " has no permits"));
+        }
+        if (wait == 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        waiting.incrementAndGet();
+        return CompletableFuture.runAsync(waiting::decrementAndGet,
+                Deadline.propagating(CompletableFuture.delayedExecutor(wait, TimeUnit.NANOSECONDS)));
+    }
+
+    /**
+     * The call once a permit is due, it is not sent when it is rejected.
+     */
+    public <T> CompletableFuture<T> executeAsync(Supplier<CompletableFuture<T>> call) {
+        return acquireAsync().thenCompose(permit -> call.get());
+    }
+
+    /**
+     * executeAsync for calls which block while they are created, a call which waited
+     * for its permit starts in the executor and not in the timer thread (the common pool).
+     */
+    public <T> CompletableFuture<T> executeAsync(Supplier<CompletableFuture<T>> call, Executor executor) {
+        Objects.requireNonNull(executor);
+        CompletableFuture<Void> permit = acquireAsync();
+        return permit.isDone()
+                ? permit.thenCompose(ignored -> call.get())
+                : permit.thenComposeAsync(ignored -> call.get(), Deadline.propagating(executor));
+    }
+
+    public Stats stats() {
+        long ahead = Math.max(0, tat.get() - clock.getAsLong());
+        int available = (int) Math.max(0, Math.floorDiv(tolerance - ahead, interval) + 1);
+        return new Stats(available, waiting.get());
+    }
+
+    //The nanos to wait for the reserved permit, or REJECTED when it is more than maxWait
+    private long reserve(long maxWait) {
+
+        while (true) {
+            long now = clock.getAsLong();
+            long current = tat.get();
+            long next = current - now > 0 ? current : now;
+            long wait = Math.max(0, next - tolerance - now);
+            if (wait > maxWait) {
+                return REJECTED;
+            }
+            if (tat.compareAndSet(current, next + interval)) {
+                return wait;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,181 @@
+package org.fundamentals.latency;
+
+import io.vavr.control.Option;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Hedged requests: if the primary request has not answered after a delay,
+ * the same request is sent to a second replica, the first response wins
+ * and the loser is cancelled.
+ *
+ * - Delay: the configured percentile of the observed latencies, bounded by
+ *   [minDelay, maxDelay]. Until minSamples responses are observed maxDelay is used.
+ * - Budget: hedges are limited to budgetRatio of the requests (plus a small burst),
+ *   so a slow upstream is not hit with twice the load.
+ * - If the primary fails before the delay, the hedge is sent at once.
+ * - The Deadline of the caller is respected: a hedge is not sent after it.
+ */
+@Slf4j
+public class Hedging<T> {
+
+    @Data
+    @AllArgsConstructor
+    public static class Config {
+
+        private double percentile;
+        private Duration minDelay;
+        private Duration maxDelay;
+        private int minSamples;
+        private double budgetRatio;
+        private int budgetBurst;
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Stats {
+
+        private long requests;
+        private long hedges;
+        private long hedgeWins;
+    }
+
+    static final Config DEFAULT_CONFIG = new Config(0.95, Duration.ofMillis(10), Duration.ofMillis(500), 20, 0.1, 5);
+
+    private final Config config;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+
+    public Hedging(Config config) {
+        this.config = Objects.requireNonNull(config);
+    }
+
+    public CompletableFuture<T> execute(Supplier<CompletableFuture<T>> primary, Supplier<CompletableFuture<T>> hedge) {
+
+        requests.increment();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        //Primary plus the hedge slot, the result fails when both outcomes have failed
+        AtomicInteger pending = new AtomicInteger(2);
+        CompletableFuture<Void> hedgeStarted = new CompletableFuture<>();
+
+        CompletableFuture<T> first = send(primary, result, pending, false);
+        result.whenComplete((value, ex) -> first.cancel(true));
+
+        //The hedge is sent from a timer thread, it runs with the Deadline of the caller
+        Option<Deadline> deadline = Deadline.current();
+        Supplier<CompletableFuture<T>> hedgeWithin = deadline.isEmpty()
+                ? hedge
+                : () -> deadline.get().call(hedge);
+        Duration delay = delay();
+
+        //Without a hedge the result is the outcome of the primary
+        Runnable skipHedge = () -> {
+            if (pending.decrementAndGet() == 0) {
+                first.whenComplete((value, ex) -> result.completeExceptionally(ex));
+            }
+        };
+
+        Runnable sendHedge = () -> {
+            if (result.isDone() || !hedgeStarted.complete(null)) {
+                return;
+            }
+            if (deadline.isDefined() && deadline.get().isExpired()) {
+                LOGGER.debug("Deadline expired, no hedge");
+                skipHedge.run();
+                return;
+            }
+            if (!tryAcquireBudget()) {
+                LOGGER.debug("Hedge budget exhausted");
+                skipHedge.run();
+                return;
+            }
+            LOGGER.debug("Primary request is slow, sending hedge");
+            CompletableFuture<T> second = send(hedgeWithin, result, pending, true);
+            result.whenComplete((value, ex) -> second.cancel(true));
+        };
+
+        first.whenComplete((value, ex) -> {
+            if (Objects.nonNull(ex)) {
+                sendHedge.run();
+            }
+        });
+        //A hedge which cannot start before the Deadline is not scheduled
+        if (deadline.isEmpty() || deadline.get().remaining().compareTo(delay) > 0) {
+            CompletableFuture.delayedExecutor(delay.toNanos(), TimeUnit.NANOSECONDS).execute(sendHedge);
+        } else if (hedgeStarted.complete(null)) {
+            skipHedge.run();
+        }
+        return result;
+    }
+
+    /**
+     * Delay used for the next hedge.
+     */
+    public Duration delay() {
+        if (latencies.count() < config.getMinSamples()) {
+            return config.getMaxDelay();
+        }
+        Duration observed = latencies.percentile(config.getPercentile());
+        if (observed.compareTo(config.getMinDelay()) < 0) {
+            return config.getMinDelay();
+        }
+        if (observed.compareTo(config.getMaxDelay()) > 0) {
+            return config.getMaxDelay();
+        }
+        return observed;
+    }
+
+    public Stats stats() {
+        return new Stats(requests.sum(), hedges.sum(), hedgeWins.sum());
+    }
+
+    public LatencyHistogram latencies() {
+        return latencies;
+    }
+
+    private boolean tryAcquireBudget() {
+        if (hedges.sum() + 1 > config.getBudgetRatio() * requests.sum() + config.getBudgetBurst()) {
+            return false;
+        }
+        hedges.increment();
+        return true;
+    }
+
+    private CompletableFuture<T> send(Supplier<CompletableFuture<T>> request, CompletableFuture<T> result,
+                                      AtomicInteger pending, boolean isHedge) {
+
+        long start = System.nanoTime();
+        CompletableFuture<T> future;
+        try {
+            future = request.get();
+        } catch (RuntimeException ex) {
+            future = CompletableFuture.failedFuture(ex);
+        }
+        future.whenComplete((value, ex) -> {
+            if (Objects.isNull(ex)) {
+                latencies.record(System.nanoTime() - start);
+                //The winner is counted before the caller is notified
+                synchronized (result) {
+                    if (!result.isDone() && isHedge) {
+                        hedgeWins.increment();
+                    }
+                    result.complete(value);
+                }
+            } else if (pending.decrementAndGet() == 0) {
+                result.completeExceptionally(ex);
+            }
+        });
+        return future;
+    }
+
+}
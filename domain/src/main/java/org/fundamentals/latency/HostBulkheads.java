@@ -0,0 +1,231 @@
+package org.fundamentals.latency;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.vavr.control.Option;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bulkheads per upstream host (resilience4j), so a slow host only
+ * exhausts its own permits and threads and not the ones of the healthy hosts.
+ *
+ * - execute / executeAsync: semaphore bulkhead, maxConcurrentCalls per host,
+ *   a call waits up to maxWaitTime for a permit.
+ * - submit: blocking calls run in threadPoolSize daemon threads
+ *   of the host with a queue of queueCapacity.
+ * - Calls without a permit fail with BulkheadFullException and are counted as rejected.
+ *
+ * Hosts without a explicit Config use the default one, like HttpClientFactory.
+ * The instance owns the threads of the hosts, share one per process and close it.
+ */
+@Slf4j
+public class HostBulkheads implements AutoCloseable {
+
+    @Data
+    @AllArgsConstructor
+    public static class Config {
+
+        private int maxConcurrentCalls;
+        private Duration maxWaitTime;
+        private int threadPoolSize;
+        private int queueCapacity;
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Stats {
+
+        private long permitted;
+        private long rejected;
+        private int availableConcurrentCalls;
+        private int queueDepth;
+    }
+
+    static final Config DEFAULT_CONFIG = new Config(25, Duration.ZERO, 10, 100);
+
+    private class Host {
+
+        final String name;
+        final Config config;
+        final Bulkhead semaphore;
+        //Thread pools are only created for the hosts which use submit
+        volatile ThreadPoolExecutor threadPool;
+        final LongAdder permitted = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+
+        Host(String name, Config config) {
+            this.name = name;
+            this.config = config;
+            this.semaphore = Bulkhead.of(name, BulkheadConfig.custom()
+                    .maxConcurrentCalls(config.getMaxConcurrentCalls())
+                    .maxWaitTimeDuration(config.getMaxWaitTime())
+                    .build());
+            semaphore.getEventPublisher()
+                    .onCallPermitted(event -> permitted.increment())
+                    .onCallRejected(event -> rejected.increment());
+        }
+
+        synchronized ThreadPoolExecutor threadPool() {
+            if (closed) {
+                throw new RejectedExecutionException("HostBulkheads closed");
+            }
+            if (Objects.isNull(threadPool)) {
+                BlockingQueue<Runnable> queue = config.getQueueCapacity() > 0
+                        ? new ArrayBlockingQueue<>(config.getQueueCapacity())
+                        : new SynchronousQueue<>();
+                AtomicInteger counter = new AtomicInteger();
+                threadPool = new ThreadPoolExecutor(
+                        config.getThreadPoolSize(), config.getThreadPoolSize(), 0L, TimeUnit.MILLISECONDS, queue,
+                        runnable -> {
+                            Thread thread = new Thread(runnable, "bulkhead-" + name + "-" + counter.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+            }
+            return threadPool;
+        }
+
+        synchronized void close() {
+            if (Objects.nonNull(threadPool)) {
+                threadPool.shutdownNow().forEach(queued -> ((Call<?>) queued).future
+                        .completeExceptionally(new CancellationException("HostBulkheads closed")));
+            }
+        }
+    }
+
+    //A blocking call queued in the threads of a host
+    private static class Call<T> implements Runnable {
+
+        final Supplier<T> task;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+
+        Call(Supplier<T> task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                future.complete(task.get());
+            } catch (Throwable ex) {
+                future.completeExceptionally(ex);
+            }
+        }
+    }
+
+    private final Config defaultConfig;
+    private final Map<String, Config> configs = new ConcurrentHashMap<>();
+    private final Map<String, Host> hosts = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    public HostBulkheads(Config defaultConfig) {
+        this.defaultConfig = Objects.requireNonNull(defaultConfig);
+    }
+
+    /**
+     * Register a specific configuration for a host, example: localhost:8090
+     * The bulkheads already built for that host are kept.
+     */
+    public HostBulkheads register(String host, Config config) {
+        configs.put(host, Objects.requireNonNull(config));
+        return this;
+    }
+
+    /**
+     * Blocking call of the host in the caller thread.
+     */
+    public <T> T execute(URI uri, Supplier<T> call) {
+        return Bulkhead.decorateSupplier(host(uri).semaphore, call).get();
+    }
+
+    /**
+     * Non blocking call of the host, the permit is released when the future completes.
+     */
+    public <T> CompletableFuture<T> executeAsync(URI uri, Supplier<CompletableFuture<T>> call) {
+
+        Bulkhead bulkhead = host(uri).semaphore;
+        if (!bulkhead.tryAcquirePermission()) {
+            return CompletableFuture.failedFuture(new BulkheadFullException(bulkhead));
+        }
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException ex) {
+            bulkhead.onComplete();
+            return CompletableFuture.failedFuture(ex);
+        }
+        future.whenComplete((value, ex) -> bulkhead.onComplete());
+        return future;
+    }
+
+    /**
+     * Blocking call of the host in the threads of the host.
+     * The task runs with the Deadline of the caller.
+     */
+    public <T> CompletableFuture<T> submit(URI uri, Supplier<T> call) {
+
+        Option<Deadline> deadline = Deadline.current();
+        Supplier<T> task = deadline.isEmpty() ? call : () -> deadline.get().call(call);
+        Host host = host(uri);
+        Call<T> queued = new Call<>(task);
+        try {
+            host.threadPool().execute(queued);
+        } catch (RejectedExecutionException ex) {
+            LOGGER.debug("Bulkhead full: {}", host.name);
+            host.rejected.increment();
+            return CompletableFuture.failedFuture(new BulkheadFullException(host.semaphore));
+        }
+        host.permitted.increment();
+        return queued.future;
+    }
+
+    public Stats stats(String host) {
+        Host current = hosts.get(host);
+        if (Objects.isNull(current)) {
+            return new Stats(0, 0, configs.getOrDefault(host, defaultConfig).getMaxConcurrentCalls(), 0);
+        }
+        ThreadPoolExecutor threadPool = current.threadPool;
+        return new Stats(
+                current.permitted.sum(),
+                current.rejected.sum(),
+                current.semaphore.getMetrics().getAvailableConcurrentCalls(),
+                Objects.isNull(threadPool) ? 0 : threadPool.getQueue().size());
+    }
+
+    /**
+     * Stops the threads of the hosts, the queued calls never run and later submits are rejected.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        hosts.values().forEach(Host::close);
+    }
+
+    private Host host(URI uri) {
+        String host = HttpMetrics.host(uri);
+        return hosts.computeIfAbsent(host, name -> new Host(name, configs.getOrDefault(name, defaultConfig)));
+    }
+
+}
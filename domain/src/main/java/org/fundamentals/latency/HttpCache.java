@@ -0,0 +1,297 @@
+package org.fundamentals.latency;
+
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import java.net.URI;
+import java.net.URL;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Private HTTP cache in front of SimpleCurl for GET requests.
+ *
+ * - Freshness: Cache-Control max-age (minus Age), no-cache means always revalidate
+ *   and no-store means never store. Without Cache-Control the default TTL is used.
+ * - Revalidation: stale entries are requested with If-None-Match / If-Modified-Since,
+ *   a 304 answer renews the entry and it is counted as a hit.
+ * - Negative caching: errors and non 2xx answers are remembered for a short TTL,
+ *   so a failing upstream is not hammered by every caller. The Deadline or the
+ *   cancellation of a caller is not an answer of the upstream and it is not remembered.
+ * - Stale if error: when the revalidation fails (transport error, timeout or 5xx)
+ *   the stale entry is served for the negative TTL and keeps its validators.
+ * - Eviction: LRU bounded by number of entries.
+ *
+ * The body is decoded once with the BodyHandler of the cache, so the cached value
+ * is the final representation (a List of names, a length...) and not the raw page.
+ *
+ * The requests go through SimpleCurl.transport and are bounded by the Deadline of the caller.
+ */
+@Slf4j
+public class HttpCache<T> {
+
+    @Data
+    @AllArgsConstructor
+    public static class Config {
+
+        private int maxEntries;
+        private Duration defaultTtl;
+        private Duration negativeTtl;
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Stats {
+
+        private long hits;
+        private long misses;
+        private long revalidations;
+        private long negativeHits;
+        private long evictions;
+    }
+
+    static final Config DEFAULT_CONFIG = new Config(256, Duration.ZERO, Duration.ofSeconds(1));
+
+    @AllArgsConstructor
+    private static class Cached<T> {
+
+        final T value;
+        final String etag;
+        final String lastModified;
+        final long expiresAt;
+        final Throwable error;
+
+        boolean isFresh(long now) {
+            return now - expiresAt < 0;
+        }
+
+        boolean isNegative() {
+            return Objects.nonNull(error);
+        }
+    }
+
+    private final HttpResponse.BodyHandler<T> bodyHandler;
+    private final Config config;
+    private final LongSupplier nanoTime;
+    private final Map<URI, Cached<T>> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public HttpCache(HttpResponse.BodyHandler<T> bodyHandler) {
+        this(bodyHandler, DEFAULT_CONFIG);
+    }
+
+    public HttpCache(HttpResponse.BodyHandler<T> bodyHandler, Config config) {
+        this(bodyHandler, config, System::nanoTime);
+    }
+
+    HttpCache(HttpResponse.BodyHandler<T> bodyHandler, Config config, LongSupplier nanoTime) {
+        this.bodyHandler = Objects.requireNonNull(bodyHandler);
+        this.config = Objects.requireNonNull(config);
+        this.nanoTime = nanoTime;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<URI, Cached<T>> eldest) {
+                boolean evict = size() > config.getMaxEntries();
+                if (evict) {
+                    evictions.increment();
+                }
+                return evict;
+            }
+        };
+    }
+
+    public CompletableFuture<T> fetchAsync(URL url) {
+        return Try.of(() -> fetchAsync(url.toURI()))
+                .onFailure(ex -> LOGGER.error(ex.getLocalizedMessage(), ex))
+                .getOrElseGet(CompletableFuture::failedFuture);
+    }
+
+    public T fetch(URL url) {
+        return fetchAsync(url).join();
+    }
+
+    public Stats stats() {
+        return new Stats(hits.sum(), misses.sum(), revalidations.sum(), negativeHits.sum(), evictions.sum());
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    private CompletableFuture<T> fetchAsync(URI uri) {
+
+        Cached<T> cached = get(uri);
+        if (Objects.nonNull(cached) && cached.isFresh(nanoTime.getAsLong())) {
+            if (cached.isNegative()) {
+                negativeHits.increment();
+                return CompletableFuture.failedFuture(cached.error);
+            }
+            hits.increment();
+            return CompletableFuture.completedFuture(cached.value);
+        }
+
+        Cached<T> stale = Objects.nonNull(cached) && !cached.isNegative() ? cached : null;
+        Option<Deadline> deadline = Deadline.current();
+        CompletableFuture<HttpResponse<T>> exchange = Try.of(() -> SimpleCurl.transport
+                .sendAsync(request(uri, stale, deadline), SimpleCurl.handler(uri, this::handle)))
+                .getOrElseGet(CompletableFuture::failedFuture);
+        return Cancellation.propagate(SimpleCurl.within(deadline, exchange)
+                .handle((response, ex) -> {
+                    if (Objects.nonNull(ex)) {
+                        boolean upstream = !byCaller(ex);
+                        if (Objects.nonNull(stale)) {
+                            return serveStale(uri, stale, ex, upstream);
+                        }
+                        if (upstream) {
+                            put(uri, negative(ex));
+                        }
+                        throw new RuntimeException("Bad Request", ex);
+                    }
+                    return onResponse(uri, stale, response);
+                }), exchange);
+    }
+
+    //The revalidation failed, the stale entry is kept with its validators for the negative TTL.
+    //When the caller gave up the entry stays stale, the next caller revalidates it
+    private T serveStale(URI uri, Cached<T> stale, Throwable ex, boolean renew) {
+        LOGGER.warn("Serving a stale entry of {}: {}", uri, ex.getLocalizedMessage());
+        hits.increment();
+        if (renew) {
+            put(uri, new Cached<>(stale.value, stale.etag, stale.lastModified,
+                    nanoTime.getAsLong() + config.getNegativeTtl().toNanos(), null));
+        }
+        return stale.value;
+    }
+
+    //The Deadline of the caller (the request timeout comes from it) or its cancellation,
+    //a connect timeout is an answer of the upstream
+    private static boolean byCaller(Throwable ex) {
+        Throwable cause = ex instanceof CompletionException && Objects.nonNull(ex.getCause()) ? ex.getCause() : ex;
+        return cause instanceof CancellationException
+                || cause instanceof TimeoutException
+                || (cause instanceof HttpTimeoutException && !(cause instanceof HttpConnectTimeoutException));
+    }
+
+    private T onResponse(URI uri, Cached<T> stale, HttpResponse<T> response) {
+
+        int status = response.statusCode();
+        if (status == 304 && Objects.nonNull(stale)) {
+            revalidations.increment();
+            hits.increment();
+            put(uri, new Cached<>(stale.value,
+                    response.headers().firstValue("ETag").orElse(stale.etag),
+                    response.headers().firstValue("Last-Modified").orElse(stale.lastModified),
+                    expiresAt(response.headers()),
+                    null));
+            return stale.value;
+        }
+
+        if (status > 499 && Objects.nonNull(stale)) {
+            return serveStale(uri, stale, new RuntimeException("Bad Request, status: " + status + " " + uri), true);
+        }
+        misses.increment();
+        if (status < 200 || status > 299) {
+            RuntimeException ex = new RuntimeException("Bad Request, status: " + status + " " + uri);
+            put(uri, negative(ex));
+            throw ex;
+        }
+        if (!hasDirective(response.headers(), "no-store")) {
+            put(uri, new Cached<>(response.body(),
+                    response.headers().firstValue("ETag").orElse(null),
+                    response.headers().firstValue("Last-Modified").orElse(null),
+                    expiresAt(response.headers()),
+                    null));
+        }
+        return response.body();
+    }
+
+    //Only successful bodies are decoded
+    private HttpResponse.BodySubscriber<T> handle(HttpResponse.ResponseInfo responseInfo) {
+        int status = responseInfo.statusCode();
+        if (status < 200 || status > 299) {
+            return HttpResponse.BodySubscribers.replacing(null);
+        }
+        return bodyHandler.apply(responseInfo);
+    }
+
+    private HttpRequest request(URI uri, Cached<T> stale, Option<Deadline> deadline) throws HttpTimeoutException {
+
+        if (Objects.isNull(stale) || (Objects.isNull(stale.etag) && Objects.isNull(stale.lastModified))) {
+            return SimpleCurl.request(uri, deadline);
+        }
+        HttpRequest.Builder builder = SimpleCurl.timeout(HttpRequest.newBuilder(), uri, deadline)
+                .GET()
+                .uri(uri)
+                .header("Accept-Encoding", Compression.ACCEPT_ENCODING);
+        if (Objects.nonNull(stale.etag)) {
+            builder.header("If-None-Match", stale.etag);
+        }
+        if (Objects.nonNull(stale.lastModified)) {
+            builder.header("If-Modified-Since", stale.lastModified);
+        }
+        return builder.build();
+    }
+
+    private Cached<T> negative(Throwable ex) {
+        return new Cached<>(null, null, null, nanoTime.getAsLong() + config.getNegativeTtl().toNanos(), ex);
+    }
+
+    private long expiresAt(HttpHeaders headers) {
+
+        long ttl = hasDirective(headers, "no-cache")
+                ? 0
+                : maxAge(headers)
+                    .map(maxAge -> TimeUnit.SECONDS.toNanos(Math.max(0, maxAge - headers.firstValueAsLong("Age").orElse(0))))
+                    .orElse(config.getDefaultTtl().toNanos());
+        return nanoTime.getAsLong() + ttl;
+    }
+
+    private static Optional<Long> maxAge(HttpHeaders headers) {
+        return headers.allValues("Cache-Control").stream()
+                .flatMap(value -> Stream.of(value.split(",")))
+                .map(String::trim)
+                .filter(directive -> directive.toLowerCase().startsWith("max-age="))
+                .map(directive -> Try.of(() -> Long.parseLong(directive.substring("max-age=".length()))).getOrNull())
+                .filter(Objects::nonNull)
+                .findFirst();
+    }
+
+    private static boolean hasDirective(HttpHeaders headers, String name) {
+        return headers.allValues("Cache-Control").stream()
+                .flatMap(value -> Stream.of(value.split(",")))
+                .map(String::trim)
+                .anyMatch(name::equalsIgnoreCase);
+    }
+
+    private synchronized Cached<T> get(URI uri) {
+        return entries.get(uri);
+    }
+
+    private synchronized void put(URI uri, Cached<T> entry) {
+        entries.put(uri, entry);
+    }
+
+}
@@ -0,0 +1,150 @@
+package org.fundamentals.latency;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Long lived factory of HttpClients.
+ *
+ * A HttpClient owns a connection pool, a selector thread and an executor,
+ * so it has to be reused between requests to keep the connections alive.
+ * The factory maintains one client per upstream (scheme + authority)
+ * and one GET request template per endpoint. The templates advertise gzip / deflate,
+ * the bodies are inflated by Compression.decoding.
+ *
+ * Notes:
+ * - Upstreams without a explicit Config use the default one.
+ * - Executors supplied by the caller are not shut down by the factory.
+ */
+@Slf4j
+public class HttpClientFactory implements AutoCloseable {
+
+    @Data
+    @AllArgsConstructor
+    public static class Config {
+
+        private Duration connectTimeout;
+        private HttpClient.Version version;
+        private Executor executor;
+    }
+
+    static final Config DEFAULT_CONFIG = new Config(Duration.ofSeconds(10), HttpClient.Version.HTTP_2, null);
+
+    static final int MAX_REQUEST_TEMPLATES = 1024;
+
+    private static class Holder {
+        static final HttpClientFactory INSTANCE = new HttpClientFactory(DEFAULT_CONFIG);
+    }
+
+    public static HttpClientFactory getDefault() {
+        return Holder.INSTANCE;
+    }
+
+    private final Config defaultConfig;
+    private final Map<String, Config> upstreams = new ConcurrentHashMap<>();
+    private final Map<String, HttpClient> clients = new ConcurrentHashMap<>();
+    private final Map<URI, HttpRequest> requests = new ConcurrentHashMap<>();
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    public HttpClientFactory(Config defaultConfig) {
+        this.defaultConfig = Objects.requireNonNull(defaultConfig);
+    }
+
+    /**
+     * Register a specific configuration for an upstream, example: http://localhost:8090
+     * A client already built for that upstream is replaced on the next request.
+     */
+    public HttpClientFactory register(String upstream, Config config) {
+        String key = upstreamKey(URI.create(upstream));
+        upstreams.put(key, Objects.requireNonNull(config));
+        clients.remove(key);
+        return this;
+    }
+
+    public HttpClient client(URI uri) {
+        checkOpen();
+        return clients.computeIfAbsent(upstreamKey(uri), this::build);
+    }
+
+    public HttpRequest request(URI uri) {
+        checkOpen();
+        HttpRequest request = requests.get(uri);
+        if (Objects.nonNull(request)) {
+            return request;
+        }
+        request = builder(uri).build();
+        if (requests.size() < MAX_REQUEST_TEMPLATES) {
+            requests.putIfAbsent(uri, request);
+        }
+        return request;
+    }
+
+    /**
+     * GET request with a timeout, it is not cached as the timeout
+     * is usually the remaining budget of a Deadline.
+     */
+    public HttpRequest request(URI uri, Duration timeout) {
+        checkOpen();
+        return builder(uri).timeout(timeout).build();
+    }
+
+    private static HttpRequest.Builder builder(URI uri) {
+        return HttpRequest.newBuilder()
+                .GET()
+                .uri(uri)
+                .header("Accept-Encoding", Compression.ACCEPT_ENCODING);
+    }
+
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    /**
+     * Releases the clients. The JDK client frees its pool and selector
+     * once it is not referenced anymore.
+     */
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            LOGGER.debug("Closing {} HttpClients", clients.size());
+            clients.clear();
+            requests.clear();
+            upstreams.clear();
+        }
+    }
+
+    private HttpClient build(String upstream) {
+
+        Config config = upstreams.getOrDefault(upstream, defaultConfig);
+        LOGGER.debug("New HttpClient for upstream: {}", upstream);
+
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .connectTimeout(config.getConnectTimeout())
+                .version(config.getVersion());
+        if (Objects.nonNull(config.getExecutor())) {
+            builder.executor(config.getExecutor());
+        }
+        return builder.build();
+    }
+
+    private void checkOpen() {
+        if (closed.get()) {
+            throw new IllegalStateException("HttpClientFactory is closed");
+        }
+    }
+
+    static String upstreamKey(URI uri) {
+        return uri.getScheme() + "://" + uri.getAuthority();
+    }
+
+}
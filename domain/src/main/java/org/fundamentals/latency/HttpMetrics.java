@@ -0,0 +1,226 @@
+package org.fundamentals.latency;
+
+import io.vavr.control.Try;
+import java.net.URI;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.function.Supplier;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Per request timing of the HTTP calls, grouped by upstream host.
+ *
+ * - QUEUE: time waiting in the executor before the call starts.
+ * - CONNECT: connection setup, only for transports which report it (BlockingSocketTransport).
+ *   The JDK HttpClient does not expose it, so with it the connection is part of TIME_TO_FIRST_BYTE.
+ * - TIME_TO_FIRST_BYTE: from the send to the response headers.
+ * - BODY: from the headers to the last byte, without the decoding time.
+ * - DECODE: time spent by the body subscriber (UTF-8, Jackson...) while the body arrives.
+ *
+ * Every phase is a lock free LatencyHistogram with nanosecond resolution.
+ */
+public class HttpMetrics {
+
+    public enum Phase {
+        QUEUE,
+        CONNECT,
+        TIME_TO_FIRST_BYTE,
+        BODY,
+        DECODE
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Snapshot {
+
+        private long count;
+        private Duration mean;
+        private Duration p50;
+        private Duration p95;
+        private Duration p99;
+    }
+
+    static final String UNKNOWN_HOST = "unknown";
+
+    private static class Holder {
+        static final HttpMetrics INSTANCE = new HttpMetrics();
+    }
+
+    public static HttpMetrics getDefault() {
+        return Holder.INSTANCE;
+    }
+
+    private final Map<String, Map<Phase, LatencyHistogram>> hosts = new ConcurrentHashMap<>();
+
+    public void record(String host, Phase phase, long nanos) {
+        hosts.computeIfAbsent(host, key -> {
+            Map<Phase, LatencyHistogram> phases = new EnumMap<>(Phase.class);
+            for (Phase value : Phase.values()) {
+                phases.put(value, new LatencyHistogram());
+            }
+            return phases;
+        }).get(phase).record(nanos);
+    }
+
+    /**
+     * Wraps a BodyHandler to record TIME_TO_FIRST_BYTE, BODY and DECODE,
+     * it has to be created just before the request is sent.
+     */
+    public <T> HttpResponse.BodyHandler<T> timed(URI uri, HttpResponse.BodyHandler<T> handler) {
+
+        String host = host(uri);
+        long start = System.nanoTime();
+        return responseInfo -> {
+            long headers = System.nanoTime();
+            record(host, Phase.TIME_TO_FIRST_BYTE, headers - start);
+            return new TimedSubscriber<>(host, headers, handler.apply(responseInfo));
+        };
+    }
+
+    /**
+     * CompletableFuture.supplyAsync which records the time in the queue of the executor.
+     */
+    public <T> CompletableFuture<T> supplyAsync(String address, Supplier<T> supplier, Executor executor) {
+
+        String host = Try.of(() -> host(URI.create(address))).getOrElse(UNKNOWN_HOST);
+        long submitted = System.nanoTime();
+        return CompletableFuture.supplyAsync(() -> {
+            record(host, Phase.QUEUE, System.nanoTime() - submitted);
+            return supplier.get();
+        }, executor);
+    }
+
+    public Map<String, Map<Phase, Snapshot>> snapshot() {
+
+        Map<String, Map<Phase, Snapshot>> result = new TreeMap<>();
+        hosts.forEach((host, phases) -> result.put(host, snapshot(phases)));
+        return result;
+    }
+
+    /**
+     * Snapshot of the metrics, the histograms are replaced by empty ones.
+     */
+    public Map<String, Map<Phase, Snapshot>> snapshotAndReset() {
+
+        Map<String, Map<Phase, Snapshot>> result = new TreeMap<>();
+        hosts.keySet().forEach(host -> {
+            Map<Phase, LatencyHistogram> phases = hosts.remove(host);
+            if (Objects.nonNull(phases)) {
+                result.put(host, snapshot(phases));
+            }
+        });
+        return result;
+    }
+
+    public void reset() {
+        hosts.clear();
+    }
+
+    private static Map<Phase, Snapshot> snapshot(Map<Phase, LatencyHistogram> phases) {
+
+        Map<Phase, Snapshot> result = new EnumMap<>(Phase.class);
+        phases.forEach((phase, histogram) -> {
+            if (histogram.count() > 0) {
+                result.put(phase, new Snapshot(histogram.count(), histogram.mean(),
+                        histogram.percentile(0.50), histogram.percentile(0.95), histogram.percentile(0.99)));
+            }
+        });
+        return result;
+    }
+
+    static String host(URI uri) {
+        return Objects.isNull(uri.getHost())
+                ? UNKNOWN_HOST
+                : uri.getPort() == -1 ? uri.getHost() : uri.getHost() + ":" + uri.getPort();
+    }
+
+    /**
+     * The time inside onNext / onComplete of the delegate is decoding,
+     * the rest until the last byte is transfer. A body which completes inside
+     * onComplete is released after the phases are recorded.
+     */
+    private class TimedSubscriber<T> implements HttpResponse.BodySubscriber<T> {
+
+        private final String host;
+        private final long headers;
+        private final HttpResponse.BodySubscriber<T> delegate;
+        private final CompletableFuture<T> body = new CompletableFuture<>();
+        //Written by the signals of the body, which are serial, and read where the delegate completes its body
+        private volatile long decode = 0;
+        private volatile boolean completing = false;
+
+        TimedSubscriber(String host, long headers, HttpResponse.BodySubscriber<T> delegate) {
+            this.host = host;
+            this.headers = headers;
+            this.delegate = delegate;
+            delegate.getBody().whenComplete((value, ex) -> {
+                if (!completing) {
+                    release();
+                }
+            });
+        }
+
+        @Override
+        public CompletionStage<T> getBody() {
+            return body;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            delegate.onSubscribe(subscription);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> item) {
+            long start = System.nanoTime();
+            try {
+                delegate.onNext(item);
+            } finally {
+                decode += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            delegate.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            long start = System.nanoTime();
+            completing = true;
+            try {
+                delegate.onComplete();
+            } finally {
+                long end = System.nanoTime();
+                decode += end - start;
+                record(host, Phase.DECODE, decode);
+                record(host, Phase.BODY, Math.max(0, end - headers - decode));
+                release();
+            }
+        }
+
+        private void release() {
+            delegate.getBody().whenComplete((value, ex) -> {
+                if (Objects.isNull(ex)) {
+                    body.complete(value);
+                } else {
+                    body.completeExceptionally(ex);
+                }
+            });
+        }
+    }
+
+}
@@ -0,0 +1,31 @@
+package org.fundamentals.latency;
+
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Transport on the HttpClients of a HttpClientFactory.
+ *
+ * send is not delegated to HttpClient.send: with sendAsync + get, an interrupt
+ * of the caller cancels the exchange instead of leaving it running.
+ */
+public class JdkTransport implements Transport {
+
+    static class Holder {
+        static final JdkTransport INSTANCE = new JdkTransport(HttpClientFactory.getDefault());
+    }
+
+    private final HttpClientFactory clients;
+
+    public JdkTransport(HttpClientFactory clients) {
+        this.clients = Objects.requireNonNull(clients);
+    }
+
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+        return clients.client(request.uri()).sendAsync(request, handler);
+    }
+
+}
@@ -0,0 +1,258 @@
+package org.fundamentals.latency;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Streaming decoding of JSON arrays of names, example: ["Zeus", "Hera"]
+ *
+ * The payload is read with the token level API of Jackson,
+ * so the body is never buffered in a String and a List is not
+ * built unless the caller asks for it.
+ *
+ * - subscriber: push model, bytes are fed to the non blocking parser
+ *   as they arrive and every name is emitted to a Consumer.
+ * - ofStream: pull model, names are read lazily from the body InputStream.
+ */
+@Slf4j
+public class JsonNames {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private JsonNames() {}
+
+    /**
+     * BodySubscriber which emits every name to onName and completes with the number of names.
+     */
+    public static HttpResponse.BodySubscriber<Long> subscriber(Consumer<String> onName) {
+        return new NamesSubscriber(onName);
+    }
+
+    public static HttpResponse.BodyHandler<Long> ofNames(Consumer<String> onName) {
+        return responseInfo -> subscriber(onName);
+    }
+
+    public static HttpResponse.BodyHandler<List<String>> ofList() {
+        return responseInfo -> {
+            List<String> names = new ArrayList<>();
+            return HttpResponse.BodySubscribers.mapping(subscriber(names::add), count -> names);
+        };
+    }
+
+    public static HttpResponse.BodyHandler<Stream<String>> ofStream() {
+        return responseInfo -> HttpResponse.BodySubscribers.mapping(
+                HttpResponse.BodySubscribers.ofInputStream(), JsonNames::parse);
+    }
+
+    /**
+     * Lazy Stream of names. The parser is created on the first read,
+     * so the InputStream is not touched in the thread building the Stream.
+     */
+    public static Stream<String> parse(InputStream inputStream) {
+
+        PullSpliterator spliterator = new PullSpliterator(() -> JSON_FACTORY.createParser(inputStream));
+        return StreamSupport.stream(spliterator, false)
+                .onClose(spliterator::close);
+    }
+
+    public static Stream<String> parse(String content) {
+
+        PullSpliterator spliterator = new PullSpliterator(() -> JSON_FACTORY.createParser(content));
+        return StreamSupport.stream(spliterator, false)
+                .onClose(spliterator::close);
+    }
+
+    @FunctionalInterface
+    private interface ParserSupplier {
+        JsonParser get() throws IOException;
+    }
+
+    /**
+     * Tracks the position inside the array and decides what to do with every token.
+     */
+    private static class ArrayReader {
+
+        private boolean started = false;
+        private boolean finished = false;
+
+        /**
+         * @return the name represented by the token or null if the token is structural
+         */
+        String read(JsonParser parser, JsonToken token) throws IOException {
+
+            if (!started) {
+                if (token != JsonToken.START_ARRAY) {
+                    throw new JsonParseException(parser, "Expected a JSON array but found: " + token);
+                }
+                started = true;
+                return null;
+            }
+            if (finished) {
+                throw new JsonParseException(parser, "Unexpected content after the JSON array: " + token);
+            }
+            switch (token) {
+                case END_ARRAY:
+                    finished = true;
+                    return null;
+                case VALUE_STRING:
+                case VALUE_NUMBER_INT:
+                case VALUE_NUMBER_FLOAT:
+                case VALUE_TRUE:
+                case VALUE_FALSE:
+                    return parser.getText();
+                default:
+                    throw new JsonParseException(parser, "Expected a name but found: " + token);
+            }
+        }
+
+        void checkFinished(JsonParser parser) throws IOException {
+            if (!finished) {
+                throw new JsonParseException(parser, "Unexpected end-of-input: expected close marker for Array");
+            }
+        }
+    }
+
+    private static class PullSpliterator extends Spliterators.AbstractSpliterator<String> {
+
+        private final ParserSupplier parserSupplier;
+        private final ArrayReader reader = new ArrayReader();
+        private JsonParser parser;
+
+        PullSpliterator(ParserSupplier parserSupplier) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.parserSupplier = parserSupplier;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super String> action) {
+            try {
+                if (Objects.isNull(parser)) {
+                    parser = parserSupplier.get();
+                }
+                JsonToken token;
+                while ((token = parser.nextToken()) != null) {
+                    String name = reader.read(parser, token);
+                    if (Objects.nonNull(name)) {
+                        action.accept(name);
+                        return true;
+                    }
+                }
+                reader.checkFinished(parser);
+                close();
+                return false;
+            } catch (IOException ex) {
+                close();
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        void close() {
+            if (Objects.nonNull(parser)) {
+                try {
+                    parser.close();
+                } catch (IOException ex) {
+                    LOGGER.warn(ex.getLocalizedMessage(), ex);
+                }
+            }
+        }
+    }
+
+    private static class NamesSubscriber implements HttpResponse.BodySubscriber<Long> {
+
+        private final Consumer<String> onName;
+        private final CompletableFuture<Long> result = new CompletableFuture<>();
+        private final ArrayReader reader = new ArrayReader();
+        private final JsonParser parser;
+        private final ByteArrayFeeder feeder;
+        private Flow.Subscription subscription;
+        private long count = 0;
+
+        NamesSubscriber(Consumer<String> onName) {
+            this.onName = onName;
+            try {
+                this.parser = JSON_FACTORY.createNonBlockingByteArrayParser();
+                this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        @Override
+        public CompletionStage<Long> getBody() {
+            return result;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> items) {
+            try {
+                for (ByteBuffer item : items) {
+                    byte[] bytes = new byte[item.remaining()];
+                    item.get(bytes);
+                    feeder.feedInput(bytes, 0, bytes.length);
+                    drain();
+                }
+                subscription.request(1);
+            } catch (IOException | RuntimeException ex) {
+                subscription.cancel();
+                result.completeExceptionally(ex);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            result.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            try {
+                feeder.endOfInput();
+                drain();
+                reader.checkFinished(parser);
+                result.complete(count);
+            } catch (IOException | RuntimeException ex) {
+                result.completeExceptionally(ex);
+            }
+        }
+
+        private void drain() throws IOException {
+            JsonToken token;
+            while (!result.isDone()
+                    && (token = parser.nextToken()) != null
+                    && token != JsonToken.NOT_AVAILABLE) {
+                String name = reader.read(parser, token);
+                if (Objects.nonNull(name)) {
+                    count++;
+                    onName.accept(name);
+                }
+            }
+        }
+    }
+
+}
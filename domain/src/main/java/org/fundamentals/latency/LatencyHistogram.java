@@ -0,0 +1,114 @@
+package org.fundamentals.latency;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free histogram of latencies.
+ *
+ * Values are stored in nanoseconds in log-linear buckets: every power of two
+ * is split in 16 sub buckets, so a percentile is reported with an error lower
+ * than 1/16 (~6%) from 1 nanosecond to ~13 days. Recording is a single
+ * increment on an AtomicLongArray, so it can be called from the hot path.
+ */
+public class LatencyHistogram {
+
+    static final int SUB_BUCKET_BITS = 4;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int MAX_EXPONENT = 50;
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        buckets.incrementAndGet(index(value));
+        count.increment();
+        sum.add(value);
+    }
+
+    public void record(Duration duration) {
+        record(duration.toNanos());
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public Duration mean() {
+        long samples = count();
+        return samples == 0 ? Duration.ZERO : Duration.ofNanos(sum.sum() / samples);
+    }
+
+    /**
+     * Upper bound of the bucket holding the percentile, example: percentile(0.99)
+     */
+    public Duration percentile(double percentile) {
+
+        long samples = count();
+        if (samples == 0) {
+            return Duration.ZERO;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile * samples));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Duration.ofNanos(upperBound(i));
+            }
+        }
+        return Duration.ofNanos(upperBound(BUCKETS - 1));
+    }
+
+    /**
+     * Not atomic with the concurrent recordings, a few samples can be lost.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+    }
+
+    /**
+     * Halves every bucket (a single sample is dropped), so the old samples weigh less than the new ones.
+     * Not atomic with the concurrent recordings, like reset.
+     */
+    public void decay() {
+        long remaining = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            remaining += buckets.updateAndGet(i, value -> value / 2);
+        }
+        long samples = count.sumThenReset();
+        long total = sum.sumThenReset();
+        count.add(remaining);
+        sum.add(samples == 0 ? 0 : (long) ((double) total / samples * remaining));
+    }
+
+    static int index(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int subBucket = (int) ((nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (1L << exponent) + (subBucket + 1) * width - 1;
+    }
+
+}
@@ -0,0 +1,225 @@
+package org.fundamentals.latency;
+
+import io.vavr.control.Option;
+import java.net.URL;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Picks a replica for every request.
+ *
+ * - RANDOM: uniform choice.
+ * - ROUND_ROBIN: one replica after the other.
+ * - LEAST_OUTSTANDING: the replica with less requests in flight.
+ * - POWER_OF_TWO: the less loaded of two random replicas, close to LEAST_OUTSTANDING
+ *   without every request looking at every replica.
+ * - EWMA: random choice weighted by 1 / (latency x (outstanding + 1)), the latency is
+ *   an exponentially weighted moving average, so a slow replica still gets a few requests
+ *   and its average follows it when it recovers.
+ *
+ * With a ReplicaHealth, every strategy only picks among the replicas which are not ejected,
+ * and the ones in slow start are picked less often.
+ *
+ * The replicas are a fixed list and the state is kept in atomic arrays, the hot path takes no lock.
+ */
+public class LoadBalancer {
+
+    public enum Strategy {
+        RANDOM,
+        ROUND_ROBIN,
+        LEAST_OUTSTANDING,
+        POWER_OF_TWO,
+        EWMA
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Stats {
+
+        private URL replica;
+        private int outstanding;
+        private Duration latency;
+    }
+
+    //Weight of a new latency in the moving average
+    static final double EWMA_WEIGHT = 0.3;
+
+    private final List<URL> replicas;
+    private final Strategy strategy;
+    private final AtomicLong next = new AtomicLong();
+    private final AtomicIntegerArray outstanding;
+    private final AtomicLongArray latencies;
+    private final Option<ReplicaHealth> health;
+    private final double[] healthy;
+
+    public LoadBalancer(List<URL> replicas, Strategy strategy) {
+        this(replicas, strategy, Option.none());
+    }
+
+    public LoadBalancer(ReplicaHealth health, Strategy strategy) {
+        this(health.replicas(), strategy, Option.some(health));
+    }
+
+    private LoadBalancer(List<URL> replicas, Strategy strategy, Option<ReplicaHealth> health) {
+        if (replicas.isEmpty()) {
+            throw new IllegalArgumentException("No replicas");
+        }
+        this.replicas = List.copyOf(replicas);
+        this.strategy = Objects.requireNonNull(strategy);
+        this.outstanding = new AtomicIntegerArray(replicas.size());
+        this.latencies = new AtomicLongArray(replicas.size());
+        this.health = health;
+        this.healthy = new double[replicas.size()];
+        Arrays.fill(healthy, 1);
+    }
+
+    public List<URL> replicas() {
+        return replicas;
+    }
+
+    /**
+     * Sends the call to the chosen replica, its outstanding requests and latency are updated.
+     */
+    public <T> CompletableFuture<T> execute(Function<URL, CompletableFuture<T>> call) {
+        return execute(call, value -> false);
+    }
+
+    /**
+     * Like execute, the values which match failed count as errors for the health of the replica,
+     * useful when the call replaces its errors with a fallback.
+     */
+    public <T> CompletableFuture<T> execute(Function<URL, CompletableFuture<T>> call, Predicate<? super T> failed) {
+
+        int index = choose();
+        outstanding.incrementAndGet(index);
+        long start = System.nanoTime();
+        CompletableFuture<T> future;
+        try {
+            future = call.apply(replicas.get(index));
+        } catch (RuntimeException ex) {
+            outstanding.decrementAndGet(index);
+            health.forEach(pool -> pool.record(index, 0, true));
+            return CompletableFuture.failedFuture(ex);
+        }
+        return future.whenComplete((value, ex) -> {
+            long nanos = System.nanoTime() - start;
+            outstanding.decrementAndGet(index);
+            record(index, nanos);
+            health.forEach(pool -> pool.record(index, nanos, Objects.nonNull(ex) || failed.test(value)));
+        });
+    }
+
+    int choose() {
+
+        int size = replicas.size();
+        if (size == 1) {
+            return 0;
+        }
+        double[] weights = health.map(ReplicaHealth::weights).getOrElse(healthy);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        switch (strategy) {
+            case ROUND_ROBIN:
+                //A replica in slow start keeps its turn with the probability of its weight
+                for (int i = 0; i < size; i++) {
+                    int candidate = (int) (next.getAndIncrement() % size);
+                    if (weights[candidate] >= 1 || random.nextDouble() < weights[candidate]) {
+                        return candidate;
+                    }
+                }
+                return pick(weights, -1, random);
+            case LEAST_OUTSTANDING:
+                //Ties start at a random replica, so idle replicas share the load
+                int offset = random.nextInt(size);
+                int best = -1;
+                for (int i = 0; i < size; i++) {
+                    int candidate = (offset + i) % size;
+                    if (weights[candidate] > 0 && (best < 0 || load(candidate, weights) < load(best, weights))) {
+                        best = candidate;
+                    }
+                }
+                return best;
+            case POWER_OF_TWO:
+                int first = pick(weights, -1, random);
+                int second = pick(weights, first, random);
+                return load(second, weights) < load(first, weights) ? second : first;
+            case EWMA:
+                return weighted(weights, random);
+            default:
+                return pick(weights, -1, random);
+        }
+    }
+
+    //Outstanding requests scaled up for the replicas in slow start
+    private double load(int index, double[] weights) {
+        return (outstanding.get(index) + 1) / weights[index];
+    }
+
+    //Random choice proportional to the weights, the excluded replica is only returned when there is no other
+    private static int pick(double[] weights, int excluded, ThreadLocalRandom random) {
+
+        double total = 0;
+        for (int i = 0; i < weights.length; i++) {
+            total += i == excluded ? 0 : weights[i];
+        }
+        if (total <= 0) {
+            return excluded < 0 ? random.nextInt(weights.length) : excluded;
+        }
+        double target = random.nextDouble(total);
+        int last = excluded;
+        for (int i = 0; i < weights.length; i++) {
+            if (i == excluded || weights[i] <= 0) {
+                continue;
+            }
+            last = i;
+            target -= weights[i];
+            if (target < 0) {
+                return i;
+            }
+        }
+        return last;
+    }
+
+    //A replica without latencies has the weight of the fastest one, so it is tried
+    private int weighted(double[] weights, ThreadLocalRandom random) {
+
+        int size = replicas.size();
+        long fastest = IntStream.range(0, size)
+                .mapToLong(latencies::get)
+                .filter(latency -> latency > 0)
+                .min()
+                .orElse(1);
+        double[] scores = new double[size];
+        for (int i = 0; i < size; i++) {
+            long latency = latencies.get(i) > 0 ? latencies.get(i) : fastest;
+            scores[i] = weights[i] / ((double) latency * (outstanding.get(i) + 1));
+        }
+        return pick(scores, -1, random);
+    }
+
+    void record(int index, long nanos) {
+        long sample = Math.max(1, nanos);
+        latencies.getAndUpdate(index, average -> average == 0
+                ? sample
+                : (long) (average + (sample - average) * EWMA_WEIGHT));
+    }
+
+    public List<Stats> stats() {
+        return IntStream.range(0, replicas.size())
+                .mapToObj(i -> new Stats(replicas.get(i), outstanding.get(i), Duration.ofNanos(latencies.get(i))))
+                .collect(Collectors.toUnmodifiableList());
+    }
+
+}
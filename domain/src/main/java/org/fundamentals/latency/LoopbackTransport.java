@@ -0,0 +1,124 @@
+package org.fundamentals.latency;
+
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * In process transport which answers from fixtures in memory.
+ *
+ * Every fixture has a latency Supplier (fixed, random...) which is applied
+ * before the response headers, without blocking any thread. The body is
+ * delivered in chunks with the demand of the subscriber. Unknown URIs are
+ * answered with a 404.
+ */
+public class LoopbackTransport implements Transport {
+
+    @Data
+    @AllArgsConstructor
+    public static class Fixture {
+
+        private int status;
+        private Map<String, List<String>> headers;
+        private byte[] body;
+        private Supplier<Duration> latency;
+
+        public Fixture withLatency(Supplier<Duration> latency) {
+            return new Fixture(status, headers, body, latency);
+        }
+    }
+
+    public static Fixture ok(String contentType, byte[] body) {
+        return new Fixture(200, Map.of("Content-Type", List.of(contentType)), body, () -> Duration.ZERO);
+    }
+
+    static final Fixture NOT_FOUND = new Fixture(404, Map.of(), new byte[0], () -> Duration.ZERO);
+
+    static final int CHUNK_SIZE = 16 * 1024;
+
+    private final Map<URI, Fixture> fixtures = new ConcurrentHashMap<>();
+    private final LongAdder requests = new LongAdder();
+
+    public LoopbackTransport respond(String uri, Fixture fixture) {
+        fixtures.put(URI.create(uri), Objects.requireNonNull(fixture));
+        return this;
+    }
+
+    public long requests() {
+        return requests.sum();
+    }
+
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+
+        requests.increment();
+        Fixture fixture = fixtures.getOrDefault(request.uri(), NOT_FOUND);
+        CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+
+        long latency = fixture.getLatency().get().toNanos();
+        Executor executor = latency > 0
+                ? CompletableFuture.delayedExecutor(latency, TimeUnit.NANOSECONDS)
+                : Runnable::run;
+        executor.execute(() -> {
+            if (result.isDone()) {
+                return;
+            }
+            try {
+                respond(request, fixture, handler, result);
+            } catch (RuntimeException ex) {
+                result.completeExceptionally(ex);
+            }
+        });
+        return result;
+    }
+
+    private static <T> void respond(HttpRequest request, Fixture fixture, HttpResponse.BodyHandler<T> handler,
+                                    CompletableFuture<HttpResponse<T>> result) {
+
+        Map<String, List<String>> headers = new HashMap<>(fixture.getHeaders());
+        headers.put("Content-Length", List.of(String.valueOf(fixture.getBody().length)));
+        TransportResponse<Void> info = new TransportResponse<>(request, fixture.getStatus(),
+                HttpHeaders.of(headers, (name, value) -> true), null);
+
+        HttpResponse.BodySubscriber<T> subscriber = handler.apply(info);
+        BodyEmitter emitter = new BodyEmitter(subscriber);
+        result.whenComplete((response, ex) -> {
+            if (result.isCancelled()) {
+                emitter.cancel();
+            }
+        });
+        subscriber.getBody().whenComplete((value, ex) -> {
+            if (Objects.isNull(ex)) {
+                result.complete(info.withBody(value));
+            } else {
+                result.completeExceptionally(ex);
+            }
+        });
+        emitter.start();
+
+        if (!"HEAD".equals(request.method())) {
+            byte[] content = fixture.getBody();
+            for (int offset = 0; offset < content.length; offset += CHUNK_SIZE) {
+                int length = Math.min(CHUNK_SIZE, content.length - offset);
+                emitter.next(List.of(ByteBuffer.wrap(content, offset, length).asReadOnlyBuffer()));
+            }
+        }
+        emitter.complete();
+    }
+
+}
@@ -0,0 +1,33 @@
+package org.fundamentals.latency;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Instances kept in memory per key, example: a circuit breaker per upstream.
+ *
+ * The lookup of an existing key is a ConcurrentHashMap.get, it takes no lock.
+ * Only the first lookup of a key goes through computeIfAbsent, which locks that key alone,
+ * so the factory runs once per key and every thread sees a fully built instance.
+ */
+public class Registry<T> {
+
+    private final Function<String, T> factory;
+    private final Map<String, T> instances = new ConcurrentHashMap<>();
+
+    public Registry(Function<String, T> factory) {
+        this.factory = Objects.requireNonNull(factory);
+    }
+
+    public T get(String key) {
+        T instance = instances.get(key);
+        return Objects.nonNull(instance) ? instance : instances.computeIfAbsent(key, factory);
+    }
+
+    public Map<String, T> instances() {
+        return Map.copyOf(instances);
+    }
+
+}
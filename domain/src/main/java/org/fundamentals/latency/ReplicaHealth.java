@@ -0,0 +1,355 @@
+package org.fundamentals.latency;
+
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import java.net.URL;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Health of the replicas of a pool.
+ *
+ * Passive checks: a replica is ejected after consecutiveFailures failures in a row,
+ * or when its average latency is outlierRatio times the median of the others.
+ * The ejection lasts baseEjection, doubled on every new ejection up to maxEjection,
+ * and no more than maxEjectedRatio of the replicas are ejected at the same time.
+ *
+ * Active checks: with a probe, an ejected replica only comes back when the probe succeeds,
+ * and with a probeInterval every replica is probed in the background.
+ *
+ * A replica which comes back is in slow start: its weight grows from 0.1 to 1 during slowStart,
+ * so it is not flooded with the traffic of the whole pool.
+ */
+@Slf4j
+public class ReplicaHealth implements AutoCloseable {
+
+    public enum State {
+        HEALTHY,
+        EJECTED,
+        PROBING,
+        SLOW_START
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Config {
+
+        private int consecutiveFailures;
+        private double outlierRatio;
+        private int outlierMinSamples;
+        private double maxEjectedRatio;
+        private Duration baseEjection;
+        private Duration maxEjection;
+        private Duration slowStart;
+        private Duration probeInterval;
+        private Duration probeTimeout;
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Stats {
+
+        private URL replica;
+        private State state;
+        private int consecutiveFailures;
+        private int ejections;
+        private Duration latency;
+        private double weight;
+    }
+
+    //Without background probes, an ejected replica is probed when its ejection ends
+    static final Config DEFAULT_CONFIG = new Config(5, 3.0, 10, 0.5,
+            Duration.ofSeconds(1), Duration.ofSeconds(30), Duration.ofSeconds(5), Duration.ZERO, Duration.ofSeconds(1));
+
+    //Weight of a new latency in the moving average
+    static final double EWMA_WEIGHT = 0.3;
+    //Weight of a replica which has just come back
+    static final double MIN_WEIGHT = 0.1;
+
+    private static class Holder {
+        static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-health");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static class Replica {
+
+        final URL url;
+        final AtomicInteger failures = new AtomicInteger();
+        final AtomicLong latency = new AtomicLong();
+        final AtomicLong samples = new AtomicLong();
+        //The transitions are guarded by the replica
+        volatile State state = State.HEALTHY;
+        volatile long since = System.nanoTime();
+        volatile long until;
+        int ejections;
+
+        Replica(URL url) {
+            this.url = url;
+        }
+    }
+
+    private final Config config;
+    private final List<URL> urls;
+    private final List<Replica> replicas;
+    private final Option<Function<URL, ? extends CompletableFuture<?>>> probe;
+    private final Option<ScheduledFuture<?>> probing;
+    private volatile boolean closed;
+
+    /**
+     * Passive checks only, an ejected replica comes back when its ejection ends.
+     */
+    public ReplicaHealth(List<URL> replicas, Config config) {
+        this(replicas, config, Option.none());
+    }
+
+    public ReplicaHealth(List<URL> replicas, Config config, Function<URL, ? extends CompletableFuture<?>> probe) {
+        this(replicas, config, Option.some(probe));
+    }
+
+    private ReplicaHealth(List<URL> replicas, Config config, Option<Function<URL, ? extends CompletableFuture<?>>> probe) {
+        if (replicas.isEmpty()) {
+            throw new IllegalArgumentException("No replicas");
+        }
+        this.config = Objects.requireNonNull(config);
+        this.urls = List.copyOf(replicas);
+        this.replicas = urls.stream().map(Replica::new).collect(Collectors.toUnmodifiableList());
+        this.probe = probe;
+        long interval = config.getProbeInterval().toNanos();
+        this.probing = probe.isDefined() && interval > 0
+                ? Option.some(Holder.SCHEDULER.scheduleWithFixedDelay(this::probeAll, interval, interval, TimeUnit.NANOSECONDS))
+                : Option.none();
+    }
+
+    public List<URL> replicas() {
+        return urls;
+    }
+
+    /**
+     * Share of the traffic for every replica: 0 when ejected, less than 1 in slow start.
+     * When every replica is ejected all of them get traffic, a guess is better than no answer.
+     */
+    public double[] weights() {
+
+        long now = System.nanoTime();
+        double[] weights = new double[replicas.size()];
+        double total = 0;
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = weight(replicas.get(i), now);
+            total += weights[i];
+        }
+        if (total == 0) {
+            Arrays.fill(weights, 1);
+        }
+        return weights;
+    }
+
+    /**
+     * Outcome of a request: the late answers of an ejected replica are ignored.
+     */
+    public void record(int index, long nanos, boolean failed) {
+
+        Replica replica = replicas.get(index);
+        if (replica.state == State.EJECTED || replica.state == State.PROBING) {
+            return;
+        }
+        if (failed) {
+            if (replica.failures.incrementAndGet() >= config.getConsecutiveFailures()) {
+                eject(replica, "consecutive failures");
+            }
+            return;
+        }
+        replica.failures.set(0);
+        long sample = Math.max(1, nanos);
+        replica.latency.getAndUpdate(average -> average == 0
+                ? sample
+                : (long) (average + (sample - average) * EWMA_WEIGHT));
+        if (replica.samples.incrementAndGet() >= config.getOutlierMinSamples() && outlier(replica)) {
+            eject(replica, "latency outlier");
+        }
+    }
+
+    public List<Stats> stats() {
+        long now = System.nanoTime();
+        return replicas.stream()
+                .map(replica -> {
+                    double weight = weight(replica, now);
+                    return new Stats(replica.url, replica.state, replica.failures.get(), replica.ejections,
+                            Duration.ofNanos(replica.latency.get()), weight);
+                })
+                .collect(Collectors.toUnmodifiableList());
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        probing.forEach(task -> task.cancel(false));
+    }
+
+    //The transitions driven by the clock are done when the weight is read
+    private double weight(Replica replica, long now) {
+
+        switch (replica.state) {
+            case HEALTHY:
+                return 1;
+            case EJECTED:
+                if (probe.isEmpty() && now - replica.until >= 0) {
+                    synchronized (replica) {
+                        if (replica.state == State.EJECTED) {
+                            admit(replica, now);
+                        }
+                    }
+                    return MIN_WEIGHT;
+                }
+                return 0;
+            case SLOW_START:
+                double elapsed = (double) (now - replica.since) / Math.max(1, config.getSlowStart().toNanos());
+                if (elapsed >= 1) {
+                    synchronized (replica) {
+                        if (replica.state == State.SLOW_START) {
+                            replica.state = State.HEALTHY;
+                            replica.since = now;
+                        }
+                    }
+                    return 1;
+                }
+                return Math.max(MIN_WEIGHT, elapsed);
+            default:
+                return 0;
+        }
+    }
+
+    //Compared with the median of the other replicas with enough samples
+    private boolean outlier(Replica replica) {
+
+        long[] others = replicas.stream()
+                .filter(other -> other != replica)
+                .filter(other -> other.state != State.EJECTED && other.state != State.PROBING)
+                .filter(other -> other.samples.get() >= config.getOutlierMinSamples())
+                .mapToLong(other -> other.latency.get())
+                .sorted()
+                .toArray();
+        if (others.length == 0) {
+            return false;
+        }
+        long median = others[others.length / 2];
+        return replica.latency.get() > median * config.getOutlierRatio();
+    }
+
+    private void eject(Replica replica, String reason) {
+
+        long now = System.nanoTime();
+        Duration ejection;
+        synchronized (this) {
+            long ejected = replicas.stream()
+                    .filter(other -> other.state == State.EJECTED || other.state == State.PROBING)
+                    .count();
+            if (ejected + 1 > Math.max(1, (int) (config.getMaxEjectedRatio() * replicas.size()))) {
+                return;
+            }
+            synchronized (replica) {
+                if (replica.state == State.EJECTED || replica.state == State.PROBING) {
+                    return;
+                }
+                //A replica healthy for longer than the maximum ejection starts again from the base ejection
+                if (replica.state == State.HEALTHY && now - replica.since > config.getMaxEjection().toNanos()) {
+                    replica.ejections = 0;
+                }
+                ejection = ejection(replica);
+                replica.state = State.EJECTED;
+                replica.since = now;
+                replica.until = now + ejection.toNanos();
+            }
+        }
+        LOGGER.warn("Replica {} ejected for {}: {}", replica.url, ejection, reason);
+        probe.forEach(check -> schedule(replica, ejection));
+    }
+
+    //Guarded by the replica
+    private Duration ejection(Replica replica) {
+        Duration ejection = config.getBaseEjection().multipliedBy(1L << Math.min(replica.ejections, 20));
+        replica.ejections++;
+        return ejection.compareTo(config.getMaxEjection()) > 0 ? config.getMaxEjection() : ejection;
+    }
+
+    //Guarded by the replica
+    private void admit(Replica replica, long now) {
+        replica.state = State.SLOW_START;
+        replica.since = now;
+        replica.failures.set(0);
+        replica.latency.set(0);
+        replica.samples.set(0);
+        LOGGER.info("Replica {} back in slow start", replica.url);
+    }
+
+    private void schedule(Replica replica, Duration delay) {
+        if (!closed) {
+            Holder.SCHEDULER.schedule(() -> recover(replica), delay.toNanos(), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    //Only the probe brings back the replica, a failed probe doubles the ejection
+    private void recover(Replica replica) {
+
+        if (closed) {
+            return;
+        }
+        synchronized (replica) {
+            replica.state = State.PROBING;
+        }
+        check(replica).whenComplete((value, ex) -> {
+            Option<Duration> ejection;
+            synchronized (replica) {
+                if (Objects.isNull(ex)) {
+                    admit(replica, System.nanoTime());
+                    ejection = Option.none();
+                } else {
+                    ejection = Option.some(ejection(replica));
+                    replica.state = State.EJECTED;
+                    replica.until = System.nanoTime() + ejection.get().toNanos();
+                }
+            }
+            ejection.forEach(delay -> {
+                LOGGER.warn("Replica {} ejected for {}: failed probe", replica.url, delay);
+                schedule(replica, delay);
+            });
+        });
+    }
+
+    //Background probes count as requests, their latency is not compared with the real traffic
+    private void probeAll() {
+        IntStream.range(0, replicas.size())
+                .filter(i -> replicas.get(i).state == State.HEALTHY || replicas.get(i).state == State.SLOW_START)
+                .forEach(i -> check(replicas.get(i)).whenComplete((value, ex) -> {
+                    if (Objects.isNull(ex)) {
+                        replicas.get(i).failures.set(0);
+                    } else {
+                        record(i, 0, true);
+                    }
+                }));
+    }
+
+    private CompletableFuture<?> check(Replica replica) {
+        return Try.<CompletableFuture<?>>of(() -> probe.get().apply(replica.url).orTimeout(config.getProbeTimeout().toNanos(), TimeUnit.NANOSECONDS))
+                .recover(ex -> CompletableFuture.failedFuture(ex))
+                .get();
+    }
+
+}
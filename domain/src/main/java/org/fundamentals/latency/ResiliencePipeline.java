@@ -0,0 +1,230 @@
+package org.fundamentals.latency;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RequestNotPermitted;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Resilience patterns of an upstream composed once.
+ *
+ * The stages are applied always in the same order, from the caller to the upstream:
+ * fallback, retry, circuit breaker, rate limiter, bulkhead, timeout.
+ * So every attempt of the retry goes through the circuit breaker, a rejected call
+ * does not take a permit of the rate limiter, and the timeout releases the bulkhead.
+ * The retry skips the rejections of the inner stages, they would only spend its budget.
+ *
+ * The pipeline is built once per upstream and the decorated callables are built once
+ * per call site (decorate), a request only runs the stages.
+ *
+ * The Supplier path runs the call in the caller thread, the timeout cannot interrupt it
+ * and the retries run in the thread of CompletableFuture.delayedExecutor.
+ * A blocking call should take the rate limiter with an executor.
+ */
+public class ResiliencePipeline<T> {
+
+    private final String name;
+    private final List<UnaryOperator<Supplier<CompletableFuture<T>>>> stages;
+
+    private ResiliencePipeline(String name, List<UnaryOperator<Supplier<CompletableFuture<T>>>> stages) {
+        this.name = name;
+        this.stages = List.copyOf(stages);
+    }
+
+    public static <T> Builder<T> builder(String name) {
+        return new Builder<>(name);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * The call with every stage, to be kept and reused by the caller.
+     */
+    public Supplier<CompletableFuture<T>> decorate(Supplier<CompletableFuture<T>> call) {
+        Supplier<CompletableFuture<T>> decorated = Objects.requireNonNull(call);
+        for (UnaryOperator<Supplier<CompletableFuture<T>>> stage : stages) {
+            decorated = stage.apply(decorated);
+        }
+        return decorated;
+    }
+
+    public Supplier<CompletionStage<T>> decorateCompletionStage(Supplier<? extends CompletionStage<T>> call) {
+        Supplier<CompletableFuture<T>> decorated = decorate(() -> call.get().toCompletableFuture());
+        return decorated::get;
+    }
+
+    /**
+     * Blocking version of decorate, the errors are thrown without the CompletionException.
+     */
+    public Supplier<T> decorateSupplier(Supplier<T> call) {
+        Supplier<CompletableFuture<T>> decorated = decorate(() -> Try.of(call::get)
+                .map(CompletableFuture::completedFuture)
+                .recover(CompletableFuture::failedFuture)
+                .get());
+        return () -> {
+            try {
+                return decorated.get().join();
+            } catch (CompletionException ex) {
+                throw ex.getCause() instanceof RuntimeException
+                        ? (RuntimeException) ex.getCause()
+                        : ex;
+            }
+        };
+    }
+
+    //The stages reject a call before it reaches the upstream, a retry only spends the budget
+    static boolean retryable(Throwable ex) {
+        return !(ex instanceof CallNotPermittedException
+                || ex instanceof RequestNotPermitted
+                || ex instanceof BulkheadFullException
+                || ex instanceof RejectedExecutionException);
+    }
+
+    //Runs the stage with a future which failed while it was created
+    private static <T> CompletableFuture<T> safely(Supplier<? extends CompletionStage<T>> call) {
+        return Try.of(() -> call.get().toCompletableFuture())
+                .recover(CompletableFuture::failedFuture)
+                .get();
+    }
+
+    public static class Builder<T> {
+
+        private final String name;
+        private Option<UnaryOperator<Supplier<CompletableFuture<T>>>> timeout = Option.none();
+        private Option<Bulkhead> bulkhead = Option.none();
+        private Option<UnaryOperator<Supplier<CompletableFuture<T>>>> rateLimiter = Option.none();
+        private Option<UnaryOperator<Supplier<CompletableFuture<T>>>> circuitBreaker = Option.none();
+        private Option<RetryPolicy> retry = Option.none();
+        private Predicate<? super Throwable> retryOnException = ResiliencePipeline::retryable;
+        private Option<Predicate<? super T>> failure = Option.none();
+        private Option<Function<Throwable, T>> fallback = Option.none();
+
+        private Builder(String name) {
+            this.name = Objects.requireNonNull(name);
+        }
+
+        public Builder<T> timeout(Duration timeout) {
+            this.timeout = Option.some(call -> () -> safely(call).orTimeout(timeout.toNanos(), TimeUnit.NANOSECONDS));
+            return this;
+        }
+
+        /**
+         * Timeout learnt from the latencies of the upstream.
+         */
+        public Builder<T> timeout(AdaptiveTimeout timeouts, URL upstream) {
+            this.timeout = Option.some(call -> () -> timeouts.orTimeout(upstream, safely(call)));
+            return this;
+        }
+
+        public Builder<T> bulkhead(Bulkhead bulkhead) {
+            this.bulkhead = Option.some(bulkhead);
+            return this;
+        }
+
+        public Builder<T> rateLimiter(RateLimiter rateLimiter) {
+            this.rateLimiter = Option.some(call ->
+                    () -> safely(RateLimiter.decorateCompletionStage(rateLimiter, call::get)));
+            return this;
+        }
+
+        /**
+         * Rate limiter which waits for the permit in a timer, not in the caller thread.
+         */
+        public Builder<T> rateLimiter(GcraRateLimiter rateLimiter) {
+            this.rateLimiter = Option.some(call -> () -> rateLimiter.executeAsync(() -> safely(call)));
+            return this;
+        }
+
+        /**
+         * Rate limiter for blocking calls, a call which waited for its permit starts in the executor.
+         */
+        public Builder<T> rateLimiter(GcraRateLimiter rateLimiter, Executor executor) {
+            this.rateLimiter = Option.some(call -> () -> rateLimiter.executeAsync(() -> safely(call), executor));
+            return this;
+        }
+
+        public Builder<T> circuitBreaker(CircuitBreaker circuitBreaker) {
+            this.circuitBreaker = Option.some(call ->
+                    () -> safely(CircuitBreaker.decorateCompletionStage(circuitBreaker, call::get)));
+            return this;
+        }
+
+        /**
+         * Circuit breaker which opens on slow calls too, the timeout stage bounds the slowest ones.
+         */
+        public Builder<T> circuitBreaker(SlowCallCircuitBreaker circuitBreaker) {
+            this.circuitBreaker = Option.some(call -> () -> circuitBreaker.executeAsync(call));
+            return this;
+        }
+
+        /**
+         * The rejections of the circuit breaker, the rate limiter and the bulkhead are not retried.
+         */
+        public Builder<T> retry(RetryPolicy retry) {
+            this.retry = Option.some(retry);
+            return this;
+        }
+
+        public Builder<T> retry(RetryPolicy retry, Predicate<? super Throwable> retryOnException) {
+            this.retryOnException = Objects.requireNonNull(retryOnException);
+            return retry(retry);
+        }
+
+        /**
+         * The values which match are errors for the circuit breaker and the retry,
+         * useful when the call replaces its errors with a value (Option.none()).
+         */
+        public Builder<T> failureOnResult(Predicate<? super T> failure) {
+            this.failure = Option.some(failure);
+            return this;
+        }
+
+        public Builder<T> fallback(Function<Throwable, T> fallback) {
+            this.fallback = Option.some(fallback);
+            return this;
+        }
+
+        public ResiliencePipeline<T> build() {
+
+            //From the upstream to the caller
+            List<UnaryOperator<Supplier<CompletableFuture<T>>>> stages = new ArrayList<>();
+            failure.forEach(predicate -> stages.add(call -> () -> safely(call).thenApply(value -> {
+                if (predicate.test(value)) {
+                    throw new IllegalStateException("Unexpected result from " + name + ": " + value);
+                }
+                return value;
+            })));
+            timeout.forEach(stages::add);
+            bulkhead.forEach(value -> stages.add(call ->
+                    () -> safely(Bulkhead.decorateCompletionStage(value, call::get))));
+            rateLimiter.forEach(stages::add);
+            circuitBreaker.forEach(stages::add);
+            retry.forEach(value -> stages.add(call -> () -> value.executeAsync(call, result -> false, retryOnException)));
+            fallback.forEach(value -> stages.add(call -> () -> safely(call).exceptionally(ex ->
+                    value.apply(ex instanceof CompletionException && Objects.nonNull(ex.getCause()) ? ex.getCause() : ex))));
+            return new ResiliencePipeline<>(name, stages);
+        }
+    }
+
+}
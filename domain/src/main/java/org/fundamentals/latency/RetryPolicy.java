@@ -0,0 +1,228 @@
+package org.fundamentals.latency;
+
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Retries of asynchronous calls.
+ *
+ * - Back-off: decorrelated jitter, the delay is random between baseDelay and 3 times
+ *   the previous delay, up to maxDelay, so the clients which failed together do not retry together.
+ * - Budget: the retries of every policy come from a shared token bucket, every first attempt
+ *   deposits ratio tokens and every retry takes one. When an upstream is down the retries
+ *   add ratio of the load at most, instead of maxAttempts times the load.
+ * - Deadline: no retry is scheduled when the Deadline of the caller expires before it.
+ * - The retries wait in CompletableFuture.delayedExecutor, no thread sleeps between attempts.
+ */
+@Slf4j
+public class RetryPolicy {
+
+    @Data
+    @AllArgsConstructor
+    public static class Config {
+
+        private int maxAttempts;
+        private Duration baseDelay;
+        private Duration maxDelay;
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Stats {
+
+        private long calls;
+        private long retries;
+        private long budgetExhausted;
+        private long deadlineExceeded;
+        //Attempts sent per call, 1.0 without retries
+        private double amplification;
+    }
+
+    /**
+     * Token bucket of retries, deposits are done in thousandths of a token.
+     */
+    public static class Budget {
+
+        static final long TOKEN = 1000;
+
+        private final long deposit;
+        private final long capacity;
+        private final AtomicLong balance;
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+
+        /**
+         * Retries up to ratio of the first attempts, plus a burst which is also the initial balance.
+         */
+        public Budget(double ratio, int burst) {
+            this.deposit = (long) (ratio * TOKEN);
+            this.capacity = Math.max(1, burst) * TOKEN;
+            this.balance = new AtomicLong(capacity);
+        }
+
+        void deposit() {
+            calls.increment();
+            balance.getAndUpdate(value -> Math.min(capacity, value + deposit));
+        }
+
+        boolean tryWithdraw() {
+            long value;
+            do {
+                value = balance.get();
+                if (value < TOKEN) {
+                    return false;
+                }
+            } while (!balance.compareAndSet(value, value - TOKEN));
+            retries.increment();
+            return true;
+        }
+
+        public double amplification() {
+            return RetryPolicy.amplification(calls.sum(), retries.sum());
+        }
+    }
+
+    /**
+     * Shared by the policies of the process, 10% of retries with a burst of 10.
+     */
+    static final Budget GLOBAL_BUDGET = new Budget(0.1, 10);
+
+    /**
+     * 50 ms of base delay and at most 1 second between attempts.
+     */
+    public static Config config(int maxAttempts) {
+        return new Config(maxAttempts, Duration.ofMillis(50), Duration.ofSeconds(1));
+    }
+
+    private final Config config;
+    private final Budget budget;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder budgetExhausted = new LongAdder();
+    private final LongAdder deadlineExceeded = new LongAdder();
+
+    public RetryPolicy(Config config) {
+        this(config, GLOBAL_BUDGET);
+    }
+
+    public RetryPolicy(Config config, Budget budget) {
+        this.config = Objects.requireNonNull(config);
+        this.budget = Objects.requireNonNull(budget);
+    }
+
+    /**
+     * Calls again when the future fails with an error which matches retryOnException
+     * or its value matches retryOnResult, the last outcome is returned when there is no retry left.
+     */
+    public <T> CompletableFuture<T> executeAsync(Supplier<CompletableFuture<T>> call, Predicate<? super T> retryOnResult,
+                                                 Predicate<? super Throwable> retryOnException) {
+
+        calls.increment();
+        budget.deposit();
+        //The retries are sent from a timer thread, they run with the Deadline of the caller
+        Option<Deadline> deadline = Deadline.current();
+        Supplier<CompletableFuture<T>> attempt = deadline.isEmpty()
+                ? call
+                : () -> deadline.get().call(call);
+        CompletableFuture<T> result = new CompletableFuture<>();
+        attempt(attempt, retryOnResult, retryOnException, deadline, result, 1, config.getBaseDelay());
+        return result;
+    }
+
+    public <T> CompletableFuture<T> executeAsync(Supplier<CompletableFuture<T>> call, Predicate<? super T> retryOnResult) {
+        return executeAsync(call, retryOnResult, ex -> true);
+    }
+
+    public <T> CompletableFuture<T> executeAsync(Supplier<CompletableFuture<T>> call) {
+        return executeAsync(call, value -> false);
+    }
+
+    public Stats stats() {
+        long sent = calls.sum();
+        long retried = retries.sum();
+        return new Stats(sent, retried, budgetExhausted.sum(), deadlineExceeded.sum(), amplification(sent, retried));
+    }
+
+    private <T> void attempt(Supplier<CompletableFuture<T>> call, Predicate<? super T> retryOnResult,
+                             Predicate<? super Throwable> retryOnException,
+                             Option<Deadline> deadline, CompletableFuture<T> result, int attempt, Duration previous) {
+
+        //The caller may have cancelled the result while waiting
+        if (result.isDone()) {
+            return;
+        }
+        Try.of(call::get)
+                .recover(CompletableFuture::failedFuture)
+                .get()
+                .whenComplete((value, ex) -> {
+                    if (Objects.isNull(ex) && !retryOnResult.test(value)) {
+                        result.complete(value);
+                        return;
+                    }
+                    //An error which a retry would not fix spends no budget
+                    if (Objects.nonNull(ex) && !retryOnException.test(ex instanceof CompletionException && Objects.nonNull(ex.getCause()) ? ex.getCause() : ex)) {
+                        result.completeExceptionally(ex);
+                        return;
+                    }
+                    Option<Duration> delay = next(attempt, previous, deadline);
+                    if (delay.isEmpty()) {
+                        if (Objects.isNull(ex)) {
+                            result.complete(value);
+                        } else {
+                            result.completeExceptionally(ex);
+                        }
+                        return;
+                    }
+                    LOGGER.debug("Retry #{} in {}", attempt, delay.get());
+                    CompletableFuture.delayedExecutor(delay.get().toNanos(), TimeUnit.NANOSECONDS)
+                            .execute(() -> attempt(call, retryOnResult, retryOnException, deadline, result, attempt + 1, delay.get()));
+                });
+    }
+
+    private Option<Duration> next(int attempt, Duration previous, Option<Deadline> deadline) {
+
+        if (attempt >= config.getMaxAttempts()) {
+            return Option.none();
+        }
+        Duration delay = delay(previous);
+        if (deadline.isDefined() && deadline.get().remaining().compareTo(delay) <= 0) {
+            LOGGER.debug("Deadline expires before the retry");
+            deadlineExceeded.increment();
+            return Option.none();
+        }
+        //Counted in Stats.budgetExhausted, a brownout would log it on every call
+        if (!budget.tryWithdraw()) {
+            LOGGER.debug("Retry budget exhausted");
+            budgetExhausted.increment();
+            return Option.none();
+        }
+        retries.increment();
+        return Option.some(delay);
+    }
+
+    //Decorrelated jitter: random between the base and 3 times the previous delay
+    Duration delay(Duration previous) {
+        long base = config.getBaseDelay().toNanos();
+        long upper = Math.max(base + 1, previous.toNanos() * 3);
+        long delay = ThreadLocalRandom.current().nextLong(base, upper);
+        return Duration.ofNanos(Math.min(delay, config.getMaxDelay().toNanos()));
+    }
+
+    static double amplification(long calls, long retries) {
+        return calls == 0 ? 1.0 : (double) (calls + retries) / calls;
+    }
+
+}
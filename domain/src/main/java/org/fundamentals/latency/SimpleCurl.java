@@ -2,29 +2,45 @@ package org.fundamentals.latency;
 
 import io.vavr.control.Option;
 import io.vavr.control.Try;
+import java.net.URI;
 import java.net.URL;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.stream.Stream;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 public class SimpleCurl {
 
-    static Function<URL, String> fetch = url -> Try.of(() -> {
+    static HttpClientFactory clients = HttpClientFactory.getDefault();
+
+    static HttpMetrics metrics = HttpMetrics.getDefault();
+
+    //The functions without the Via suffix use this transport,
+    //the Via versions receive the transport of the caller (see Transport)
+    static Transport transport = Transport.getDefault();
+
+    static Function<Transport, Function<URL, String>> fetchVia = transport -> url -> Try.of(() -> {
 
         LOGGER.debug("Thread: {}", Thread.currentThread().getName());
         LOGGER.debug("Requested URL: {}", url);
 
-        HttpClient client = HttpClient.newHttpClient();
-        HttpRequest request = HttpRequest.newBuilder()
-                .GET()
-                .uri(url.toURI())
-                .build();
+        URI uri = url.toURI();
+        HttpRequest request = request(uri, Deadline.current());
 
-        return client
-                .send(request, HttpResponse.BodyHandlers.ofString())
+        return transport
+                .send(request, handler(uri, HttpResponse.BodyHandlers.ofString()))
                 .body();
 
     }).getOrElseThrow(ex -> {
@@ -32,26 +48,278 @@ public class SimpleCurl {
         throw new RuntimeException("Bad Request", ex);
     });
 
+    static Function<URL, String> fetch = url -> fetchVia.apply(transport).apply(url);
+
 
     static Function<URL, Option<String>> fetch2 = url -> Try.of(() -> {
 
         LOGGER.debug("Thread: {}", Thread.currentThread().getName());
         LOGGER.debug("Requested URL: {}", url);
 
-        HttpClient client = HttpClient.newHttpClient();
-        HttpRequest request = HttpRequest.newBuilder()
-                .GET()
-                .uri(url.toURI())
-                .build();
+        URI uri = url.toURI();
+        HttpRequest request = request(uri, Deadline.current());
 
-        return Option.some(client
-                    .send(request, HttpResponse.BodyHandlers.ofString())
+        return Option.some(transport
+                    .send(request, handler(uri, HttpResponse.BodyHandlers.ofString()))
                     .body());
     })
     .onFailure(ex -> LOGGER.error("SimpleCURL Error: {}", ex.getLocalizedMessage(), ex))
     .recover(ex -> Option.none())
     .get();
 
+    /**
+     * Non blocking version of fetch.
+     * The request is sent with HttpClient.sendAsync, so neither the caller
+     * nor any pool thread waits for the response.
+     */
+    static Function<Transport, Function<URL, CompletableFuture<String>>> fetchAsyncVia = transport -> url -> Try.of(() -> {
+
+        LOGGER.debug("Thread: {}", Thread.currentThread().getName());
+        LOGGER.debug("Requested URL: {}", url);
+
+        URI uri = url.toURI();
+        HttpRequest request = request(uri, Deadline.current());
+
+        return body(Deadline.current(), transport
+                .sendAsync(request, handler(uri, HttpResponse.BodyHandlers.ofString())));
+    })
+    .onFailure(ex -> LOGGER.error(ex.getLocalizedMessage(), ex))
+    .getOrElseGet(CompletableFuture::failedFuture);
+
+    static Function<URL, CompletableFuture<String>> fetchAsync = url -> fetchAsyncVia.apply(transport).apply(url);
+
+    static Function<URL, CompletableFuture<Option<String>>> fetchAsync2 = url -> fetchAsync
+            .apply(url)
+            .handle((response, ex) -> {
+                if (Objects.nonNull(ex)) {
+                    LOGGER.error("SimpleCURL Error: {}", ex.getLocalizedMessage(), ex);
+                    return Option.none();
+                }
+                return Option.some(response);
+            });
+
+    /**
+     * fetch in the threads of the upstream host, so a slow host
+     * does not take the threads of the others (see HostBulkheads).
+     */
+    static Function<HostBulkheads, Function<URL, CompletableFuture<String>>> fetchIsolated = bulkheads -> url -> Try.of(url::toURI)
+            .map(uri -> bulkheads.submit(uri, () -> fetch.apply(url)))
+            .getOrElseGet(CompletableFuture::failedFuture);
+
+    /**
+     * A non blocking fetch limited by the concurrent calls allowed for the upstream host.
+     */
+    static <T> Function<URL, CompletableFuture<T>> isolated(HostBulkheads bulkheads, Function<URL, CompletableFuture<T>> fetch) {
+        return url -> Try.of(url::toURI)
+                .map(uri -> bulkheads.executeAsync(uri, () -> fetch.apply(url)))
+                .getOrElseGet(CompletableFuture::failedFuture);
+    }
+
+    static Function<HostBulkheads, Function<URL, CompletableFuture<String>>> fetchAsyncIsolated = bulkheads -> isolated(bulkheads, fetchAsync);
+
+    /**
+     * fetchAsync with the in-flight requests of the upstream host
+     * following its RTT and errors (see AdaptiveLimiter).
+     */
+    static Function<Transport, Function<AdaptiveLimiter, Function<URL, CompletableFuture<String>>>> fetchAsyncLimitedVia = transport -> limiter -> url -> Try.of(url::toURI)
+            .map(uri -> limiter.executeAsync(uri, () -> fetchAsyncVia.apply(transport).apply(url)))
+            .getOrElseGet(CompletableFuture::failedFuture);
+
+    static Function<AdaptiveLimiter, Function<URL, CompletableFuture<String>>> fetchAsyncLimited = limiter -> url -> fetchAsyncLimitedVia
+            .apply(transport)
+            .apply(limiter)
+            .apply(url);
+
+    /**
+     * Streaming version of fetch for JSON arrays of names.
+     * Names are decoded from the body InputStream while it arrives,
+     * so the Stream should be closed if it is not fully consumed.
+     */
+    static Function<Transport, Function<URL, Stream<String>>> fetchNamesVia = transport -> url -> Try.of(() -> {
+
+        LOGGER.debug("Thread: {}", Thread.currentThread().getName());
+        LOGGER.debug("Requested URL: {}", url);
+
+        URI uri = url.toURI();
+        HttpRequest request = request(uri, Deadline.current());
+
+        return transport
+                .send(request, handler(uri, JsonNames.ofStream()))
+                .body();
+
+    }).getOrElseThrow(ex -> {
+        LOGGER.error(ex.getLocalizedMessage(), ex);
+        throw new RuntimeException("Bad Request", ex);
+    });
+
+    static Function<URL, Stream<String>> fetchNames = url -> fetchNamesVia.apply(transport).apply(url);
+
+    /**
+     * Non blocking version of fetchNames, every name is pushed to the consumer
+     * as soon as it is decoded. The future completes with the number of names.
+     */
+    static Function<Transport, BiFunction<URL, Consumer<String>, CompletableFuture<Long>>> fetchNamesPushVia = transport -> (url, onName) -> Try.of(() -> {
+
+        LOGGER.debug("Thread: {}", Thread.currentThread().getName());
+        LOGGER.debug("Requested URL: {}", url);
+
+        URI uri = url.toURI();
+        HttpRequest request = request(uri, Deadline.current());
+
+        return body(Deadline.current(), transport
+                .sendAsync(request, handler(uri, JsonNames.ofNames(onName))));
+    })
+    .onFailure(ex -> LOGGER.error(ex.getLocalizedMessage(), ex))
+    .getOrElseGet(CompletableFuture::failedFuture);
+
+    static BiFunction<URL, Consumer<String>, CompletableFuture<Long>> fetchNamesPush = (url, onName) -> fetchNamesPushVia
+            .apply(transport)
+            .apply(url, onName);
+
+    static Function<Transport, Function<URL, CompletableFuture<List<String>>>> fetchNamesAsyncVia = transport -> url -> Try.of(() -> {
+
+        LOGGER.debug("Thread: {}", Thread.currentThread().getName());
+        LOGGER.debug("Requested URL: {}", url);
+
+        URI uri = url.toURI();
+        HttpRequest request = request(uri, Deadline.current());
+
+        return body(Deadline.current(), transport
+                .sendAsync(request, handler(uri, JsonNames.ofList())));
+    })
+    .onFailure(ex -> LOGGER.error(ex.getLocalizedMessage(), ex))
+    .getOrElseGet(CompletableFuture::failedFuture);
+
+    static Function<URL, CompletableFuture<List<String>>> fetchNamesAsync = url -> fetchNamesAsyncVia.apply(transport).apply(url);
+
+    /**
+     * Number of characters of the body, the same as fetch(url).length()
+     * but the body is dropped while it is decoded.
+     */
+    static Function<Transport, Function<URL, Long>> fetchLengthVia = transport -> url -> Try.of(() -> {
+
+        LOGGER.debug("Thread: {}", Thread.currentThread().getName());
+        LOGGER.debug("Requested URL: {}", url);
+
+        URI uri = url.toURI();
+        HttpRequest request = request(uri, Deadline.current());
+
+        return transport
+                .send(request, handler(uri, BodyLength.of(BodyLength.Unit.CHARACTERS)))
+                .body();
+
+    }).getOrElseThrow(ex -> {
+        LOGGER.error(ex.getLocalizedMessage(), ex);
+        throw new RuntimeException("Bad Request", ex);
+    });
+
+    static Function<URL, Long> fetchLength = url -> fetchLengthVia.apply(transport).apply(url);
+
+    /**
+     * Size in bytes of the body. A HEAD request is tried first, if the upstream
+     * does not answer it with a Content-Length, the body is downloaded and counted.
+     */
+    static Function<Transport, Function<URL, CompletableFuture<Long>>> fetchContentLengthAsyncVia = transport -> url -> Try.of(() -> {
+
+        LOGGER.debug("Thread: {}", Thread.currentThread().getName());
+        LOGGER.debug("Requested URL: {}", url);
+
+        URI uri = url.toURI();
+        //The GET is sent from the thread which completes the HEAD, so the Deadline is captured here
+        Option<Deadline> deadline = Deadline.current();
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                .uri(uri);
+        HttpRequest head = timeout(builder, uri, deadline).build();
+
+        CompletableFuture<HttpResponse<Void>> exchange = transport
+                .sendAsync(head, metrics.timed(uri, HttpResponse.BodyHandlers.discarding()));
+        CompletableFuture<Long> result = new CompletableFuture<>();
+        exchange
+                .thenCompose(response -> {
+                    OptionalLong contentLength = BodyLength.contentLength(response.headers());
+                    if (response.statusCode() == 200 && contentLength.isPresent()) {
+                        return CompletableFuture.completedFuture(contentLength.getAsLong());
+                    }
+                    return Try.of(() -> request(uri, deadline))
+                            .fold(CompletableFuture::<HttpResponse<Long>>failedFuture, request -> {
+                                CompletableFuture<HttpResponse<Long>> get = transport
+                                        .sendAsync(request, handler(uri, BodyLength.of(BodyLength.Unit.BYTES)));
+                                Cancellation.propagate(result, get);
+                                return get;
+                            })
+                            .thenApply(HttpResponse::body);
+                })
+                .whenComplete((value, ex) -> {
+                    if (Objects.isNull(ex)) {
+                        result.complete(value);
+                    } else {
+                        result.completeExceptionally(ex);
+                    }
+                });
+        return Cancellation.propagate(within(deadline, result), exchange);
+    })
+    .onFailure(ex -> LOGGER.error(ex.getLocalizedMessage(), ex))
+    .getOrElseGet(CompletableFuture::failedFuture);
+
+    static Function<URL, CompletableFuture<Long>> fetchContentLengthAsync = url -> fetchContentLengthAsyncVia.apply(transport).apply(url);
+
+    //Unlike join, an interrupt of the caller cancels the exchange
+    static Function<URL, Long> fetchContentLength = url -> {
+        CompletableFuture<Long> future = fetchContentLengthAsync.apply(url);
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new CompletionException(ex);
+        } catch (ExecutionException ex) {
+            throw new CompletionException(ex.getCause());
+        }
+    };
+
+    /**
+     * GET request of the uri, with the remaining budget of the Deadline as timeout.
+     * An expired Deadline fails before anything is sent.
+     */
+    static HttpRequest request(URI uri, Option<Deadline> deadline) throws HttpTimeoutException {
+        if (deadline.isEmpty()) {
+            return clients.request(uri);
+        }
+        return clients.request(uri, remaining(uri, deadline.get()));
+    }
+
+    static HttpRequest.Builder timeout(HttpRequest.Builder builder, URI uri, Option<Deadline> deadline) throws HttpTimeoutException {
+        return deadline.isEmpty() ? builder : builder.timeout(remaining(uri, deadline.get()));
+    }
+
+    private static Duration remaining(URI uri, Deadline deadline) throws HttpTimeoutException {
+        Duration remaining = deadline.remaining();
+        if (remaining.isZero()) {
+            throw new HttpTimeoutException("Deadline expired before the request: " + uri);
+        }
+        return remaining;
+    }
+
+    //The body of the exchange, the exchange is cancelled if the body future
+    //is completed first (cancel, orTimeout, completeOnTimeout)
+    private static <T> CompletableFuture<T> body(Option<Deadline> deadline, CompletableFuture<HttpResponse<T>> exchange) {
+        return Cancellation.propagate(within(deadline, exchange.thenApply(HttpResponse::body)), exchange);
+    }
+
+    //The request timeout only covers the response headers, the future covers the body too
+    static <T> CompletableFuture<T> within(Option<Deadline> deadline, CompletableFuture<T> future) {
+        return deadline.isEmpty() ? future : deadline.get().orTimeout(future);
+    }
+
+    /**
+     * BodyHandler used by the requests: compressed bodies are inflated
+     * while they arrive and the phases of the request are recorded.
+     */
+    static <T> HttpResponse.BodyHandler<T> handler(URI uri, HttpResponse.BodyHandler<T> handler) {
+        return metrics.timed(uri, Compression.decoding(handler));
+    }
+
     static Function<String, String> log = value -> {
         LOGGER.debug("Response: {}", value);
         return value;
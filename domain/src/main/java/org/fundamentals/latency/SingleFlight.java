@@ -0,0 +1,141 @@
+package org.fundamentals.latency;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Coalescing of identical in flight requests.
+ *
+ * The first caller for a key starts the call, the callers which arrive
+ * while it is in flight wait for the same result. Every caller receives
+ * its own CompletableFuture, so it can be cancelled or timed out
+ * (orTimeout / completeOnTimeout) without affecting the other waiters.
+ * The shared call is cancelled only when the last waiter leaves.
+ *
+ * Nothing is cached, once the call completes the next caller starts a new one.
+ */
+@Slf4j
+public class SingleFlight<K, V> {
+
+    private final class Call {
+
+        final CompletableFuture<V> shared;
+        //Number of waiters, 0 means that the call was abandoned
+        final AtomicInteger waiters = new AtomicInteger(1);
+
+        Call(CompletableFuture<V> shared) {
+            this.shared = shared;
+        }
+
+        boolean join() {
+            int current;
+            do {
+                current = waiters.get();
+                if (current == 0) {
+                    return false;
+                }
+            } while (!waiters.compareAndSet(current, current + 1));
+            return true;
+        }
+
+        void leave(K key) {
+            if (waiters.decrementAndGet() == 0 && !shared.isDone()) {
+                LOGGER.debug("Every waiter left, cancelling the call for {}", key);
+                calls.remove(key, this);
+                shared.cancel(true);
+            }
+        }
+    }
+
+    private final Map<K, Call> calls = new ConcurrentHashMap<>();
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder saved = new LongAdder();
+
+    public CompletableFuture<V> execute(K key, Supplier<CompletableFuture<V>> call) {
+
+        Objects.requireNonNull(key);
+        while (true) {
+            Call current = calls.get(key);
+            if (Objects.nonNull(current) && current.join()) {
+                saved.increment();
+                return waiter(key, current);
+            }
+            //The previous call was abandoned, it is replaced by a new one
+            if (Objects.nonNull(current)) {
+                calls.remove(key, current);
+                continue;
+            }
+            CompletableFuture<V> shared = new CompletableFuture<>();
+            Call started = new Call(shared);
+            if (Objects.nonNull(calls.putIfAbsent(key, started))) {
+                continue;
+            }
+            executed.increment();
+            CompletableFuture<V> waiter = waiter(key, started);
+            start(key, started, call);
+            return waiter;
+        }
+    }
+
+    /**
+     * Number of upstream calls avoided because a call for the same key was in flight.
+     */
+    public long saved() {
+        return saved.sum();
+    }
+
+    public long executed() {
+        return executed.sum();
+    }
+
+    public int inFlight() {
+        return calls.size();
+    }
+
+    private void start(K key, Call started, Supplier<CompletableFuture<V>> call) {
+
+        CompletableFuture<V> upstream;
+        try {
+            upstream = call.get();
+        } catch (RuntimeException ex) {
+            upstream = CompletableFuture.failedFuture(ex);
+        }
+        //The key is released before the waiters are completed, so a waiter
+        //which calls again starts a fresh call
+        upstream.whenComplete((value, ex) -> {
+            calls.remove(key, started);
+            if (Objects.isNull(ex)) {
+                started.shared.complete(value);
+            } else {
+                started.shared.completeExceptionally(ex);
+            }
+        });
+        CompletableFuture<V> source = upstream;
+        started.shared.whenComplete((value, ex) -> {
+            if (started.shared.isCancelled()) {
+                source.cancel(true);
+            }
+        });
+    }
+
+    private CompletableFuture<V> waiter(K key, Call call) {
+
+        CompletableFuture<V> waiter = new CompletableFuture<>();
+        call.shared.whenComplete((value, ex) -> {
+            if (Objects.isNull(ex)) {
+                waiter.complete(value);
+            } else {
+                waiter.completeExceptionally(ex);
+            }
+        });
+        waiter.whenComplete((value, ex) -> call.leave(key));
+        return waiter;
+    }
+
+}
@@ -0,0 +1,264 @@
+package org.fundamentals.latency;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Circuit breaker which opens on slow calls, not only on failures.
+ *
+ * The calls of the last windowSeconds are counted in one bucket per second, kept in atomic arrays:
+ * recording a call is a few increments. The breaker opens when, with at least minimumCalls in the window,
+ * the rate of calls slower than slowCallDuration or the rate of failures reaches its threshold.
+ * After waitInOpen a single probe is let through (half open): a fast success closes the breaker,
+ * a slow call or a failure opens it again. The other calls are rejected while the probe is in flight.
+ *
+ * The last transitions are kept, so the flapping of an upstream can be seen.
+ */
+@Slf4j
+public class SlowCallCircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Config {
+
+        private Duration slowCallDuration;
+        private double slowCallRateThreshold;
+        private double failureRateThreshold;
+        private int windowSeconds;
+        private int minimumCalls;
+        private Duration waitInOpen;
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Stats {
+
+        private State state;
+        private long calls;
+        private double slowCallRate;
+        private double failureRate;
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Transition {
+
+        private Instant at;
+        private State from;
+        private State to;
+        private double slowCallRate;
+        private double failureRate;
+    }
+
+    /**
+     * Calls slower than 500 ms, half of the calls slow or failed in 10 seconds, 1 second open.
+     */
+    static final Config DEFAULT_CONFIG = new Config(Duration.ofMillis(500), 0.5, 0.5, 10, 5, Duration.ofSeconds(1));
+
+    static final int MAX_TRANSITIONS = 32;
+    //Second of a bucket without calls
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private final String name;
+    private final Config config;
+    private final LongSupplier clock;
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicBoolean probing = new AtomicBoolean();
+    private final Deque<Transition> transitions = new ConcurrentLinkedDeque<>();
+    private volatile long openedAt;
+
+    //Bucket i counts the calls of the second seconds[i]
+    private final AtomicLongArray seconds;
+    private final AtomicLongArray calls;
+    private final AtomicLongArray slowCalls;
+    private final AtomicLongArray failures;
+
+    public SlowCallCircuitBreaker(String name, Config config) {
+        this(name, config, System::nanoTime);
+    }
+
+    SlowCallCircuitBreaker(String name, Config config, LongSupplier clock) {
+        this.name = Objects.requireNonNull(name);
+        this.config = Objects.requireNonNull(config);
+        this.clock = Objects.requireNonNull(clock);
+        int buckets = Math.max(1, config.getWindowSeconds());
+        this.seconds = new AtomicLongArray(buckets);
+        this.calls = new AtomicLongArray(buckets);
+        this.slowCalls = new AtomicLongArray(buckets);
+        this.failures = new AtomicLongArray(buckets);
+        for (int i = 0; i < buckets; i++) {
+            seconds.set(i, EMPTY);
+        }
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public State state() {
+        return state.get();
+    }
+
+    /**
+     * The call, or a RejectedExecutionException when the breaker is open or the half open probe is in flight.
+     */
+    public <T> CompletableFuture<T> executeAsync(Supplier<CompletableFuture<T>> call) {
+
+        boolean probe = tryAcquireProbe();
+        if (!probe && !isClosed()) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Circuit breaker " + name + " is " + state.get()));
+        }
+        long start = clock.getAsLong();
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException ex) {
+            future = CompletableFuture.failedFuture(ex);
+        }
+        return future.whenComplete((value, ex) -> record(clock.getAsLong() - start, Objects.nonNull(ex), probe));
+    }
+
+    public Stats stats() {
+        long now = second(clock.getAsLong());
+        long total = sum(calls, now);
+        return new Stats(state.get(), total, rate(sum(slowCalls, now), total), rate(sum(failures, now), total));
+    }
+
+    /**
+     * Last transitions, the oldest first.
+     */
+    public List<Transition> transitions() {
+        return List.copyOf(transitions);
+    }
+
+    private boolean isClosed() {
+        return state.get() == State.CLOSED;
+    }
+
+    //An open breaker becomes half open when it is asked after waitInOpen, one caller gets the probe
+    private boolean tryAcquireProbe() {
+
+        State current = state.get();
+        if (current == State.CLOSED) {
+            return false;
+        }
+        if (current == State.OPEN) {
+            if (clock.getAsLong() - openedAt < config.getWaitInOpen().toNanos()) {
+                return false;
+            }
+            transition(State.OPEN, State.HALF_OPEN);
+        }
+        return state.get() == State.HALF_OPEN && probing.compareAndSet(false, true);
+    }
+
+    void record(long nanos, boolean failed, boolean probe) {
+
+        boolean slow = nanos >= config.getSlowCallDuration().toNanos();
+        if (probe) {
+            if (failed || slow) {
+                openedAt = clock.getAsLong();
+                transition(State.HALF_OPEN, State.OPEN);
+            } else {
+                reset();
+                transition(State.HALF_OPEN, State.CLOSED);
+            }
+            probing.set(false);
+            return;
+        }
+        //Late answers of the calls sent before the breaker opened are not counted again
+        if (!isClosed()) {
+            return;
+        }
+        long now = second(clock.getAsLong());
+        int index = bucket(now);
+        calls.incrementAndGet(index);
+        if (slow) {
+            slowCalls.incrementAndGet(index);
+        }
+        if (failed) {
+            failures.incrementAndGet(index);
+        }
+
+        long total = sum(calls, now);
+        if (total >= config.getMinimumCalls()
+                && (rate(sum(slowCalls, now), total) >= config.getSlowCallRateThreshold()
+                    || rate(sum(failures, now), total) >= config.getFailureRateThreshold())) {
+            openedAt = clock.getAsLong();
+            transition(State.CLOSED, State.OPEN);
+        }
+    }
+
+    private void transition(State from, State to) {
+
+        Stats stats = stats();
+        if (!state.compareAndSet(from, to)) {
+            return;
+        }
+        LOGGER.warn("Circuit breaker {}: {} -> {}, slow calls {}, failures {}",
+                name, from, to, stats.getSlowCallRate(), stats.getFailureRate());
+        transitions.addLast(new Transition(Instant.now(), from, to, stats.getSlowCallRate(), stats.getFailureRate()));
+        while (transitions.size() > MAX_TRANSITIONS) {
+            transitions.pollFirst();
+        }
+    }
+
+    //The bucket of the second, the first call of a new second clears it.
+    //Not atomic with the concurrent recordings of that second, a few calls can be lost.
+    private int bucket(long second) {
+        int index = (int) Math.floorMod(second, (long) seconds.length());
+        long previous = seconds.get(index);
+        if (previous != second && seconds.compareAndSet(index, previous, second)) {
+            calls.set(index, 0);
+            slowCalls.set(index, 0);
+            failures.set(index, 0);
+        }
+        return index;
+    }
+
+    private long sum(AtomicLongArray counters, long now) {
+        long total = 0;
+        for (int i = 0; i < seconds.length(); i++) {
+            long second = seconds.get(i);
+            if (second != EMPTY && now - second < seconds.length()) {
+                total += counters.get(i);
+            }
+        }
+        return total;
+    }
+
+    private void reset() {
+        for (int i = 0; i < seconds.length(); i++) {
+            seconds.set(i, EMPTY);
+        }
+    }
+
+    private static long second(long nanos) {
+        return TimeUnit.NANOSECONDS.toSeconds(nanos);
+    }
+
+    private static double rate(long count, long total) {
+        return total == 0 ? 0 : (double) count / total;
+    }
+
+}
@@ -0,0 +1,227 @@
+package org.fundamentals.latency;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Structured fan out for Java 11, in the spirit of StructuredTaskScope (Java 21, preview).
+ *
+ * - fork: runs a subtask in the executor.
+ * - joinUntil: waits for every subtask or the deadline, then the unfinished
+ *   subtasks are cancelled (their threads are interrupted).
+ * - close: cancels what is left and waits until every subtask has left its thread,
+ *   so no subtask outlives the scope.
+ *
+ * Example:
+ *   try (StructuredScope<String> scope = new StructuredScope<>(executor)) {
+ *       Subtask<String> greek = scope.fork(() -> fetch.apply(url));
+ *       scope.joinUntil(deadline);
+ *       ...
+ *   }
+ */
+@Slf4j
+public class StructuredScope<T> implements AutoCloseable {
+
+    public enum State {
+        UNAVAILABLE,
+        SUCCESS,
+        FAILED,
+        CANCELLED
+    }
+
+    public static final class Subtask<T> {
+
+        private volatile State state = State.UNAVAILABLE;
+        private T result;
+        private Throwable exception;
+        private Thread runner;
+
+        public State state() {
+            return state;
+        }
+
+        public T get() {
+            if (state != State.SUCCESS) {
+                throw new IllegalStateException("Subtask is " + state);
+            }
+            return result;
+        }
+
+        public Throwable exception() {
+            if (state != State.FAILED) {
+                throw new IllegalStateException("Subtask is " + state);
+            }
+            return exception;
+        }
+
+        //The runner is cleared under the same lock, so a pooled thread is
+        //never interrupted once it runs another task
+        private synchronized void interrupt() {
+            if (Objects.nonNull(runner)) {
+                runner.interrupt();
+            }
+        }
+
+        private synchronized boolean start(Thread thread) {
+            if (state != State.UNAVAILABLE) {
+                return false;
+            }
+            runner = thread;
+            return true;
+        }
+
+        private synchronized void finish(State state, T result, Throwable exception) {
+            runner = null;
+            if (this.state == State.UNAVAILABLE) {
+                this.result = result;
+                this.exception = exception;
+                this.state = state;
+            }
+        }
+
+        //True for a subtask which never started, its run will not count it as done
+        private synchronized boolean cancel() {
+            boolean queued = state == State.UNAVAILABLE && Objects.isNull(runner);
+            if (state == State.UNAVAILABLE) {
+                state = State.CANCELLED;
+            }
+            interrupt();
+            return queued;
+        }
+    }
+
+    private final Executor executor;
+    private final List<Subtask<T>> subtasks = new CopyOnWriteArrayList<>();
+    private final Object lock = new Object();
+    private int running = 0;
+    private volatile boolean shutdown = false;
+
+    public StructuredScope(Executor executor) {
+        this.executor = Objects.requireNonNull(executor);
+    }
+
+    public Subtask<T> fork(Callable<? extends T> task) {
+
+        Subtask<T> subtask = new Subtask<>();
+        if (shutdown) {
+            subtask.cancel();
+            return subtask;
+        }
+        subtasks.add(subtask);
+        synchronized (lock) {
+            running++;
+        }
+        try {
+            executor.execute(() -> run(subtask, task));
+        } catch (RejectedExecutionException ex) {
+            subtask.finish(State.FAILED, null, ex);
+            done();
+        }
+        return subtask;
+    }
+
+    /**
+     * Waits for every subtask until the deadline, the unfinished ones are cancelled.
+     */
+    public StructuredScope<T> joinUntil(Instant deadline) throws InterruptedException {
+
+        synchronized (lock) {
+            long remaining;
+            while (running > 0 && (remaining = Duration.between(Instant.now(), deadline).toMillis()) > 0) {
+                lock.wait(remaining);
+            }
+        }
+        if (!isDone()) {
+            LOGGER.debug("Deadline reached, cancelling the unfinished subtasks");
+            shutdown();
+        }
+        return this;
+    }
+
+    public StructuredScope<T> joinUntil(Deadline deadline) throws InterruptedException {
+        return joinUntil(Instant.now().plus(deadline.remaining()));
+    }
+
+    public StructuredScope<T> join() throws InterruptedException {
+
+        synchronized (lock) {
+            while (running > 0) {
+                lock.wait();
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Cancels the unfinished subtasks, new forks are cancelled too.
+     */
+    public void shutdown() {
+        shutdown = true;
+        //A queued subtask is done once cancelled, close does not wait for the executor to dequeue it
+        subtasks.forEach(subtask -> {
+            if (subtask.cancel()) {
+                done();
+            }
+        });
+    }
+
+    public boolean isDone() {
+        synchronized (lock) {
+            return running == 0;
+        }
+    }
+
+    /**
+     * Cancels the unfinished subtasks and waits until they have left their threads.
+     */
+    @Override
+    public void close() {
+
+        shutdown();
+        boolean interrupted = false;
+        synchronized (lock) {
+            while (running > 0) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run(Subtask<T> subtask, Callable<? extends T> task) {
+
+        //Cancelled while queued, shutdown has already counted it as done
+        if (!subtask.start(Thread.currentThread())) {
+            return;
+        }
+        try {
+            subtask.finish(State.SUCCESS, task.call(), null);
+        } catch (Throwable ex) {
+            subtask.finish(State.FAILED, null, ex);
+        } finally {
+            //Clears an interrupt which arrived after the task
+            Thread.interrupted();
+            done();
+        }
+    }
+
+    private void done() {
+        synchronized (lock) {
+            running--;
+            lock.notifyAll();
+        }
+    }
+
+}
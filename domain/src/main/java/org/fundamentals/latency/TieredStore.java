@@ -0,0 +1,428 @@
+package org.fundamentals.latency;
+
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URL;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Two level store for large payloads, example: Wikipedia pages.
+ *
+ * - L1: small on heap LRU with the decoded values.
+ * - L2: append only segment files mapped in memory with the raw bytes.
+ *   Reads are served from a read only slice of the mapping, so a L2 hit
+ *   does not copy the payload into the heap unless the decoder does it.
+ *
+ * Record layout in a segment:
+ * [int keyLength][key UTF-8][int valueLength][value][int CRC32C], valueLength -1 is a tombstone.
+ * The segments are created zero filled at full size, the CRC tells a record written completely
+ * from a torn one, so the load stops at the first record which does not match it.
+ *
+ * The index is rebuilt from the segments when the store is opened, so a restarted
+ * process serves the payloads stored by the previous one. Overwritten and removed
+ * records are garbage, a background task copies the live records of the segments
+ * with too much garbage into the active segment and deletes the old files.
+ * A tombstone is copied too while an older segment, which may hold a value of its key,
+ * still exists, otherwise the removed value would be back after a restart.
+ */
+@Slf4j
+public class TieredStore<V> implements AutoCloseable {
+
+    @Data
+    @AllArgsConstructor
+    public static class Config {
+
+        private Path directory;
+        private int segmentSize;
+        private int l1MaxEntries;
+        private double compactionThreshold;
+        private long compactionPeriodSeconds;
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Stats {
+
+        private long l1Hits;
+        private long l2Hits;
+        private long misses;
+        private long compactions;
+    }
+
+    static final String SEGMENT_PREFIX = "segment-";
+    static final String SEGMENT_SUFFIX = ".dat";
+    private static final int TOMBSTONE = -1;
+
+    private static class Segment {
+
+        final long id;
+        final Path path;
+        final MappedByteBuffer buffer;
+        final AtomicLong garbage = new AtomicLong();
+        int position;
+
+        Segment(long id, Path path, MappedByteBuffer buffer) {
+            this.id = id;
+            this.path = path;
+            this.buffer = buffer;
+        }
+
+        //Bytes of the payload as a read only view of the mapping
+        ByteBuffer slice(int offset, int length) {
+            ByteBuffer view = buffer.asReadOnlyBuffer();
+            view.position(offset).limit(offset + length);
+            return view.slice();
+        }
+    }
+
+    @AllArgsConstructor
+    private static class Location {
+
+        final Segment segment;
+        final int recordOffset;
+        final int recordLength;
+        final int valueOffset;
+        final int valueLength;
+    }
+
+    private final Config config;
+    private final Function<ByteBuffer, V> decoder;
+    private final Map<String, Location> index = new ConcurrentHashMap<>();
+    //Last tombstone of the removed keys, only used under the lock of the store
+    private final Map<String, Location> tombstones = new HashMap<>();
+    private final Map<Long, Segment> segments = new ConcurrentHashMap<>();
+    private final Map<String, V> l1;
+    private final ScheduledExecutorService compactor;
+    private Segment active;
+
+    private final LongAdder l1Hits = new LongAdder();
+    private final LongAdder l2Hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder compactions = new LongAdder();
+
+    public TieredStore(Config config, Function<ByteBuffer, V> decoder) {
+        this.config = Objects.requireNonNull(config);
+        this.decoder = Objects.requireNonNull(decoder);
+        this.l1 = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > config.getL1MaxEntries();
+            }
+        };
+        try {
+            open();
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Unable to open the store " + config.getDirectory(), ex);
+        }
+        this.compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tiered-store-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.compactor.scheduleWithFixedDelay(this::compact,
+                config.getCompactionPeriodSeconds(), config.getCompactionPeriodSeconds(), TimeUnit.SECONDS);
+    }
+
+    public Optional<V> get(String key) {
+
+        V value = getL1(key);
+        if (Objects.nonNull(value)) {
+            l1Hits.increment();
+            return Optional.of(value);
+        }
+        Location location = index.get(key);
+        if (Objects.isNull(location)) {
+            misses.increment();
+            return Optional.empty();
+        }
+        l2Hits.increment();
+        value = decoder.apply(location.segment.slice(location.valueOffset, location.valueLength));
+        putL1(key, value);
+        return Optional.of(value);
+    }
+
+    public void put(String key, byte[] value) {
+        synchronized (this) {
+            append(key, ByteBuffer.wrap(value), value.length);
+        }
+        removeL1(key);
+    }
+
+    public void remove(String key) {
+        synchronized (this) {
+            if (index.containsKey(key)) {
+                append(key, ByteBuffer.allocate(0), TOMBSTONE);
+            }
+        }
+        removeL1(key);
+    }
+
+    /**
+     * Value stored for the URL or the body of a GET request
+     * which is stored before it is decoded.
+     * The request goes through the Transport of SimpleCurl, bounded by the current Deadline.
+     */
+    public CompletableFuture<V> fetchAsync(URL url) {
+
+        String key = url.toString();
+        Optional<V> stored = get(key);
+        if (stored.isPresent()) {
+            return CompletableFuture.completedFuture(stored.get());
+        }
+        Option<Deadline> deadline = Deadline.current();
+        return Try.of(() -> {
+            URI uri = url.toURI();
+            CompletableFuture<HttpResponse<byte[]>> exchange = SimpleCurl.transport
+                    .sendAsync(SimpleCurl.request(uri, deadline), SimpleCurl.handler(uri, HttpResponse.BodyHandlers.ofByteArray()));
+            return Cancellation.propagate(SimpleCurl.within(deadline, exchange
+                    .thenApply(response -> {
+                        if (response.statusCode() < 200 || response.statusCode() > 299) {
+                            throw new RuntimeException("Bad Request, status: " + response.statusCode() + " " + url);
+                        }
+                        put(key, response.body());
+                        V value = decoder.apply(ByteBuffer.wrap(response.body()).asReadOnlyBuffer());
+                        putL1(key, value);
+                        return value;
+                    })), exchange);
+        })
+        .onFailure(ex -> LOGGER.error(ex.getLocalizedMessage(), ex))
+        .getOrElseGet(CompletableFuture::failedFuture);
+    }
+
+    public Stats stats() {
+        return new Stats(l1Hits.sum(), l2Hits.sum(), misses.sum(), compactions.sum());
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    @Override
+    public void close() {
+        compactor.shutdownNow();
+        synchronized (this) {
+            segments.values().forEach(segment -> segment.buffer.force());
+        }
+    }
+
+    /**
+     * Copies the live records of the sealed segments with too much garbage
+     * into the active segment and deletes their files, the oldest first.
+     */
+    synchronized void compact() {
+
+        List<Segment> candidates = segments.values().stream()
+                .filter(segment -> segment != active)
+                .filter(segment -> segment.garbage.get() >= segment.position * config.getCompactionThreshold())
+                .sorted(Comparator.comparingLong(segment -> segment.id))
+                .collect(Collectors.toList());
+
+        for (Segment segment : candidates) {
+            LOGGER.debug("Compacting segment {} with {} bytes of garbage", segment.id, segment.garbage.get());
+            index.entrySet().stream()
+                    .filter(entry -> entry.getValue().segment == segment)
+                    .collect(Collectors.toList())
+                    .forEach(entry -> {
+                        Location location = entry.getValue();
+                        append(entry.getKey(), location.segment.slice(location.valueOffset, location.valueLength), location.valueLength);
+                    });
+            boolean olderSegments = segments.keySet().stream().anyMatch(id -> id < segment.id);
+            tombstones.entrySet().stream()
+                    .filter(entry -> entry.getValue().segment == segment)
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toList())
+                    .forEach(key -> {
+                        if (olderSegments) {
+                            append(key, ByteBuffer.allocate(0), TOMBSTONE);
+                        } else {
+                            tombstones.remove(key);
+                        }
+                    });
+            segments.remove(segment.id);
+            Try.run(() -> Files.deleteIfExists(segment.path))
+                    .onFailure(ex -> LOGGER.warn(ex.getLocalizedMessage(), ex));
+            compactions.increment();
+        }
+    }
+
+    private void open() throws IOException {
+
+        Files.createDirectories(config.getDirectory());
+        List<Path> files;
+        try (Stream<Path> list = Files.list(config.getDirectory())) {
+            files = list
+                    .filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        for (Path path : files) {
+            Segment segment = map(path, segmentId(path), (int) Files.size(path));
+            load(segment);
+            segments.put(segment.id, segment);
+            active = segment;
+        }
+        if (Objects.isNull(active)) {
+            active = newSegment(0, config.getSegmentSize());
+        }
+        LOGGER.debug("Opened store {} with {} segments and {} keys", config.getDirectory(), segments.size(), index.size());
+    }
+
+    //Rebuilds the index with the records of a segment, the last record of a key wins.
+    //The next append overwrites everything after the last valid record.
+    private void load(Segment segment) {
+
+        ByteBuffer buffer = segment.buffer.duplicate();
+        int end = 0;
+        while (buffer.remaining() >= Integer.BYTES) {
+            int recordOffset = buffer.position();
+            int keyLength = buffer.getInt();
+            if (keyLength == 0) {
+                //The zero filled space after the last record
+                break;
+            }
+            if (keyLength < 0 || buffer.remaining() < keyLength + Integer.BYTES) {
+                LOGGER.warn("Truncated record at {} of segment {}", recordOffset, segment.id);
+                break;
+            }
+            byte[] key = new byte[keyLength];
+            buffer.get(key);
+            int valueLength = buffer.getInt();
+            int valueOffset = buffer.position();
+            int payload = Math.max(valueLength, 0);
+            if (valueLength < TOMBSTONE || buffer.remaining() < payload + Integer.BYTES) {
+                LOGGER.warn("Truncated record at {} of segment {}", recordOffset, segment.id);
+                break;
+            }
+            buffer.position(valueOffset + payload);
+            if (buffer.getInt() != checksum(segment.buffer, recordOffset, valueOffset + payload)) {
+                //Torn write, the process died while the record was written
+                LOGGER.warn("Corrupt record at {} of segment {}", recordOffset, segment.id);
+                break;
+            }
+            index(new String(key, StandardCharsets.UTF_8),
+                    new Location(segment, recordOffset, buffer.position() - recordOffset, valueOffset, valueLength));
+            end = buffer.position();
+        }
+        segment.position = end;
+    }
+
+    private void append(String key, ByteBuffer value, int valueLength) {
+
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int recordLength = Integer.BYTES + keyBytes.length + Integer.BYTES + Math.max(valueLength, 0) + Integer.BYTES;
+        if (active.position + recordLength > active.buffer.capacity()) {
+            active = newSegment(active.id + 1, Math.max(config.getSegmentSize(), recordLength));
+        }
+
+        ByteBuffer buffer = active.buffer.duplicate();
+        buffer.position(active.position);
+        buffer.putInt(keyBytes.length).put(keyBytes).putInt(valueLength);
+        int valueOffset = buffer.position();
+        buffer.put(value.duplicate());
+        buffer.putInt(checksum(active.buffer, active.position, buffer.position()));
+
+        Location location = new Location(active, active.position, recordLength, valueOffset, valueLength);
+        active.position += recordLength;
+        index(key, location);
+    }
+
+    private void index(String key, Location location) {
+
+        Location previous;
+        if (location.valueLength == TOMBSTONE) {
+            previous = index.remove(key);
+            tombstones.put(key, location);
+        } else {
+            previous = index.put(key, location);
+            tombstones.remove(key);
+        }
+        if (Objects.nonNull(previous)) {
+            previous.segment.garbage.addAndGet(previous.recordLength);
+        }
+        if (location.valueLength == TOMBSTONE) {
+            location.segment.garbage.addAndGet(location.recordLength);
+        }
+    }
+
+    private Segment newSegment(long id, int size) {
+        Path path = config.getDirectory().resolve(String.format("%s%019d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+        try {
+            Segment segment = map(path, id, size);
+            segments.put(id, segment);
+            return segment;
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Unable to create the segment " + path, ex);
+        }
+    }
+
+    private static Segment map(Path path, long id, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return new Segment(id, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+    }
+
+    private static int checksum(ByteBuffer buffer, int from, int to) {
+        ByteBuffer record = buffer.duplicate();
+        record.position(from).limit(to);
+        CRC32C crc = new CRC32C();
+        crc.update(record);
+        return (int) crc.getValue();
+    }
+
+    private static long segmentId(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    //L1 has its own lock, so L1 hits do not wait for writes or compactions
+    private V getL1(String key) {
+        synchronized (l1) {
+            return l1.get(key);
+        }
+    }
+
+    private void putL1(String key, V value) {
+        synchronized (l1) {
+            l1.put(key, value);
+        }
+    }
+
+    private void removeL1(String key) {
+        synchronized (l1) {
+            l1.remove(key);
+        }
+    }
+
+}
@@ -0,0 +1,54 @@
+package org.fundamentals.latency;
+
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * The way a request reaches the upstream.
+ *
+ * Requests and responses use the types of java.net.http, so every
+ * BodyHandler (JsonNames, BodyLength, Compression, HttpMetrics...) works
+ * with any transport.
+ *
+ * - JdkTransport: java.net.http.HttpClient, the default one.
+ * - BlockingSocketTransport: HTTP/1.1 on a blocking socket, a thread of a bounded pool
+ *   per request, it reports the CONNECT phase.
+ * - LoopbackTransport: in memory fixtures with a programmable latency,
+ *   used to measure the pipelines without the network.
+ */
+public interface Transport {
+
+    <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> handler);
+
+    default <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler)
+            throws IOException, InterruptedException {
+
+        CompletableFuture<HttpResponse<T>> future = sendAsync(request, handler);
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            future.cancel(true);
+            throw ex;
+        } catch (CancellationException ex) {
+            throw new IOException("Request cancelled", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    static Transport getDefault() {
+        return JdkTransport.Holder.INSTANCE;
+    }
+
+}
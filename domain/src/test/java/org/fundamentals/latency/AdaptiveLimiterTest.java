@@ -0,0 +1,201 @@
+package org.fundamentals.latency;
+
+import io.vavr.control.Try;
+import java.net.URI;
+import java.net.URL;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+
+public class AdaptiveLimiterTest {
+
+    private static final URI SLOW = URI.create("http://slow:8090/greek");
+    private static final int ROUNDS = 20_000;
+
+    private static AdaptiveLimiter.Config config(AdaptiveLimiter.Algorithm algorithm) {
+        return new AdaptiveLimiter.Config(algorithm, 2, 1, 20, 0.5, Duration.ofSeconds(1), 2);
+    }
+
+    private static void await(CyclicBarrier barrier) {
+        Try.run(() -> barrier.await(1, TimeUnit.SECONDS)).get();
+    }
+
+    @Test
+    public void given_fullLimit_when_executeAsync_then_queuedAndRejectedTest() throws Exception {
+
+        AdaptiveLimiter limiter = new AdaptiveLimiter(config(AdaptiveLimiter.Algorithm.AIMD));
+        CompletableFuture<String> pending = new CompletableFuture<>();
+
+        List<CompletableFuture<String>> calls = IntStream.range(0, 5)
+                .mapToObj(i -> limiter.executeAsync(SLOW, () -> pending))
+                .collect(Collectors.toList());
+
+        //2 in flight, 2 queued, the fifth call is rejected
+        then(limiter.stats("slow:8090")).isEqualTo(new AdaptiveLimiter.Stats(2, 2, 2, 1));
+        thenThrownBy(calls.get(4)::join)
+                .isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(RejectedExecutionException.class);
+
+        //The queued calls run when the slots are released
+        pending.complete("Zeus");
+        then(calls.get(3).get(1, TimeUnit.SECONDS)).isEqualTo("Zeus");
+        then(limiter.stats("slow:8090").getInFlight()).isZero();
+        then(limiter.stats("slow:8090").getQueued()).isZero();
+    }
+
+    @Test
+    public void given_queuedCaller_when_cancelWhileSlotReleased_then_slotNotLostTest() {
+
+        AdaptiveLimiter limiter = new AdaptiveLimiter(new AdaptiveLimiter.Config(
+                AdaptiveLimiter.Algorithm.AIMD, 1, 1, 1, 0.5, Duration.ofSeconds(1), 1));
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        AtomicReference<CompletableFuture<String>> queued = new AtomicReference<>();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        //The caller gives up while the released slot goes to it
+        CompletableFuture<Void> cancels = CompletableFuture.runAsync(() -> IntStream.range(0, ROUNDS).forEach(i -> {
+            await(barrier);
+            queued.get().cancel(false);
+            await(barrier);
+        }), executor);
+        try {
+            IntStream.range(0, ROUNDS).forEach(i -> {
+                CompletableFuture<String> pending = new CompletableFuture<>();
+                limiter.executeAsync(SLOW, () -> pending);
+                queued.set(limiter.executeAsync(SLOW, () -> CompletableFuture.completedFuture("Zeus")));
+                await(barrier);
+                pending.complete("Odin");
+                await(barrier);
+            });
+            cancels.join();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        then(limiter.stats("slow:8090").getInFlight()).isZero();
+        then(limiter.stats("slow:8090").getQueued()).isZero();
+    }
+
+    @Test
+    public void given_queuedCaller_when_execute_then_callRunsInCallerThreadTest() throws Exception {
+
+        AdaptiveLimiter limiter = new AdaptiveLimiter(config(AdaptiveLimiter.Algorithm.AIMD));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        IntStream.range(0, 2).forEach(i -> limiter.executeAsync(SLOW, () -> pending));
+
+        try {
+            CompletableFuture<Boolean> sameThread = CompletableFuture.supplyAsync(() -> {
+                Thread caller = Thread.currentThread();
+                return limiter.execute(SLOW, () -> Thread.currentThread() == caller);
+            }, executor);
+            while (limiter.stats("slow:8090").getQueued() == 0) {
+                Thread.sleep(1);
+            }
+            //The slot is released in the test thread
+            pending.complete("Zeus");
+
+            then(sameThread.get(1, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void given_fullLimit_when_executeWithDeadline_then_callerLeavesQueueTest() {
+
+        AdaptiveLimiter limiter = new AdaptiveLimiter(config(AdaptiveLimiter.Algorithm.AIMD));
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        IntStream.range(0, 2).forEach(i -> limiter.executeAsync(SLOW, () -> pending));
+
+        thenThrownBy(() -> Deadline.after(Duration.ofMillis(100)).call(() -> limiter.execute(SLOW, () -> "Zeus")))
+                .isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(TimeoutException.class);
+        then(limiter.stats("slow:8090").getQueued()).isZero();
+
+        //The slots of the calls in flight go to nobody else
+        pending.complete("Odin");
+        then(limiter.stats("slow:8090").getInFlight()).isZero();
+    }
+
+    @Test
+    public void given_runningCall_when_callerCancels_then_callCancelledAndSlotReleasedTest() {
+
+        AdaptiveLimiter limiter = new AdaptiveLimiter(config(AdaptiveLimiter.Algorithm.AIMD));
+        CompletableFuture<String> running = new CompletableFuture<>();
+
+        CompletableFuture<String> call = limiter.executeAsync(SLOW, () -> running);
+        call.cancel(true);
+
+        then(running.isCancelled()).isTrue();
+        then(limiter.stats("slow:8090").getInFlight()).isZero();
+        //A cancelled call is not a drop
+        then(limiter.stats("slow:8090").getLimit()).isGreaterThanOrEqualTo(2);
+    }
+
+    @Test
+    public void given_aimd_when_successAndErrors_then_limitGrowsAndBacksOffTest() {
+
+        AdaptiveLimiter limiter = new AdaptiveLimiter(config(AdaptiveLimiter.Algorithm.AIMD));
+
+        IntStream.range(0, 10).forEach(i -> then(limiter.execute(SLOW, () -> "Zeus")).isEqualTo("Zeus"));
+        //The limit only grows while half of it is used, one call at a time stops at 3
+        then(limiter.stats("slow:8090").getLimit()).isEqualTo(3);
+
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        CompletableFuture<String> first = limiter.executeAsync(SLOW, () -> pending);
+        CompletableFuture<String> second = limiter.executeAsync(SLOW, () -> CompletableFuture.completedFuture("Odin"));
+        then(second.join()).isEqualTo("Odin");
+        then(limiter.stats("slow:8090").getLimit()).isEqualTo(4);
+        pending.complete("Zeus");
+        first.join();
+
+        thenThrownBy(limiter.executeAsync(SLOW, () -> CompletableFuture.<String>failedFuture(new RuntimeException("Katakroker")))::join)
+                .isInstanceOf(CompletionException.class);
+        then(limiter.stats("slow:8090").getLimit()).isEqualTo(2);
+    }
+
+    @Test
+    public void given_gradient_when_rttGrows_then_limitShrinksTest() {
+
+        AdaptiveLimiter limiter = new AdaptiveLimiter(config(AdaptiveLimiter.Algorithm.GRADIENT));
+
+        //A stable RTT makes room for sqrt(limit) more requests
+        IntStream.range(0, 50).forEach(i -> limiter.record("slow:8090", TimeUnit.MILLISECONDS.toNanos(10), false));
+        int stable = limiter.stats("slow:8090").getLimit();
+        then(stable).isEqualTo(20);
+
+        //The queues of the upstream grow, 4 times the usual RTT
+        IntStream.range(0, 50).forEach(i -> limiter.record("slow:8090", TimeUnit.MILLISECONDS.toNanos(40), false));
+        then(limiter.stats("slow:8090").getLimit()).isLessThan(stable / 2);
+
+        IntStream.range(0, 50).forEach(i -> limiter.record("slow:8090", TimeUnit.MILLISECONDS.toNanos(10), false));
+        then(limiter.stats("slow:8090").getLimit()).isEqualTo(stable);
+    }
+
+    @Test
+    public void given_unknownHost_when_fetchAsyncLimited_then_errorReleasesSlotTest() throws Exception {
+
+        AdaptiveLimiter limiter = new AdaptiveLimiter(AdaptiveLimiter.DEFAULT_CONFIG);
+
+        thenThrownBy(SimpleCurl.fetchAsyncLimited.apply(limiter).apply(new URL("http://localhost:1/greek"))::join)
+                .isInstanceOf(CompletionException.class);
+        then(limiter.stats("localhost:1").getInFlight()).isZero();
+        then(limiter.stats("localhost:1").getLimit()).isLessThan(AdaptiveLimiter.DEFAULT_CONFIG.getInitialLimit());
+    }
+
+}
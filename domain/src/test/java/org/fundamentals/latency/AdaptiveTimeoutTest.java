@@ -0,0 +1,88 @@
+package org.fundamentals.latency;
+
+import io.vavr.control.Try;
+import java.net.URL;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+public class AdaptiveTimeoutTest {
+
+    private static URL url(String address) {
+        return Try.of(() -> new URL(address)).get();
+    }
+
+    private static final URL FAST = url("http://fast:8090/greek");
+    private static final URL SLOW = url("http://slow:8090/greek");
+
+    @Test
+    public void given_newUpstream_when_timeout_then_ceilingTest() {
+
+        AdaptiveTimeout timeouts = new AdaptiveTimeout(AdaptiveTimeout.config(Duration.ofSeconds(2)));
+
+        then(timeouts.timeout(FAST)).isEqualTo(Duration.ofSeconds(2));
+    }
+
+    @Test
+    public void given_latencies_when_timeout_then_percentilePlusMarginPerUpstreamTest() {
+
+        AdaptiveTimeout timeouts = new AdaptiveTimeout(AdaptiveTimeout.config(Duration.ofSeconds(2)));
+
+        IntStream.range(0, 50).forEach(i -> {
+            timeouts.record(FAST, TimeUnit.MILLISECONDS.toNanos(10));
+            timeouts.record(SLOW, TimeUnit.MILLISECONDS.toNanos(1000));
+        });
+
+        //10 ms + 50 ms is under the floor
+        then(timeouts.timeout(FAST)).isEqualTo(Duration.ofMillis(100));
+        //The slow but healthy upstream is not cut off
+        then(timeouts.timeout(SLOW).toMillis()).isBetween(1050L, 1150L);
+    }
+
+    @Test
+    public void given_replicasOfOneHost_when_keyedByAddress_then_timeoutPerReplicaTest() {
+
+        AdaptiveTimeout timeouts = new AdaptiveTimeout(AdaptiveTimeout.config(Duration.ofSeconds(2)), URL::toString);
+        URL fastReplica = url("http://localhost:8090/greek-instance1");
+        URL slowReplica = url("http://localhost:8090/greek-instance2");
+
+        IntStream.range(0, 50).forEach(i -> timeouts.record(fastReplica, TimeUnit.MILLISECONDS.toNanos(10)));
+
+        //The fast replica does not teach its timeout to the other one
+        then(timeouts.timeout(fastReplica)).isEqualTo(Duration.ofMillis(100));
+        then(timeouts.timeout(slowReplica)).isEqualTo(Duration.ofSeconds(2));
+    }
+
+    @Test
+    public void given_fasterUpstream_when_decay_then_timeoutGoesDownTest() {
+
+        AdaptiveTimeout timeouts = new AdaptiveTimeout(
+                new AdaptiveTimeout.Config(0.99, Duration.ZERO, Duration.ZERO, Duration.ofSeconds(2), 10, 10));
+
+        IntStream.range(0, 100).forEach(i -> timeouts.record(SLOW, TimeUnit.MILLISECONDS.toNanos(1000)));
+        then(timeouts.timeout(SLOW).toMillis()).isBetween(1000L, 1063L);
+
+        IntStream.range(0, 100).forEach(i -> timeouts.record(SLOW, TimeUnit.MILLISECONDS.toNanos(10)));
+        then(timeouts.timeout(SLOW).toMillis()).isBetween(10L, 11L);
+    }
+
+    @Test
+    public void given_learntTimeout_when_completeOnTimeout_then_fallbackBeforeCeilingTest() {
+
+        AdaptiveTimeout timeouts = new AdaptiveTimeout(AdaptiveTimeout.config(Duration.ofSeconds(5)));
+        IntStream.range(0, 50).forEach(i -> timeouts.record(FAST, TimeUnit.MILLISECONDS.toNanos(10)));
+
+        long start = System.nanoTime();
+        String result = timeouts.completeOnTimeout(FAST, new CompletableFuture<>(), "TIMEOUT").join();
+
+        then(result).isEqualTo("TIMEOUT");
+        then(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(1000L);
+        //The deadline is shorter than the learnt timeout
+        then(Deadline.after(Duration.ofMillis(20)).call(() -> timeouts.timeout(FAST)).toMillis()).isLessThanOrEqualTo(20L);
+    }
+
+}
@@ -0,0 +1,112 @@
+package org.fundamentals.latency;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import java.net.URI;
+import java.net.URL;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+
+public class BlockingSocketTransportTest {
+
+    private static final String CONTENT = "Ζεύς is the sky and thunder god in ancient Greek religion. ".repeat(2000);
+
+    WireMockServer wireMockServer;
+
+    @BeforeEach
+    public void setup () {
+        wireMockServer = new WireMockServer(8090);
+        wireMockServer.start();
+        SimpleCurl.metrics.reset();
+    }
+
+    @AfterEach
+    public void teardown () {
+        wireMockServer.stop();
+    }
+
+    @Test
+    public void given_contentLength_when_fetch_then_bodyAndConnectRecordedTest() throws Exception {
+
+        wireMockServer.stubFor(get(urlEqualTo("/greek"))
+                .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                        .withStatus(200)
+                        .withBodyFile("greek.json")));
+
+        BlockingSocketTransport transport = new BlockingSocketTransport();
+        List<String> names = new ArrayList<>();
+
+        then(SimpleCurl.fetchNamesPushVia.apply(transport).apply(new URL("http://localhost:8090/greek"), names::add).join())
+                .isEqualTo(20);
+        then(names).startsWith("Zeus", "Hera");
+        then(SimpleCurl.metrics.snapshot().get("localhost:8090").get(HttpMetrics.Phase.CONNECT).getCount())
+                .isEqualTo(1);
+        wireMockServer.verify(getRequestedFor(urlEqualTo("/greek"))
+                .withHeader("Accept-Encoding", equalTo(Compression.ACCEPT_ENCODING)));
+    }
+
+    @Test
+    public void given_chunkedGzipBody_when_fetch_then_inflatedTest() throws Exception {
+
+        //Jetty compresses the body on the fly, so it is sent chunked
+        wireMockServer.stubFor(get(urlEqualTo("/wiki/Zeus"))
+                .willReturn(aResponse().withHeader("Content-Type", "text/html; charset=utf-8")
+                        .withStatus(200)
+                        .withBody(CONTENT)));
+
+        then(SimpleCurl.fetchVia.apply(new BlockingSocketTransport()).apply(new URL("http://localhost:8090/wiki/Zeus")))
+                .isEqualTo(CONTENT);
+    }
+
+    @Test
+    public void given_busyThreads_when_send_then_rejectedTest() {
+
+        wireMockServer.stubFor(get(urlEqualTo("/greek"))
+                .willReturn(aResponse().withStatus(200)
+                        .withFixedDelay(500)
+                        .withBody("[\"Zeus\"]")));
+
+        //One thread and no queue, the second request does not wait for a thread
+        ExecutorService executor = BlockingSocketTransport.newExecutor(1, 0);
+        BlockingSocketTransport transport = new BlockingSocketTransport(SimpleCurl.metrics, executor, Duration.ofSeconds(1));
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:8090/greek")).build();
+
+        CompletableFuture<HttpResponse<String>> first = transport.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+        CompletableFuture<HttpResponse<String>> second = transport.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+
+        thenThrownBy(second::join)
+                .isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(RejectedExecutionException.class);
+        then(first.join().body()).isEqualTo("[\"Zeus\"]");
+        executor.shutdown();
+    }
+
+    @Test
+    public void given_https_when_send_then_unsupportedTest() {
+
+        thenThrownBy(() -> new BlockingSocketTransport()
+                .sendAsync(HttpRequest.newBuilder(URI.create("https://localhost:8090/greek")).build(),
+                        HttpResponse.BodyHandlers.discarding())
+                .join())
+                .isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(UnsupportedOperationException.class);
+    }
+
+}
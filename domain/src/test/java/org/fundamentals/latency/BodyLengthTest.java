@@ -0,0 +1,81 @@
+package org.fundamentals.latency;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletionException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.head;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+
+public class BodyLengthTest {
+
+    private static final String CONTENT = "Ζεύς is the sky and thunder god in ancient Greek religion. ".repeat(500);
+
+    WireMockServer wireMockServer;
+
+    @BeforeEach
+    public void setup () {
+        wireMockServer = new WireMockServer(8090);
+        wireMockServer.start();
+    }
+
+    @AfterEach
+    public void teardown () {
+        wireMockServer.stop();
+    }
+
+    @Test
+    public void given_multiByteContent_when_fetchLength_then_sameAsStringLengthTest() throws Exception {
+
+        wireMockServer.stubFor(get(urlEqualTo("/wiki/Zeus"))
+                .willReturn(aResponse().withHeader("Content-Type", "text/html; charset=utf-8")
+                        .withStatus(200)
+                        .withBody(CONTENT)));
+
+        URL url = new URL("http://localhost:8090/wiki/Zeus");
+
+        then(SimpleCurl.fetchLength.apply(url)).isEqualTo(SimpleCurl.fetch.apply(url).length());
+    }
+
+    @Test
+    public void given_headNotSupported_when_fetchContentLength_then_countBytesTest() throws Exception {
+
+        wireMockServer.stubFor(get(urlEqualTo("/wiki/Zeus"))
+                .willReturn(aResponse().withHeader("Content-Type", "text/html; charset=utf-8")
+                        .withStatus(200)
+                        .withBody(CONTENT)));
+
+        then(SimpleCurl.fetchContentLength.apply(new URL("http://localhost:8090/wiki/Zeus")))
+                .isEqualTo(CONTENT.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    @Test
+    public void given_headSupported_when_fetchContentLength_then_bodyIsNotDownloadedTest() throws Exception {
+
+        wireMockServer.stubFor(head(urlEqualTo("/wiki/Zeus"))
+                .willReturn(aResponse().withHeader("Content-Length", "123456")
+                        .withStatus(200)));
+
+        then(SimpleCurl.fetchContentLength.apply(new URL("http://localhost:8090/wiki/Zeus"))).isEqualTo(123456L);
+        wireMockServer.verify(0, getRequestedFor(urlEqualTo("/wiki/Zeus")));
+    }
+
+    @Test
+    public void given_downUpstream_when_fetchContentLength_then_failTest() throws Exception {
+
+        wireMockServer.stop();
+
+        thenThrownBy(() -> SimpleCurl.fetchContentLength.apply(new URL("http://localhost:8090/wiki/Zeus")))
+                .isInstanceOf(CompletionException.class);
+    }
+
+}
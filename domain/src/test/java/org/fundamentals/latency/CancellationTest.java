@@ -0,0 +1,85 @@
+package org.fundamentals.latency;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+public class CancellationTest {
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @AfterEach
+    public void teardown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void given_blockedTask_when_timeout_then_taskInterruptedAndThreadReleasedTest() throws Exception {
+
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean interrupted = new AtomicBoolean();
+
+        CompletableFuture<String> request = Cancellation.supplyAsync(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(5_000);
+                return "Zeus";
+            } catch (InterruptedException ex) {
+                interrupted.set(true);
+                throw new RuntimeException(ex);
+            }
+        }, executor);
+        started.await(1, TimeUnit.SECONDS);
+
+        then(request.completeOnTimeout("TIMEOUT", 50, TimeUnit.MILLISECONDS).join()).isEqualTo("TIMEOUT");
+
+        //The only thread of the pool runs the next task at once
+        then(CompletableFuture.supplyAsync(() -> "Odin", executor).get(500, TimeUnit.MILLISECONDS)).isEqualTo("Odin");
+        then(interrupted.get()).isTrue();
+    }
+
+    @Test
+    public void given_completedTask_when_nextTask_then_notInterruptedTest() throws Exception {
+
+        then(Cancellation.supplyAsync(() -> "Zeus", executor).join()).isEqualTo("Zeus");
+
+        then(CompletableFuture.supplyAsync(() -> Thread.currentThread().isInterrupted(), executor).join()).isFalse();
+    }
+
+    @Test
+    public void given_interruptFromOutside_when_taskCompletes_then_interruptKeptTest() {
+
+        //The task runs in the test thread, the interrupt stands for an ExecutorService.shutdownNow
+        CompletableFuture<String> future = Cancellation.supplyAsync(() -> {
+            Thread.currentThread().interrupt();
+            return "Zeus";
+        }, Runnable::run);
+
+        then(future.join()).isEqualTo("Zeus");
+        then(Thread.interrupted()).isTrue();
+    }
+
+    @Test
+    public void given_chain_when_lastStageTimesOut_then_sourceCancelledTest() throws Exception {
+
+        CompletableFuture<String> source = new CompletableFuture<>();
+
+        String result = Cancellation.propagate(source
+                .thenApply(String::toUpperCase)
+                .completeOnTimeout("TIMEOUT", 10, TimeUnit.MILLISECONDS), source)
+                .join();
+
+        then(result).isEqualTo("TIMEOUT");
+        //The caller may be woken up before the source is cancelled
+        source.handle((value, ex) -> value).get(1, TimeUnit.SECONDS);
+        then(source.isCancelled()).isTrue();
+    }
+
+}
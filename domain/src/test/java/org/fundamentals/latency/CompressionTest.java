@@ -0,0 +1,174 @@
+package org.fundamentals.latency;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+
+public class CompressionTest {
+
+    private static final String CONTENT = "Ζεύς is the sky and thunder god in ancient Greek religion. ".repeat(2000);
+
+    private static final String NAMES = IntStream.range(0, 5000)
+            .mapToObj(i -> "\"God" + i + "\"")
+            .collect(Collectors.joining(",", "[", "]"));
+
+    WireMockServer wireMockServer;
+
+    @BeforeEach
+    public void setup () {
+        wireMockServer = new WireMockServer(8090);
+        wireMockServer.start();
+    }
+
+    @AfterEach
+    public void teardown () {
+        wireMockServer.stop();
+    }
+
+    @Test
+    public void given_gzipBody_when_fetch_then_inflatedTest() throws Exception {
+
+        wireMockServer.stubFor(get(urlEqualTo("/wiki/Zeus"))
+                .willReturn(aResponse().withHeader("Content-Type", "text/html; charset=utf-8")
+                        .withHeader("Content-Encoding", "gzip")
+                        .withStatus(200)
+                        .withBody(gzip(CONTENT.getBytes(StandardCharsets.UTF_8)))));
+
+        Compression.Stats before = Compression.stats();
+
+        then(SimpleCurl.fetch.apply(new URL("http://localhost:8090/wiki/Zeus"))).isEqualTo(CONTENT);
+
+        Compression.Stats after = Compression.stats();
+        long compressed = after.getCompressedBytes() - before.getCompressedBytes();
+        long uncompressed = after.getUncompressedBytes() - before.getUncompressedBytes();
+        then(uncompressed).isEqualTo(CONTENT.getBytes(StandardCharsets.UTF_8).length);
+        then(compressed).isPositive().isLessThan(uncompressed / 10);
+        wireMockServer.verify(getRequestedFor(urlEqualTo("/wiki/Zeus"))
+                .withHeader("Accept-Encoding", equalTo(Compression.ACCEPT_ENCODING)));
+    }
+
+    @Test
+    public void given_deflateBodies_when_fetchNames_then_inflatedWithAndWithoutZlibWrapperTest() throws Exception {
+
+        byte[] names = NAMES.getBytes(StandardCharsets.UTF_8);
+        wireMockServer.stubFor(get(urlEqualTo("/zlib"))
+                .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                        .withHeader("Content-Encoding", "deflate")
+                        .withStatus(200)
+                        .withBody(deflate(names, false))));
+        wireMockServer.stubFor(get(urlEqualTo("/raw"))
+                .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                        .withHeader("Content-Encoding", "deflate")
+                        .withStatus(200)
+                        .withBody(deflate(names, true))));
+
+        then(SimpleCurl.fetchNamesAsync.apply(new URL("http://localhost:8090/zlib")).get())
+                .hasSize(5000).startsWith("God0").endsWith("God4999");
+        then(SimpleCurl.fetchNamesAsync.apply(new URL("http://localhost:8090/raw")).get())
+                .hasSize(5000).startsWith("God0").endsWith("God4999");
+    }
+
+    @Test
+    public void given_gzipBodyInOneByteChunks_when_decoding_then_inflatedTest() throws Exception {
+
+        byte[] compressed = gzip(CONTENT.getBytes(StandardCharsets.UTF_8));
+
+        HttpResponse.BodySubscriber<String> subscriber = subscribe(HttpResponse.BodyHandlers.ofString(), "gzip");
+        for (byte value : compressed) {
+            subscriber.onNext(List.of(ByteBuffer.wrap(new byte[] {value})));
+        }
+        subscriber.onComplete();
+
+        then(subscriber.getBody().toCompletableFuture().get()).isEqualTo(CONTENT);
+    }
+
+    @Test
+    public void given_corruptTrailer_when_decoding_then_errorTest() throws Exception {
+
+        byte[] compressed = gzip(CONTENT.getBytes(StandardCharsets.UTF_8));
+        compressed[compressed.length - 1] ^= 1;
+
+        HttpResponse.BodySubscriber<String> subscriber = subscribe(HttpResponse.BodyHandlers.ofString(), "gzip");
+        subscriber.onNext(List.of(ByteBuffer.wrap(compressed)));
+        subscriber.onComplete();
+
+        thenThrownBy(() -> subscriber.getBody().toCompletableFuture().get())
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(ZipException.class);
+    }
+
+    private static <T> HttpResponse.BodySubscriber<T> subscribe(HttpResponse.BodyHandler<T> handler, String encoding) {
+
+        HttpHeaders headers = HttpHeaders.of(Map.of("Content-Encoding", List.of(encoding)), (name, value) -> true);
+        HttpResponse.BodySubscriber<T> subscriber = Compression.decoding(handler).apply(new HttpResponse.ResponseInfo() {
+            @Override
+            public int statusCode() {
+                return 200;
+            }
+
+            @Override
+            public HttpHeaders headers() {
+                return headers;
+            }
+
+            @Override
+            public HttpClient.Version version() {
+                return HttpClient.Version.HTTP_1_1;
+            }
+        });
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        return subscriber;
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(output)) {
+            gzip.write(content);
+        }
+        return output.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] content, boolean nowrap) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(output, new Deflater(Deflater.DEFAULT_COMPRESSION, nowrap))) {
+            deflate.write(content);
+        }
+        return output.toByteArray();
+    }
+
+}
@@ -0,0 +1,93 @@
+package org.fundamentals.latency;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import java.net.URL;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+
+public class DeadlineTest {
+
+    WireMockServer wireMockServer;
+
+    @BeforeEach
+    public void setup () {
+        wireMockServer = new WireMockServer(8090);
+        wireMockServer.start();
+    }
+
+    @AfterEach
+    public void teardown () {
+        wireMockServer.stop();
+    }
+
+    @Test
+    public void given_deadline_when_call_then_currentOnlyInsideTest() {
+
+        Deadline deadline = Deadline.after(Duration.ofSeconds(1));
+
+        then(deadline.call(Deadline::current).get()).isSameAs(deadline);
+        then(Deadline.current().isEmpty()).isTrue();
+        then(deadline.remaining()).isLessThanOrEqualTo(Duration.ofSeconds(1));
+        then(Deadline.after(Duration.ZERO).isExpired()).isTrue();
+    }
+
+    @Test
+    public void given_propagatingExecutor_when_execute_then_taskRunsWithTheDeadlineTest() {
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Deadline deadline = Deadline.after(Duration.ofSeconds(1));
+
+        CompletableFuture<Deadline> current = deadline.call(() -> CompletableFuture
+                .supplyAsync(() -> Deadline.current().getOrNull(), Deadline.propagating(executor)));
+
+        then(current.join()).isSameAs(deadline);
+        then(CompletableFuture.supplyAsync(() -> Deadline.current().isEmpty(), executor).join()).isTrue();
+
+        executor.shutdown();
+    }
+
+    @Test
+    public void given_expiredDeadline_when_fetchAsync_then_failsWithoutRequestTest() throws Exception {
+
+        URL url = new URL("http://localhost:8090/greek");
+
+        CompletableFuture<String> response = Deadline.after(Duration.ZERO).call(() -> SimpleCurl.fetchAsync.apply(url));
+
+        thenThrownBy(response::join)
+                .isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(HttpTimeoutException.class);
+        wireMockServer.verify(0, getRequestedFor(urlEqualTo("/greek")));
+    }
+
+    @Test
+    public void given_slowUpstream_when_fetchWithinDeadline_then_onlyTheRemainingBudgetIsUsedTest() throws Exception {
+
+        wireMockServer.stubFor(get(urlEqualTo("/greek"))
+                .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                        .withStatus(200)
+                        .withFixedDelay(5000)
+                        .withBodyFile("greek.json")));
+        URL url = new URL("http://localhost:8090/greek");
+
+        long start = System.nanoTime();
+        thenThrownBy(() -> Deadline.after(Duration.ofMillis(200)).call(() -> SimpleCurl.fetch.apply(url)))
+                .isInstanceOf(RuntimeException.class);
+
+        then(Duration.ofNanos(System.nanoTime() - start).toMillis()).isLessThan(2000L);
+    }
+
+}
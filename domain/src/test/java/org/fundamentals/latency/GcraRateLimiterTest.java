@@ -0,0 +1,128 @@
+package org.fundamentals.latency;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+public class GcraRateLimiterTest {
+
+    private final AtomicLong clock = new AtomicLong(TimeUnit.SECONDS.toNanos(100));
+
+    //4 permits per 100 ms, a permit every 25 ms
+    private static final GcraRateLimiter.Config CONFIG =
+            new GcraRateLimiter.Config(Duration.ofMillis(100), 4, Duration.ofMillis(60));
+
+    @Test
+    public void given_burst_when_tryAcquire_then_limitForPeriodPermitsTest() {
+
+        GcraRateLimiter rateLimiter = new GcraRateLimiter("indian", CONFIG, clock::get);
+
+        List<Boolean> permits = IntStream.range(0, 5)
+                .mapToObj(i -> rateLimiter.tryAcquire())
+                .collect(Collectors.toUnmodifiableList());
+
+        then(permits).containsExactly(true, true, true, true, false);
+        then(rateLimiter.stats().getAvailablePermits()).isZero();
+
+        //A permit is back every emission interval
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(25));
+        then(rateLimiter.stats().getAvailablePermits()).isEqualTo(1);
+        then(rateLimiter.tryAcquire()).isTrue();
+        then(rateLimiter.tryAcquire()).isFalse();
+
+        //The permits are not accumulated beyond the burst
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        then(rateLimiter.stats().getAvailablePermits()).isEqualTo(4);
+    }
+
+    @Test
+    public void given_noPermits_when_acquireAsync_then_rejectedBeyondTimeoutTest() {
+
+        GcraRateLimiter rateLimiter = new GcraRateLimiter("indian", CONFIG, clock::get);
+        IntStream.range(0, 4).forEach(i -> rateLimiter.tryAcquire());
+
+        //The next permits are due in 25 and 50 ms, the third one in 75 ms is beyond the timeout
+        CompletableFuture<Void> first = rateLimiter.acquireAsync();
+        CompletableFuture<Void> second = rateLimiter.acquireAsync();
+        CompletableFuture<Void> third = rateLimiter.acquireAsync();
+
+        then(third)
+                .hasFailedWithThrowableThat()
+                .isInstanceOf(RejectedExecutionException.class);
+        then(rateLimiter.stats().getWaiting()).isEqualTo(2);
+        first.join();
+        second.join();
+        then(rateLimiter.stats().getWaiting()).isZero();
+    }
+
+    @Test
+    public void given_manyCallers_when_acquireAsync_then_permitsSpacedByTimerTest() {
+
+        long start = System.nanoTime();
+        GcraRateLimiter rateLimiter = new GcraRateLimiter("indian",
+                new GcraRateLimiter.Config(Duration.ofMillis(100), 2, Duration.ofSeconds(1)));
+        List<CompletableFuture<Long>> permits = IntStream.range(0, 6)
+                .mapToObj(i -> rateLimiter.acquireAsync()
+                        .thenApply(permit -> TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)))
+                .collect(Collectors.toUnmodifiableList());
+
+        //Nobody waits in the caller thread
+        then(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(50);
+        List<Long> elapsed = permits.stream().map(CompletableFuture::join).collect(Collectors.toUnmodifiableList());
+        then(elapsed.get(1)).isLessThan(50);
+        then(elapsed.get(2)).isGreaterThanOrEqualTo(50);
+        then(elapsed.get(5)).isGreaterThanOrEqualTo(200);
+    }
+
+    @Test
+    public void given_concurrentCallers_when_tryAcquire_then_noPermitGrantedTwiceTest() {
+
+        GcraRateLimiter rateLimiter = new GcraRateLimiter("indian",
+                new GcraRateLimiter.Config(Duration.ofSeconds(1), 100, Duration.ZERO), clock::get);
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<CompletableFuture<Long>> callers = IntStream.range(0, 8)
+                .mapToObj(i -> CompletableFuture.supplyAsync(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return IntStream.range(0, 100).filter(j -> rateLimiter.tryAcquire()).count();
+                }))
+                .collect(Collectors.toUnmodifiableList());
+        start.countDown();
+
+        then(callers.stream().mapToLong(CompletableFuture::join).sum()).isEqualTo(100);
+    }
+
+    @Test
+    public void given_waitingPermit_when_executeAsyncWithExecutor_then_callRunsInExecutorTest() {
+
+        GcraRateLimiter rateLimiter = new GcraRateLimiter("indian",
+                new GcraRateLimiter.Config(Duration.ofMillis(100), 1, Duration.ofSeconds(1)));
+        ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "blocking"));
+        try {
+            //The first permit is free, it runs in the caller thread
+            String now = rateLimiter.executeAsync(() -> CompletableFuture.completedFuture(Thread.currentThread().getName()), executor).join();
+            String later = rateLimiter.executeAsync(() -> CompletableFuture.completedFuture(Thread.currentThread().getName()), executor).join();
+
+            then(now).isEqualTo(Thread.currentThread().getName());
+            then(later).isEqualTo("blocking");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
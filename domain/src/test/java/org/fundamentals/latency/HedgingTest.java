@@ -0,0 +1,104 @@
+package org.fundamentals.latency;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+
+public class HedgingTest {
+
+    private static Hedging.Config config(double budgetRatio, int budgetBurst) {
+        return new Hedging.Config(0.95, Duration.ofMillis(1), Duration.ofMillis(50), 20, budgetRatio, budgetBurst);
+    }
+
+    @Test
+    public void given_slowPrimary_when_execute_then_hedgeWinsAndPrimaryIsCancelledTest() {
+
+        Hedging<String> hedging = new Hedging<>(config(1.0, 1));
+        CompletableFuture<String> primary = new CompletableFuture<>();
+
+        String result = hedging.execute(() -> primary, () -> CompletableFuture.completedFuture("hedge")).join();
+
+        then(result).isEqualTo("hedge");
+        then(primary.isCancelled()).isTrue();
+        then(hedging.stats()).isEqualTo(new Hedging.Stats(1, 1, 1));
+    }
+
+    @Test
+    public void given_fastPrimary_when_execute_then_noHedgeTest() {
+
+        Hedging<String> hedging = new Hedging<>(config(1.0, 1));
+        AtomicInteger hedges = new AtomicInteger();
+
+        String result = hedging.execute(() -> CompletableFuture.completedFuture("primary"), () -> {
+            hedges.incrementAndGet();
+            return CompletableFuture.completedFuture("hedge");
+        }).join();
+
+        then(result).isEqualTo("primary");
+        then(hedges.get()).isZero();
+        then(hedging.latencies().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void given_exhaustedBudget_when_execute_then_waitForPrimaryTest() throws Exception {
+
+        Hedging<String> hedging = new Hedging<>(config(0.0, 0));
+        CompletableFuture<String> primary = new CompletableFuture<>();
+
+        CompletableFuture<String> result = hedging.execute(() -> primary, () -> CompletableFuture.completedFuture("hedge"));
+        Thread.sleep(200);
+        then(result.isDone()).isFalse();
+
+        primary.complete("primary");
+        then(result.join()).isEqualTo("primary");
+        then(hedging.stats().getHedges()).isZero();
+    }
+
+    @Test
+    public void given_failedPrimary_when_execute_then_hedgeIsSentAtOnceTest() {
+
+        Hedging<String> hedging = new Hedging<>(new Hedging.Config(0.95, Duration.ofSeconds(10), Duration.ofSeconds(10), 20, 1.0, 1));
+
+        String result = hedging.execute(
+                () -> CompletableFuture.failedFuture(new RuntimeException("Bad Request")),
+                () -> CompletableFuture.completedFuture("hedge")).join();
+
+        then(result).isEqualTo("hedge");
+    }
+
+    @Test
+    public void given_bothFail_when_execute_then_failTest() {
+
+        Hedging<String> hedging = new Hedging<>(config(1.0, 1));
+
+        CompletableFuture<String> result = hedging.execute(
+                () -> CompletableFuture.failedFuture(new RuntimeException("Bad Request")),
+                () -> CompletableFuture.failedFuture(new RuntimeException("Bad Request")));
+
+        thenThrownBy(result::join).isInstanceOf(CompletionException.class);
+    }
+
+    @Test
+    public void given_deadlineBeforeTheDelay_when_execute_then_noHedgeTest() {
+
+        Hedging<String> hedging = new Hedging<>(config(1.0, 1));
+        CompletableFuture<String> primary = new CompletableFuture<>();
+        AtomicInteger hedges = new AtomicInteger();
+
+        CompletableFuture<String> result = Deadline.after(Duration.ofMillis(10)).call(() ->
+                hedging.execute(() -> primary, () -> {
+                    hedges.incrementAndGet();
+                    return CompletableFuture.completedFuture("hedge");
+                }));
+        primary.complete("primary");
+
+        then(result.join()).isEqualTo("primary");
+        then(hedges.get()).isZero();
+    }
+
+}
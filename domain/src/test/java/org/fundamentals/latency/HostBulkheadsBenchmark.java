@@ -0,0 +1,110 @@
+package org.fundamentals.latency;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Latency of a healthy host while a slow host (200 ms) keeps
+ * SLOW_IN_FLIGHT blocking fetches in flight.
+ *
+ * - shared: every host uses the same pool of POOL_SIZE threads,
+ *   the healthy fetches wait behind the slow ones.
+ * - bulkhead: every host has its own POOL_SIZE threads (HostBulkheads),
+ *   the slow fetches over the limit are rejected.
+ *
+ * The loopback transport is used, so the network is not measured.
+ */
+public class HostBulkheadsBenchmark {
+
+    static final int POOL_SIZE = 8;
+    static final int SLOW_IN_FLIGHT = 16;
+    static final String SLOW = "http://slow/greek";
+    static final String HEALTHY = "http://healthy/greek";
+
+    @State(Scope.Benchmark)
+    public static class St {
+
+        @Param({"shared", "bulkhead"})
+        String isolation;
+
+        ExecutorService shared;
+        HostBulkheads bulkheads;
+        LoopbackTransport transport;
+        Function<URL, CompletableFuture<String>> fetch;
+        URL slow;
+        URL healthy;
+        Thread flood;
+
+        @Setup
+        public void setup() throws IOException {
+
+            byte[] body = fixture("greek.json");
+            transport = new LoopbackTransport()
+                    .respond(SLOW, LoopbackTransport.ok("application/json", body)
+                            .withLatency(() -> Duration.ofMillis(200)))
+                    .respond(HEALTHY, LoopbackTransport.ok("application/json", body)
+                            .withLatency(() -> Duration.ofMillis(1)));
+            slow = new URL(SLOW);
+            healthy = new URL(HEALTHY);
+
+            shared = Executors.newFixedThreadPool(POOL_SIZE);
+            bulkheads = new HostBulkheads(new HostBulkheads.Config(POOL_SIZE * 2, Duration.ZERO, POOL_SIZE, POOL_SIZE));
+            Function<URL, String> blockingFetch = SimpleCurl.fetchVia.apply(transport);
+            fetch = "bulkhead".equals(isolation)
+                    ? url -> bulkheads.submit(URI.create(url.toString()), () -> blockingFetch.apply(url))
+                    : url -> CompletableFuture.supplyAsync(() -> blockingFetch.apply(url), shared);
+
+            flood = new Thread(this::flood, "slow-host-flood");
+            flood.setDaemon(true);
+            flood.start();
+        }
+
+        //Keeps the slow host busy during the whole benchmark
+        private void flood() {
+            Semaphore inFlight = new Semaphore(SLOW_IN_FLIGHT);
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    inFlight.acquire();
+                    fetch.apply(slow).whenComplete((value, ex) -> inFlight.release());
+                    //Rejected calls do not hold the semaphore, so they are not retried in a busy loop
+                    Thread.sleep(1);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @TearDown
+        public void tearDown() {
+            flood.interrupt();
+            shared.shutdownNow();
+            bulkheads.close();
+        }
+    }
+
+    @Benchmark
+    public int healthyHost(St st) {
+        return st.fetch.apply(st.healthy).join().length();
+    }
+
+    static byte[] fixture(String name) throws IOException {
+        try (InputStream input = HostBulkheadsBenchmark.class.getResourceAsStream("/__files/" + name)) {
+            return input.readAllBytes();
+        }
+    }
+
+}
@@ -0,0 +1,117 @@
+package org.fundamentals.latency;
+
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import java.net.URI;
+import java.net.URL;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+
+public class HostBulkheadsTest {
+
+    private static final URI SLOW = URI.create("http://slow:8090/greek");
+    private static final URI HEALTHY = URI.create("http://healthy:8090/greek");
+
+    @Test
+    public void given_fullHost_when_executeAsync_then_rejectedOnlyForThatHostTest() {
+
+        HostBulkheads bulkheads = new HostBulkheads(new HostBulkheads.Config(2, Duration.ZERO, 1, 1));
+        CompletableFuture<String> pending = new CompletableFuture<>();
+
+        bulkheads.executeAsync(SLOW, () -> pending);
+        bulkheads.executeAsync(SLOW, () -> pending);
+        CompletableFuture<String> rejected = bulkheads.executeAsync(SLOW, () -> CompletableFuture.completedFuture("Zeus"));
+        CompletableFuture<String> healthy = bulkheads.executeAsync(HEALTHY, () -> CompletableFuture.completedFuture("Odin"));
+
+        thenThrownBy(rejected::join).hasCauseInstanceOf(BulkheadFullException.class);
+        then(healthy.join()).isEqualTo("Odin");
+        then(bulkheads.stats("slow:8090")).isEqualTo(new HostBulkheads.Stats(2, 1, 0, 0));
+
+        //The permits come back when the calls complete
+        pending.complete("Zeus");
+        then(bulkheads.stats("slow:8090").getAvailableConcurrentCalls()).isEqualTo(2);
+    }
+
+    @Test
+    public void given_blockedHostThreads_when_submit_then_otherHostsRunTest() throws Exception {
+
+        HostBulkheads bulkheads = new HostBulkheads(new HostBulkheads.Config(10, Duration.ZERO, 2, 2));
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<CompletableFuture<String>> slow = IntStream.range(0, 5)
+                .mapToObj(i -> bulkheads.submit(SLOW, () -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return "Zeus";
+                }))
+                .collect(Collectors.toList());
+
+        then(bulkheads.submit(HEALTHY, () -> "Odin").get(1, TimeUnit.SECONDS)).isEqualTo("Odin");
+        //2 threads and 2 queued, the fifth call is rejected
+        thenThrownBy(slow.get(4)::join)
+                .isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(BulkheadFullException.class);
+        then(bulkheads.stats("slow:8090").getRejected()).isEqualTo(1);
+
+        release.countDown();
+        then(slow.get(0).get(1, TimeUnit.SECONDS)).isEqualTo("Zeus");
+    }
+
+    @Test
+    public void given_closedBulkheads_when_submit_then_threadsStoppedAndRejectedTest() throws Exception {
+
+        HostBulkheads bulkheads = new HostBulkheads(new HostBulkheads.Config(10, Duration.ZERO, 1, 1));
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Thread> running = new CompletableFuture<>();
+
+        CompletableFuture<String> blocked = bulkheads.submit(SLOW, () -> {
+            running.complete(Thread.currentThread());
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(ex);
+            }
+            return "Zeus";
+        });
+        CompletableFuture<String> queued = bulkheads.submit(SLOW, () -> "Hera");
+        Thread thread = running.get(1, TimeUnit.SECONDS);
+        then(thread.isDaemon()).isTrue();
+        then(thread.getName()).isEqualTo("bulkhead-slow:8090-1");
+
+        bulkheads.close();
+
+        thenThrownBy(() -> blocked.get(1, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalStateException.class);
+        thenThrownBy(queued::join).isInstanceOf(CancellationException.class);
+        thenThrownBy(bulkheads.submit(HEALTHY, () -> "Odin")::join).hasCauseInstanceOf(BulkheadFullException.class);
+        thread.join(1000);
+        then(thread.isAlive()).isFalse();
+    }
+
+    @Test
+    public void given_registeredHost_when_execute_then_ownLimitTest() throws Exception {
+
+        HostBulkheads bulkheads = new HostBulkheads(HostBulkheads.DEFAULT_CONFIG)
+                .register("slow:8090", new HostBulkheads.Config(1, Duration.ZERO, 1, 1));
+
+        then(bulkheads.execute(SLOW, () -> bulkheads.stats("slow:8090").getAvailableConcurrentCalls())).isZero();
+        thenThrownBy(() -> bulkheads.execute(SLOW, () -> bulkheads.execute(SLOW, () -> "Zeus")))
+                .isInstanceOf(BulkheadFullException.class);
+        thenThrownBy(SimpleCurl.fetchIsolated.apply(bulkheads).apply(new URL("http://localhost:1/greek"))::join)
+                .isInstanceOf(CompletionException.class);
+    }
+
+}
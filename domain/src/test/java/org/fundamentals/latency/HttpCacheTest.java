@@ -0,0 +1,224 @@
+package org.fundamentals.latency;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.http.Fault;
+import java.net.URL;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+
+public class HttpCacheTest {
+
+    WireMockServer wireMockServer;
+
+    //Manual clock, the time only moves when the test says so
+    AtomicLong now = new AtomicLong();
+
+    @BeforeEach
+    public void setup () {
+        //Jetty gzip rewrites the ETags ("v1--gzip"), compression is covered by CompressionTest
+        wireMockServer = new WireMockServer(options().port(8090).gzipDisabled(true));
+        wireMockServer.start();
+    }
+
+    @AfterEach
+    public void teardown () {
+        wireMockServer.stop();
+    }
+
+    private HttpCache<List<String>> cache(int maxEntries) {
+        return new HttpCache<>(JsonNames.ofList(),
+                new HttpCache.Config(maxEntries, Duration.ZERO, Duration.ofSeconds(1)),
+                now::get);
+    }
+
+    private void advance(long seconds) {
+        now.addAndGet(TimeUnit.SECONDS.toNanos(seconds));
+    }
+
+    @Test
+    public void given_maxAge_when_fetchTwice_then_secondIsHitTest() throws Exception {
+
+        wireMockServer.stubFor(get(urlEqualTo("/greek"))
+                .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                        .withHeader("Cache-Control", "max-age=60")
+                        .withStatus(200)
+                        .withBody("[\"Zeus\", \"Hera\"]")));
+
+        HttpCache<List<String>> cache = cache(10);
+        URL url = new URL("http://localhost:8090/greek");
+
+        then(cache.fetch(url)).containsExactly("Zeus", "Hera");
+        then(cache.fetch(url)).containsExactly("Zeus", "Hera");
+        advance(61);
+        then(cache.fetch(url)).containsExactly("Zeus", "Hera");
+
+        then(cache.stats()).isEqualTo(new HttpCache.Stats(1, 2, 0, 0, 0));
+        wireMockServer.verify(2, getRequestedFor(urlEqualTo("/greek")));
+    }
+
+    @Test
+    public void given_etag_when_notModified_then_revalidateTest() throws Exception {
+
+        wireMockServer.stubFor(get(urlEqualTo("/greek"))
+                .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                        .withHeader("ETag", "\"v1\"")
+                        .withStatus(200)
+                        .withBody("[\"Zeus\", \"Hera\"]")));
+        wireMockServer.stubFor(get(urlEqualTo("/greek"))
+                .withHeader("If-None-Match", equalTo("\"v1\""))
+                .willReturn(aResponse().withStatus(304)));
+
+        HttpCache<List<String>> cache = cache(10);
+        URL url = new URL("http://localhost:8090/greek");
+
+        then(cache.fetch(url)).containsExactly("Zeus", "Hera");
+        then(cache.fetch(url)).containsExactly("Zeus", "Hera");
+
+        then(cache.stats()).isEqualTo(new HttpCache.Stats(1, 1, 1, 0, 0));
+        wireMockServer.verify(1, getRequestedFor(urlEqualTo("/greek"))
+                .withHeader("If-None-Match", equalTo("\"v1\"")));
+    }
+
+    @Test
+    public void given_staleEntry_when_revalidationFails_then_staleServedWithItsValidatorsTest() throws Exception {
+
+        wireMockServer.stubFor(get(urlEqualTo("/greek"))
+                .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                        .withHeader("ETag", "\"v1\"")
+                        .withStatus(200)
+                        .withBody("[\"Zeus\", \"Hera\"]")));
+        wireMockServer.stubFor(get(urlEqualTo("/greek"))
+                .withHeader("If-None-Match", equalTo("\"v1\""))
+                .willReturn(aResponse().withFault(Fault.EMPTY_RESPONSE)));
+
+        HttpCache<List<String>> cache = cache(10);
+        URL url = new URL("http://localhost:8090/greek");
+
+        then(cache.fetch(url)).containsExactly("Zeus", "Hera");
+        then(cache.fetch(url)).containsExactly("Zeus", "Hera");
+
+        //The upstream is back, the ETag of the stale entry is still sent
+        advance(2);
+        wireMockServer.stubFor(get(urlEqualTo("/greek"))
+                .withHeader("If-None-Match", equalTo("\"v1\""))
+                .willReturn(aResponse().withStatus(304)));
+        then(cache.fetch(url)).containsExactly("Zeus", "Hera");
+
+        then(cache.stats().getRevalidations()).isEqualTo(1);
+    }
+
+    @Test
+    public void given_slowUpstream_when_fetchWithDeadline_then_failsAtTheDeadlineTest() throws Exception {
+
+        wireMockServer.stubFor(get(urlEqualTo("/greek"))
+                .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                        .withStatus(200)
+                        .withBody("[\"Zeus\", \"Hera\"]")
+                        .withFixedDelay(2000)));
+
+        HttpCache<List<String>> cache = cache(10);
+        URL url = new URL("http://localhost:8090/greek");
+
+        long start = System.nanoTime();
+        CompletableFuture<List<String>> future = Deadline.after(Duration.ofMillis(200)).call(() -> cache.fetchAsync(url));
+
+        thenThrownBy(future::join).isInstanceOf(CompletionException.class);
+        then(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofMillis(1500));
+    }
+
+    @Test
+    public void given_shortDeadline_when_nextCallerHasTime_then_notNegativeCachedTest() throws Exception {
+
+        wireMockServer.stubFor(get(urlEqualTo("/greek"))
+                .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                        .withStatus(200)
+                        .withBody("[\"Zeus\", \"Hera\"]")
+                        .withFixedDelay(300)));
+
+        HttpCache<List<String>> cache = cache(10);
+        URL url = new URL("http://localhost:8090/greek");
+
+        CompletableFuture<List<String>> impatient = Deadline.after(Duration.ofMillis(50)).call(() -> cache.fetchAsync(url));
+        thenThrownBy(impatient::join).isInstanceOf(CompletionException.class);
+
+        then(cache.fetch(url)).containsExactly("Zeus", "Hera");
+        then(cache.stats().getNegativeHits()).isZero();
+    }
+
+    @Test
+    public void given_serverError_when_fetchTwice_then_negativeHitTest() throws Exception {
+
+        wireMockServer.stubFor(get(urlEqualTo("/greek"))
+                .willReturn(aResponse().withStatus(500)));
+
+        HttpCache<List<String>> cache = cache(10);
+        URL url = new URL("http://localhost:8090/greek");
+
+        thenThrownBy(() -> cache.fetch(url)).isInstanceOf(CompletionException.class);
+        thenThrownBy(() -> cache.fetch(url)).isInstanceOf(CompletionException.class);
+        advance(2);
+        thenThrownBy(() -> cache.fetch(url)).isInstanceOf(CompletionException.class);
+
+        then(cache.stats().getNegativeHits()).isEqualTo(1);
+        wireMockServer.verify(2, getRequestedFor(urlEqualTo("/greek")));
+    }
+
+    @Test
+    public void given_fullCache_when_fetchNewEntry_then_evictLeastRecentlyUsedTest() throws Exception {
+
+        List.of("greek", "roman", "nordic").forEach(god ->
+                wireMockServer.stubFor(get(urlEqualTo("/" + god))
+                        .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                                .withHeader("Cache-Control", "max-age=60")
+                                .withStatus(200)
+                                .withBody("[\"" + god + "\"]"))));
+
+        HttpCache<List<String>> cache = cache(2);
+
+        cache.fetch(new URL("http://localhost:8090/greek"));
+        cache.fetch(new URL("http://localhost:8090/roman"));
+        cache.fetch(new URL("http://localhost:8090/greek"));
+        cache.fetch(new URL("http://localhost:8090/nordic"));
+        cache.fetch(new URL("http://localhost:8090/greek"));
+        cache.fetch(new URL("http://localhost:8090/roman"));
+
+        then(cache.stats().getEvictions()).isEqualTo(2);
+        wireMockServer.verify(1, getRequestedFor(urlEqualTo("/greek")));
+        wireMockServer.verify(2, getRequestedFor(urlEqualTo("/roman")));
+    }
+
+    @Test
+    public void given_noStore_when_fetchTwice_then_missTwiceTest() throws Exception {
+
+        wireMockServer.stubFor(get(urlEqualTo("/greek"))
+                .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                        .withHeader("Cache-Control", "no-store, max-age=60")
+                        .withStatus(200)
+                        .withBody("[\"Zeus\"]")));
+
+        HttpCache<List<String>> cache = cache(10);
+        URL url = new URL("http://localhost:8090/greek");
+
+        cache.fetch(url);
+        cache.fetch(url);
+
+        then(cache.stats().getMisses()).isEqualTo(2);
+    }
+
+}
@@ -0,0 +1,93 @@
+package org.fundamentals.latency;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import java.net.URI;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+
+@Slf4j
+public class HttpClientFactoryTest {
+
+    WireMockServer wireMockServer;
+
+    @BeforeEach
+    public void setup () {
+        wireMockServer = new WireMockServer(8090);
+        wireMockServer.start();
+    }
+
+    @AfterEach
+    public void teardown () {
+        wireMockServer.stop();
+    }
+
+    @Test
+    public void given_factory_when_requestSameUpstream_then_reuseClientTest() {
+
+        HttpClientFactory factory = new HttpClientFactory(HttpClientFactory.DEFAULT_CONFIG);
+
+        HttpClient client1 = factory.client(URI.create("http://localhost:8090/greek"));
+        HttpClient client2 = factory.client(URI.create("http://localhost:8090/roman"));
+        HttpClient client3 = factory.client(URI.create("http://localhost:8091/greek"));
+
+        then(client1).isSameAs(client2);
+        then(client1).isNotSameAs(client3);
+        then(factory.request(URI.create("http://localhost:8090/greek")))
+                .isSameAs(factory.request(URI.create("http://localhost:8090/greek")));
+    }
+
+    @Test
+    public void given_registeredUpstream_when_buildClient_then_useCallerExecutorTest() {
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        HttpClientFactory factory = new HttpClientFactory(HttpClientFactory.DEFAULT_CONFIG)
+                .register("http://localhost:8090",
+                        new HttpClientFactory.Config(Duration.ofSeconds(1), HttpClient.Version.HTTP_1_1, executor));
+
+        HttpClient client = factory.client(URI.create("http://localhost:8090/greek"));
+
+        then(client.executor()).contains(executor);
+        then(client.version()).isEqualTo(HttpClient.Version.HTTP_1_1);
+
+        executor.shutdown();
+    }
+
+    @Test
+    public void given_closedFactory_when_requestClient_then_failTest() {
+
+        HttpClientFactory factory = new HttpClientFactory(HttpClientFactory.DEFAULT_CONFIG);
+        factory.close();
+
+        then(factory.isClosed()).isTrue();
+        thenThrownBy(() -> factory.client(URI.create("http://localhost:8090/greek")))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void given_sharedClient_when_fetchSeveralTimes_then_expectedResultsTest() throws Exception {
+
+        wireMockServer.stubFor(get(urlEqualTo("/greek"))
+                .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                        .withStatus(200)
+                        .withBodyFile("greek.json")));
+
+        URL url = new URL("http://localhost:8090/greek");
+
+        then(SimpleCurl.fetch.apply(url)).contains("Zeus");
+        then(SimpleCurl.fetch.apply(url)).contains("Zeus");
+    }
+
+}
@@ -0,0 +1,102 @@
+package org.fundamentals.latency;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import java.net.URL;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.fundamentals.latency.HttpMetrics.Phase.BODY;
+import static org.fundamentals.latency.HttpMetrics.Phase.DECODE;
+import static org.fundamentals.latency.HttpMetrics.Phase.QUEUE;
+import static org.fundamentals.latency.HttpMetrics.Phase.TIME_TO_FIRST_BYTE;
+
+public class HttpMetricsTest {
+
+    WireMockServer wireMockServer;
+
+    @BeforeEach
+    public void setup () {
+        wireMockServer = new WireMockServer(8090);
+        wireMockServer.start();
+        SimpleCurl.metrics.reset();
+    }
+
+    @AfterEach
+    public void teardown () {
+        wireMockServer.stop();
+    }
+
+    @Test
+    public void given_slowUpstream_when_fetch_then_timeToFirstByteIsRecordedTest() throws Exception {
+
+        wireMockServer.stubFor(get(urlEqualTo("/greek"))
+                .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                        .withStatus(200)
+                        .withFixedDelay(200)
+                        .withBodyFile("greek.json")));
+
+        SimpleCurl.fetch.apply(new URL("http://localhost:8090/greek"));
+        SimpleCurl.fetchNamesAsync.apply(new URL("http://localhost:8090/greek")).join();
+
+        Map<HttpMetrics.Phase, HttpMetrics.Snapshot> phases = SimpleCurl.metrics.snapshot().get("localhost:8090");
+
+        then(phases.get(TIME_TO_FIRST_BYTE).getCount()).isEqualTo(2);
+        then(phases.get(TIME_TO_FIRST_BYTE).getP50()).isGreaterThanOrEqualTo(Duration.ofMillis(190));
+        then(phases.get(BODY).getCount()).isEqualTo(2);
+        then(phases.get(DECODE).getCount()).isEqualTo(2);
+        then(phases.get(DECODE).getP99()).isLessThan(phases.get(TIME_TO_FIRST_BYTE).getP50());
+    }
+
+    @Test
+    public void given_busyExecutor_when_supplyAsync_then_queueWaitIsRecordedTest() {
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        CompletableFuture<String> first = SimpleCurl.metrics.supplyAsync("http://localhost:8090/greek", () -> {
+            sleep(200);
+            return "first";
+        }, executor);
+        CompletableFuture<String> second = SimpleCurl.metrics.supplyAsync("http://localhost:8090/greek", () -> "second", executor);
+        CompletableFuture.allOf(first, second).join();
+
+        HttpMetrics.Snapshot queue = SimpleCurl.metrics.snapshot().get("localhost:8090").get(QUEUE);
+
+        then(queue.getCount()).isEqualTo(2);
+        then(queue.getP99()).isGreaterThanOrEqualTo(Duration.ofMillis(190));
+
+        executor.shutdown();
+    }
+
+    @Test
+    public void given_metrics_when_snapshotAndReset_then_emptyTest() throws Exception {
+
+        wireMockServer.stubFor(get(urlEqualTo("/greek"))
+                .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                        .withStatus(200)
+                        .withBodyFile("greek.json")));
+
+        SimpleCurl.fetch.apply(new URL("http://localhost:8090/greek"));
+
+        then(SimpleCurl.metrics.snapshotAndReset()).containsKey("localhost:8090");
+        then(SimpleCurl.metrics.snapshot()).isEmpty();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
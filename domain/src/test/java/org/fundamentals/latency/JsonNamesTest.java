@@ -0,0 +1,100 @@
+package org.fundamentals.latency;
+
+import java.io.ByteArrayInputStream;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+
+public class JsonNamesTest {
+
+    private static final Flow.Subscription NO_OP = new Flow.Subscription() {
+        @Override
+        public void request(long n) {}
+
+        @Override
+        public void cancel() {}
+    };
+
+    //Sends the payload in chunks of chunkSize bytes
+    private static HttpResponse.BodySubscriber<Long> push(String payload, int chunkSize, List<String> names) {
+
+        HttpResponse.BodySubscriber<Long> subscriber = JsonNames.subscriber(names::add);
+        subscriber.onSubscribe(NO_OP);
+
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < bytes.length; i += chunkSize) {
+            int length = Math.min(chunkSize, bytes.length - i);
+            subscriber.onNext(List.of(ByteBuffer.wrap(bytes, i, length)));
+        }
+        subscriber.onComplete();
+        return subscriber;
+    }
+
+    @Test
+    public void given_chunkedPayload_when_pushBytes_then_emitNamesTest() {
+
+        List<String> names = new ArrayList<>();
+
+        HttpResponse.BodySubscriber<Long> subscriber = push("[\"Zeus\", \"Hera\",\n \"Poseidon\"]", 1, names);
+
+        then(subscriber.getBody().toCompletableFuture().join()).isEqualTo(3L);
+        then(names).containsExactly("Zeus", "Hera", "Poseidon");
+    }
+
+    @Test
+    public void given_truncatedPayload_when_pushBytes_then_failTest() {
+
+        List<String> names = new ArrayList<>();
+
+        HttpResponse.BodySubscriber<Long> subscriber = push("[\"Zeus\", \"Hera\"", 4, names);
+
+        thenThrownBy(() -> subscriber.getBody().toCompletableFuture().join())
+                .isInstanceOf(CompletionException.class);
+    }
+
+    @Test
+    public void given_object_when_pushBytes_then_failTest() {
+
+        List<String> names = new ArrayList<>();
+
+        HttpResponse.BodySubscriber<Long> subscriber = push("{\"god\": \"Zeus\"}", 4, names);
+
+        thenThrownBy(() -> subscriber.getBody().toCompletableFuture().join())
+                .isInstanceOf(CompletionException.class);
+        then(names).isEmpty();
+    }
+
+    @Test
+    public void given_largeList_when_parseInputStream_then_streamNamesTest() {
+
+        int size = 100_000;
+        String payload = IntStream.range(0, size)
+                .mapToObj(i -> "\"God" + i + "\"")
+                .collect(Collectors.joining(",", "[", "]"));
+
+        try (Stream<String> names = JsonNames.parse(new ByteArrayInputStream(payload.getBytes(StandardCharsets.UTF_8)))) {
+            then(names.filter(name -> name.endsWith("7")).count()).isEqualTo(size / 10);
+        }
+    }
+
+    @Test
+    public void given_content_when_parseLazily_then_failOnlyWhenConsumedTest() {
+
+        Stream<String> names = JsonNames.parse("[\"Zeus\", ");
+
+        thenThrownBy(() -> names.collect(Collectors.toList()))
+                .isInstanceOf(RuntimeException.class);
+    }
+
+}
@@ -0,0 +1,69 @@
+package org.fundamentals.latency;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void given_uniformLatencies_when_percentile_then_relativeErrorIsSmallTest() {
+
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        IntStream.rangeClosed(1, 1000).parallel()
+                .forEach(i -> histogram.record(TimeUnit.MILLISECONDS.toNanos(i)));
+
+        then(histogram.count()).isEqualTo(1000);
+        then(histogram.percentile(0.5).toMillis()).isBetween(500L, 532L);
+        then(histogram.percentile(0.99).toMillis()).isBetween(990L, 1052L);
+        then(histogram.percentile(1.0).toMillis()).isBetween(1000L, 1063L);
+    }
+
+    @Test
+    public void given_buckets_when_indexAndUpperBound_then_valueIsInsideTheBucketTest() {
+
+        IntStream.range(0, 50)
+                .mapToLong(exponent -> 1L << exponent)
+                .flatMap(power -> LongStream.of(power - 1, power, power + 1, power + power / 3))
+                .forEach(nanos -> {
+            int index = LatencyHistogram.index(nanos);
+            then(LatencyHistogram.upperBound(index)).isGreaterThanOrEqualTo(nanos);
+            if (index > 0) {
+                then(LatencyHistogram.upperBound(index - 1)).isLessThan(nanos);
+            }
+        });
+    }
+
+    @Test
+    public void given_reset_when_percentile_then_zeroTest() {
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(Duration.ofMillis(20));
+
+        histogram.reset();
+
+        then(histogram.count()).isZero();
+        then(histogram.percentile(0.99)).isEqualTo(Duration.ZERO);
+    }
+
+    @Test
+    public void given_decay_when_newLatencies_then_theyWeighMoreTest() {
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        IntStream.range(0, 100).forEach(i -> histogram.record(Duration.ofSeconds(1)));
+
+        histogram.decay();
+        histogram.decay();
+        IntStream.range(0, 100).forEach(i -> histogram.record(Duration.ofMillis(10)));
+
+        then(histogram.count()).isEqualTo(125);
+        then(histogram.percentile(0.75).toMillis()).isBetween(10L, 11L);
+        then(histogram.mean().toMillis()).isBetween(200L, 220L);
+    }
+
+}
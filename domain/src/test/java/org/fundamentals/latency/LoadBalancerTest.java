@@ -0,0 +1,92 @@
+package org.fundamentals.latency;
+
+import io.vavr.control.Try;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+
+public class LoadBalancerTest {
+
+    private static final List<URL> REPLICAS = IntStream.rangeClosed(1, 3)
+            .mapToObj(i -> Try.of(() -> new URL("http://localhost:8090/greek-instance" + i)).get())
+            .collect(Collectors.toUnmodifiableList());
+
+    @Test
+    public void given_roundRobin_when_execute_then_replicasInTurnTest() {
+
+        LoadBalancer balancer = new LoadBalancer(REPLICAS, LoadBalancer.Strategy.ROUND_ROBIN);
+
+        List<URL> chosen = IntStream.range(0, 6)
+                .mapToObj(i -> balancer.execute(CompletableFuture::completedFuture).join())
+                .collect(Collectors.toList());
+
+        then(chosen).containsExactly(REPLICAS.get(0), REPLICAS.get(1), REPLICAS.get(2),
+                REPLICAS.get(0), REPLICAS.get(1), REPLICAS.get(2));
+    }
+
+    @Test
+    public void given_pendingRequests_when_leastOutstandingOrPowerOfTwo_then_loadIsSpreadTest() {
+
+        LoadBalancer leastOutstanding = new LoadBalancer(REPLICAS, LoadBalancer.Strategy.LEAST_OUTSTANDING);
+        LoadBalancer powerOfTwo = new LoadBalancer(REPLICAS.subList(0, 2), LoadBalancer.Strategy.POWER_OF_TWO);
+        CompletableFuture<URL> pending = new CompletableFuture<>();
+
+        IntStream.range(0, 9).forEach(i -> leastOutstanding.execute(url -> pending));
+        IntStream.range(0, 10).forEach(i -> powerOfTwo.execute(url -> pending));
+
+        then(leastOutstanding.stats()).extracting(LoadBalancer.Stats::getOutstanding).containsExactly(3, 3, 3);
+        then(powerOfTwo.stats()).extracting(LoadBalancer.Stats::getOutstanding).containsExactly(5, 5);
+
+        pending.complete(REPLICAS.get(0));
+        then(leastOutstanding.stats()).extracting(LoadBalancer.Stats::getOutstanding).containsExactly(0, 0, 0);
+    }
+
+    @Test
+    public void given_slowReplica_when_ewma_then_fewRequestsForItTest() {
+
+        LoadBalancer balancer = new LoadBalancer(REPLICAS, LoadBalancer.Strategy.EWMA);
+        balancer.record(0, TimeUnit.MILLISECONDS.toNanos(1500));
+        balancer.record(1, TimeUnit.MILLISECONDS.toNanos(20));
+        balancer.record(2, TimeUnit.MILLISECONDS.toNanos(20));
+
+        long slow = IntStream.range(0, 1000)
+                .mapToObj(i -> REPLICAS.get(balancer.choose()))
+                .filter(REPLICAS.get(0)::equals)
+                .count();
+
+        //The weight of the slow replica is 1/75 of the others
+        then(slow).isBetween(1L, 30L);
+        then(balancer.stats().get(0).getLatency().toMillis()).isEqualTo(1500L);
+    }
+
+    @Test
+    public void given_failingReplica_when_executeWithHealth_then_noMoreTrafficForItTest() {
+
+        ReplicaHealth health = new ReplicaHealth(REPLICAS, ReplicaHealth.DEFAULT_CONFIG);
+        LoadBalancer balancer = new LoadBalancer(health, LoadBalancer.Strategy.ROUND_ROBIN);
+
+        //The first replica answers garbage
+        List<URL> chosen = IntStream.range(0, 30)
+                .mapToObj(i -> balancer.execute(CompletableFuture::completedFuture, REPLICAS.get(0)::equals).join())
+                .collect(Collectors.toList());
+
+        then(chosen.stream().filter(REPLICAS.get(0)::equals).count())
+                .isEqualTo(ReplicaHealth.DEFAULT_CONFIG.getConsecutiveFailures());
+        then(health.stats().get(0).getState()).isEqualTo(ReplicaHealth.State.EJECTED);
+    }
+
+    @Test
+    public void given_noReplicas_when_new_then_errorTest() {
+
+        thenThrownBy(() -> new LoadBalancer(List.of(), LoadBalancer.Strategy.RANDOM))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+}
@@ -0,0 +1,83 @@
+package org.fundamentals.latency;
+
+import java.net.URI;
+import java.net.URL;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+public class LoopbackTransportTest {
+
+    private static final String NAMES = IntStream.range(0, 20000)
+            .mapToObj(i -> "\"God" + i + "\"")
+            .collect(Collectors.joining(",", "[", "]"));
+
+    @Test
+    public void given_fixtureWithLatency_when_fetch_then_delayedResponseTest() throws Exception {
+
+        LoopbackTransport transport = new LoopbackTransport()
+                .respond("http://loopback/greek", LoopbackTransport
+                        .ok("application/json", "[\"Zeus\", \"Hera\"]".getBytes(StandardCharsets.UTF_8))
+                        .withLatency(() -> Duration.ofMillis(100)));
+
+        long start = System.nanoTime();
+        String body = SimpleCurl.fetchVia.apply(transport).apply(new URL("http://loopback/greek"));
+
+        then(body).isEqualTo("[\"Zeus\", \"Hera\"]");
+        then(Duration.ofNanos(System.nanoTime() - start)).isGreaterThanOrEqualTo(Duration.ofMillis(100));
+        then(transport.requests()).isEqualTo(1);
+    }
+
+    @Test
+    public void given_unknownUri_when_send_then_notFoundTest() throws Exception {
+
+        HttpResponse<String> response = new LoopbackTransport()
+                .send(HttpRequest.newBuilder(URI.create("http://loopback/unknown")).build(),
+                        HttpResponse.BodyHandlers.ofString());
+
+        then(response.statusCode()).isEqualTo(404);
+        then(response.body()).isEmpty();
+    }
+
+    @Test
+    public void given_bodyBiggerThanAChunk_when_streamNames_then_deliveredWithDemandTest() throws Exception {
+
+        byte[] content = NAMES.getBytes(StandardCharsets.UTF_8);
+        LoopbackTransport transport = new LoopbackTransport()
+                .respond("http://loopback/names", LoopbackTransport.ok("application/json", content));
+
+        then(content.length).isGreaterThan(LoopbackTransport.CHUNK_SIZE * 4);
+        try (Stream<String> names = transport
+                .send(HttpRequest.newBuilder(URI.create("http://loopback/names")).build(), JsonNames.ofStream())
+                .body()) {
+            then(names.count()).isEqualTo(20000);
+        }
+        then(SimpleCurl.fetchContentLengthAsyncVia.apply(transport).apply(new URL("http://loopback/names")).get())
+                .isEqualTo(content.length);
+    }
+
+    @Test
+    public void given_slowFixture_when_cancel_then_noResponseTest() throws Exception {
+
+        LoopbackTransport transport = new LoopbackTransport()
+                .respond("http://loopback/slow", LoopbackTransport
+                        .ok("application/json", "[]".getBytes(StandardCharsets.UTF_8))
+                        .withLatency(() -> Duration.ofSeconds(1)));
+
+        CompletableFuture<HttpResponse<String>> future = transport
+                .sendAsync(HttpRequest.newBuilder(URI.create("http://loopback/slow")).build(),
+                        HttpResponse.BodyHandlers.ofString());
+        future.cancel(true);
+
+        then(future).isCancelled();
+    }
+
+}
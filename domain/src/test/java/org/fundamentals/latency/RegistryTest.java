@@ -0,0 +1,51 @@
+package org.fundamentals.latency;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+public class RegistryTest {
+
+    @Test
+    public void given_concurrentLookups_when_get_then_oneInstancePerKeyTest() {
+
+        AtomicInteger created = new AtomicInteger();
+        Registry<Object> registry = new Registry<>(key -> {
+            created.incrementAndGet();
+            return new Object();
+        });
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<CompletableFuture<Object>> lookups = IntStream.range(0, 16)
+                .mapToObj(i -> CompletableFuture.supplyAsync(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return registry.get("http://localhost:8090/roman-instance1");
+                }))
+                .collect(Collectors.toList());
+        start.countDown();
+
+        then(lookups.stream().map(CompletableFuture::join).distinct().count()).isEqualTo(1);
+        then(created.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void given_twoKeys_when_get_then_twoInstancesTest() {
+
+        Registry<String> registry = new Registry<>(key -> "breaker-" + key);
+
+        then(registry.get("roman")).isEqualTo("breaker-roman");
+        then(registry.get("indian")).isEqualTo("breaker-indian");
+        then(registry.instances()).containsOnlyKeys("roman", "indian");
+    }
+
+}
@@ -0,0 +1,111 @@
+package org.fundamentals.latency;
+
+import io.vavr.control.Try;
+import java.net.URL;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+public class ReplicaHealthTest {
+
+    private static final List<URL> REPLICAS = IntStream.rangeClosed(1, 4)
+            .mapToObj(i -> Try.of(() -> new URL("http://localhost:8090/greek-instance" + i)).get())
+            .collect(Collectors.toUnmodifiableList());
+
+    private static ReplicaHealth.Config config(Duration ejection, Duration slowStart) {
+        return new ReplicaHealth.Config(3, 3.0, 5, 0.5,
+                ejection, ejection.multipliedBy(4), slowStart, Duration.ZERO, Duration.ofSeconds(1));
+    }
+
+    private static ReplicaHealth.State state(ReplicaHealth health, int index) {
+        return health.stats().get(index).getState();
+    }
+
+    @Test
+    public void given_consecutiveFailures_when_record_then_ejectedAndBackInSlowStartTest() throws Exception {
+
+        ReplicaHealth health = new ReplicaHealth(REPLICAS, config(Duration.ofMillis(100), Duration.ofSeconds(10)));
+
+        //A success resets the count
+        health.record(0, 1, true);
+        health.record(0, 1, true);
+        health.record(0, 1, false);
+        health.record(0, 1, true);
+        health.record(0, 1, true);
+        then(state(health, 0)).isEqualTo(ReplicaHealth.State.HEALTHY);
+
+        health.record(0, 1, true);
+        then(state(health, 0)).isEqualTo(ReplicaHealth.State.EJECTED);
+        then(health.weights()).containsExactly(0, 1, 1, 1);
+
+        TimeUnit.MILLISECONDS.sleep(150);
+        then(state(health, 0)).isEqualTo(ReplicaHealth.State.SLOW_START);
+        then(health.weights()[0]).isBetween(ReplicaHealth.MIN_WEIGHT, 0.5);
+
+        //The second ejection lasts twice as long
+        IntStream.range(0, 3).forEach(i -> health.record(0, 1, true));
+        TimeUnit.MILLISECONDS.sleep(150);
+        then(state(health, 0)).isEqualTo(ReplicaHealth.State.EJECTED);
+        then(health.stats().get(0).getEjections()).isEqualTo(2);
+    }
+
+    @Test
+    public void given_slowReplica_when_record_then_ejectedAsOutlierTest() {
+
+        ReplicaHealth health = new ReplicaHealth(REPLICAS, config(Duration.ofSeconds(10), Duration.ofSeconds(10)));
+
+        IntStream.range(0, 5).forEach(i -> {
+            health.record(0, TimeUnit.MILLISECONDS.toNanos(20), false);
+            health.record(1, TimeUnit.MILLISECONDS.toNanos(25), false);
+            health.record(2, TimeUnit.MILLISECONDS.toNanos(30), false);
+            health.record(3, TimeUnit.MILLISECONDS.toNanos(1500), false);
+        });
+
+        then(health.stats()).extracting(ReplicaHealth.Stats::getState).containsExactly(
+                ReplicaHealth.State.HEALTHY, ReplicaHealth.State.HEALTHY,
+                ReplicaHealth.State.HEALTHY, ReplicaHealth.State.EJECTED);
+    }
+
+    @Test
+    public void given_manyFailingReplicas_when_record_then_maxEjectedRatioIsKeptTest() {
+
+        ReplicaHealth health = new ReplicaHealth(REPLICAS, config(Duration.ofSeconds(10), Duration.ofSeconds(10)));
+
+        IntStream.range(0, 4).forEach(replica -> IntStream.range(0, 3).forEach(i -> health.record(replica, 1, true)));
+
+        //Half of the pool stays, even when it fails
+        then(health.stats()).extracting(ReplicaHealth.Stats::getState).containsExactly(
+                ReplicaHealth.State.EJECTED, ReplicaHealth.State.EJECTED,
+                ReplicaHealth.State.HEALTHY, ReplicaHealth.State.HEALTHY);
+    }
+
+    @Test
+    public void given_probe_when_ejected_then_backOnlyWhenProbeSucceedsTest() throws Exception {
+
+        AtomicInteger probes = new AtomicInteger();
+        ReplicaHealth health = new ReplicaHealth(REPLICAS, config(Duration.ofMillis(50), Duration.ofSeconds(10)),
+                url -> probes.incrementAndGet() == 1
+                        ? CompletableFuture.failedFuture(new RuntimeException("Katakroker"))
+                        : CompletableFuture.completedFuture("Zeus"));
+
+        IntStream.range(0, 3).forEach(i -> health.record(0, 1, true));
+
+        //The first probe fails after 50 ms, the second one succeeds 100 ms later
+        TimeUnit.MILLISECONDS.sleep(100);
+        then(state(health, 0)).isEqualTo(ReplicaHealth.State.EJECTED);
+        then(probes.get()).isEqualTo(1);
+        TimeUnit.MILLISECONDS.sleep(200);
+        then(state(health, 0)).isEqualTo(ReplicaHealth.State.SLOW_START);
+        then(probes.get()).isEqualTo(2);
+
+        health.close();
+    }
+
+}
@@ -0,0 +1,110 @@
+package org.fundamentals.latency;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.vavr.control.Option;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+
+public class ResiliencePipelineTest {
+
+    private static RetryPolicy retry(int maxAttempts) {
+        return new RetryPolicy(new RetryPolicy.Config(maxAttempts, Duration.ZERO, Duration.ZERO), new RetryPolicy.Budget(1, 10));
+    }
+
+    @Test
+    public void given_badResults_when_retryAndFallback_then_retriedUntilFallbackTest() {
+
+        AtomicInteger attempts = new AtomicInteger();
+        ResiliencePipeline<Option<String>> pipeline = ResiliencePipeline.<Option<String>>builder("greek")
+                .retry(retry(3))
+                .failureOnResult(Option::isEmpty)
+                .fallback(ex -> Option.some("Fallback"))
+                .build();
+
+        Supplier<CompletableFuture<Option<String>>> decorated = pipeline.decorate(() -> {
+            attempts.incrementAndGet();
+            return CompletableFuture.completedFuture(Option.none());
+        });
+
+        then(decorated.get().join()).isEqualTo(Option.some("Fallback"));
+        then(attempts.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void given_failures_when_circuitBreakerIsOpen_then_upstreamIsNotCalledTest() {
+
+        CircuitBreaker circuitBreaker = CircuitBreaker.of("greek", CircuitBreakerConfig.custom()
+                .failureRateThreshold(50)
+                .ringBufferSizeInClosedState(2)
+                .waitDurationInOpenState(Duration.ofSeconds(10))
+                .build());
+        AtomicInteger calls = new AtomicInteger();
+        ResiliencePipeline<String> pipeline = ResiliencePipeline.<String>builder("greek")
+                .circuitBreaker(circuitBreaker)
+                .build();
+
+        //The errors are thrown without the CompletionException
+        Supplier<String> decorated = pipeline.decorateSupplier(() -> {
+            calls.incrementAndGet();
+            throw new RuntimeException("Katakroker");
+        });
+
+        IntStream.range(0, 2).forEach(i -> thenThrownBy(decorated::get).hasMessage("Katakroker"));
+        thenThrownBy(decorated::get).isInstanceOf(CallNotPermittedException.class);
+        then(calls.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void given_slowCall_when_timeout_then_bulkheadIsReleasedTest() {
+
+        Bulkhead bulkhead = Bulkhead.of("greek", BulkheadConfig.custom()
+                .maxConcurrentCalls(1)
+                .maxWaitTime(0)
+                .build());
+        ResiliencePipeline<String> pipeline = ResiliencePipeline.<String>builder("greek")
+                .timeout(Duration.ofMillis(50))
+                .bulkhead(bulkhead)
+                .build();
+
+        Supplier<CompletableFuture<String>> decorated = pipeline.decorate(CompletableFuture::new);
+
+        CompletableFuture<String> first = decorated.get();
+        thenThrownBy(decorated.get()::join).hasCauseInstanceOf(BulkheadFullException.class);
+        thenThrownBy(first::join).hasCauseInstanceOf(TimeoutException.class);
+        then(bulkhead.getMetrics().getAvailableConcurrentCalls()).isEqualTo(1);
+    }
+
+    @Test
+    public void given_openCircuitBreaker_when_retry_then_rejectionNotRetriedTest() {
+
+        CircuitBreaker circuitBreaker = CircuitBreaker.of("greek", CircuitBreakerConfig.custom()
+                .failureRateThreshold(50)
+                .ringBufferSizeInClosedState(2)
+                .waitDurationInOpenState(Duration.ofSeconds(10))
+                .build());
+        circuitBreaker.transitionToOpenState();
+        RetryPolicy retry = retry(3);
+        ResiliencePipeline<String> pipeline = ResiliencePipeline.<String>builder("greek")
+                .retry(retry)
+                .circuitBreaker(circuitBreaker)
+                .build();
+
+        thenThrownBy(pipeline.decorate(() -> CompletableFuture.completedFuture("Zeus")).get()::join)
+                .hasCauseInstanceOf(CallNotPermittedException.class);
+        then(retry.stats().getRetries()).isZero();
+    }
+
+}
@@ -0,0 +1,93 @@
+package org.fundamentals.latency;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+
+public class RetryPolicyTest {
+
+    private static CompletableFuture<String> failure() {
+        return CompletableFuture.failedFuture(new RuntimeException("Katakroker"));
+    }
+
+    @Test
+    public void given_failures_when_executeAsync_then_retriedWithBackOffTest() {
+
+        RetryPolicy policy = new RetryPolicy(new RetryPolicy.Config(3, Duration.ofMillis(20), Duration.ofMillis(100)),
+                new RetryPolicy.Budget(0.1, 10));
+        AtomicInteger attempts = new AtomicInteger();
+
+        long start = System.nanoTime();
+        String result = policy.executeAsync(() -> attempts.incrementAndGet() < 3
+                ? failure()
+                : CompletableFuture.completedFuture("Zeus")).join();
+
+        then(result).isEqualTo("Zeus");
+        then(attempts.get()).isEqualTo(3);
+        //Two waits of at least the base delay
+        then(Duration.ofNanos(System.nanoTime() - start)).isGreaterThanOrEqualTo(Duration.ofMillis(40));
+        then(policy.stats().getAmplification()).isEqualTo(3.0);
+    }
+
+    @Test
+    public void given_badResults_when_maxAttempts_then_lastResultTest() {
+
+        RetryPolicy policy = new RetryPolicy(new RetryPolicy.Config(3, Duration.ZERO, Duration.ZERO),
+                new RetryPolicy.Budget(0.1, 10));
+        AtomicInteger attempts = new AtomicInteger();
+
+        then(policy.executeAsync(() -> CompletableFuture.completedFuture(attempts.incrementAndGet()), value -> true).join())
+                .isEqualTo(3);
+    }
+
+    @Test
+    public void given_brownout_when_executeAsync_then_budgetLimitsRetriesTest() {
+
+        RetryPolicy.Budget budget = new RetryPolicy.Budget(0.1, 5);
+        RetryPolicy policy = new RetryPolicy(new RetryPolicy.Config(3, Duration.ZERO, Duration.ZERO), budget);
+
+        IntStream.range(0, 100).forEach(i -> thenThrownBy(policy.executeAsync(RetryPolicyTest::failure)::join)
+                .isInstanceOf(CompletionException.class));
+
+        //5 of burst plus 10% of 100 calls, instead of 200 retries
+        then(policy.stats().getRetries()).isBetween(14L, 15L);
+        then(policy.stats().getBudgetExhausted()).isGreaterThan(80L);
+        then(budget.amplification()).isLessThan(1.2);
+    }
+
+    @Test
+    public void given_deadline_when_retryIsLater_then_giveUpTest() {
+
+        RetryPolicy policy = new RetryPolicy(new RetryPolicy.Config(3, Duration.ofMillis(200), Duration.ofSeconds(1)),
+                new RetryPolicy.Budget(0.1, 10));
+        AtomicInteger attempts = new AtomicInteger();
+
+        CompletableFuture<String> result = Deadline.after(Duration.ofMillis(100))
+                .call(() -> policy.executeAsync(() -> {
+                    attempts.incrementAndGet();
+                    return failure();
+                }));
+
+        thenThrownBy(result::join).isInstanceOf(CompletionException.class);
+        then(attempts.get()).isEqualTo(1);
+        then(policy.stats().getDeadlineExceeded()).isEqualTo(1);
+    }
+
+    @Test
+    public void given_previousDelay_when_delay_then_decorrelatedJitterTest() {
+
+        RetryPolicy policy = new RetryPolicy(new RetryPolicy.Config(3, Duration.ofMillis(10), Duration.ofMillis(100)));
+
+        IntStream.range(0, 100).forEach(i -> {
+            then(policy.delay(Duration.ofMillis(20))).isBetween(Duration.ofMillis(10), Duration.ofMillis(60));
+            then(policy.delay(Duration.ofMillis(90))).isLessThanOrEqualTo(Duration.ofMillis(100));
+        });
+    }
+
+}
@@ -0,0 +1,45 @@
+package org.fundamentals.latency;
+
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+public class SimpleCurlBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class St {
+
+        URL url;
+
+        @Setup
+        public void setup() throws Exception {
+            url = new URL("http://localhost:8090/greek");
+        }
+    }
+
+    @Benchmark
+    public String clientPerCall(St st) throws Exception {
+
+        HttpClient client = HttpClient.newHttpClient();
+        HttpRequest request = HttpRequest.newBuilder()
+                .GET()
+                .uri(st.url.toURI())
+                .build();
+
+        return client
+                .send(request, HttpResponse.BodyHandlers.ofString())
+                .body();
+    }
+
+    @Benchmark
+    public String sharedClient(St st) {
+
+        return SimpleCurl.fetch.apply(st.url);
+    }
+
+}
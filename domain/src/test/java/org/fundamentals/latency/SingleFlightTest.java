@@ -0,0 +1,102 @@
+package org.fundamentals.latency;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+
+public class SingleFlightTest {
+
+    @Test
+    public void given_concurrentCallers_when_execute_then_oneCallTest() {
+
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+        AtomicInteger calls = new AtomicInteger();
+
+        List<CompletableFuture<String>> waiters = IntStream.range(0, 10)
+                .mapToObj(i -> singleFlight.execute("/greek", () -> {
+                    calls.incrementAndGet();
+                    return upstream;
+                }))
+                .collect(Collectors.toList());
+        upstream.complete("[\"Zeus\"]");
+
+        then(waiters.stream().map(CompletableFuture::join)).containsOnly("[\"Zeus\"]");
+        then(calls.get()).isEqualTo(1);
+        then(singleFlight.saved()).isEqualTo(9);
+        then(singleFlight.inFlight()).isZero();
+    }
+
+    @Test
+    public void given_completedCall_when_execute_then_newCallTest() {
+
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        AtomicInteger calls = new AtomicInteger();
+
+        singleFlight.execute("/greek", () -> CompletableFuture.completedFuture("v" + calls.incrementAndGet())).join();
+
+        then(singleFlight.execute("/greek", () -> CompletableFuture.completedFuture("v" + calls.incrementAndGet())).join())
+                .isEqualTo("v2");
+        then(singleFlight.saved()).isZero();
+    }
+
+    @Test
+    public void given_oneWaiterTimesOut_when_execute_then_sharedCallContinuesTest() {
+
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+
+        CompletableFuture<String> impatient = singleFlight.execute("/greek", () -> upstream);
+        CompletableFuture<String> patient = singleFlight.execute("/greek", () -> upstream);
+        //The timeout starts once both wait, otherwise a slow test thread leaves impatient alone
+        impatient.orTimeout(10, TimeUnit.MILLISECONDS);
+
+        thenThrownBy(impatient::join).hasCauseInstanceOf(TimeoutException.class);
+        then(upstream.isCancelled()).isFalse();
+
+        upstream.complete("[\"Zeus\"]");
+        then(patient.join()).isEqualTo("[\"Zeus\"]");
+    }
+
+    @Test
+    public void given_everyWaiterCancels_when_execute_then_sharedCallIsCancelledTest() {
+
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+
+        CompletableFuture<String> first = singleFlight.execute("/greek", () -> upstream);
+        CompletableFuture<String> second = singleFlight.execute("/greek", () -> upstream);
+
+        first.cancel(true);
+        then(upstream.isCancelled()).isFalse();
+        second.cancel(true);
+        then(upstream.isCancelled()).isTrue();
+
+        //A new caller does not join the abandoned call
+        then(singleFlight.execute("/greek", () -> CompletableFuture.completedFuture("new")).join()).isEqualTo("new");
+    }
+
+    @Test
+    public void given_failedCall_when_execute_then_everyWaiterFailsTest() {
+
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+
+        CompletableFuture<String> first = singleFlight.execute("/greek", () -> upstream);
+        CompletableFuture<String> second = singleFlight.execute("/greek", () -> upstream);
+        upstream.completeExceptionally(new RuntimeException("Bad Request"));
+
+        thenThrownBy(first::join).isInstanceOf(CompletionException.class);
+        thenThrownBy(second::join).isInstanceOf(CompletionException.class);
+    }
+
+}
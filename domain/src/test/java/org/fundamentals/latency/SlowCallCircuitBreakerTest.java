@@ -0,0 +1,159 @@
+package org.fundamentals.latency;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+public class SlowCallCircuitBreakerTest {
+
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(600);
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final AtomicLong clock = new AtomicLong(TimeUnit.SECONDS.toNanos(100));
+
+    private SlowCallCircuitBreaker breaker() {
+        return new SlowCallCircuitBreaker("roman", SlowCallCircuitBreaker.DEFAULT_CONFIG, clock::get);
+    }
+
+    private void advance(Duration duration) {
+        clock.addAndGet(duration.toNanos());
+    }
+
+    //A call which lasts the given time on the clock of the breaker
+    private CompletableFuture<String> call(SlowCallCircuitBreaker breaker, long nanos, boolean failed) {
+        return breaker.executeAsync(() -> {
+            clock.addAndGet(nanos);
+            return failed
+                    ? CompletableFuture.failedFuture(new RuntimeException("Katakroker"))
+                    : CompletableFuture.completedFuture("Mars");
+        });
+    }
+
+    @Test
+    public void given_slowCalls_when_rateAboveThreshold_then_openTest() {
+
+        SlowCallCircuitBreaker breaker = breaker();
+
+        //Below the minimum calls the rate is not evaluated
+        IntStream.range(0, 4).forEach(i -> call(breaker, SLOW, false));
+        then(breaker.state()).isEqualTo(SlowCallCircuitBreaker.State.CLOSED);
+
+        call(breaker, SLOW, false);
+        then(breaker.state()).isEqualTo(SlowCallCircuitBreaker.State.OPEN);
+        then(breaker.transitions()).hasSize(1);
+        then(breaker.transitions().get(0).getTo()).isEqualTo(SlowCallCircuitBreaker.State.OPEN);
+        then(breaker.transitions().get(0).getSlowCallRate()).isEqualTo(1.0);
+
+        then(call(breaker, FAST, false))
+                .hasFailedWithThrowableThat()
+                .isInstanceOf(RejectedExecutionException.class);
+    }
+
+    @Test
+    public void given_fastCallsAndFailures_when_failureRateAboveThreshold_then_openTest() {
+
+        SlowCallCircuitBreaker breaker = breaker();
+
+        IntStream.range(0, 3).forEach(i -> call(breaker, FAST, false));
+        IntStream.range(0, 3).forEach(i -> call(breaker, FAST, true));
+
+        then(breaker.state()).isEqualTo(SlowCallCircuitBreaker.State.OPEN);
+        then(breaker.transitions().get(0).getFailureRate()).isEqualTo(0.5);
+    }
+
+    @Test
+    public void given_oldSlowCalls_when_outOfWindow_then_notCountedTest() {
+
+        SlowCallCircuitBreaker breaker = breaker();
+
+        IntStream.range(0, 4).forEach(i -> call(breaker, SLOW, false));
+        advance(Duration.ofSeconds(11));
+        IntStream.range(0, 4).forEach(i -> call(breaker, FAST, false));
+
+        then(breaker.state()).isEqualTo(SlowCallCircuitBreaker.State.CLOSED);
+        then(breaker.stats().getCalls()).isEqualTo(4);
+        then(breaker.stats().getSlowCallRate()).isEqualTo(0.0);
+    }
+
+    @Test
+    public void given_openBreaker_when_waitInOpen_then_singleProbeTest() {
+
+        SlowCallCircuitBreaker breaker = breaker();
+        IntStream.range(0, 5).forEach(i -> call(breaker, SLOW, false));
+        advance(Duration.ofSeconds(2));
+
+        //The probe is in flight, the other calls are rejected
+        AtomicInteger sent = new AtomicInteger();
+        CompletableFuture<String> probe = new CompletableFuture<>();
+        CompletableFuture<String> first = breaker.executeAsync(() -> {
+            sent.incrementAndGet();
+            return probe;
+        });
+        var others = IntStream.range(0, 3)
+                .mapToObj(i -> breaker.executeAsync(() -> {
+                    sent.incrementAndGet();
+                    return CompletableFuture.completedFuture("Venus");
+                }))
+                .collect(Collectors.toUnmodifiableList());
+
+        then(breaker.state()).isEqualTo(SlowCallCircuitBreaker.State.HALF_OPEN);
+        then(sent.get()).isEqualTo(1);
+        then(others).allMatch(CompletableFuture::isCompletedExceptionally);
+
+        probe.complete("Mars");
+        then(first.join()).isEqualTo("Mars");
+        then(breaker.state()).isEqualTo(SlowCallCircuitBreaker.State.CLOSED);
+        then(breaker.stats().getCalls()).isZero();
+    }
+
+    @Test
+    public void given_halfOpenBreaker_when_slowProbe_then_openAgainTest() {
+
+        SlowCallCircuitBreaker breaker = breaker();
+        IntStream.range(0, 5).forEach(i -> call(breaker, SLOW, false));
+        advance(Duration.ofSeconds(2));
+
+        call(breaker, SLOW, false);
+        then(breaker.state()).isEqualTo(SlowCallCircuitBreaker.State.OPEN);
+
+        //Open again for waitInOpen
+        advance(Duration.ofMillis(500));
+        then(call(breaker, FAST, false)).isCompletedExceptionally();
+        advance(Duration.ofMillis(600));
+        then(call(breaker, FAST, false)).isCompletedWithValue("Mars");
+
+        then(breaker.transitions())
+                .extracting(SlowCallCircuitBreaker.Transition::getTo)
+                .containsExactly(
+                        SlowCallCircuitBreaker.State.OPEN,
+                        SlowCallCircuitBreaker.State.HALF_OPEN,
+                        SlowCallCircuitBreaker.State.OPEN,
+                        SlowCallCircuitBreaker.State.HALF_OPEN,
+                        SlowCallCircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    public void given_flappingUpstream_when_transitions_then_onlyTheLastOnesTest() {
+
+        SlowCallCircuitBreaker breaker = breaker();
+
+        IntStream.range(0, SlowCallCircuitBreaker.MAX_TRANSITIONS).forEach(i -> {
+            IntStream.range(0, 5).forEach(j -> call(breaker, SLOW, false));
+            advance(Duration.ofSeconds(2));
+            call(breaker, FAST, false);
+        });
+
+        then(breaker.transitions()).hasSize(SlowCallCircuitBreaker.MAX_TRANSITIONS);
+        then(breaker.transitions().get(SlowCallCircuitBreaker.MAX_TRANSITIONS - 1).getTo())
+                .isEqualTo(SlowCallCircuitBreaker.State.CLOSED);
+    }
+
+}
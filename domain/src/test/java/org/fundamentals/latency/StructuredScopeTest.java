@@ -0,0 +1,126 @@
+package org.fundamentals.latency;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+public class StructuredScopeTest {
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @AfterEach
+    public void teardown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void given_fastSubtasks_when_joinUntil_then_allSucceedTest() throws Exception {
+
+        try (StructuredScope<String> scope = new StructuredScope<>(executor)) {
+
+            StructuredScope.Subtask<String> greek = scope.fork(() -> "Zeus");
+            StructuredScope.Subtask<String> nordic = scope.fork(() -> "Odin");
+            scope.joinUntil(Instant.now().plusSeconds(1));
+
+            then(greek.state()).isEqualTo(StructuredScope.State.SUCCESS);
+            then(greek.get()).isEqualTo("Zeus");
+            then(nordic.get()).isEqualTo("Odin");
+            then(scope.isDone()).isTrue();
+        }
+    }
+
+    @Test
+    public void given_slowSubtask_when_deadline_then_cancelledAndThreadReleasedTest() throws Exception {
+
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean interrupted = new AtomicBoolean();
+        AtomicBoolean left = new AtomicBoolean();
+        StructuredScope.Subtask<String> slow;
+
+        try (StructuredScope<String> scope = new StructuredScope<>(executor)) {
+
+            slow = scope.fork(() -> {
+                started.countDown();
+                try {
+                    Thread.sleep(5_000);
+                } catch (InterruptedException ex) {
+                    interrupted.set(true);
+                    throw ex;
+                } finally {
+                    left.set(true);
+                }
+                return "Zeus";
+            });
+            StructuredScope.Subtask<String> fast = scope.fork(() -> "Odin");
+            started.await(1, TimeUnit.SECONDS);
+            scope.joinUntil(Instant.now().plusMillis(100));
+
+            then(fast.get()).isEqualTo("Odin");
+        }
+
+        //close() returns once the slow subtask has left its thread
+        then(slow.state()).isEqualTo(StructuredScope.State.CANCELLED);
+        then(interrupted.get()).isTrue();
+        then(left.get()).isTrue();
+    }
+
+    @Test
+    public void given_failingSubtask_when_joinUntil_then_siblingsUnaffectedTest() throws Exception {
+
+        try (StructuredScope<String> scope = new StructuredScope<>(executor)) {
+
+            StructuredScope.Subtask<String> failing = scope.fork(() -> {
+                throw new IOException("Connection refused");
+            });
+            StructuredScope.Subtask<String> nordic = scope.fork(() -> "Odin");
+            scope.joinUntil(Instant.now().plusSeconds(1));
+
+            then(failing.state()).isEqualTo(StructuredScope.State.FAILED);
+            then(failing.exception()).isInstanceOf(IOException.class);
+            then(nordic.get()).isEqualTo("Odin");
+        }
+    }
+
+    @Test
+    public void given_shutdownScope_when_fork_then_cancelledTest() {
+
+        try (StructuredScope<String> scope = new StructuredScope<>(executor)) {
+
+            scope.shutdown();
+
+            then(scope.fork(() -> "Zeus").state()).isEqualTo(StructuredScope.State.CANCELLED);
+        }
+    }
+
+    @Test
+    public void given_queuedSubtask_when_close_then_notWaitingForTheExecutorTest() {
+
+        //The executor keeps the subtasks queued until the test runs them
+        List<Runnable> queue = new ArrayList<>();
+        StructuredScope<String> scope = new StructuredScope<>(queue::add);
+        StructuredScope.Subtask<String> greek = scope.fork(() -> "Zeus");
+
+        long start = System.nanoTime();
+        scope.close();
+
+        then(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(500);
+        then(greek.state()).isEqualTo(StructuredScope.State.CANCELLED);
+
+        //The late run of the cancelled subtask is not counted twice
+        queue.forEach(Runnable::run);
+        then(scope.isDone()).isTrue();
+        then(scope.fork(() -> "Odin").state()).isEqualTo(StructuredScope.State.CANCELLED);
+        then(scope.isDone()).isTrue();
+    }
+
+}
@@ -0,0 +1,223 @@
+package org.fundamentals.latency;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+
+public class TieredStoreTest {
+
+    @TempDir
+    Path directory;
+
+    WireMockServer wireMockServer;
+
+    @BeforeEach
+    public void setup () {
+        wireMockServer = new WireMockServer(8090);
+        wireMockServer.start();
+    }
+
+    @AfterEach
+    public void teardown () {
+        wireMockServer.stop();
+    }
+
+    //Compaction is triggered by the tests
+    private TieredStore<String> store(int segmentSize, int l1MaxEntries) {
+        return new TieredStore<>(
+                new TieredStore.Config(directory, segmentSize, l1MaxEntries, 0.5, 3600),
+                buffer -> StandardCharsets.UTF_8.decode(buffer).toString());
+    }
+
+    private static long segments(Path directory) throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    public void given_storedValues_when_get_then_serveFromL1OrL2Test() {
+
+        try (TieredStore<String> store = store(1024, 1)) {
+
+            store.put("zeus", "Ζεύς".getBytes(StandardCharsets.UTF_8));
+            store.put("hera", "Ἥρα".getBytes(StandardCharsets.UTF_8));
+
+            then(store.get("zeus")).contains("Ζεύς");
+            then(store.get("zeus")).contains("Ζεύς");
+            then(store.get("hera")).contains("Ἥρα");
+            then(store.get("ares")).isEmpty();
+
+            then(store.stats()).isEqualTo(new TieredStore.Stats(1, 2, 1, 0));
+        }
+    }
+
+    @Test
+    public void given_restart_when_get_then_indexIsRebuiltTest() {
+
+        try (TieredStore<String> store = store(64, 16)) {
+            store.put("zeus", "v1".getBytes(StandardCharsets.UTF_8));
+            store.put("hera", "hera".getBytes(StandardCharsets.UTF_8));
+            store.put("zeus", "v2".getBytes(StandardCharsets.UTF_8));
+            store.remove("hera");
+            store.put("a-large-value", "x".repeat(200).getBytes(StandardCharsets.UTF_8));
+        }
+
+        try (TieredStore<String> store = store(64, 16)) {
+
+            then(store.size()).isEqualTo(2);
+            then(store.get("zeus")).contains("v2");
+            then(store.get("hera")).isEmpty();
+            then(store.get("a-large-value")).contains("x".repeat(200));
+        }
+    }
+
+    @Test
+    public void given_overwrittenValues_when_compact_then_oldSegmentsAreDeletedTest() throws Exception {
+
+        try (TieredStore<String> store = store(64, 16)) {
+
+            for (int i = 0; i < 20; i++) {
+                store.put("zeus", ("zeus-" + i).getBytes(StandardCharsets.UTF_8));
+                store.put("hera", ("hera-" + i).getBytes(StandardCharsets.UTF_8));
+            }
+            long before = segments(directory);
+
+            store.compact();
+
+            then(segments(directory)).isLessThan(before);
+            then(store.stats().getCompactions()).isPositive();
+            then(store.get("zeus")).contains("zeus-19");
+            then(store.get("hera")).contains("hera-19");
+        }
+
+        try (TieredStore<String> store = store(64, 16)) {
+            then(store.get("zeus")).contains("zeus-19");
+        }
+    }
+
+    @Test
+    public void given_tombstoneSegmentCompactedFirst_when_restart_then_removedValueStaysRemovedTest() {
+
+        try (TieredStore<String> store = store(128, 16)) {
+
+            //Segment 0 keeps little garbage, it is not compacted
+            store.put("hades", "x".repeat(10).getBytes(StandardCharsets.UTF_8));
+            store.put("hera", "h".repeat(85).getBytes(StandardCharsets.UTF_8));
+            //Segment 1 has the tombstone and an overwritten value
+            store.remove("hades");
+            store.put("zeus", "a".repeat(30).getBytes(StandardCharsets.UTF_8));
+            store.put("zeus", "b".repeat(30).getBytes(StandardCharsets.UTF_8));
+            store.put("ares", "c".repeat(40).getBytes(StandardCharsets.UTF_8));
+
+            store.compact();
+
+            then(store.stats().getCompactions()).isEqualTo(1);
+        }
+
+        try (TieredStore<String> store = store(128, 16)) {
+
+            then(store.get("hades")).isEmpty();
+            then(store.get("hera")).contains("h".repeat(85));
+            then(store.get("zeus")).contains("b".repeat(30));
+        }
+    }
+
+    @Test
+    public void given_tornRecord_when_restart_then_loadStopsBeforeItTest() throws Exception {
+
+        try (TieredStore<String> store = store(1024, 16)) {
+            store.put("zeus", "v-zeus".getBytes(StandardCharsets.UTF_8));
+            store.put("hera", "v-hera".getBytes(StandardCharsets.UTF_8));
+            store.put("ares", "v-ares".getBytes(StandardCharsets.UTF_8));
+        }
+
+        //The process died while the value of hera was written
+        Path segment = directory.resolve(String.format("%s%019d%s", TieredStore.SEGMENT_PREFIX, 0, TieredStore.SEGMENT_SUFFIX));
+        byte[] bytes = Files.readAllBytes(segment);
+        bytes[new String(bytes, StandardCharsets.ISO_8859_1).indexOf("v-hera") + 2] = 0;
+        Files.write(segment, bytes);
+
+        try (TieredStore<String> store = store(1024, 16)) {
+
+            then(store.get("zeus")).contains("v-zeus");
+            then(store.get("hera")).isEmpty();
+            then(store.get("ares")).isEmpty();
+
+            store.put("athena", "v-athena".getBytes(StandardCharsets.UTF_8));
+        }
+
+        //The torn record was overwritten by the next append
+        try (TieredStore<String> store = store(1024, 16)) {
+
+            then(store.size()).isEqualTo(2);
+            then(store.get("athena")).contains("v-athena");
+        }
+    }
+
+    @Test
+    public void given_storedPage_when_fetchAsync_then_upstreamIsCalledOnceTest() throws Exception {
+
+        wireMockServer.stubFor(get(urlEqualTo("/wiki/Zeus"))
+                .willReturn(aResponse().withHeader("Content-Type", "text/html; charset=utf-8")
+                        .withStatus(200)
+                        .withBody("<html>Zeus</html>")));
+
+        URL url = new URL("http://localhost:8090/wiki/Zeus");
+
+        try (TieredStore<Integer> store = new TieredStore<>(
+                new TieredStore.Config(directory, 1024, 16, 0.5, 3600), ByteBuffer::remaining)) {
+
+            then(store.fetchAsync(url).join()).isEqualTo(17);
+        }
+        try (TieredStore<Integer> store = new TieredStore<>(
+                new TieredStore.Config(directory, 1024, 16, 0.5, 3600), ByteBuffer::remaining)) {
+
+            then(store.fetchAsync(url).join()).isEqualTo(17);
+            then(store.stats().getL2Hits()).isEqualTo(1);
+        }
+        wireMockServer.verify(1, getRequestedFor(urlEqualTo("/wiki/Zeus")));
+    }
+
+    @Test
+    public void given_slowPage_when_fetchAsyncWithDeadline_then_failsAtTheDeadlineTest() throws Exception {
+
+        wireMockServer.stubFor(get(urlEqualTo("/wiki/Hades"))
+                .willReturn(aResponse().withHeader("Content-Type", "text/html; charset=utf-8")
+                        .withStatus(200)
+                        .withBody("<html>Hades</html>")
+                        .withFixedDelay(2000)));
+
+        URL url = new URL("http://localhost:8090/wiki/Hades");
+
+        try (TieredStore<Integer> store = new TieredStore<>(
+                new TieredStore.Config(directory, 1024, 16, 0.5, 3600), ByteBuffer::remaining)) {
+
+            long start = System.nanoTime();
+            CompletableFuture<Integer> future = Deadline.after(Duration.ofMillis(200)).call(() -> store.fetchAsync(url));
+
+            thenThrownBy(future::join).isInstanceOf(CompletionException.class);
+            then(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofMillis(1500));
+            then(store.size()).isZero();
+        }
+    }
+
+}
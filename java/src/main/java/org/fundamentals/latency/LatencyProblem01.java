@@ -5,6 +5,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import io.vavr.control.Try;
 import java.math.BigInteger;
 import java.net.URL;
+import java.time.Duration;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
@@ -42,11 +43,14 @@ public class LatencyProblem01 {
     private List<String> listOfGods;
     private ExecutorService executor;
     private int TIMEOUT;
+    //Learns the latency of every list, TIMEOUT is the ceiling
+    AdaptiveTimeout timeouts;
 
     public LatencyProblem01(List<String> listOfGods, ExecutorService executor, int timeout) {
         this.listOfGods = listOfGods;
         this.executor = executor;
         this.TIMEOUT = timeout;
+        this.timeouts = new AdaptiveTimeout(AdaptiveTimeout.config(Duration.ofSeconds(timeout)));
     }
 
     Function<String, URL> toURL = address -> Try.of(() ->
@@ -81,21 +85,27 @@ public class LatencyProblem01 {
     Function<URL, CompletableFuture<String>> fetchAsync = address -> {
 
         LOGGER.info("Thread: {}", Thread.currentThread().getName());
-        return CompletableFuture
-                .supplyAsync(() -> fetch.andThen(log).apply(address), executor)
+        //On timeout the fetch is interrupted, so the pool thread is not held until the upstream answers
+        CompletableFuture<String> request = Cancellation.supplyAsync(() -> fetch.andThen(log).apply(address), executor);
+        //The timeout is on the request, so a fast failure is not learnt as a fast answer
+        return Cancellation.propagate(timeouts.completeOnTimeout(address, request, DEFAULT_FETCH_ERROR)
                 .exceptionally(ex -> {
                     LOGGER.error(ex.getLocalizedMessage(), ex);
                     return DEFAULT_FETCH_ERROR;
-                })
-                .completeOnTimeout(DEFAULT_FETCH_ERROR, TIMEOUT, TimeUnit.SECONDS);
+                }), request);
     };
 
+    //Concurrent solutions of this problem asking for the same list share the request,
+    //other instances have their own executor and transport and do not join it.
+    //When the last waiter leaves, the fetch is interrupted and its pool thread released
+    private final SingleFlight<String, String> inFlight = new SingleFlight<>();
+
     Function<URL, CompletableFuture<String>> fetchAsyncJ9 = address -> {
 
         LOGGER.info("Thread: {}", Thread.currentThread().getName());
-        return CompletableFuture
-                .supplyAsync(() -> fetch.andThen(log).apply(address), executor)
-                .orTimeout(TIMEOUT, TimeUnit.SECONDS)
+        return timeouts.orTimeout(address, inFlight
+                .execute(address.toString(), () -> Cancellation
+                        .supplyAsync(() -> fetch.andThen(log).apply(address), executor)))
                 .handle((response, ex) -> {
                     if(!Objects.isNull(ex)) {
                         LOGGER.error(ex.getLocalizedMessage(), ex);
@@ -108,16 +118,26 @@ public class LatencyProblem01 {
     Function<URL, CompletableFuture<String>> fetchAsyncJ8 = address -> {
 
         LOGGER.info("Thread: {}", Thread.currentThread().getName());
-        return CompletableFuture
-                .supplyAsync(() ->
-                    fetch.andThen(log).apply(address), executor)
+        CompletableFuture<String> request = Cancellation.supplyAsync(() ->
+                    fetch.andThen(log).apply(address), Deadline.propagating(executor));
+        return Cancellation.propagate(request
                 .handle((response, ex) -> {
                     if(!Objects.isNull(ex)) {
                         LOGGER.error(ex.getLocalizedMessage(), ex);
                         return DEFAULT_FETCH_ERROR;
                     }
                     return response;
-                });
+                }), request);
+    };
+
+    Function<URL, CompletableFuture<String>> fetchNonBlocking = address -> {
+        CompletableFuture<String> request = SimpleCurl.fetchAsync.apply(address);
+        return Cancellation.propagate(timeouts.completeOnTimeout(address, request, DEFAULT_FETCH_ERROR)
+                .thenApply(log)
+                .exceptionally(ex -> {
+                    LOGGER.error(ex.getLocalizedMessage(), ex);
+                    return DEFAULT_FETCH_ERROR;
+                }), request);
     };
 
     Function<List<String>, Stream<String>> fetchListAsync = s -> {
@@ -148,22 +168,37 @@ public class LatencyProblem01 {
         return completableFuture.join().stream().flatMap(serialize);
     };
 
+    //The lists are awaited one by one, every wait only uses what is left of the same Deadline,
+    //so the solution takes TIMEOUT in the worst case instead of N x TIMEOUT
     Function<List<String>, Stream<String>> fetchListAsyncJ8 = s -> {
-        List<CompletableFuture<String>> futureRequests = s.stream()
+        Deadline deadline = Deadline.after(Duration.ofSeconds(TIMEOUT));
+        List<CompletableFuture<String>> futureRequests = deadline.call(() -> s.stream()
                 .map(toURL.andThen(fetchAsyncJ8))
-                .collect(toList());
+                .collect(toList()));
 
         return futureRequests.stream()
                 .map(cf -> {
                     try {
-                        return cf.get(TIMEOUT, TimeUnit.SECONDS);
+                        return cf.get(deadline.remainingNanos(), TimeUnit.NANOSECONDS);
                     } catch (InterruptedException | ExecutionException | TimeoutException e) {
+                        cf.cancel(true);
                         return DEFAULT_FETCH_ERROR;
                     }
                 })
                 .flatMap(serialize);
     };
 
+    Function<List<String>, CompletableFuture<Stream<String>>> fetchListNonBlocking = s -> {
+        List<CompletableFuture<String>> futureRequests = s.stream()
+                .map(toURL.andThen(fetchNonBlocking))
+                .collect(toList());
+
+        return CompletableFuture.allOf(futureRequests.toArray(CompletableFuture[]::new))
+                .thenApply(v -> futureRequests.stream()
+                        .map(CompletableFuture::join)
+                        .flatMap(serialize));
+    };
+
     Function<Stream<String>, Stream<String>> filterGods = ls -> ls
             .filter(godStartingByn)
             .peek(print);
@@ -188,6 +223,92 @@ public class LatencyProblem01 {
                 .apply(listOfGods);
     }
 
+    public CompletableFuture<BigInteger> JavaNonBlockingSolution() {
+
+        return fetchListNonBlocking
+                .apply(listOfGods)
+                .thenApply(filterGods.andThen(sum));
+    }
+
+    //Names are filtered and summed while the body arrives, one partial sum per list
+    Function<URL, CompletableFuture<BigInteger>> fetchSumStreaming = address -> {
+        CompletableFuture<BigInteger> request = Cancellation.supplyAsync(() -> {
+            try (Stream<String> names = SimpleCurl.fetchNames.apply(address)) {
+                return filterGods.andThen(sum).apply(names);
+            }
+        }, executor);
+        return Cancellation.propagate(timeouts.completeOnTimeout(address, request, BigInteger.ZERO)
+                .exceptionally(ex -> {
+                    LOGGER.error(ex.getLocalizedMessage(), ex);
+                    return BigInteger.ZERO;
+                }), request);
+    };
+
+    public BigInteger JavaStreamingSolution() {
+
+        List<CompletableFuture<BigInteger>> partialSums = listOfGods.stream()
+                .map(toURL.andThen(fetchSumStreaming))
+                .collect(toList());
+
+        return partialSums.stream()
+                .map(CompletableFuture::join)
+                .reduce(BigInteger.ZERO, BigInteger::add);
+    }
+
+    //The lists rarely change, so repeated calls are answered from the cache or revalidated with a 304
+    HttpCache<List<String>> godsCache = new HttpCache<>(JsonNames.ofList());
+
+    Function<URL, CompletableFuture<List<String>>> fetchCached = address -> timeouts
+            .completeOnTimeout(address, godsCache.fetchAsync(address), List.of("FETCH_BAD_RESULT"))
+            .exceptionally(ex -> {
+                LOGGER.error(ex.getLocalizedMessage(), ex);
+                return List.of("FETCH_BAD_RESULT");
+            });
+
+    public CompletableFuture<BigInteger> JavaCachedSolution() {
+
+        List<CompletableFuture<List<String>>> futureRequests = listOfGods.stream()
+                .map(toURL.andThen(fetchCached))
+                .collect(toList());
+
+        return CompletableFuture.allOf(futureRequests.toArray(CompletableFuture[]::new))
+                .thenApply(v -> futureRequests.stream()
+                        .map(CompletableFuture::join)
+                        .flatMap(List::stream))
+                .thenApply(filterGods.andThen(sum));
+    }
+
+    //One subtask per list, the lists not fetched at the deadline are cancelled and
+    //no fetch thread is left running when the method returns
+    public BigInteger JavaStructuredSolution() {
+
+        Deadline deadline = Deadline.after(Duration.ofSeconds(TIMEOUT));
+        try (StructuredScope<String> scope = new StructuredScope<>(executor)) {
+
+            List<StructuredScope.Subtask<String>> subtasks = listOfGods.stream()
+                    .map(toURL)
+                    .map(address -> scope.fork(() -> deadline.call(() -> fetch.andThen(log).apply(address))))
+                    .collect(toList());
+
+            scope.joinUntil(deadline);
+
+            Stream<String> gods = subtasks.stream()
+                    .map(subtask -> {
+                        if (subtask.state() == StructuredScope.State.SUCCESS) {
+                            return subtask.get();
+                        }
+                        LOGGER.error("Subtask {}", subtask.state());
+                        return DEFAULT_FETCH_ERROR;
+                    })
+                    .flatMap(serialize);
+
+            return filterGods.andThen(sum).apply(gods);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        }
+    }
+
     public BigInteger JavaCFCompositionSolution() {
 
         return fetchListAsyncCFComposition
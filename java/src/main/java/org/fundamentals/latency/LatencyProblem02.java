@@ -5,11 +5,10 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import io.vavr.Tuple2;
 import io.vavr.control.Try;
 import java.net.URL;
+import java.time.Duration;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.stream.Stream;
 import lombok.extern.slf4j.Slf4j;
@@ -33,10 +32,26 @@ import static org.fundamentals.latency.SimpleCurl.log;
 @Slf4j
 public class LatencyProblem02 {
 
-    final int TIMEOUT = 15;
+    //Budget of a whole solution, every Wikipedia call only uses what is left of it
+    final Duration BUDGET = Duration.ofSeconds(15);
 
-    final String greekGods = "http://my-json-server.typicode.com/jabrena/latency-problems/greek";
-    final String wikipediaPath = "https://en.wikipedia.org/wiki/";
+    //Learns the latency of Wikipedia, a call never waits beyond the Deadline
+    AdaptiveTimeout timeouts = new AdaptiveTimeout(AdaptiveTimeout.config(BUDGET));
+
+    final String greekGods;
+    final String wikipediaPath;
+
+    public LatencyProblem02() {
+        this("http://my-json-server.typicode.com/jabrena/latency-problems/greek", "https://en.wikipedia.org/wiki/");
+    }
+
+    /**
+     * The list of gods and the Wikipedia pages from other servers, example: http://localhost:8090/wiki/
+     */
+    public LatencyProblem02(String greekGods, String wikipediaPath) {
+        this.greekGods = greekGods;
+        this.wikipediaPath = wikipediaPath;
+    }
 
     Function<String, URL> toURL = address -> Try.of(() ->
             new URL(address)).getOrElseThrow(ex -> {
@@ -53,11 +68,23 @@ public class LatencyProblem02 {
         throw new RuntimeException("Bad Serialization process", ex);
     });
 
+    //The gods list and Wikipedia are different hosts, a slow one only takes its own permits and threads.
+    //The threads of the hosts are shared by every instance of the problem
+    private static final HostBulkheads BULKHEADS = new HostBulkheads(HostBulkheads.DEFAULT_CONFIG);
+
+    Function<URL, String> fetchIsolated = url -> SimpleCurl.fetchIsolated
+            .apply(BULKHEADS)
+            .apply(url)
+            .join();
+
     Function<String, URL> buildWikipediaAddress = god -> Try.of(() ->
-            new URL(wikipediaPath + god)).get();
+            new URL(LatencyProblem02.this.wikipediaPath + god)).get();
 
+    //Only the size of the page is used, so the page is measured instead of downloaded in a String
     Function<String, Tuple2<String, Integer>> getWikipediaContent = god ->
-            new Tuple2<String, Integer>(god, fetch.apply(buildWikipediaAddress.apply(god)).length());
+            new Tuple2<String, Integer>(god, SimpleCurl.fetchContentLength
+                    .andThen(Math::toIntExact)
+                    .apply(buildWikipediaAddress.apply(god)));
 
     public String JavaStreamSolution() {
 
@@ -69,36 +96,41 @@ public class LatencyProblem02 {
                     .get()._1;
     }
 
-    private static ExecutorService executor = Executors.newFixedThreadPool(10);
+    private static ExecutorService executor = VirtualThreads.newExecutor(10, "LatencyProblem02");
 
     Function<String, CompletableFuture<Tuple2<String,Integer>>> fetchAsync = address -> {
 
         LOGGER.info("Thread: {}", Thread.currentThread().getName());
-        return CompletableFuture
-                .supplyAsync(() -> getWikipediaContent.apply(address), executor)
+        CompletableFuture<Tuple2<String,Integer>> request = SimpleCurl.<Tuple2<String,Integer>>isolated(BULKHEADS, url -> Cancellation
+                .supplyAsync(() -> getWikipediaContent.apply(address), Deadline.propagating(executor)))
+                .apply(buildWikipediaAddress.apply(address));
+        //The timeout is on the request, so a fast failure is not learnt as a fast answer
+        return Cancellation.propagate(timeouts
+                .completeOnTimeout(buildWikipediaAddress.apply(address), request, new Tuple2<String,Integer>(address + "-TIMEOUT", 0))
                 .exceptionally(ex -> {
                     LOGGER.error(ex.getLocalizedMessage(), ex);
                     return new Tuple2<String,Integer>(address + "-ERROR", 0);
-                })
-                .completeOnTimeout(new Tuple2<String,Integer>(address + "-TIMEOUT", 0), TIMEOUT, TimeUnit.SECONDS);
+                }), request);
     };
 
     public String JavaStreamSolutionAsync() {
 
-        List<CompletableFuture<Tuple2<String, Integer>>> futureRequests = Stream.of(greekGods)
-                .flatMap(toURL.andThen(fetch).andThen(serialize))
-                .map(fetchAsync)
-                .collect(toList());
+        return Deadline.after(BUDGET).call(() -> {
+            List<CompletableFuture<Tuple2<String, Integer>>> futureRequests = Stream.of(greekGods)
+                    .flatMap(toURL.andThen(fetchIsolated).andThen(serialize))
+                    .map(fetchAsync)
+                    .collect(toList());
 
-        return futureRequests.stream()
-                .map(CompletableFuture::join)
-                .peek(System.out::println)
-                .max((i, j) -> i._2.compareTo(j._2))
-                .get()._1;
+            return futureRequests.stream()
+                    .map(CompletableFuture::join)
+                    .peek(System.out::println)
+                    .max((i, j) -> i._2.compareTo(j._2))
+                    .get()._1;
+        });
     }
 
     Function<String, Stream<String>> fetchGods = s -> Stream.of(s)
-            .flatMap(toURL.andThen(fetch).andThen(log).andThen(serialize));
+            .flatMap(toURL.andThen(fetchIsolated).andThen(log).andThen(serialize));
 
     Function<Stream<String>, Stream<Tuple2<String, Integer>>> fetchWikipediaAsync = ls -> {
         List<CompletableFuture<Tuple2<String, Integer>>> futureRequests = ls
@@ -119,9 +151,94 @@ public class LatencyProblem02 {
 
     public String JavaStreamSolutionAsync2() {
 
-         return fetchGods
+         return Deadline.after(BUDGET).call(() -> fetchGods
                 .andThen(fetchWikipediaAsync)
                 .andThen(max)
-                .apply(greekGods);
+                .apply(greekGods));
+    }
+
+    Function<String, CompletableFuture<Tuple2<String, Integer>>> fetchWikipediaNonBlocking = god -> timeouts.completeOnTimeout(buildWikipediaAddress.apply(god), SimpleCurl
+            .isolated(BULKHEADS, SimpleCurl.fetchContentLengthAsync)
+            .apply(buildWikipediaAddress.apply(god))
+            .thenApply(length -> new Tuple2<String, Integer>(god, Math.toIntExact(length))),
+                new Tuple2<String, Integer>(god + "-TIMEOUT", 0))
+            .exceptionally(ex -> {
+                LOGGER.error(ex.getLocalizedMessage(), ex);
+                return new Tuple2<String, Integer>(god + "-ERROR", 0);
+            });
+
+    Function<Stream<String>, CompletableFuture<String>> fetchWikipediaNonBlockingList = ls -> {
+        List<CompletableFuture<Tuple2<String, Integer>>> futureRequests = ls
+                .map(fetchWikipediaNonBlocking)
+                .collect(toList());
+
+        return CompletableFuture.allOf(futureRequests.toArray(CompletableFuture[]::new))
+                .thenApply(v -> max.apply(futureRequests.stream().map(CompletableFuture::join)));
+    };
+
+    //Wikipedia pages are revalidated with ETag / Last-Modified instead of being downloaded again
+    HttpCache<List<String>> godsCache = new HttpCache<>(JsonNames.ofList());
+    HttpCache<Long> wikipediaCache = new HttpCache<>(BodyLength.of(BodyLength.Unit.BYTES));
+
+    Function<String, CompletableFuture<Tuple2<String, Integer>>> fetchWikipediaCached = god -> timeouts.completeOnTimeout(buildWikipediaAddress.apply(god), SimpleCurl
+            .isolated(BULKHEADS, wikipediaCache::fetchAsync)
+            .apply(buildWikipediaAddress.apply(god))
+            .thenApply(length -> new Tuple2<String, Integer>(god, Math.toIntExact(length))),
+                new Tuple2<String, Integer>(god + "-TIMEOUT", 0))
+            .exceptionally(ex -> {
+                LOGGER.error(ex.getLocalizedMessage(), ex);
+                return new Tuple2<String, Integer>(god + "-ERROR", 0);
+            });
+
+    public CompletableFuture<String> JavaCachedSolution() {
+
+        Deadline deadline = Deadline.after(BUDGET);
+        return SimpleCurl.isolated(BULKHEADS, godsCache::fetchAsync)
+                .apply(toURL.apply(greekGods))
+                .thenCompose(deadline.bind(gods -> {
+                    List<CompletableFuture<Tuple2<String, Integer>>> futureRequests = gods.stream()
+                            .map(fetchWikipediaCached)
+                            .collect(toList());
+
+                    return CompletableFuture.allOf(futureRequests.toArray(CompletableFuture[]::new))
+                            .thenApply(v -> max.apply(futureRequests.stream().map(CompletableFuture::join)));
+                }));
+    }
+
+    /**
+     * The pages are kept in a TieredStore owned by the caller, so a warm process
+     * (or a restarted one using the same directory) does not download them again.
+     */
+    public CompletableFuture<String> JavaStoredSolution(TieredStore<Integer> wikipediaStore) {
+
+        Deadline deadline = Deadline.after(BUDGET);
+        return SimpleCurl.isolated(BULKHEADS, godsCache::fetchAsync)
+                .apply(toURL.apply(greekGods))
+                .thenCompose(deadline.bind(gods -> {
+                    List<CompletableFuture<Tuple2<String, Integer>>> futureRequests = gods.stream()
+                            .map(god -> timeouts.completeOnTimeout(buildWikipediaAddress.apply(god), SimpleCurl
+                                    .isolated(BULKHEADS, wikipediaStore::fetchAsync)
+                                    .apply(buildWikipediaAddress.apply(god))
+                                    .thenApply(length -> new Tuple2<String, Integer>(god, length)),
+                                        new Tuple2<String, Integer>(god + "-TIMEOUT", 0))
+                                    .exceptionally(ex -> {
+                                        LOGGER.error(ex.getLocalizedMessage(), ex);
+                                        return new Tuple2<String, Integer>(god + "-ERROR", 0);
+                                    }))
+                            .collect(toList());
+
+                    return CompletableFuture.allOf(futureRequests.toArray(CompletableFuture[]::new))
+                            .thenApply(v -> max.apply(futureRequests.stream().map(CompletableFuture::join)));
+                }));
+    }
+
+    public CompletableFuture<String> JavaNonBlockingSolution() {
+
+        Deadline deadline = Deadline.after(BUDGET);
+        return deadline.call(() -> SimpleCurl.fetchAsyncIsolated
+                .apply(BULKHEADS)
+                .apply(toURL.apply(greekGods)))
+                .thenApply(serialize)
+                .thenCompose(deadline.bind(fetchWikipediaNonBlockingList));
     }
 }
@@ -4,11 +4,11 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.vavr.control.Try;
 import java.net.URL;
+import java.time.Duration;
 import java.util.EnumMap;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.stream.Stream;
 import lombok.extern.slf4j.Slf4j;
@@ -28,11 +28,14 @@ public class LatencyProblem03 {
     private EnumMap<GODS, String> godMap;
     private ExecutorService executor;
     private int TIMEOUT;
+    //Learns the latency of every god list, TIMEOUT is the ceiling
+    private AdaptiveTimeout timeouts;
 
     public LatencyProblem03(EnumMap<GODS, String> godMap, ExecutorService executor, int TIMEOUT) {
         this.godMap = godMap;
         this.executor = executor;
         this.TIMEOUT = TIMEOUT;
+        this.timeouts = new AdaptiveTimeout(AdaptiveTimeout.config(Duration.ofSeconds(TIMEOUT)));
     }
 
     Function<String, URL> toURL = address -> Try.of(() ->
@@ -41,18 +44,24 @@ public class LatencyProblem03 {
         throw new RuntimeException("Bad address", ex);
     });
 
+    //Concurrent callers of this problem asking for the same god list share the request,
+    //the timeout is applied to every waiter so the shared call is not cancelled by one of them.
+    //Other instances have their own executor and do not join it.
+    //When the last waiter leaves, the fetch is interrupted and its pool thread released
+    private final SingleFlight<String, String> inFlight = new SingleFlight<>();
+    private final SingleFlight<String, List<String>> inFlightNames = new SingleFlight<>();
+
     Function<URL, String> callAsync = url -> {
 
         LOGGER.info("Thread: {}", Thread.currentThread().getName());
-        return CompletableFuture
-                .supplyAsync(() -> fetch.apply(url), executor)
+        return timeouts.completeOnTimeout(url, inFlight
+                .execute(url.toString(), () -> Cancellation
+                        .supplyAsync(() -> fetch.apply(url), executor)),
+                        "FETCH_BAD_RESULT_TIMEOUT")
                 .exceptionally(ex -> {
                     LOGGER.error(ex.getLocalizedMessage(), ex);
                     return "FETCH_BAD_RESULT";
-                })
-                .completeOnTimeout(
-                        "FETCH_BAD_RESULT_TIMEOUT"
-                        ,TIMEOUT, TimeUnit.SECONDS).join();
+                }).join();
     };
 
     Function<String, Stream<String>> serialize = param -> Try.of(() -> {
@@ -64,6 +73,22 @@ public class LatencyProblem03 {
         throw new RuntimeException(ex);
     });
 
+    //The body is decoded while it arrives, it is never buffered in a String
+    Function<URL, CompletableFuture<List<String>>> callNonBlocking = url -> timeouts.completeOnTimeout(url, inFlightNames
+            .execute(url.toString(), () -> SimpleCurl.fetchNamesAsync.apply(url)), List.of("FETCH_BAD_RESULT_TIMEOUT"))
+            .exceptionally(ex -> {
+                LOGGER.error(ex.getLocalizedMessage(), ex);
+                return List.of("FETCH_BAD_RESULT");
+            });
+
+    public CompletableFuture<List<String>> JavaNonBlockingSolution(GODS god) {
+
+        return toURL
+                .andThen(callNonBlocking)
+                .apply(godMap.get(god))
+                .thenApply(List::copyOf);
+    }
+
     public List<String> JavaStreamSolutionAsync(GODS god) {
 
         return toURL
@@ -5,17 +5,19 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import io.vavr.CheckedFunction1;
 import io.vavr.Function1;
 import io.vavr.Function2;
+import io.vavr.Lazy;
 import io.vavr.control.Option;
 import io.vavr.control.Try;
 import java.math.BigDecimal;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
-import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -23,7 +25,6 @@ import lombok.NoArgsConstructor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
-import static org.fundamentals.latency.SimpleCurl.fetch;
 import static org.fundamentals.latency.SimpleCurl.log;
 
 /**
@@ -49,6 +50,11 @@ public class LatencyProblem04 {
         private List<String> list;
         private Executor executor;
         private int timeout;
+        private Transport transport;
+
+        public Config(List<String> list, Executor executor, int timeout) {
+            this(list, executor, timeout, Transport.getDefault());
+        }
     }
 
     @Data
@@ -65,6 +71,10 @@ public class LatencyProblem04 {
 
     private final Config config;
 
+    //Learns the latency of every upstream, the timeout of the Config is the ceiling
+    private final Lazy<AdaptiveTimeout> timeouts = Lazy.of(() ->
+            new AdaptiveTimeout(AdaptiveTimeout.config(Duration.ofSeconds(LatencyProblem04.this.config.getTimeout()))));
+
     Function<String, URL> toURLOld = address -> {
         try {
             return new URL(address);
@@ -94,13 +104,32 @@ public class LatencyProblem04 {
     Function2<URL, Config, CompletableFuture<String>> fetchAsync = (address, config) -> {
 
         LOGGER.info("Thread: {}", Thread.currentThread().getName());
-        return CompletableFuture
-                .supplyAsync(() -> fetch.andThen(log).apply(address), config.getExecutor())
+        CompletableFuture<String> request = Cancellation.supplyAsync(() -> SimpleCurl.fetchVia
+                .apply(config.getTransport())
+                .andThen(log)
+                .apply(address), config.getExecutor());
+        //The timeout is on the request, so a fast failure is not learnt as a fast answer
+        return Cancellation.propagate(timeouts.get().completeOnTimeout(address, request, "[\"FETCH_BAD_RESULT_TIMEOUT\"]")
+                .exceptionally(ex -> {
+                    LOGGER.error(ex.getLocalizedMessage(), ex);
+                    return "FETCH_BAD_RESULT";
+                }), request);
+    };
+
+    //The providers are different hosts, a slow provider gets fewer requests in flight instead of a queue of them
+    private final Lazy<AdaptiveLimiter> limiter = Lazy.of(() -> new AdaptiveLimiter(AdaptiveLimiter.DEFAULT_CONFIG));
+
+    Function2<URL, Config, CompletableFuture<String>> fetchNonBlocking = (address, config) -> {
+        CompletableFuture<String> request = SimpleCurl.fetchAsyncLimitedVia
+                .apply(config.getTransport())
+                .apply(limiter.get())
+                .apply(address);
+        return Cancellation.propagate(timeouts.get().completeOnTimeout(address, request, "[\"FETCH_BAD_RESULT_TIMEOUT\"]")
+                .thenApply(log)
                 .exceptionally(ex -> {
                     LOGGER.error(ex.getLocalizedMessage(), ex);
                     return "FETCH_BAD_RESULT";
-                })
-                .completeOnTimeout("[\"FETCH_BAD_RESULT_TIMEOUT\"]", config.getTimeout(), TimeUnit.SECONDS);
+                }), request);
     };
 
     Function<String, ExchangeRate> serialize = param -> Try.of(() -> {
@@ -112,6 +141,13 @@ public class LatencyProblem04 {
         throw new RuntimeException(ex);
     });
 
+    /**
+     * Concurrency limit of a provider host used by JavaNonBlockingSolution, example: localhost:8090
+     */
+    public AdaptiveLimiter.Stats limiterStats(String host) {
+        return limiter.get().stats(host);
+    }
+
     public BigDecimal JavaStreamSolution() {
 
         Stream<CompletableFuture<String>> requests = config.getList().stream()
@@ -128,6 +164,24 @@ public class LatencyProblem04 {
                 .getAsDouble());
     }
 
+    public CompletableFuture<BigDecimal> JavaNonBlockingSolution() {
+
+        List<CompletableFuture<String>> requests = config.getList().stream()
+                .map(toURL3)
+                .filter(Option::isDefined)
+                .map(o -> fetchNonBlocking.apply(o.get(), config))
+                .collect(Collectors.toList());
+
+        return CompletableFuture.allOf(requests.toArray(CompletableFuture[]::new))
+                .thenApply(v -> BigDecimal.valueOf(requests.stream()
+                        .map(CompletableFuture::join)
+                        .map(serialize)
+                        .map(er -> er.getRate())
+                        .mapToDouble(BigDecimal::doubleValue)
+                        .average()
+                        .getAsDouble()));
+    }
+
 }
 
 
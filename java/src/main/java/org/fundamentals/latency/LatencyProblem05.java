@@ -3,15 +3,19 @@ package org.fundamentals.latency;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.vavr.Function1;
+import io.vavr.Lazy;
 import io.vavr.Tuple;
 import io.vavr.Tuple2;
+import io.vavr.Tuple3;
 import io.vavr.control.Option;
 import io.vavr.control.Try;
 import java.net.URL;
+import java.time.Duration;
 import java.util.List;
 import java.util.Random;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.function.Predicate;
@@ -21,7 +25,6 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 import static java.util.stream.Collectors.toList;
-import static org.fundamentals.latency.SimpleCurl.fetch;
 import static org.fundamentals.latency.SimpleCurl.log;
 
 /**
@@ -50,10 +53,31 @@ public class LatencyProblem05 {
         private List<String> list;
         private Executor executor;
         private int timeout;
+        private LoadBalancer.Strategy strategy;
+        private Transport transport;
+        private HostBulkheads bulkheads;
+
+        public Config(List<String> list, Executor executor, int timeout) {
+            this(list, executor, timeout, LoadBalancer.Strategy.RANDOM);
+        }
+
+        public Config(List<String> list, Executor executor, int timeout, LoadBalancer.Strategy strategy) {
+            this(list, executor, timeout, strategy, Transport.getDefault());
+        }
+
+        public Config(List<String> list, Executor executor, int timeout, LoadBalancer.Strategy strategy, Transport transport) {
+            this(list, executor, timeout, strategy, transport, BULKHEADS);
+        }
     }
 
     private final Config config;
 
+    //Learns the latency of every replica, the timeout of the Config is the ceiling.
+    //The replicas may share a host, so the latencies are kept per address
+    private final Lazy<AdaptiveTimeout> timeouts = Lazy.of(() -> new AdaptiveTimeout(
+            AdaptiveTimeout.config(Duration.ofSeconds(LatencyProblem05.this.config.getTimeout())),
+            URL::toString));
+
     Function1<String, Option<URL>> toURL = address ->
             Try.of(() -> new URL(address))
                 .map(u -> Option.some(u))
@@ -61,18 +85,35 @@ public class LatencyProblem05 {
                 .recover(ex -> Option.none())
                 .get();
 
+    //A slow replica only takes its own permits, the calls to the healthy replicas go on.
+    //A call beyond the permits fails at once and counts as a failure of the replica
+    //The threads of the hosts are shared by every instance of the problem
+    static final HostBulkheads.Config BULKHEAD = new HostBulkheads.Config(100, Duration.ZERO, 10, 100);
+
+    static final HostBulkheads BULKHEADS = new HostBulkheads(BULKHEAD);
+
     Function<Tuple2<URL, Config>, CompletableFuture<String>> fetchAsync = (tuple) -> {
 
         LOGGER.info("Thread: {}", Thread.currentThread().getName());
-        return CompletableFuture
-                .supplyAsync(() -> fetch.andThen(log).apply(tuple._1), tuple._2().getExecutor())
+        CompletableFuture<String> request = SimpleCurl.<String>isolated(tuple._2().getBulkheads(), url -> CompletableFuture
+                .supplyAsync(() -> SimpleCurl.fetchVia.apply(tuple._2().getTransport()).andThen(log).apply(url), tuple._2().getExecutor()))
+                .apply(tuple._1);
+        //The timeout is on the request, so a fast failure is not learnt as a fast answer
+        return timeouts.get().completeOnTimeout(tuple._1, request, "[\"FETCH_BAD_RESULT_TIMEOUT\"]")
                 .exceptionally(ex -> {
                     LOGGER.error(ex.getLocalizedMessage(), ex);
                     return "FETCH_BAD_RESULT";
-                })
-                .completeOnTimeout("[\"FETCH_BAD_RESULT_TIMEOUT\"]", tuple._2.getTimeout(), TimeUnit.SECONDS);
+                });
     };
 
+    //The body is decoded while it arrives, it is never buffered in a String
+    Function<Tuple2<URL, Config>, CompletableFuture<List<String>>> fetchNonBlocking = (tuple) -> timeouts.get()
+            .completeOnTimeout(tuple._1, SimpleCurl.isolated(tuple._2.getBulkheads(), SimpleCurl.fetchNamesAsyncVia.apply(tuple._2.getTransport())).apply(tuple._1), List.of("FETCH_BAD_RESULT_TIMEOUT"))
+            .exceptionally(ex -> {
+                LOGGER.error(ex.getLocalizedMessage(), ex);
+                return List.of("FETCH_BAD_RESULT");
+            });
+
     Function<String, List<String>> serialize = param -> Try.of(() -> {
         ObjectMapper objectMapper = new ObjectMapper();
         List<String> deserializedData = objectMapper.readValue(param, new TypeReference<List<String>>() {});
@@ -90,16 +131,66 @@ public class LatencyProblem05 {
             .map(Option::get)
             .collect(toList());
 
-    Function1<Config, Tuple2<URL, Config>> loadBalance = config -> {
-        List<URL> validAddressList = validAddress.apply(config.getList());
-        Integer index = new Random().nextInt(validAddressList.size());
-        return Tuple.of(validAddressList.get(index), config);
+    //The addresses are validated once, a replica which fails or lags behind the others is ejected
+    //and a GET of the resource tells when it is back
+    private final Lazy<ReplicaHealth> health = Lazy.of(() -> new ReplicaHealth(
+            validAddress.apply(LatencyProblem05.this.config.getList()),
+            ReplicaHealth.DEFAULT_CONFIG,
+            SimpleCurl.fetchNamesAsyncVia.apply(LatencyProblem05.this.config.getTransport())));
+
+    //The balancer keeps the load and latency of every healthy replica
+    private final Lazy<LoadBalancer> balancer = Lazy.of(() -> new LoadBalancer(
+            health.get(),
+            LatencyProblem05.this.config.getStrategy()));
+
+    //The fetches replace their errors with a fallback, the fallback is a failure for the replica
+    Predicate<String> badResult = s -> s.contains("FETCH_BAD_RESULT");
+
+    <T> Function1<Config, CompletableFuture<T>> loadBalance(
+            Function<Tuple2<URL, Config>, CompletableFuture<T>> fetch, Predicate<T> failed) {
+        return config -> balancer.get().execute(url -> fetch.apply(Tuple.of(url, config)), failed);
+    }
+
+    public List<ReplicaHealth.Stats> health() {
+        return health.get().stats();
+    }
+
+    //Hedging keeps the observed latencies, so it lives as long as the problem instance
+    Hedging<List<String>> hedging = new Hedging<>(Hedging.DEFAULT_CONFIG);
+
+    //Primary and hedge replicas are different instances
+    Function1<Config, Tuple3<URL, URL, Config>> loadBalanceHedged = config -> {
+        List<URL> validAddressList = balancer.get().replicas();
+        Random random = ThreadLocalRandom.current();
+        int primary = random.nextInt(validAddressList.size());
+        int secondary = validAddressList.size() == 1
+                ? primary
+                : (primary + 1 + random.nextInt(validAddressList.size() - 1)) % validAddressList.size();
+        return Tuple.of(validAddressList.get(primary), validAddressList.get(secondary), config);
     };
 
+    Function<Tuple3<URL, URL, Config>, CompletableFuture<List<String>>> fetchHedged = replicas -> hedging
+            .execute(() -> SimpleCurl.isolated(replicas._3.getBulkheads(), SimpleCurl.fetchNamesAsyncVia.apply(replicas._3.getTransport())).apply(replicas._1),
+                    () -> SimpleCurl.isolated(replicas._3.getBulkheads(), SimpleCurl.fetchNamesAsyncVia.apply(replicas._3.getTransport())).apply(replicas._2))
+            .completeOnTimeout(List.of("FETCH_BAD_RESULT_TIMEOUT"), replicas._3.getTimeout(), TimeUnit.SECONDS)
+            .exceptionally(ex -> {
+                LOGGER.error(ex.getLocalizedMessage(), ex);
+                return List.of("FETCH_BAD_RESULT");
+            });
+
+    public CompletableFuture<List<String>> JavaHedgedSolution() {
+
+        return loadBalanceHedged
+                .andThen(fetchHedged)
+                .apply(config)
+                .thenApply(l -> l.stream()
+                        .filter(godStartingByA)
+                        .collect(toList()));
+    }
+
     public List<String> JavaStreamSolution() {
 
-        return loadBalance
-                .andThen(fetchAsync)
+        return loadBalance(fetchAsync, badResult)
                 .andThen(CompletableFuture::join)
                 .andThen(serialize)
                 .andThen(l -> l.stream()
@@ -109,6 +200,15 @@ public class LatencyProblem05 {
                 .apply(config);
     }
 
+    public CompletableFuture<List<String>> JavaNonBlockingSolution() {
+
+        return loadBalance(fetchNonBlocking, names -> names.stream().anyMatch(badResult))
+                .apply(config)
+                .thenApply(l -> l.stream()
+                        .filter(godStartingByA)
+                        .collect(toList()));
+    }
+
 }
 
 
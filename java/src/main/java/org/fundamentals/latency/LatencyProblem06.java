@@ -2,14 +2,12 @@ package org.fundamentals.latency;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import io.github.resilience4j.decorators.Decorators;
-import io.github.resilience4j.retry.Retry;
-import io.github.resilience4j.retry.RetryConfig;
 import io.vavr.Function1;
-import io.vavr.Function2;
+import io.vavr.Lazy;
 import io.vavr.control.Option;
 import io.vavr.control.Try;
 import java.net.URL;
+import java.time.Duration;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
@@ -23,7 +21,6 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 import static java.util.stream.Collectors.toUnmodifiableList;
-import static org.fundamentals.latency.SimpleCurl.fetch;
 
 /**
  * Feature: Consume a REST Greek God Service
@@ -75,10 +72,31 @@ public class LatencyProblem06 {
         private Executor executor;
         private int timeout;
         private int maxRetryAttempts;
+        private Transport transport;
+        //The retries of the process share a budget unless the Config has its own
+        private RetryPolicy.Budget retryBudget;
+
+        public Config(String address, Executor executor, int timeout, int maxRetryAttempts) {
+            this(address, executor, timeout, maxRetryAttempts, Transport.getDefault());
+        }
+
+        public Config(String address, Executor executor, int timeout, int maxRetryAttempts, Transport transport) {
+            this(address, executor, timeout, maxRetryAttempts, transport, RetryPolicy.GLOBAL_BUDGET);
+        }
     }
 
     private final Config config;
 
+    //Learns the latency of the address, the timeout of the Config is the ceiling
+    private final Lazy<AdaptiveTimeout> timeouts = Lazy.of(() ->
+            new AdaptiveTimeout(AdaptiveTimeout.config(Duration.ofSeconds(LatencyProblem06.this.config.getTimeout()))));
+
+    private <T> CompletableFuture<T> orTimeout(Config config, CompletableFuture<T> future) {
+        return Try.of(() -> new URL(config.getAddress()))
+                .map(url -> timeouts.get().orTimeout(url, future))
+                .getOrElse(() -> future.orTimeout(config.getTimeout(), TimeUnit.SECONDS));
+    }
+
     Function1<String, URL> toURL = address -> Try
         .of(() -> new URL(address))
         .onFailure(ex -> LOGGER.error(ex.getLocalizedMessage(), ex))
@@ -95,9 +113,8 @@ public class LatencyProblem06 {
 
     Function1<Config, CompletableFuture<Option<List<String>>>> fetchAsync = config ->
 
-        CompletableFuture
-            .supplyAsync(() -> toURL.andThen(fetch).apply(config.getAddress()), config.getExecutor())
-            .orTimeout(config.getTimeout(), TimeUnit.SECONDS)
+        orTimeout(config, SimpleCurl.metrics
+            .supplyAsync(config.getAddress(), () -> toURL.andThen(SimpleCurl.fetchVia.apply(config.getTransport())).apply(config.getAddress()), config.getExecutor()))
             .thenApply(serialize)
             .handle((response, ex) -> {
                 if(Objects.isNull(ex)) {
@@ -106,20 +123,18 @@ public class LatencyProblem06 {
                 return Option.none();
             });
 
-    Function1<Config, Option<List<String>>> fetchAsyncWithMetrics = config -> {
+    Function1<Config, CompletableFuture<Option<List<String>>>> fetchNonBlocking = config ->
 
-        long startTime = System.currentTimeMillis();
-
-        Option<List<String>> result = fetchAsync
-                .andThen(CompletableFuture::join)
-                .apply(config);
-
-        long stopTime = System.currentTimeMillis();
-        double elapsedTime = (stopTime - startTime) / 1000d;
-        LOGGER.debug("Async execution: {} seconds", elapsedTime);
-
-        return result;
-    };
+        orTimeout(config, CompletableFuture
+            .completedFuture(config.getAddress())
+            .thenApply(toURL)
+            .thenCompose(SimpleCurl.fetchNamesAsyncVia.apply(config.getTransport())))
+            .handle((response, ex) -> {
+                if(Objects.isNull(ex)) {
+                    return Option.some(response);
+                }
+                return Option.none();
+            });
 
     Predicate<String> godStartingByA = s -> s.toLowerCase().charAt(0) == 'a';
 
@@ -131,32 +146,40 @@ public class LatencyProblem06 {
                 .map(l -> Option.some(l))
                 .getOrElse(Option.none());
 
-    Function2<Supplier<Option<List<String>>>, Config, Supplier<Option<List<String>>>> retryBehaviour = (supplier, config) -> {
-
-        RetryConfig customConfig = RetryConfig.custom()
-                .maxAttempts(config.getMaxRetryAttempts())
-                .retryOnResult(r -> r.equals(Option.none()))
-                .build();
-
-        Retry retry = Retry.of("retry", customConfig);
-        retry.getEventPublisher().onRetry(event -> LOGGER.warn("Applying #Resilience4j Retry"));
+    //Reused by every call, the budget comes from the Config
+    private final Lazy<RetryPolicy> retryPolicy = Lazy.of(() -> new RetryPolicy(
+            RetryPolicy.config(LatencyProblem06.this.config.getMaxRetryAttempts()),
+            LatencyProblem06.this.config.getRetryBudget()));
+
+    //Built once, an Option.none() of the fetch is retried with back-off
+    private final Lazy<ResiliencePipeline<Option<List<String>>>> pipeline = Lazy.of(() ->
+            ResiliencePipeline.<Option<List<String>>>builder(LatencyProblem06.this.config.getAddress())
+                .retry(retryPolicy.get())
+                .failureOnResult(Option::isEmpty)
+                .fallback(ex -> {
+                    LOGGER.warn(ex.getLocalizedMessage(), ex);
+                    return Option.none();
+                })
+                .build());
+
+    private final Lazy<Supplier<CompletableFuture<Option<List<String>>>>> nonBlocking = Lazy.of(() ->
+            pipeline.get().decorate(() -> fetchNonBlocking.andThen(cf -> cf.thenApply(filterGreekGods)).apply(LatencyProblem06.this.config)));
+
+    private final Lazy<Supplier<CompletableFuture<Option<List<String>>>>> async = Lazy.of(() ->
+            pipeline.get().decorate(() -> fetchAsync.andThen(cf -> cf.thenApply(filterGreekGods)).apply(LatencyProblem06.this.config)));
+
+    public RetryPolicy.Stats retryStats() {
+        return retryPolicy.get().stats();
+    }
 
-        Supplier<Option<List<String>>> decoratedSupplier = Decorators.ofSupplier(supplier)
-                .withRetry(retry)
-                .decorate();
+    public CompletableFuture<Option<List<String>>> JavaNonBlockingSolution() {
 
-        return decoratedSupplier;
-    };
+        return nonBlocking.get().get();
+    }
 
     public Option<List<String>> JavaStreamSolution() {
 
-        final Supplier<Option<List<String>>> supplier = () ->
-                fetchAsyncWithMetrics.andThen(filterGreekGods).apply(config);
-
-        return Try.ofSupplier(retryBehaviour.apply(supplier, config))
-                .onFailure(ex -> LOGGER.warn(ex.getLocalizedMessage(), ex))
-                .recover(ex -> Option.none())
-                .get();
+        return async.get().get().join();
     }
 
 }
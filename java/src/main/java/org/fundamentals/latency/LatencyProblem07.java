@@ -4,11 +4,8 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
-import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
-import io.github.resilience4j.core.SupplierUtils;
-import io.github.resilience4j.decorators.Decorators;
 import io.vavr.Function1;
-import io.vavr.Function2;
+import io.vavr.Lazy;
 import io.vavr.control.Option;
 import io.vavr.control.Try;
 import java.net.URL;
@@ -27,7 +24,6 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 import static java.util.stream.Collectors.toUnmodifiableList;
-import static org.fundamentals.latency.SimpleCurl.fetch;
 
 /**
  * Feature: Consume a REST Roman God Service
@@ -54,6 +50,13 @@ import static org.fundamentals.latency.SimpleCurl.fetch;
 @RequiredArgsConstructor
 public class LatencyProblem07 {
 
+    public enum Breaker {
+        //Opens on failures, resilience4j
+        FAILURES,
+        //Opens on slow calls or failures in a time window
+        SLOW_CALLS
+    }
+
     @Data
     @AllArgsConstructor
     public static class Config {
@@ -61,34 +64,49 @@ public class LatencyProblem07 {
         private String address;
         private Executor executor;
         private int timeout;
+        private Breaker breaker;
+        private Transport transport;
+
+        public Config(String address, Executor executor, int timeout) {
+            this(address, executor, timeout, Breaker.FAILURES);
+        }
+
+        public Config(String address, Executor executor, int timeout, Breaker breaker) {
+            this(address, executor, timeout, breaker, Transport.getDefault());
+        }
     }
 
     @NonNull
     private final Config config;
 
-    //It is necessary to maintain in memory the Circuit Breaker
-    private static class CB {
+    //Learns the latency of the address, the timeout of the Config is the ceiling
+    private final Lazy<AdaptiveTimeout> timeouts = Lazy.of(() ->
+            new AdaptiveTimeout(AdaptiveTimeout.config(Duration.ofSeconds(LatencyProblem07.this.config.getTimeout()))));
 
-        public static CircuitBreaker circuitBreaker;
-
-        static {
+    private <T> CompletableFuture<T> orTimeout(Config config, CompletableFuture<T> future) {
+        return Try.of(() -> new URL(config.getAddress()))
+                .map(url -> timeouts.get().orTimeout(url, future))
+                .getOrElse(() -> future.orTimeout(config.getTimeout(), TimeUnit.SECONDS));
+    }
 
-            CircuitBreakerConfig customConfig = CircuitBreakerConfig.custom()
+    //It is necessary to maintain in memory the Circuit Breaker, one per address and a lookup takes no lock
+    static final Registry<CircuitBreaker> CIRCUIT_BREAKERS = new Registry<>(name -> CircuitBreaker.of(name,
+            CircuitBreakerConfig.custom()
                     .failureRateThreshold(50)
                     .waitDurationInOpenState(Duration.ofMillis(1000))
                     .ringBufferSizeInHalfOpenState(5)
                     .ringBufferSizeInClosedState(5)
                     .automaticTransitionFromOpenToHalfOpenEnabled(true)
-                    .build();
+                    .build()));
 
-            CircuitBreakerRegistry circuitBreakerRegistry = CircuitBreakerRegistry.of(customConfig);
-            circuitBreaker = circuitBreakerRegistry.circuitBreaker("circuitBreaker");
-        }
+    private final Lazy<CircuitBreaker> circuitBreaker = Lazy.of(() ->
+            CIRCUIT_BREAKERS.get(LatencyProblem07.this.config.getAddress()));
 
-        public static synchronized CircuitBreaker getCircuitBreaker() {
-            return circuitBreaker;
-        }
-    }
+    static final Registry<SlowCallCircuitBreaker> SLOW_CALL_BREAKERS = new Registry<>(name ->
+            new SlowCallCircuitBreaker(name, SlowCallCircuitBreaker.DEFAULT_CONFIG));
+
+    private final Lazy<SlowCallCircuitBreaker> slowCallBreaker = Lazy.of(() ->
+            SLOW_CALL_BREAKERS.get(LatencyProblem07.this.config.getAddress()));
 
     Function1<String, URL> toURL = address -> Try
         .of(() -> new URL(address))
@@ -106,9 +124,8 @@ public class LatencyProblem07 {
 
     Function1<Config, CompletableFuture<Option<List<String>>>> fetchAsync = config ->
 
-        CompletableFuture
-            .supplyAsync(() -> toURL.andThen(fetch).apply(config.getAddress()), config.getExecutor())
-            .orTimeout(config.getTimeout(), TimeUnit.SECONDS)
+        orTimeout(config, SimpleCurl.metrics
+            .supplyAsync(config.getAddress(), () -> toURL.andThen(SimpleCurl.fetchVia.apply(config.getTransport())).apply(config.getAddress()), config.getExecutor()))
             .thenApply(serialize)
             .handle((response, ex) -> {
                 if(Objects.isNull(ex)) {
@@ -118,6 +135,20 @@ public class LatencyProblem07 {
                 return Option.none();
             });
 
+    Function1<Config, CompletableFuture<Option<List<String>>>> fetchNonBlocking = config ->
+
+        orTimeout(config, CompletableFuture
+            .completedFuture(config.getAddress())
+            .thenApply(toURL)
+            .thenCompose(SimpleCurl.fetchNamesAsyncVia.apply(config.getTransport())))
+            .handle((response, ex) -> {
+                if(Objects.isNull(ex)) {
+                    return Option.some(response);
+                }
+                LOGGER.warn(ex.getLocalizedMessage(), ex);
+                return Option.none();
+            });
+
     Function1<Config, Option<List<String>>> fetchAsyncWithMetrics = config -> {
 
         double startTime = System.currentTimeMillis();
@@ -143,37 +174,62 @@ public class LatencyProblem07 {
                 .map(l -> Option.some(l))
                 .getOrElse(Option.none());
 
-    Function2<Supplier<Option<List<String>>>, Config, Supplier<Option<List<String>>>> circuitBreakerBehaviour = (supplier, config) -> {
-
-        //Metrics
-        LOGGER.debug("getNumberOfBufferedCalls: {}", CB.getCircuitBreaker().getMetrics().getNumberOfBufferedCalls());
-        LOGGER.debug("getNumberOfFailedCalls: {}", CB.getCircuitBreaker().getMetrics().getNumberOfFailedCalls());
-        LOGGER.debug("getNumberOfSuccessfulCalls: {}", CB.getCircuitBreaker().getMetrics().getNumberOfSuccessfulCalls());
+    //Built once, an Option.none() of the fetch is a failure for the Circuit Breaker
+    private final Lazy<ResiliencePipeline<Option<List<String>>>> pipeline = Lazy.of(() -> {
+        ResiliencePipeline.Builder<Option<List<String>>> builder =
+                ResiliencePipeline.<Option<List<String>>>builder(LatencyProblem07.this.config.getAddress());
+        if (LatencyProblem07.this.config.getBreaker() == Breaker.SLOW_CALLS) {
+            builder.circuitBreaker(slowCallBreaker.get());
+        } else {
+            builder.circuitBreaker(circuitBreaker.get());
+        }
+        return builder
+                .failureOnResult(Option::isEmpty)
+                .fallback(ex -> {
+                    LOGGER.warn(ex.getLocalizedMessage(), ex);
+                    return Option.none();
+                })
+                .build();
+    });
+
+    private final Lazy<Supplier<CompletableFuture<Option<List<String>>>>> nonBlocking = Lazy.of(() ->
+            pipeline.get().decorate(() -> fetchNonBlocking.andThen(cf -> cf.thenApply(filterGreekGods)).apply(LatencyProblem07.this.config)));
+
+    private final Lazy<Supplier<Option<List<String>>>> blocking = Lazy.of(() ->
+            pipeline.get().decorateSupplier(() -> fetchAsyncWithMetrics.andThen(filterGreekGods).apply(LatencyProblem07.this.config)));
+
+    //The metrics are only read when they are logged
+    private void logMetrics() {
+        if (!LOGGER.isDebugEnabled()) {
+            return;
+        }
+        if (config.getBreaker() == Breaker.SLOW_CALLS) {
+            LOGGER.debug("{}", slowCallBreaker.get().stats());
+        } else {
+            CircuitBreaker.Metrics metrics = circuitBreaker.get().getMetrics();
+            LOGGER.debug("getNumberOfBufferedCalls: {}, getNumberOfFailedCalls: {}, getNumberOfSuccessfulCalls: {}",
+                    metrics.getNumberOfBufferedCalls(), metrics.getNumberOfFailedCalls(), metrics.getNumberOfSuccessfulCalls());
+        }
+    }
 
-        //Forcing a failure for Circuit Breaker if the Functor returns an Option.none()
-        Supplier<Option<List<String>>> supplierWithResultHandling = SupplierUtils.andThen(supplier, result -> {
-            if(!result.isDefined()) {
-                throw new RuntimeException("Triggering a failure for CircuitBreaker");
-            }
-            return result;
-        });
+    /**
+     * Last transitions of the slow call circuit breaker, empty with the FAILURES breaker.
+     */
+    public List<SlowCallCircuitBreaker.Transition> transitions() {
+        return config.getBreaker() == Breaker.SLOW_CALLS
+                ? slowCallBreaker.get().transitions()
+                : List.of();
+    }
 
-        Supplier<Option<List<String>>> decoratedSupplier = Decorators.ofSupplier(supplierWithResultHandling)
-                .withCircuitBreaker(CB.getCircuitBreaker())
-                .decorate();
+    public CompletableFuture<Option<List<String>>> JavaNonBlockingSolution() {
 
-        return decoratedSupplier;
-    };
+        return nonBlocking.get().get();
+    }
 
     public Option<List<String>> JavaStreamSolution() {
 
-        final Supplier<Option<List<String>>> supplier = () ->
-                fetchAsyncWithMetrics.andThen(filterGreekGods).apply(config);
-
-        return Try.ofSupplier(circuitBreakerBehaviour.apply(supplier, config))
-                .onFailure(ex -> LOGGER.warn(ex.getLocalizedMessage(), ex))
-                .recover(ex -> Option.none())
-                .get();
+        logMetrics();
+        return blocking.get().get();
     }
 
 }
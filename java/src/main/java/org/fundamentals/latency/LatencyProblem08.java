@@ -2,12 +2,8 @@ package org.fundamentals.latency;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import io.github.resilience4j.decorators.Decorators;
-import io.github.resilience4j.ratelimiter.RateLimiter;
-import io.github.resilience4j.ratelimiter.RateLimiterConfig;
-import io.github.resilience4j.ratelimiter.RateLimiterRegistry;
 import io.vavr.Function1;
-import io.vavr.Function2;
+import io.vavr.Lazy;
 import io.vavr.control.Option;
 import io.vavr.control.Try;
 import java.net.URL;
@@ -26,7 +22,6 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 import static java.util.stream.Collectors.toUnmodifiableList;
-import static org.fundamentals.latency.SimpleCurl.fetch;
 
 /**
  * Feature: Consume a REST Indian God Service
@@ -54,46 +49,38 @@ public class LatencyProblem08 {
         private String address;
         private Executor executor;
         private int timeout;
+        private Transport transport;
+
+        public Config(String address, Executor executor, int timeout) {
+            this(address, executor, timeout, Transport.getDefault());
+        }
     }
 
     @NonNull
     private final LatencyProblem08.Config config;
 
-    //It is necessary to maintain in memory the RateLimiter
-    private static class RL {
+    //Learns the latency of the address, the timeout of the Config is the ceiling
+    private final Lazy<AdaptiveTimeout> timeouts = Lazy.of(() ->
+            new AdaptiveTimeout(AdaptiveTimeout.config(Duration.ofSeconds(LatencyProblem08.this.config.getTimeout()))));
 
-        public static RateLimiter rateLimiter;
+    private <T> CompletableFuture<T> orTimeout(Config config, CompletableFuture<T> future) {
+        return Try.of(() -> new URL(config.getAddress()))
+                .map(url -> timeouts.get().orTimeout(url, future))
+                .getOrElse(() -> future.orTimeout(config.getTimeout(), TimeUnit.SECONDS));
+    }
 
-        static {
+    //It is necessary to maintain in memory the RateLimiter, one per address and a lookup takes no lock.
+    //A caller waits up to 25 ms for a permit in a timer, not in its thread
+    static final Registry<GcraRateLimiter> RATE_LIMITERS = new Registry<>(name -> {
 
-            RateLimiterConfig customConfig = RateLimiterConfig.custom()
-                    .limitRefreshPeriod(Duration.ofMillis(1))
-                    .limitForPeriod(2)
-                    .timeoutDuration(Duration.ofMillis(25))
-                    .build();
+        GcraRateLimiter rateLimiter = new GcraRateLimiter(name,
+                new GcraRateLimiter.Config(Duration.ofMillis(1), 2, Duration.ofMillis(25)));
+        LOGGER.info("RateLimiter {} added", name);
+        return rateLimiter;
+    });
 
-            RateLimiterRegistry rateLimiterRegistry = RateLimiterRegistry.of(customConfig);
-            rateLimiterRegistry.getEventPublisher()
-                    .onEntryAdded(entryAddedEvent -> {
-                        RateLimiter addedRateLimiter = entryAddedEvent.getAddedEntry();
-                        LOGGER.info("RateLimiter {} added", addedRateLimiter.getName());
-                    })
-                    .onEntryRemoved(entryRemovedEvent -> {
-                        RateLimiter removedRateLimiter = entryRemovedEvent.getRemovedEntry();
-                        LOGGER.info("RateLimiter {} removed", removedRateLimiter.getName());
-                    });
-
-            rateLimiter = rateLimiterRegistry.rateLimiter("default");
-            rateLimiter.getEventPublisher()
-                    .onSuccess(event -> LOGGER.info("Success"))
-                    .onFailure(event -> LOGGER.info("Failure"));
-        }
-
-        public static synchronized RateLimiter getRateLimiter() {
-            return rateLimiter;
-        }
-
-    }
+    private final Lazy<GcraRateLimiter> rateLimiter = Lazy.of(() ->
+            RATE_LIMITERS.get(LatencyProblem08.this.config.getAddress()));
 
     Function1<String, URL> toURL = address -> Try
             .of(() -> new URL(address))
@@ -111,9 +98,8 @@ public class LatencyProblem08 {
 
     Function1<Config, CompletableFuture<Option<List<String>>>> fetchAsync = config ->
 
-            CompletableFuture
-                    .supplyAsync(() -> toURL.andThen(fetch).apply(config.getAddress()), config.getExecutor())
-                    .orTimeout(config.getTimeout(), TimeUnit.SECONDS)
+            orTimeout(config, SimpleCurl.metrics
+                    .supplyAsync(config.getAddress(), () -> toURL.andThen(SimpleCurl.fetchVia.apply(config.getTransport())).apply(config.getAddress()), config.getExecutor()))
                     .thenApply(serialize)
                     .handle((response, ex) -> {
                         if(Objects.isNull(ex)) {
@@ -123,6 +109,20 @@ public class LatencyProblem08 {
                         return Option.none();
                     });
 
+    Function1<Config, CompletableFuture<Option<List<String>>>> fetchNonBlocking = config ->
+
+            orTimeout(config, CompletableFuture
+                    .completedFuture(config.getAddress())
+                    .thenApply(toURL)
+                    .thenCompose(SimpleCurl.fetchNamesAsyncVia.apply(config.getTransport())))
+                    .handle((response, ex) -> {
+                        if(Objects.isNull(ex)) {
+                            return Option.some(response);
+                        }
+                        LOGGER.warn(ex.getLocalizedMessage(), ex);
+                        return Option.none();
+                    });
+
     Function1<Config, Option<List<String>>> fetchAsyncWithMetrics = config -> {
 
         double startTime = System.currentTimeMillis();
@@ -149,28 +149,40 @@ public class LatencyProblem08 {
             .map(l -> Option.some(l))
             .getOrElse(Option.none());
 
-    Function2<Supplier<Option<List<String>>>, Config, Supplier<Option<List<String>>>> rateLimiterBehaviour = (supplier, config) -> {
-
-        //Metrics
-        LOGGER.debug("getAvailablePermissions: {}", RL.getRateLimiter().getMetrics().getAvailablePermissions());
-        LOGGER.debug("getNumberOfWaitingThreads: {}", RL.getRateLimiter().getMetrics().getNumberOfWaitingThreads());
+    //Built once, the permits are shared by every call.
+    //The blocking calls which waited for a permit run in the executor of the Config, not in the common pool
+    private final Lazy<ResiliencePipeline<Option<List<String>>>> pipeline = Lazy.of(() ->
+            ResiliencePipeline.<Option<List<String>>>builder(LatencyProblem08.this.config.getAddress())
+                .rateLimiter(rateLimiter.get(), LatencyProblem08.this.config.getExecutor())
+                .fallback(ex -> {
+                    LOGGER.warn(ex.getLocalizedMessage(), ex);
+                    return Option.none();
+                })
+                .build());
+
+    private final Lazy<Supplier<CompletableFuture<Option<List<String>>>>> nonBlocking = Lazy.of(() ->
+            pipeline.get().decorate(() -> fetchNonBlocking.andThen(cf -> cf.thenApply(filterGreekGods)).apply(LatencyProblem08.this.config)));
+
+    private final Lazy<Supplier<Option<List<String>>>> blocking = Lazy.of(() ->
+            pipeline.get().decorateSupplier(() -> fetchAsyncWithMetrics.andThen(filterGreekGods).apply(LatencyProblem08.this.config)));
+
+    //The metrics are only read when they are logged
+    private void logMetrics() {
+        if (LOGGER.isDebugEnabled()) {
+            GcraRateLimiter.Stats stats = rateLimiter.get().stats();
+            LOGGER.debug("availablePermits: {}, waiting: {}", stats.getAvailablePermits(), stats.getWaiting());
+        }
+    }
 
-        Supplier<Option<List<String>>> decoratedSupplier = Decorators.ofSupplier(supplier)
-                .withRateLimiter(RL.getRateLimiter())
-                .decorate();
+    public CompletableFuture<Option<List<String>>> JavaNonBlockingSolution() {
 
-        return decoratedSupplier;
-    };
+        return nonBlocking.get().get();
+    }
 
     public Option<List<String>> JavaStreamSolution() {
 
-        final Supplier<Option<List<String>>> supplier = () ->
-                fetchAsyncWithMetrics.andThen(filterGreekGods).apply(config);
-
-        return Try.ofSupplier(rateLimiterBehaviour.apply(supplier, config))
-                .onFailure(ex -> LOGGER.warn(ex.getLocalizedMessage(), ex))
-                .recover(ex -> Option.none())
-                .get();
+        logMetrics();
+        return blocking.get().get();
     }
 
 }
@@ -0,0 +1,73 @@
+package org.fundamentals.latency;
+
+import io.vavr.control.Try;
+import java.lang.reflect.Method;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Executors for the solutions: a fixed pool of platform threads or
+ * one virtual thread per task (Java 21).
+ *
+ * The module is compiled for Java 11, so the virtual thread API is reached
+ * by reflection. The mode is selected with the system property latency.executor
+ * (fixed / virtual), the java21 profile sets it to virtual.
+ *
+ * With virtual threads a blocking SimpleCurl.fetch only parks the virtual thread,
+ * so the pool size is not a limit of concurrent requests anymore.
+ */
+@Slf4j
+public class VirtualThreads {
+
+    static final String EXECUTOR_PROPERTY = "latency.executor";
+
+    private VirtualThreads() {}
+
+    public static boolean isSupported() {
+        return Try.of(() -> Thread.class.getMethod("ofVirtual")).isSuccess();
+    }
+
+    public static boolean isEnabled() {
+        return "virtual".equalsIgnoreCase(System.getProperty(EXECUTOR_PROPERTY, "fixed")) && isSupported();
+    }
+
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        return newVirtualThreadPerTaskExecutor("virtual");
+    }
+
+    /**
+     * Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(prefix, 0).factory())
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor(String prefix) {
+
+        Objects.requireNonNull(prefix);
+        return Try.of(() -> {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix + "-", 0L);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            Method executor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) executor.invoke(null, factory);
+        }).getOrElseThrow(ex -> new UnsupportedOperationException("Virtual threads require Java 21", ex));
+    }
+
+    /**
+     * Executor of the configured mode, nThreads is the size of the fixed pool.
+     */
+    public static ExecutorService newExecutor(int nThreads, String prefix) {
+
+        if (isEnabled()) {
+            LOGGER.debug("Virtual threads executor: {}", prefix);
+            return newVirtualThreadPerTaskExecutor(prefix);
+        }
+        return Executors.newFixedThreadPool(nThreads, runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setName(prefix);
+            return thread;
+        });
+    }
+
+}
@@ -1,12 +1,16 @@
 package org.fundamentals.latency;
 
 import com.github.tomakehurst.wiremock.WireMockServer;
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.github.tomakehurst.wiremock.http.Fault;
 import java.math.BigInteger;
+import java.net.URL;
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -16,7 +20,9 @@ import org.junit.jupiter.api.Test;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
 import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlMatching;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 
 @Slf4j
@@ -58,12 +64,7 @@ public class LatencyProblem01Test {
 
         final int TIMEOUT = 2;
 
-        ThreadFactory threadFactory = new ThreadFactoryBuilder()
-                .setNameFormat("MyExecutor-%d")
-                .build();
-        ExecutorService executor = Executors.newFixedThreadPool(
-                10,
-                threadFactory);
+        ExecutorService executor = VirtualThreads.newExecutor(10, "MyExecutor");
 
         loadStubs();
 
@@ -84,12 +85,7 @@ public class LatencyProblem01Test {
 
         final int TIMEOUT = 2;
 
-        ThreadFactory threadFactory = new ThreadFactoryBuilder()
-                .setNameFormat("MyExecutor-%d")
-                .build();
-        ExecutorService executor = Executors.newFixedThreadPool(
-                10,
-                threadFactory);
+        ExecutorService executor = VirtualThreads.newExecutor(10, "MyExecutor");
 
         loadStubs();
 
@@ -105,18 +101,173 @@ public class LatencyProblem01Test {
         executor.shutdown();
     }
 
+    @Test
+    public void given_Java8StreamSolution_when_twoSlowLists_then_oneDeadlineForAllTest() {
+
+        final int TIMEOUT = 2;
+
+        ExecutorService executor = VirtualThreads.newExecutor(10, "MyExecutor");
+
+        loadStubs();
+        List.of("greek", "roman").forEach(god ->
+                wireMockServer.stubFor(get(urlEqualTo("/" + god))
+                        .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                                .withStatus(200)
+                                .withFixedDelay(5000)
+                                .withBodyFile(god + ".json"))));
+
+        final List<String> listOfGods = List.of(
+                "http://localhost:8090/greek",
+                "http://localhost:8090/roman",
+                "http://localhost:8090/nordic");
+
+        LatencyProblem01 problem = new LatencyProblem01(listOfGods, executor, TIMEOUT);
+
+        //With a timeout per list the solution took 2 x TIMEOUT
+        long start = System.nanoTime();
+        assertThat(problem.Java8StreamSolution()).isEqualTo(new BigInteger("78106111114100"));
+        assertThat(Duration.ofNanos(System.nanoTime() - start).toMillis()).isLessThan(3000L);
+
+        executor.shutdown();
+    }
+
+    @Test
+    public void given_slowList_when_fetchAsyncTimesOut_then_poolThreadReleasedTest() throws Exception {
+
+        final int TIMEOUT = 1;
+
+        ExecutorService executor = Executors.newFixedThreadPool(1);
+
+        wireMockServer.stubFor(get(urlEqualTo("/greek"))
+                .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                        .withStatus(200)
+                        .withFixedDelay(5000)
+                        .withBodyFile("greek.json")));
+
+        LatencyProblem01 problem = new LatencyProblem01(List.of(), executor, TIMEOUT);
+
+        assertThat(problem.fetchAsync.apply(new URL("http://localhost:8090/greek")).join())
+                .isEqualTo(problem.DEFAULT_FETCH_ERROR);
+
+        //The only thread of the pool is not blocked in the abandoned fetch
+        assertThat(CompletableFuture.supplyAsync(() -> "next", executor).get(500, TimeUnit.MILLISECONDS))
+                .isEqualTo("next");
+
+        executor.shutdown();
+    }
+
+    @Test
+    public void given_slowList_when_sharedFetchTimesOut_then_poolThreadReleasedTest() throws Exception {
+
+        final int TIMEOUT = 1;
+
+        ExecutorService executor = Executors.newFixedThreadPool(1);
+
+        wireMockServer.stubFor(get(urlEqualTo("/greek"))
+                .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                        .withStatus(200)
+                        .withFixedDelay(5000)
+                        .withBodyFile("greek.json")));
+
+        LatencyProblem01 problem = new LatencyProblem01(List.of(), executor, TIMEOUT);
+
+        //The only waiter times out, so SingleFlight cancels the shared fetch
+        assertThat(problem.fetchAsyncJ9.apply(new URL("http://localhost:8090/greek")).join())
+                .isEqualTo(problem.DEFAULT_FETCH_ERROR);
+
+        assertThat(CompletableFuture.supplyAsync(() -> "next", executor).get(500, TimeUnit.MILLISECONDS))
+                .isEqualTo("next");
+
+        executor.shutdown();
+    }
+
+    @Test
+    public void given_twoProblems_when_sameListInFlight_then_requestNotSharedTest() throws Exception {
+
+        final int TIMEOUT = 2;
+
+        ExecutorService executor1 = Executors.newFixedThreadPool(1);
+        ExecutorService executor2 = Executors.newFixedThreadPool(1);
+
+        wireMockServer.stubFor(get(urlEqualTo("/greek"))
+                .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                        .withStatus(200)
+                        .withFixedDelay(300)
+                        .withBodyFile("greek.json")));
+
+        LatencyProblem01 problem1 = new LatencyProblem01(List.of(), executor1, TIMEOUT);
+        LatencyProblem01 problem2 = new LatencyProblem01(List.of(), executor2, TIMEOUT);
+        URL greek = new URL("http://localhost:8090/greek");
+
+        //Every problem fetches with its own executor
+        CompletableFuture<String> first = problem1.fetchAsyncJ9.apply(greek);
+        CompletableFuture<String> second = problem2.fetchAsyncJ9.apply(greek);
+
+        assertThat(first.join()).isEqualTo(second.join());
+        wireMockServer.verify(2, getRequestedFor(urlEqualTo("/greek")));
+
+        executor1.shutdown();
+        executor2.shutdown();
+    }
+
+    @Test
+    public void given_JavaStructuredSolution_when_executeMethod_then_expectedResultsTest() {
+
+        final int TIMEOUT = 2;
+
+        ExecutorService executor = VirtualThreads.newExecutor(10, "MyExecutor");
+
+        loadStubs();
+
+        final List<String> listOfGods = List.of(
+                "http://localhost:8090/greek",
+                "http://localhost:8090/roman",
+                "http://localhost:8090/nordic");
+
+        LatencyProblem01 problem = new LatencyProblem01(listOfGods, executor, TIMEOUT);
+
+        assertThat(problem.JavaStructuredSolution()).isEqualTo(new BigInteger("78179288397447443426"));
+
+        executor.shutdown();
+    }
+
+    @Test
+    public void given_JavaStructuredSolution_when_slowList_then_siblingCancelledAtDeadlineTest() throws Exception {
+
+        final int TIMEOUT = 2;
+
+        ExecutorService executor = Executors.newFixedThreadPool(10);
+
+        loadStubs();
+        wireMockServer.stubFor(get(urlEqualTo("/greek"))
+                .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                        .withStatus(200)
+                        .withFixedDelay(5000)
+                        .withBodyFile("greek.json")));
+
+        final List<String> listOfGods = List.of(
+                "http://localhost:8090/greek",
+                "http://localhost:8090/roman",
+                "http://localhost:8090/nordic");
+
+        LatencyProblem01 problem = new LatencyProblem01(listOfGods, executor, TIMEOUT);
+
+        long start = System.nanoTime();
+        assertThat(problem.JavaStructuredSolution()).isEqualTo(new BigInteger("78179218227231210"));
+        assertThat(Duration.ofNanos(System.nanoTime() - start).toMillis()).isLessThan(4000L);
+
+        //The greek fetch would still be waiting for 3 seconds if it had been abandoned
+        executor.shutdown();
+        assertThat(executor.awaitTermination(500, TimeUnit.MILLISECONDS)).isTrue();
+    }
+
     @Disabled
     @Test
     public void given_JavaCFCompositionSolution_when_executeMethod_then_expectedResultsTest() {
 
         final int TIMEOUT = 2;
 
-        ThreadFactory threadFactory = new ThreadFactoryBuilder()
-                .setNameFormat("MyExecutor-%d")
-                .build();
-        ExecutorService executor = Executors.newFixedThreadPool(
-                10,
-                threadFactory);
+        ExecutorService executor = VirtualThreads.newExecutor(10, "MyExecutor");
 
         loadStubs();
 
@@ -139,12 +290,7 @@ public class LatencyProblem01Test {
 
         final int TIMEOUT = 2;
 
-        ExecutorService executor = Executors.newFixedThreadPool(10,
-                r -> {
-                    Thread thread = new Thread(r);
-                    thread.setName("MyExecutor");
-                    return thread;
-                });
+        ExecutorService executor = VirtualThreads.newExecutor(10, "MyExecutor");
 
         final List<String> listOfGodsOriginal = List.of(
                 "http://my-json-server.typicode.com/jabrena/latency-problems/greek",
@@ -158,4 +304,98 @@ public class LatencyProblem01Test {
         executor.shutdown();
     }
 
+    @Test
+    public void given_JavaNonBlockingSolution_when_executeMethod_then_expectedResultsTest() {
+
+        final int TIMEOUT = 2;
+
+        ExecutorService executor = VirtualThreads.newExecutor(10, "MyExecutor");
+
+        loadStubs();
+
+        final List<String> listOfGods = List.of(
+                "http://localhost:8090/greek",
+                "http://localhost:8090/roman",
+                "http://localhost:8090/nordic");
+
+        LatencyProblem01 problem = new LatencyProblem01(listOfGods, executor, TIMEOUT);
+
+        assertThat(problem.JavaNonBlockingSolution().join()).isEqualTo(new BigInteger("78179288397447443426"));
+
+        executor.shutdown();
+    }
+
+    @Test
+    public void given_failingList_when_fetchNonBlocking_then_learntTimeoutUnchangedTest() {
+
+        final int TIMEOUT = 2;
+
+        ExecutorService executor = VirtualThreads.newExecutor(10, "MyExecutor");
+
+        wireMockServer.stubFor(get(urlEqualTo("/greek"))
+                .willReturn(aResponse().withFault(Fault.EMPTY_RESPONSE)));
+
+        LatencyProblem01 problem = new LatencyProblem01(List.of("http://localhost:8090/greek"), executor, TIMEOUT);
+        URL greek = problem.toURL.apply("http://localhost:8090/greek");
+
+        //More failures than the samples needed to learn a timeout
+        IntStream.range(0, 30).forEach(i ->
+                assertThat(problem.fetchNonBlocking.apply(greek).join()).isEqualTo(problem.DEFAULT_FETCH_ERROR));
+
+        //The fast failures are not latencies, the ceiling is kept
+        assertThat(problem.timeouts.timeout(greek)).isEqualTo(Duration.ofSeconds(TIMEOUT));
+
+        executor.shutdown();
+    }
+
+    @Test
+    public void given_JavaStreamingSolution_when_executeMethod_then_expectedResultsTest() {
+
+        final int TIMEOUT = 2;
+
+        ExecutorService executor = VirtualThreads.newExecutor(10, "MyExecutor");
+
+        loadStubs();
+
+        final List<String> listOfGods = List.of(
+                "http://localhost:8090/greek",
+                "http://localhost:8090/roman",
+                "http://localhost:8090/nordic");
+
+        LatencyProblem01 problem = new LatencyProblem01(listOfGods, executor, TIMEOUT);
+
+        assertThat(problem.JavaStreamingSolution()).isEqualTo(new BigInteger("78179288397447443426"));
+
+        executor.shutdown();
+    }
+
+    @Test
+    public void given_JavaCachedSolution_when_executeTwice_then_listsFetchedOnceTest() {
+
+        final int TIMEOUT = 2;
+
+        ExecutorService executor = VirtualThreads.newExecutor(10, "MyExecutor");
+
+        List.of("greek", "roman", "nordic").forEach(god ->
+                wireMockServer.stubFor(get(urlEqualTo("/" + god))
+                        .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                                .withHeader("Cache-Control", "max-age=60")
+                                .withStatus(200)
+                                .withBodyFile(god + ".json"))));
+
+        final List<String> listOfGods = List.of(
+                "http://localhost:8090/greek",
+                "http://localhost:8090/roman",
+                "http://localhost:8090/nordic");
+
+        LatencyProblem01 problem = new LatencyProblem01(listOfGods, executor, TIMEOUT);
+
+        assertThat(problem.JavaCachedSolution().join()).isEqualTo(new BigInteger("78179288397447443426"));
+        assertThat(problem.JavaCachedSolution().join()).isEqualTo(new BigInteger("78179288397447443426"));
+        assertThat(problem.godsCache.stats().getHits()).isEqualTo(3);
+        wireMockServer.verify(3, getRequestedFor(urlMatching("/(greek|roman|nordic)")));
+
+        executor.shutdown();
+    }
+
 }
@@ -1,15 +1,58 @@
 package org.fundamentals.latency;
 
+import com.github.tomakehurst.wiremock.WireMockServer;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Map;
 import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlMatching;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 
 @Slf4j
-@Disabled
 public class LatencyProblem02Test {
 
+    WireMockServer wireMockServer;
+
+    @BeforeEach
+    public void setup () {
+        wireMockServer = new WireMockServer(8090);
+        wireMockServer.start();
+    }
+
+    @AfterEach
+    public void teardown () {
+        wireMockServer.stop();
+    }
+
+    //Apollo has the longest page, the responses are fresh for a minute
+    private LatencyProblem02 stubbedProblem() {
+
+        wireMockServer.stubFor(get(urlEqualTo("/greek"))
+                .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                        .withHeader("Cache-Control", "max-age=60")
+                        .withStatus(200)
+                        .withBody("[\"Zeus\", \"Apollo\", \"Hera\"]")));
+        Map.of("Zeus", 100, "Apollo", 300, "Hera", 200).forEach((god, length) ->
+                wireMockServer.stubFor(get(urlEqualTo("/wiki/" + god))
+                        .willReturn(aResponse().withHeader("Content-Type", "text/html")
+                                .withHeader("Cache-Control", "max-age=60")
+                                .withStatus(200)
+                                .withBody("a".repeat(length)))));
+
+        return new LatencyProblem02("http://localhost:8090/greek", "http://localhost:8090/wiki/");
+    }
+
+    @Disabled
     @Test
     public void given_JavaStreamSolution_when_executeMethod_then_expectedResultsTest() {
 
@@ -18,6 +61,7 @@ public class LatencyProblem02Test {
         assertThat(problem.JavaStreamSolution()).isEqualTo("Apollo");
     }
 
+    @Disabled
     @Test
     public void given_JavaStreamSolutionAsync_when_executeMethod_then_expectedResultsTest() {
 
@@ -26,6 +70,7 @@ public class LatencyProblem02Test {
         assertThat(problem.JavaStreamSolutionAsync()).isEqualTo("Apollo");
     }
 
+    @Disabled
     @Test
     public void given_JavaStreamSolutionAsync2_when_executeMethod_then_expectedResultsTest() {
 
@@ -34,4 +79,39 @@ public class LatencyProblem02Test {
         assertThat(problem.JavaStreamSolutionAsync2()).isEqualTo("Apollo");
     }
 
+    @Test
+    public void given_JavaNonBlockingSolution_when_executeMethod_then_expectedResultsTest() {
+
+        LatencyProblem02 problem = stubbedProblem();
+
+        assertThat(problem.JavaNonBlockingSolution().join()).isEqualTo("Apollo");
+        wireMockServer.verify(3, getRequestedFor(urlMatching("/wiki/.*")));
+    }
+
+    @Test
+    public void given_JavaCachedSolution_when_executeTwice_then_pagesFetchedOnceTest() {
+
+        LatencyProblem02 problem = stubbedProblem();
+
+        assertThat(problem.JavaCachedSolution().join()).isEqualTo("Apollo");
+        assertThat(problem.JavaCachedSolution().join()).isEqualTo("Apollo");
+        wireMockServer.verify(1, getRequestedFor(urlEqualTo("/greek")));
+        wireMockServer.verify(3, getRequestedFor(urlMatching("/wiki/.*")));
+    }
+
+    @Test
+    public void given_JavaStoredSolution_when_newProblemSharesStore_then_pagesFetchedOnceTest(@TempDir Path directory) {
+
+        LatencyProblem02 problem = stubbedProblem();
+
+        try (TieredStore<Integer> store = new TieredStore<>(
+                new TieredStore.Config(directory, 8 * 1024 * 1024, 16, 0.5, 60), ByteBuffer::remaining)) {
+
+            assertThat(problem.JavaStoredSolution(store).join()).isEqualTo("Apollo");
+            //A new problem has no HttpCache of its own, the pages come from the store
+            assertThat(stubbedProblem().JavaStoredSolution(store).join()).isEqualTo("Apollo");
+        }
+        wireMockServer.verify(3, getRequestedFor(urlMatching("/wiki/.*")));
+    }
+
 }
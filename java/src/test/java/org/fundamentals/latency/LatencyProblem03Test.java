@@ -23,6 +23,7 @@ import org.junit.jupiter.api.Test;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
 import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
 import static java.util.stream.Collectors.toList;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
@@ -69,12 +70,7 @@ public class LatencyProblem03Test {
 
         final int TIMEOUT = 2;
 
-        ExecutorService executor = Executors.newFixedThreadPool(10,
-                r -> {
-                    Thread thread = new Thread(r);
-                    thread.setName("MyExecutor");
-                    return thread;
-                });
+        ExecutorService executor = VirtualThreads.newExecutor(10, "MyExecutor");
 
         //Given
         wireMockServer.stubFor(get(urlEqualTo("/greek"))
@@ -140,4 +136,59 @@ public class LatencyProblem03Test {
         executor.shutdown();
     }
 
+    @Test
+    public void given_JavaNonBlockingSolution_when_executeMethod_then_expectedResultsTest() {
+
+        final int TIMEOUT = 2;
+
+        ExecutorService executor = VirtualThreads.newExecutor(10, "MyExecutor");
+
+        //Given
+        wireMockServer.stubFor(get(urlEqualTo("/greek"))
+                .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                        .withStatus(200)
+                        .withBodyFile("greek.json")));
+
+        EnumMap<GODS, String> godMap = new EnumMap<>(GODS.class);
+        godMap.put(GREEK, "http://localhost:8090/greek");
+
+        //When
+        LatencyProblem03 problem = new LatencyProblem03(godMap, executor, TIMEOUT);
+
+        //Then
+        assertThat(problem.JavaNonBlockingSolution(GREEK).join()).isEqualTo(loadJsonFile("greek.json"));
+
+        executor.shutdown();
+    }
+
+    @Test
+    public void given_concurrentCallers_when_JavaNonBlockingSolution_then_oneRequestTest() {
+
+        final int TIMEOUT = 2;
+
+        ExecutorService executor = Executors.newFixedThreadPool(1);
+
+        //Given
+        wireMockServer.stubFor(get(urlEqualTo("/greek"))
+                .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                        .withStatus(200)
+                        .withFixedDelay(500)
+                        .withBodyFile("greek.json")));
+
+        EnumMap<GODS, String> godMap = new EnumMap<>(GODS.class);
+        godMap.put(GREEK, "http://localhost:8090/greek");
+
+        //When
+        LatencyProblem03 problem = new LatencyProblem03(godMap, executor, TIMEOUT);
+        List<CompletableFuture<List<String>>> results = IntStream.rangeClosed(1, 20).boxed()
+                .map(i -> problem.JavaNonBlockingSolution(GREEK))
+                .collect(toList());
+
+        //Then
+        results.forEach(result -> assertThat(result.join()).isEqualTo(loadJsonFile("greek.json")));
+        wireMockServer.verify(1, getRequestedFor(urlEqualTo("/greek")));
+
+        executor.shutdown();
+    }
+
 }
@@ -5,7 +5,6 @@ import java.math.BigDecimal;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -42,12 +41,7 @@ public class LatencyProblem04Test {
                 "http://localhost:8090/xe",
                 "http://localhost:8090/iban",
                 "http://localhost:8090/x-rates"));
-        final ExecutorService executor = Executors.newFixedThreadPool(10,
-                r -> {
-                    Thread thread = new Thread(r);
-                    thread.setName("MyExecutor");
-                    return thread;
-                });
+        final ExecutorService executor = VirtualThreads.newExecutor(10, "MyExecutor");
         final int timeout = 2;
 
         wireMockServer.stubFor(get(urlEqualTo("/transferwise"))
@@ -79,4 +73,50 @@ public class LatencyProblem04Test {
 
         executor.shutdown();
     }
+
+    @Test
+    public void given_JavaNonBlockingSolution_when_executeMethod_then_expectedResultsTest() {
+
+        //Given
+        final List<String> list = Collections.unmodifiableList(List.of(
+                "KATAKROKER",
+                "http://localhost:8090/transferwise",
+                "http://localhost:8090/xe",
+                "http://localhost:8090/iban",
+                "http://localhost:8090/x-rates"));
+        final ExecutorService executor = VirtualThreads.newExecutor(10, "MyExecutor");
+        final int timeout = 2;
+
+        wireMockServer.stubFor(get(urlEqualTo("/transferwise"))
+                .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                        .withStatus(200)
+                        .withBodyFile("latency-problem4/transferwise.json")));
+
+        wireMockServer.stubFor(get(urlEqualTo("/xe"))
+                .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                        .withStatus(200)
+                        .withBodyFile("latency-problem4/xe.json")));
+
+        wireMockServer.stubFor(get(urlEqualTo("/iban"))
+                .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                        .withStatus(200)
+                        .withBodyFile("latency-problem4/iban.json")));
+
+        wireMockServer.stubFor(get(urlEqualTo("/x-rates"))
+                .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                        .withStatus(200)
+                        .withBodyFile("latency-problem4/x-rates.json")));
+
+        //When
+        LatencyProblem04.Config config = new LatencyProblem04.Config(list, executor, timeout);
+        LatencyProblem04 problem = new LatencyProblem04(config);
+
+        //Then
+        then(problem.JavaNonBlockingSolution().join()).isEqualTo(new BigDecimal("1.1245491525"));
+        then(problem.limiterStats("localhost:8090").getInFlight()).isZero();
+        then(problem.limiterStats("localhost:8090").getRejected()).isZero();
+
+        executor.shutdown();
+    }
+
 }
@@ -1,10 +1,14 @@
 package org.fundamentals.latency;
 
 import com.github.tomakehurst.wiremock.WireMockServer;
+import java.io.InputStream;
 import java.util.Collections;
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -12,7 +16,10 @@ import org.junit.jupiter.api.Test;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
 import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static java.util.stream.Collectors.toList;
 import static org.assertj.core.api.BDDAssertions.then;
 
 @Slf4j
@@ -22,7 +29,7 @@ public class LatencyProblem05Test {
 
     @BeforeEach
     public void setup () {
-        wireMockServer = new WireMockServer(8090);
+        wireMockServer = new WireMockServer(options().port(8090).containerThreads(100));
         wireMockServer.start();
     }
 
@@ -42,12 +49,7 @@ public class LatencyProblem05Test {
                 "http://localhost:8090/greek-instance3",
                 "http://localhost:8090/greek-instance4",
                 "http://localhost:8090/greek-instance5"));
-        final ExecutorService executor = Executors.newFixedThreadPool(10,
-                r -> {
-                    Thread thread = new Thread(r);
-                    thread.setName("MyExecutor");
-                    return thread;
-                });
+        final ExecutorService executor = VirtualThreads.newExecutor(10, "MyExecutor");
         final int timeout = 2;
 
         wireMockServer.stubFor(get(urlEqualTo("/greek-instance1"))
@@ -86,4 +88,249 @@ public class LatencyProblem05Test {
         executor.shutdown();
     }
 
+    @Test
+    public void given_JavaNonBlockingSolution_when_executeMethod_then_expectedResultsTest() {
+
+        //Given
+        final List<String> list = Collections.unmodifiableList(List.of(
+                "KATAKROKER",
+                "http://localhost:8090/greek-instance1",
+                "http://localhost:8090/greek-instance2",
+                "http://localhost:8090/greek-instance3",
+                "http://localhost:8090/greek-instance4",
+                "http://localhost:8090/greek-instance5"));
+        final ExecutorService executor = VirtualThreads.newExecutor(10, "MyExecutor");
+        final int timeout = 2;
+
+        wireMockServer.stubFor(get(urlEqualTo("/greek-instance1"))
+                .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                        .withStatus(200)
+                        .withBodyFile("latency-problem5/greek.json")));
+
+        wireMockServer.stubFor(get(urlEqualTo("/greek-instance2"))
+                .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                        .withStatus(200)
+                        .withBodyFile("latency-problem5/greek.json")));
+
+        wireMockServer.stubFor(get(urlEqualTo("/greek-instance3"))
+                .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                        .withStatus(200)
+                        .withBodyFile("latency-problem5/greek.json")));
+
+        wireMockServer.stubFor(get(urlEqualTo("/greek-instance4"))
+                .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                        .withStatus(200)
+                        .withBodyFile("latency-problem5/greek.json")));
+
+        wireMockServer.stubFor(get(urlEqualTo("/greek-instance5"))
+                .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                        .withStatus(200)
+                        .withBodyFile("latency-problem5/greek.json")));
+
+        //When
+        LatencyProblem05.Config config = new LatencyProblem05.Config(list, executor, timeout);
+        LatencyProblem05 problem = new LatencyProblem05(config);
+
+        //Then
+        then(problem.JavaNonBlockingSolution().join())
+                .isEqualTo(List.of("Ares", "Athena", "Apollo", "Artemis", "Aphrodite"));
+
+        executor.shutdown();
+    }
+
+    @Test
+    public void given_roundRobin_when_JavaNonBlockingSolution_then_everyReplicaInTurnTest() {
+
+        //Given
+        final List<String> list = Collections.unmodifiableList(List.of(
+                "KATAKROKER",
+                "http://localhost:8090/greek-instance1",
+                "http://localhost:8090/greek-instance2",
+                "http://localhost:8090/greek-instance3"));
+        final int timeout = 2;
+
+        IntStream.rangeClosed(1, 3).forEach(i ->
+                wireMockServer.stubFor(get(urlEqualTo("/greek-instance" + i))
+                        .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                                .withStatus(200)
+                                .withBodyFile("latency-problem5/greek.json"))));
+
+        //When
+        LatencyProblem05.Config config = new LatencyProblem05.Config(list, null, timeout, LoadBalancer.Strategy.ROUND_ROBIN);
+        LatencyProblem05 problem = new LatencyProblem05(config);
+
+        //Then
+        IntStream.range(0, 6).forEach(i -> then(problem.JavaNonBlockingSolution().join())
+                .isEqualTo(List.of("Ares", "Athena", "Apollo", "Artemis", "Aphrodite")));
+        IntStream.rangeClosed(1, 3).forEach(i ->
+                wireMockServer.verify(2, getRequestedFor(urlEqualTo("/greek-instance" + i))));
+    }
+
+    @Test
+    public void given_failingReplica_when_JavaNonBlockingSolution_then_replicaEjectedTest() {
+
+        //Given
+        final List<String> list = Collections.unmodifiableList(List.of(
+                "http://localhost:8090/greek-instance1",
+                "http://localhost:8090/greek-instance2",
+                "http://localhost:8090/greek-instance3"));
+        final int timeout = 2;
+
+        IntStream.rangeClosed(1, 2).forEach(i ->
+                wireMockServer.stubFor(get(urlEqualTo("/greek-instance" + i))
+                        .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                                .withStatus(200)
+                                .withBodyFile("latency-problem5/greek.json"))));
+        wireMockServer.stubFor(get(urlEqualTo("/greek-instance3"))
+                .willReturn(aResponse().withStatus(500)));
+
+        //When
+        LatencyProblem05.Config config = new LatencyProblem05.Config(list, null, timeout, LoadBalancer.Strategy.ROUND_ROBIN);
+        LatencyProblem05 problem = new LatencyProblem05(config);
+
+        long good = IntStream.range(0, 30)
+                .mapToObj(i -> problem.JavaNonBlockingSolution().join())
+                .filter(List.of("Ares", "Athena", "Apollo", "Artemis", "Aphrodite")::equals)
+                .count();
+
+        //Then
+        //5 consecutive failures eject the replica, a probe may hit it when the ejection ends
+        then(good).isGreaterThanOrEqualTo(25);
+        then(wireMockServer.findAll(getRequestedFor(urlEqualTo("/greek-instance3"))).size()).isBetween(5, 6);
+        then(problem.health().get(2).getState()).isIn(ReplicaHealth.State.EJECTED, ReplicaHealth.State.PROBING);
+    }
+
+    @Test
+    public void given_saturatedReplica_when_JavaNonBlockingSolution_then_otherReplicaNotAffectedTest() {
+
+        //Given
+        //Two hosts of the same server, localhost is the slow one
+        final List<String> list = Collections.unmodifiableList(List.of(
+                "http://localhost:8090/greek-slow",
+                "http://127.0.0.1:8090/greek-instance1"));
+        final int timeout = 2;
+
+        wireMockServer.stubFor(get(urlEqualTo("/greek-slow"))
+                .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                        .withStatus(200)
+                        .withFixedDelay(500)
+                        .withBodyFile("latency-problem5/greek.json")));
+        wireMockServer.stubFor(get(urlEqualTo("/greek-instance1"))
+                .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                        .withStatus(200)
+                        .withBodyFile("latency-problem5/greek.json")));
+
+        //When
+        HostBulkheads bulkheads = new HostBulkheads(LatencyProblem05.BULKHEAD)
+                .register("localhost:8090", new HostBulkheads.Config(1, Duration.ZERO, 1, 0));
+        LatencyProblem05.Config config = new LatencyProblem05.Config(list, null, timeout, LoadBalancer.Strategy.ROUND_ROBIN, Transport.getDefault(), bulkheads);
+        LatencyProblem05 problem = new LatencyProblem05(config);
+
+        long good = IntStream.range(0, 4)
+                .mapToObj(i -> problem.JavaNonBlockingSolution())
+                .collect(toList()).stream()
+                .map(CompletableFuture::join)
+                .filter(List.of("Ares", "Athena", "Apollo", "Artemis", "Aphrodite")::equals)
+                .count();
+
+        //Then
+        //The second call to the slow host is rejected, the other host answers every call
+        then(good).isEqualTo(3);
+        then(bulkheads.stats("localhost:8090").getRejected()).isEqualTo(1);
+        then(bulkheads.stats("127.0.0.1:8090").getRejected()).isZero();
+        wireMockServer.verify(1, getRequestedFor(urlEqualTo("/greek-slow")));
+        bulkheads.close();
+    }
+
+    @Test
+    public void given_loopbackTransport_when_solutions_then_replicasServedWithoutNetworkTest() throws Exception {
+
+        //Given
+        final List<String> list = Collections.unmodifiableList(List.of(
+                "http://loopback/greek-instance1",
+                "http://loopback/greek-instance2"));
+        final ExecutorService executor = VirtualThreads.newExecutor(10, "MyExecutor");
+        final int timeout = 2;
+
+        byte[] greek;
+        try (InputStream input = getClass().getResourceAsStream("/__files/latency-problem5/greek.json")) {
+            greek = input.readAllBytes();
+        }
+        LoopbackTransport transport = new LoopbackTransport();
+        list.forEach(address -> transport.respond(address, LoopbackTransport.ok("application/json", greek)));
+
+        //When
+        LatencyProblem05.Config config = new LatencyProblem05.Config(list, executor, timeout, LoadBalancer.Strategy.ROUND_ROBIN, transport);
+        LatencyProblem05 problem = new LatencyProblem05(config);
+
+        //Then
+        then(problem.JavaStreamSolution())
+                .isEqualTo(List.of("Ares", "Athena", "Apollo", "Artemis", "Aphrodite"));
+        then(problem.JavaNonBlockingSolution().join())
+                .isEqualTo(List.of("Ares", "Athena", "Apollo", "Artemis", "Aphrodite"));
+        then(transport.requests()).isEqualTo(2);
+        then(wireMockServer.getAllServeEvents()).isEmpty();
+
+        executor.shutdown();
+    }
+
+    private void loadLogNormalStubs() {
+
+        //Replicas 1-4 answer in ~20 ms, the replica 5 in ~1.5 seconds
+        IntStream.rangeClosed(1, 4).forEach(i ->
+                wireMockServer.stubFor(get(urlEqualTo("/greek-instance" + i))
+                        .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                                .withStatus(200)
+                                .withLogNormalRandomDelay(20, 0.3)
+                                .withBodyFile("latency-problem5/greek.json"))));
+
+        wireMockServer.stubFor(get(urlEqualTo("/greek-instance5"))
+                .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                        .withStatus(200)
+                        .withLogNormalRandomDelay(1500, 0.1)
+                        .withBodyFile("latency-problem5/greek.json")));
+    }
+
+    private LatencyHistogram measure(int requests, Supplier<CompletableFuture<List<String>>> solution) {
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        List<CompletableFuture<List<String>>> results = IntStream.range(0, requests)
+                .mapToObj(i -> {
+                    long start = System.nanoTime();
+                    return solution.get().whenComplete((result, ex) -> histogram.record(System.nanoTime() - start));
+                })
+                .collect(toList());
+        results.forEach(result -> then(result.join()).isEqualTo(List.of("Ares", "Athena", "Apollo", "Artemis", "Aphrodite")));
+        return histogram;
+    }
+
+    @Test
+    public void given_slowReplica_when_JavaHedgedSolution_then_tailIsCutTest() {
+
+        //Given
+        final List<String> list = Collections.unmodifiableList(List.of(
+                "http://localhost:8090/greek-instance1",
+                "http://localhost:8090/greek-instance2",
+                "http://localhost:8090/greek-instance3",
+                "http://localhost:8090/greek-instance4",
+                "http://localhost:8090/greek-instance5"));
+        final int timeout = 3;
+
+        loadLogNormalStubs();
+
+        //When
+        LatencyProblem05.Config config = new LatencyProblem05.Config(list, null, timeout);
+        LatencyProblem05 problem = new LatencyProblem05(config);
+        problem.hedging = new Hedging<>(new Hedging.Config(0.95, Duration.ofMillis(10), Duration.ofMillis(300), 20, 0.5, 5));
+
+        LatencyHistogram single = measure(50, problem::JavaNonBlockingSolution);
+        LatencyHistogram hedged = measure(50, problem::JavaHedgedSolution);
+
+        //Then
+        LOGGER.info("p99 single: {}, p99 hedged: {}", single.percentile(0.99), hedged.percentile(0.99));
+        then(single.percentile(0.99)).isGreaterThan(Duration.ofMillis(1000));
+        then(hedged.percentile(0.99)).isLessThan(Duration.ofMillis(1000));
+        then(problem.hedging.stats().getHedges()).isLessThanOrEqualTo(30);
+    }
+
 }
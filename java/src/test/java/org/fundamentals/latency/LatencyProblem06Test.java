@@ -5,7 +5,6 @@ import com.github.tomakehurst.wiremock.http.Fault;
 import io.vavr.control.Option;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import lombok.extern.slf4j.Slf4j;
 import org.fundamentals.latency.LatencyProblem06;
 import org.junit.jupiter.api.AfterEach;
@@ -14,7 +13,9 @@ import org.junit.jupiter.api.Test;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
 import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.stubbing.Scenario.STARTED;
 import static org.assertj.core.api.BDDAssertions.then;
 
 @Slf4j
@@ -38,12 +39,7 @@ public class LatencyProblem06Test {
 
         //Given
         final String address = "http://localhost:8090/greek-instance1";
-        final ExecutorService executor = Executors.newFixedThreadPool(10,
-                r -> {
-                    Thread thread = new Thread(r);
-                    thread.setName("MyExecutor");
-                    return thread;
-                });
+        final ExecutorService executor = VirtualThreads.newExecutor(10, "MyExecutor");
         final int timeout = 2;
         final int maxRetryAttempts = 3;
 
@@ -68,12 +64,7 @@ public class LatencyProblem06Test {
 
         //Given
         final String address = "http://localhost:8090/greek-instance1";
-        final ExecutorService executor = Executors.newFixedThreadPool(10,
-                r -> {
-                    Thread thread = new Thread(r);
-                    thread.setName("MyExecutor");
-                    return thread;
-                });
+        final ExecutorService executor = VirtualThreads.newExecutor(10, "MyExecutor");
         final int timeout = 2;
         final int maxRetryAttempts = 3;
 
@@ -99,12 +90,7 @@ public class LatencyProblem06Test {
 
         //Given
         final String address = "http://localhost:8090/greek-instance1";
-        final ExecutorService executor = Executors.newFixedThreadPool(10,
-                r -> {
-                    Thread thread = new Thread(r);
-                    thread.setName("MyExecutor");
-                    return thread;
-                });
+        final ExecutorService executor = VirtualThreads.newExecutor(10, "MyExecutor");
         final int timeout = 2;
         final int maxRetryAttempts = 3;
 
@@ -126,12 +112,7 @@ public class LatencyProblem06Test {
 
         //Given
         final String address = "http://localhost:8090/greek-instance1";
-        final ExecutorService executor = Executors.newFixedThreadPool(10,
-                r -> {
-                    Thread thread = new Thread(r);
-                    thread.setName("MyExecutor");
-                    return thread;
-                });
+        final ExecutorService executor = VirtualThreads.newExecutor(10, "MyExecutor");
         final int timeout = 2;
         final int maxRetryAttempts = 3;
 
@@ -155,12 +136,7 @@ public class LatencyProblem06Test {
 
         //Given
         final String address = "KATAKROKER";
-        final ExecutorService executor = Executors.newFixedThreadPool(10,
-                r -> {
-                    Thread thread = new Thread(r);
-                    thread.setName("MyExecutor");
-                    return thread;
-                });
+        final ExecutorService executor = VirtualThreads.newExecutor(10, "MyExecutor");
         final int timeout = 2;
         final int maxRetryAttempts = 3;
 
@@ -174,4 +150,109 @@ public class LatencyProblem06Test {
         executor.shutdown();
     }
 
+    @Test
+    public void given_JavaNonBlockingSolution_when_happyPath_then_expectedResultsTest() {
+
+        //Given
+        final String address = "http://localhost:8090/greek-instance1";
+        final ExecutorService executor = VirtualThreads.newExecutor(10, "MyExecutor");
+        final int timeout = 2;
+        final int maxRetryAttempts = 3;
+
+        wireMockServer.stubFor(get(urlEqualTo("/greek-instance1"))
+                .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                .withStatus(200)
+                .withBodyFile("latency-problem6/greek.json")));
+
+        //When
+        LatencyProblem06.Config config = new LatencyProblem06.Config(address, executor, timeout, maxRetryAttempts);
+        LatencyProblem06 problem = new LatencyProblem06(config);
+
+        //Then
+        then(problem.JavaNonBlockingSolution().join())
+                .isEqualTo(Option.of(List.of("Ares", "Athena", "Apollo", "Artemis", "Aphrodite")));
+
+        executor.shutdown();
+    }
+
+    @Test
+    public void given_JavaNonBlockingSolution_when_corruptedResponse_then_expectedResultsTest() {
+
+        //Given
+        final String address = "http://localhost:8090/greek-instance1";
+        final ExecutorService executor = VirtualThreads.newExecutor(10, "MyExecutor");
+        final int timeout = 2;
+        final int maxRetryAttempts = 3;
+
+        wireMockServer.stubFor(get(urlEqualTo("/greek-instance1"))
+                .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                        .withStatus(200)
+                        .withBodyFile("latency-problem6/bad_greek_response.json")));
+
+        //When
+        LatencyProblem06.Config config = new LatencyProblem06.Config(address, executor, timeout, maxRetryAttempts);
+        LatencyProblem06 problem = new LatencyProblem06(config);
+
+        //Then
+        then(problem.JavaNonBlockingSolution().join()).isEqualTo(Option.none());
+
+        executor.shutdown();
+    }
+
+    @Test
+    public void given_JavaNonBlockingSolution_when_badInternalConfiguration_then_expectedResultsTest() {
+
+        //Given
+        final String address = "KATAKROKER";
+        final ExecutorService executor = VirtualThreads.newExecutor(10, "MyExecutor");
+        final int timeout = 2;
+        final int maxRetryAttempts = 3;
+
+        //When
+        LatencyProblem06.Config config = new LatencyProblem06.Config(address, executor, timeout, maxRetryAttempts);
+        LatencyProblem06 problem = new LatencyProblem06(config);
+
+        //Then
+        then(problem.JavaNonBlockingSolution().join()).isEqualTo(Option.none());
+
+        executor.shutdown();
+    }
+
+    @Test
+    public void given_JavaNonBlockingSolution_when_upstreamRecovers_then_retriedWithBackOffTest() {
+
+        //Given
+        final String address = "http://localhost:8090/greek-instance1";
+        final int timeout = 2;
+        final int maxRetryAttempts = 3;
+
+        wireMockServer.stubFor(get(urlEqualTo("/greek-instance1")).inScenario("brownout")
+                .whenScenarioStateIs(STARTED)
+                .willReturn(aResponse().withStatus(503))
+                .willSetStateTo("recovering"));
+
+        wireMockServer.stubFor(get(urlEqualTo("/greek-instance1")).inScenario("brownout")
+                .whenScenarioStateIs("recovering")
+                .willReturn(aResponse().withStatus(503))
+                .willSetStateTo("recovered"));
+
+        wireMockServer.stubFor(get(urlEqualTo("/greek-instance1")).inScenario("brownout")
+                .whenScenarioStateIs("recovered")
+                .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                        .withStatus(200)
+                        .withBodyFile("latency-problem6/greek.json")));
+
+        //When
+        //The budget of the process is shared with the other tests
+        LatencyProblem06.Config config = new LatencyProblem06.Config(address, null, timeout, maxRetryAttempts,
+                Transport.getDefault(), new RetryPolicy.Budget(0.1, 10));
+        LatencyProblem06 problem = new LatencyProblem06(config);
+
+        //Then
+        then(problem.JavaNonBlockingSolution().join())
+                .isEqualTo(Option.of(List.of("Ares", "Athena", "Apollo", "Artemis", "Aphrodite")));
+        wireMockServer.verify(3, getRequestedFor(urlEqualTo("/greek-instance1")));
+        then(problem.retryStats().getAmplification()).isEqualTo(3.0);
+    }
+
 }
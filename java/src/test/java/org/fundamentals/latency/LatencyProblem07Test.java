@@ -4,7 +4,6 @@ import com.github.tomakehurst.wiremock.WireMockServer;
 import io.vavr.control.Option;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import lombok.extern.slf4j.Slf4j;
@@ -38,12 +37,7 @@ public class LatencyProblem07Test {
 
         //Given
         final String address = "http://localhost:8090/roman-instance1";
-        final ExecutorService executor = Executors.newFixedThreadPool(10,
-                r -> {
-                    Thread thread = new Thread(r);
-                    thread.setName("MyExecutor");
-                    return thread;
-                });
+        final ExecutorService executor = VirtualThreads.newExecutor(10, "MyExecutor");
         final int timeout = 2;
 
         //When
@@ -102,4 +96,50 @@ public class LatencyProblem07Test {
         then(result).isEqualTo(Option.none());
     }
 
+    @Test
+    public void given_JavaNonBlockingSolution_when_happyPath_then_expectedResultsTest() {
+
+        //Given
+        wireMockServer.stubFor(get(urlEqualTo("/roman-instance1"))
+                .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                .withStatus(200)
+                .withBodyFile("latency-problem7/roman.json")));
+
+        LatencyProblem07 problem = new LatencyProblem07(getDefaultConfig());
+
+        //When
+        var result = problem.JavaNonBlockingSolution().join();
+
+        //Then
+        then(result).isEqualTo(Option.of(List.of("Venus", "Mars")));
+    }
+
+    @Test
+    public void given_JavaNonBlockingSolution_when_slowCalls_then_circuitBreakerOpenTest() {
+
+        //Given
+        wireMockServer.stubFor(get(urlEqualTo("/roman-instance1"))
+                .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                        .withStatus(200)
+                        .withBodyFile("latency-problem7/roman.json")
+                        .withFixedDelay(700)));
+
+        LatencyProblem07.Config config = getDefaultConfig();
+        config.setBreaker(LatencyProblem07.Breaker.SLOW_CALLS);
+        LatencyProblem07 problem = new LatencyProblem07(config);
+
+        //When
+        //The calls are slower than the slow call duration but they do not time out
+        List<Option<List<String>>> results = IntStream.rangeClosed(1, 6).boxed()
+                .map(i -> problem.JavaNonBlockingSolution().join())
+                .collect(Collectors.toUnmodifiableList());
+
+        //Then
+        then(results.get(0)).isEqualTo(Option.of(List.of("Venus", "Mars")));
+        then(results.get(5)).isEqualTo(Option.none());
+        then(problem.transitions())
+                .extracting(SlowCallCircuitBreaker.Transition::getTo)
+                .containsExactly(SlowCallCircuitBreaker.State.OPEN);
+    }
+
 }
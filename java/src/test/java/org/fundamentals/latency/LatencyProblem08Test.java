@@ -43,12 +43,7 @@ public class LatencyProblem08Test {
 
         //Given
         final String address = "http://localhost:8090/indian-instance1";
-        final ExecutorService executor = Executors.newFixedThreadPool(10,
-                r -> {
-                    Thread thread = new Thread(r);
-                    thread.setName("MyExecutor");
-                    return thread;
-                });
+        final ExecutorService executor = VirtualThreads.newExecutor(10, "MyExecutor");
         final int timeout = 2;
 
         //When
@@ -135,4 +130,45 @@ public class LatencyProblem08Test {
         //then(result).isEqualTo(Option.none());
     }
 
+    @Test
+    public void given_JavaNonBlockingSolution_when_happyPath_then_expectedResultsTest() {
+
+        //Given
+        wireMockServer.stubFor(get(urlEqualTo("/indian-instance1"))
+                .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                .withStatus(200)
+                .withBodyFile("latency-problem8/indian.json")));
+
+        LatencyProblem08 problem = new LatencyProblem08(getDefaultConfig());
+
+        //When
+        var result = problem.JavaNonBlockingSolution().join();
+
+        //Then
+        then(result).isEqualTo(Option.of(
+                List.of("Shiva", "Ganapati", "Krishna", "Saraswati", "Lakshmi", "Durga Devi", "Indra", "Agni")));
+    }
+
+    @Test
+    public void given_JavaNonBlockingSolution_when_burstAboveLimit_then_callersWaitForPermitsTest() {
+
+        //Given
+        wireMockServer.stubFor(get(urlEqualTo("/indian-instance1"))
+                .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                .withStatus(200)
+                .withBodyFile("latency-problem8/indian.json")));
+
+        LatencyProblem08 problem = new LatencyProblem08(getDefaultConfig());
+
+        //When
+        //20 calls at once, 2 permits per ms: the last ones wait about 10 ms in the timer
+        List<CompletableFuture<Option<List<String>>>> requests = IntStream.rangeClosed(1, 20).boxed()
+                .map(i -> problem.JavaNonBlockingSolution())
+                .collect(Collectors.toUnmodifiableList());
+
+        //Then
+        then(requests.stream().map(CompletableFuture::join))
+                .allMatch(Option::isDefined);
+    }
+
 }
@@ -0,0 +1,68 @@
+package org.fundamentals.latency;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+
+/**
+ * Latency of LatencyProblem05 with every load balancing strategy.
+ *
+ * The replicas are not equal: 3 answer in ~10 ms, one in ~50 ms and one in ~200 ms,
+ * so the strategies which look at the load or the latency avoid the slow ones.
+ * The benchmark runs with several threads, so requests are outstanding at the same time.
+ */
+public class LoadBalancerBenchmark {
+
+    static final int[] REPLICA_LATENCIES = {10, 10, 10, 50, 200};
+
+    @State(Scope.Benchmark)
+    public static class St {
+
+        @Param({"RANDOM", "ROUND_ROBIN", "LEAST_OUTSTANDING", "POWER_OF_TWO", "EWMA"})
+        LoadBalancer.Strategy strategy;
+
+        WireMockServer wireMockServer;
+        LatencyProblem05 problem;
+
+        @Setup
+        public void setup() {
+
+            wireMockServer = new WireMockServer(options().port(8090).containerThreads(100));
+            wireMockServer.start();
+            IntStream.range(0, REPLICA_LATENCIES.length).forEach(i ->
+                    wireMockServer.stubFor(get(urlEqualTo("/greek-instance" + (i + 1)))
+                            .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                                    .withStatus(200)
+                                    .withLogNormalRandomDelay(REPLICA_LATENCIES[i], 0.1)
+                                    .withBodyFile("latency-problem5/greek.json"))));
+
+            List<String> replicas = IntStream.rangeClosed(1, REPLICA_LATENCIES.length)
+                    .mapToObj(i -> "http://localhost:8090/greek-instance" + i)
+                    .collect(Collectors.toUnmodifiableList());
+            problem = new LatencyProblem05(new LatencyProblem05.Config(replicas, null, 2, strategy));
+        }
+
+        @TearDown
+        public void tearDown() {
+            wireMockServer.stop();
+        }
+    }
+
+    @Benchmark
+    public List<String> nonBlockingSolution(St st) {
+        return st.problem.JavaNonBlockingSolution().join();
+    }
+
+}
@@ -0,0 +1,38 @@
+package org.fundamentals.latency;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+public class LoadBalancerBenchmarkTest {
+
+    @Tag("performance")
+    @Test
+    public void given_heterogeneousReplicas_when_loadBalancingStrategies_then_compareLatencyTest() throws RunnerException {
+
+        Options options = new OptionsBuilder()
+                .include(LoadBalancerBenchmark.class.getSimpleName())
+                .resultFormat(ResultFormatType.JSON)
+                .result("target/jmh-results-load-balancer.json")
+                .mode(Mode.SampleTime)
+                .timeUnit(TimeUnit.MILLISECONDS)
+                .threads(8)
+                .warmupTime(TimeValue.seconds(5))
+                .measurementTime(TimeValue.seconds(5))
+                .measurementIterations(3)
+                .warmupIterations(1)
+                .forks(1)
+                .jvmArgs("-Xmx2048m", "-Xms2048m", "-XX:+UseG1GC")
+                .build();
+
+        new Runner(options).run();
+    }
+
+}
@@ -0,0 +1,68 @@
+package org.fundamentals.latency;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Lookup of the circuit breaker of every request, with many threads.
+ *
+ * - synchronizedHolder: the static synchronized getter used by LatencyProblem07 before the Registry,
+ *   called 3 times per request to read the metrics which are logged in DEBUG.
+ * - registry: Registry lookup, the metrics are only read when DEBUG is enabled.
+ *
+ * The loggers are in INFO, as in production, so the benchmark measures the lookups and not the appenders.
+ */
+public class RegistryBenchmark {
+
+    static final String ADDRESS = "http://localhost:8090/roman-instance1";
+
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(RegistryBenchmark.class);
+
+    private static class CB {
+
+        static final CircuitBreaker circuitBreaker = CircuitBreaker.of("circuitBreaker", CircuitBreakerConfig.ofDefaults());
+
+        static synchronized CircuitBreaker getCircuitBreaker() {
+            return circuitBreaker;
+        }
+    }
+
+    static final Registry<CircuitBreaker> CIRCUIT_BREAKERS = new Registry<>(name -> CircuitBreaker.of(name, CircuitBreakerConfig.ofDefaults()));
+
+    @State(Scope.Benchmark)
+    public static class St {
+
+        @Setup
+        public void setup() {
+            ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.INFO);
+        }
+    }
+
+    @Benchmark
+    public void synchronizedHolder(St st, Blackhole blackhole) {
+        LOGGER.debug("getNumberOfBufferedCalls: {}", CB.getCircuitBreaker().getMetrics().getNumberOfBufferedCalls());
+        LOGGER.debug("getNumberOfFailedCalls: {}", CB.getCircuitBreaker().getMetrics().getNumberOfFailedCalls());
+        LOGGER.debug("getNumberOfSuccessfulCalls: {}", CB.getCircuitBreaker().getMetrics().getNumberOfSuccessfulCalls());
+        blackhole.consume(CB.getCircuitBreaker());
+    }
+
+    @Benchmark
+    public void registry(St st, Blackhole blackhole) {
+        CircuitBreaker circuitBreaker = CIRCUIT_BREAKERS.get(ADDRESS);
+        if (LOGGER.isDebugEnabled()) {
+            CircuitBreaker.Metrics metrics = circuitBreaker.getMetrics();
+            LOGGER.debug("getNumberOfBufferedCalls: {}, getNumberOfFailedCalls: {}, getNumberOfSuccessfulCalls: {}",
+                    metrics.getNumberOfBufferedCalls(), metrics.getNumberOfFailedCalls(), metrics.getNumberOfSuccessfulCalls());
+        }
+        blackhole.consume(circuitBreaker);
+    }
+
+}
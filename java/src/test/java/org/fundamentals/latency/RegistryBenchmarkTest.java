@@ -0,0 +1,39 @@
+package org.fundamentals.latency;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+public class RegistryBenchmarkTest {
+
+    @Tag("performance")
+    @Test
+    public void given_manyThreads_when_lookupCircuitBreaker_then_noClassLockTest() throws RunnerException {
+
+        //Several threads per core, as the request threads of a server
+        Options options = new OptionsBuilder()
+                .include(RegistryBenchmark.class.getSimpleName())
+                .resultFormat(ResultFormatType.JSON)
+                .result("target/jmh-results-registry.json")
+                .mode(Mode.Throughput)
+                .timeUnit(TimeUnit.MICROSECONDS)
+                .threads(Runtime.getRuntime().availableProcessors() * 4)
+                .warmupTime(TimeValue.seconds(3))
+                .measurementTime(TimeValue.seconds(3))
+                .measurementIterations(5)
+                .warmupIterations(2)
+                .forks(1)
+                .jvmArgs("-Xmx2048m", "-Xms2048m", "-XX:+UseG1GC")
+                .build();
+
+        new Runner(options).run();
+    }
+
+}
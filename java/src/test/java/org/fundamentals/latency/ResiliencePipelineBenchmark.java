@@ -0,0 +1,105 @@
+package org.fundamentals.latency;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.decorators.Decorators;
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterConfig;
+import io.github.resilience4j.retry.Retry;
+import io.github.resilience4j.retry.RetryConfig;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Overhead per call of the resilience patterns, the upstream answers at once.
+ *
+ * - baseline: the upstream without any pattern.
+ * - adHoc: wiring of LatencyProblem06/07/08 before the pipeline, a Retry is built
+ *   and the Supplier is decorated on every call.
+ * - pipeline: ResiliencePipeline built once and the decorated Supplier reused.
+ *
+ * Both run retry, circuit breaker and rate limiter, the rate limiter does not limit.
+ */
+public class ResiliencePipelineBenchmark {
+
+    static final Option<List<String>> GODS = Option.some(List.of("Ares", "Athena", "Apollo"));
+
+    @State(Scope.Benchmark)
+    public static class St {
+
+        CircuitBreaker circuitBreaker;
+        RateLimiter rateLimiter;
+        Supplier<Option<List<String>>> upstream;
+        Supplier<Option<List<String>>> pipelineSupplier;
+        Supplier<CompletableFuture<Option<List<String>>>> pipelineCompletionStage;
+
+        @Setup
+        public void setup() {
+
+            //The circuit breaker logs every call in DEBUG, the benchmark would measure the appenders
+            ((Logger) LoggerFactory.getLogger("io.github.resilience4j")).setLevel(Level.INFO);
+
+            circuitBreaker = CircuitBreaker.of("benchmark", CircuitBreakerConfig.ofDefaults());
+            rateLimiter = RateLimiter.of("benchmark", RateLimiterConfig.custom()
+                    .limitRefreshPeriod(Duration.ofSeconds(1))
+                    .limitForPeriod(Integer.MAX_VALUE)
+                    .timeoutDuration(Duration.ZERO)
+                    .build());
+            upstream = () -> GODS;
+
+            ResiliencePipeline<Option<List<String>>> pipeline = ResiliencePipeline.<Option<List<String>>>builder("benchmark")
+                    .retry(new RetryPolicy(RetryPolicy.config(3), new RetryPolicy.Budget(0.1, 10)))
+                    .circuitBreaker(circuitBreaker)
+                    .rateLimiter(rateLimiter)
+                    .failureOnResult(Option::isEmpty)
+                    .fallback(ex -> Option.none())
+                    .build();
+            pipelineSupplier = pipeline.decorateSupplier(upstream);
+            pipelineCompletionStage = pipeline.decorate(() -> CompletableFuture.completedFuture(GODS));
+        }
+    }
+
+    @Benchmark
+    public Option<List<String>> baseline(St st) {
+        return st.upstream.get();
+    }
+
+    @Benchmark
+    public Option<List<String>> adHoc(St st) {
+
+        Retry retry = Retry.of("retry", RetryConfig.<Option<List<String>>>custom()
+                .maxAttempts(3)
+                .retryOnResult(r -> r.equals(Option.none()))
+                .build());
+
+        Supplier<Option<List<String>>> decorated = Decorators.ofSupplier(st.upstream)
+                .withRateLimiter(st.rateLimiter)
+                .withCircuitBreaker(st.circuitBreaker)
+                .withRetry(retry)
+                .decorate();
+
+        return Try.ofSupplier(decorated).recover(ex -> Option.none()).get();
+    }
+
+    @Benchmark
+    public Option<List<String>> pipelineSupplier(St st) {
+        return st.pipelineSupplier.get();
+    }
+
+    @Benchmark
+    public Option<List<String>> pipelineCompletionStage(St st) {
+        return st.pipelineCompletionStage.get().join();
+    }
+
+}
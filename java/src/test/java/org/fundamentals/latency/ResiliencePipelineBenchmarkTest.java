@@ -0,0 +1,38 @@
+package org.fundamentals.latency;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+public class ResiliencePipelineBenchmarkTest {
+
+    @Tag("performance")
+    @Test
+    public void given_resiliencePatterns_when_adHocOrPipeline_then_compareOverheadTest() throws RunnerException {
+
+        Options options = new OptionsBuilder()
+                .include(ResiliencePipelineBenchmark.class.getSimpleName())
+                .resultFormat(ResultFormatType.JSON)
+                .result("target/jmh-results-resilience-pipeline.json")
+                .mode(Mode.AverageTime)
+                .timeUnit(TimeUnit.NANOSECONDS)
+                .warmupTime(TimeValue.seconds(3))
+                .measurementTime(TimeValue.seconds(3))
+                .measurementIterations(5)
+                .warmupIterations(2)
+                .forks(1)
+                .jvmArgs("-Xmx2048m", "-Xms2048m", "-XX:+UseG1GC")
+                .addProfiler("gc")
+                .build();
+
+        new Runner(options).run();
+    }
+
+}
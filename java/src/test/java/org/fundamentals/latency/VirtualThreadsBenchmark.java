@@ -0,0 +1,84 @@
+package org.fundamentals.latency;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Blocking fetches with a fixed pool versus one virtual thread per request.
+ *
+ * Every operation runs `concurrency` lookups with 10 ms of latency on the
+ * loopback transport, so the network is not measured. Memory per in flight
+ * request is gc.alloc.rate.norm / concurrency (GCProfiler).
+ */
+public class VirtualThreadsBenchmark {
+
+    static final int FIXED_POOL_SIZE = 200;
+    static final String ADDRESS = "http://loopback/greek";
+
+    @State(Scope.Benchmark)
+    public static class St {
+
+        @Param({"fixed", "virtual"})
+        String executor;
+
+        @Param({"10", "1000", "10000"})
+        int concurrency;
+
+        ExecutorService service;
+        LoopbackTransport transport;
+        URL url;
+
+        @Setup
+        public void setup() throws IOException {
+
+            service = "virtual".equals(executor)
+                    ? VirtualThreads.newVirtualThreadPerTaskExecutor("benchmark")
+                    : Executors.newFixedThreadPool(FIXED_POOL_SIZE);
+            transport = new LoopbackTransport()
+                    .respond(ADDRESS, LoopbackTransport.ok("application/json", fixture("greek.json"))
+                            .withLatency(() -> Duration.ofMillis(10)));
+            url = new URL(ADDRESS);
+        }
+
+        @TearDown
+        public void tearDown() {
+            service.shutdown();
+        }
+    }
+
+    @Benchmark
+    public long blockingLookups(St st) throws InterruptedException, ExecutionException {
+
+        List<Future<String>> lookups = IntStream.range(0, st.concurrency)
+                .mapToObj(i -> st.service.submit(() -> SimpleCurl.fetchVia.apply(st.transport).apply(st.url)))
+                .collect(Collectors.toList());
+
+        long length = 0;
+        for (Future<String> lookup : lookups) {
+            length += lookup.get().length();
+        }
+        return length;
+    }
+
+    static byte[] fixture(String name) throws IOException {
+        try (InputStream input = VirtualThreadsBenchmark.class.getResourceAsStream("/__files/" + name)) {
+            return input.readAllBytes();
+        }
+    }
+
+}
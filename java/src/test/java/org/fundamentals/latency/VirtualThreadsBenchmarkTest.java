@@ -0,0 +1,44 @@
+package org.fundamentals.latency;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class VirtualThreadsBenchmarkTest {
+
+    @Tag("performance")
+    @Test
+    public void given_blockingLookups_when_fixedPoolOrVirtualThreads_then_compareTest() throws RunnerException {
+
+        assumeTrue(VirtualThreads.isSupported(), "Virtual threads require Java 21");
+
+        Options options = new OptionsBuilder()
+                .include(VirtualThreadsBenchmark.class.getSimpleName())
+                .resultFormat(ResultFormatType.JSON)
+                .result("target/jmh-results-virtual-threads.json")
+                .mode(Mode.Throughput)
+                .timeUnit(TimeUnit.SECONDS)
+                .warmupTime(TimeValue.seconds(5))
+                .measurementTime(TimeValue.seconds(5))
+                .measurementIterations(5)
+                .warmupIterations(1)
+                .shouldDoGC(true)
+                .forks(1)
+                .jvmArgs("-Xmx2048m", "-Xms2048m", "-XX:+UseG1GC")
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(options).run();
+    }
+
+}
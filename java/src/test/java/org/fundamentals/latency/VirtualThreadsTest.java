@@ -0,0 +1,54 @@
+package org.fundamentals.latency;
+
+import java.net.URL;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class VirtualThreadsTest {
+
+    @Test
+    public void given_java21_when_tenThousandBlockingFetches_then_notLimitedByAPoolTest() throws Exception {
+
+        assumeTrue(VirtualThreads.isSupported(), "Virtual threads require Java 21");
+
+        LoopbackTransport transport = new LoopbackTransport()
+                .respond("http://loopback/greek", LoopbackTransport
+                        .ok("application/json", VirtualThreadsBenchmark.fixture("greek.json"))
+                        .withLatency(() -> Duration.ofMillis(200)));
+        URL url = new URL("http://loopback/greek");
+
+        ExecutorService executor = VirtualThreads.newVirtualThreadPerTaskExecutor("lookup");
+        long start = System.nanoTime();
+        List<Future<String>> lookups = IntStream.range(0, 10_000)
+                .mapToObj(i -> executor.submit(() -> SimpleCurl.fetchVia.apply(transport).apply(url)))
+                .collect(Collectors.toList());
+        for (Future<String> lookup : lookups) {
+            then(lookup.get()).contains("Zeus");
+        }
+
+        //With a pool of 10 threads it would take 10_000 / 10 * 200 ms
+        then(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(10));
+        executor.shutdown();
+    }
+
+    @Test
+    public void given_java11_when_newVirtualThreadPerTaskExecutor_then_unsupportedTest() {
+
+        assumeFalse(VirtualThreads.isSupported());
+
+        then(VirtualThreads.isEnabled()).isFalse();
+        thenThrownBy(VirtualThreads::newVirtualThreadPerTaskExecutor)
+                .isInstanceOf(UnsupportedOperationException.class);
+    }
+
+}
@@ -19,8 +19,6 @@ import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Scheduler;
 import reactor.core.scheduler.Schedulers;
 
-import static org.fundamentals.latency.SimpleCurl.fetch;
-
 /**
  * Feature: Consume some REST God Services
  *
@@ -54,12 +52,20 @@ public class LatencyProblem01 {
 
         private List<String> list;
         private int timeout;
+        private Transport transport;
+
+        public Config(List<String> list, int timeout) {
+            this(list, timeout, Transport.getDefault());
+        }
     }
 
     private Config config;
+    //Learns the latency of every list, the timeout of the Config is the ceiling
+    private AdaptiveTimeout timeouts;
 
     public LatencyProblem01(Config config) {
         this.config = config;
+        this.timeouts = new AdaptiveTimeout(AdaptiveTimeout.config(Duration.ofSeconds(config.getTimeout())));
     }
 
     Function<String, URL> toURL = address -> Try.of(() ->
@@ -98,18 +104,67 @@ public class LatencyProblem01 {
 
     private Scheduler scheduler = Schedulers.elastic();
 
-    final Flux<String> DEFAULT_FALLBACK = Flux.just("{[]}");
+    //A list which fails or times out counts as empty, a partial list is never summed
+    final List<String> DEFAULT_FALLBACK = List.of();
 
     Function<String, Flux<String>> asyncFetchFlux = list -> {
-        return Flux.just(list)
-                .publishOn(scheduler)
-                .map(i -> toURL.andThen(fetch).apply(i))
-                .timeout(Duration.ofSeconds(config.getTimeout()), DEFAULT_FALLBACK)
+        return Mono.just(list)
+                .map(toURL)
+                .flatMapMany(url -> Flux.just(url)
+                        .publishOn(scheduler)
+                        .map(SimpleCurl.fetchVia.apply(config.getTransport()))
+                        .transform(ReactorCurl.timeout(timeouts, url)))
                 .log()
                 .flatMap(serializeFlux)
-                .onErrorResume(ex -> DEFAULT_FALLBACK);
+                .onErrorResume(ex -> Flux.fromIterable(DEFAULT_FALLBACK));
+    };
+
+    Function<String, Flux<String>> fetchFluxNonBlocking = address -> {
+        return Mono.just(address)
+                .map(toURL)
+                .flatMap(url -> ReactorCurl.fetchNamesFluxVia.apply(config.getTransport()).apply(url)
+                        .transform(ReactorCurl.timeout(timeouts, url))
+                        .collectList())
+                .log()
+                .onErrorReturn(DEFAULT_FALLBACK)
+                .flatMapIterable(Function.identity());
+    };
+
+    public Mono<BigInteger> reactorNonBlockingSolution() {
+
+        return Flux.fromIterable(config.getList())
+                .flatMap(fetchFluxNonBlocking)
+                .filter(godStartingByn)
+                .transform(sumFlux)
+                .doOnError(ex -> LOGGER.warn(ex.getLocalizedMessage(), ex))
+                .onErrorReturn(BigInteger.ZERO)
+                .next()
+                .subscriberContext(ReactorCurl.deadline(Duration.ofSeconds(config.getTimeout())));
+    }
+
+    //The lists rarely change, so repeated subscriptions are answered from the cache or revalidated with a 304
+    HttpCache<List<String>> godsCache = new HttpCache<>(JsonNames.ofList());
+
+    Function<String, Flux<String>> fetchFluxCached = address -> {
+        return Mono.just(address)
+                .map(toURL)
+                .flatMap(url -> Mono.fromFuture(timeouts.orTimeout(url, godsCache.fetchAsync(url))))
+                .log()
+                .onErrorReturn(DEFAULT_FALLBACK)
+                .flatMapIterable(Function.identity());
     };
 
+    public Mono<BigInteger> reactorCachedSolution() {
+
+        return Flux.fromIterable(config.getList())
+                .flatMap(fetchFluxCached)
+                .filter(godStartingByn)
+                .transform(sumFlux)
+                .doOnError(ex -> LOGGER.warn(ex.getLocalizedMessage(), ex))
+                .onErrorReturn(BigInteger.ZERO)
+                .next();
+    }
+
     public Mono<BigInteger> reactorSolution() {
 
         return Flux.fromIterable(config.getList())
@@ -5,10 +5,12 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import io.vavr.Tuple2;
 import io.vavr.control.Try;
 import java.net.URL;
+import java.time.Duration;
 import java.util.Comparator;
 import java.util.List;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -19,7 +21,6 @@ import reactor.core.scheduler.Schedulers;
 
 import static org.fundamentals.latency.LatencyProblem02.KEYS.GREEK;
 import static org.fundamentals.latency.LatencyProblem02.KEYS.WIKIPEDIA;
-import static org.fundamentals.latency.SimpleCurl.fetch;
 
 /**
  * Problem 2
@@ -51,6 +52,11 @@ public class LatencyProblem02 {
 
         private final Map<KEYS, String> apiMap;
         private int timeout;
+        private Transport transport;
+
+        public Config(Map<KEYS, String> apiMap, int timeout) {
+            this(apiMap, timeout, Transport.getDefault());
+        }
     }
 
     private Config config;
@@ -82,7 +88,7 @@ public class LatencyProblem02 {
         return Flux.just(this.config.getApiMap().get(GREEK))
                 .publishOn(Schedulers.immediate())
                 .map(toURL)
-                .map(fetch)
+                .map(url -> SimpleCurl.fetchVia.apply(config.getTransport()).apply(url))
                 .flatMap(serializeFlux)
                 .log();
     };
@@ -94,13 +100,33 @@ public class LatencyProblem02 {
                 .map(str -> {
                     return new Tuple2<String, Integer>(str, generateWikiAddress
                             .andThen(toURL)
-                            .andThen(fetch)
-                            .andThen(String::length)
+                            .andThen(SimpleCurl.fetchContentLengthAsyncVia.apply(config.getTransport()))
+                            .andThen(CompletableFuture::join)
+                            .andThen(Math::toIntExact)
                             .apply(str));
                 })
                 .log();
     };
 
+    Function<Object, Flux<String>> fetchGreekGodsNonBlocking = obj -> {
+
+        return Mono.just(this.config.getApiMap().get(GREEK))
+                .map(toURL)
+                .flatMapMany(ReactorCurl.fetchNamesFluxVia.apply(config.getTransport()))
+                .log();
+    };
+
+    Function<Flux<String>, Flux<Tuple2<String, Integer>>> fetchWikipediaGodInfoNonBlocking = god -> {
+
+        return Flux.from(god)
+                .flatMap(str -> generateWikiAddress
+                        .andThen(toURL)
+                        .andThen(ReactorCurl.fetchContentLengthMonoVia.apply(config.getTransport()))
+                        .apply(str)
+                        .map(length -> new Tuple2<String, Integer>(str, Math.toIntExact(length))))
+                .log();
+    };
+
     Function<Flux<Tuple2<String, Integer>>, Flux<String>> max = godInfo -> {
 
         return Flux.from(godInfo)
@@ -111,6 +137,16 @@ public class LatencyProblem02 {
                 .log();
     };
 
+    public Mono<String> reactorNonBlockingSolution() {
+
+        return Flux.empty()
+                .transform(fetchGreekGodsNonBlocking)
+                .transform(fetchWikipediaGodInfoNonBlocking)
+                .transform(max)
+                .next()
+                .subscriberContext(ReactorCurl.deadline(Duration.ofSeconds(config.getTimeout())));
+    }
+
     public Mono<String> reactorSolution() {
 
             return Flux.empty()
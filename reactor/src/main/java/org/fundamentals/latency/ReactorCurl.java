@@ -0,0 +1,96 @@
+package org.fundamentals.latency;
+
+import java.net.URL;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+/**
+ * Reactor adapters for the non blocking functions of SimpleCurl.
+ * The request is sent on subscription and it is cancelled
+ * if the subscriber cancels. The Deadline of the subscriber Context
+ * is applied to the requests.
+ */
+public class ReactorCurl {
+
+    /**
+     * Key of the Deadline in the subscriber Context. The adapters send
+     * the requests with the remaining budget of that Deadline.
+     */
+    static final Class<Deadline> DEADLINE = Deadline.class;
+
+    /**
+     * Puts a Deadline in the Context when the pipeline is subscribed,
+     * a Deadline set by a downstream subscriber is kept.
+     */
+    static Function<Context, Context> deadline(Duration budget) {
+        return context -> context.hasKey(DEADLINE) ? context : context.put(DEADLINE, Deadline.after(budget));
+    }
+
+    static <T> T within(Context context, Supplier<T> supplier) {
+        return context.<Deadline>getOrEmpty(DEADLINE)
+                .map(deadline -> deadline.call(supplier))
+                .orElseGet(supplier);
+    }
+
+    static Function<Transport, Function<URL, Mono<String>>> fetchMonoVia = transport -> url -> Mono.subscriberContext().flatMap(context -> {
+        CompletableFuture<String> future = within(context, () -> SimpleCurl.fetchAsyncVia.apply(transport).apply(url));
+        return Mono.fromFuture(future)
+                .doOnCancel(() -> future.cancel(true));
+    });
+
+    static Function<URL, Mono<String>> fetchMono = url -> fetchMonoVia.apply(SimpleCurl.transport).apply(url);
+
+    /**
+     * Size in bytes of the body, see SimpleCurl.fetchContentLengthAsync
+     */
+    static Function<Transport, Function<URL, Mono<Long>>> fetchContentLengthMonoVia = transport -> url -> Mono.subscriberContext().flatMap(context -> {
+        CompletableFuture<Long> future = within(context, () -> SimpleCurl.fetchContentLengthAsyncVia.apply(transport).apply(url));
+        return Mono.fromFuture(future)
+                .doOnCancel(() -> future.cancel(true));
+    });
+
+    static Function<URL, Mono<Long>> fetchContentLengthMono = url -> fetchContentLengthMonoVia.apply(SimpleCurl.transport).apply(url);
+
+    /**
+     * Names of a JSON array emitted one by one while the body arrives.
+     */
+    static Function<Transport, Function<URL, Flux<String>>> fetchNamesFluxVia = transport -> url -> Flux.create(sink -> {
+        CompletableFuture<Long> future = within(sink.currentContext(), () -> SimpleCurl.fetchNamesPushVia.apply(transport).apply(url, sink::next));
+        sink.onCancel(() -> future.cancel(true));
+        future.whenComplete((count, ex) -> {
+            if (Objects.isNull(ex)) {
+                sink.complete();
+            } else {
+                sink.error(ex);
+            }
+        });
+    });
+
+    static Function<URL, Flux<String>> fetchNamesFlux = url -> fetchNamesFluxVia.apply(SimpleCurl.transport).apply(url);
+
+    /**
+     * Timeout learnt for the upstream (see AdaptiveTimeout) as a budget of the whole subscription,
+     * a stream which trickles elements fails with TimeoutException when the budget is spent.
+     * The latency of every subscription is recorded.
+     */
+    static <T> Function<Flux<T>, Flux<T>> timeout(AdaptiveTimeout timeouts, URL url) {
+        return flux -> Flux.defer(() -> {
+            long start = System.nanoTime();
+            long budget = timeouts.timeout(url).toNanos();
+            //Every element only gets what is left of the budget
+            return flux
+                    .timeout(Mono.delay(Duration.ofNanos(budget)),
+                            element -> Mono.delay(Duration.ofNanos(Math.max(0, start + budget - System.nanoTime()))))
+                    .doOnComplete(() -> timeouts.record(url, System.nanoTime() - start))
+                    .doOnError(TimeoutException.class, ex -> timeouts.record(url, System.nanoTime() - start));
+        });
+    }
+
+}
@@ -1,9 +1,12 @@
 package org.fundamentals.latency;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigInteger;
 import java.util.List;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
 import reactor.test.StepVerifier;
 
@@ -22,6 +25,31 @@ public class LatencyProblem01Benchmark {
         LatencyProblem01 problem = new LatencyProblem01(new LatencyProblem01.Config(listOfGods, TIMEOUT));
     }
 
+    //Same solutions without network, the difference with St is the cost of the network
+    @State(Scope.Thread)
+    public static class Loopback {
+
+        final int TIMEOUT = 2;
+
+        final List<String> listOfGods = List.of(
+                "http://loopback/greek",
+                "http://loopback/roman",
+                "http://loopback/nordic");
+
+        LatencyProblem01 problem;
+
+        @Setup
+        public void setup() throws IOException {
+
+            LoopbackTransport transport = new LoopbackTransport();
+            for (String god : List.of("greek", "roman", "nordic")) {
+                transport.respond("http://loopback/" + god,
+                        LoopbackTransport.ok("application/json", fixture("latency-problem1/" + god + ".json")));
+            }
+            problem = new LatencyProblem01(new LatencyProblem01.Config(listOfGods, TIMEOUT, transport));
+        }
+    }
+
     @Benchmark
     public void ReactorSolution(St st) {
 
@@ -32,4 +60,30 @@ public class LatencyProblem01Benchmark {
                 .verify();
     }
 
+    @Benchmark
+    public void ReactorSolutionLoopback(Loopback st) {
+
+        StepVerifier
+                .create(st.problem.reactorSolution())
+                .expectNext(new BigInteger("78179288397447443426"))
+                .expectComplete()
+                .verify();
+    }
+
+    @Benchmark
+    public void ReactorNonBlockingSolutionLoopback(Loopback st) {
+
+        StepVerifier
+                .create(st.problem.reactorNonBlockingSolution())
+                .expectNext(new BigInteger("78179288397447443426"))
+                .expectComplete()
+                .verify();
+    }
+
+    static byte[] fixture(String name) throws IOException {
+        try (InputStream input = LatencyProblem01Benchmark.class.getResourceAsStream("/__files/" + name)) {
+            return input.readAllBytes();
+        }
+    }
+
 }
@@ -5,10 +5,15 @@ import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.*;
 
 import java.math.BigInteger;
+import java.net.URL;
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.TimeoutException;
+import reactor.core.publisher.Flux;
 import reactor.test.StepVerifier;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.assertj.core.api.BDDAssertions.then;
 
 @Slf4j
 public class LatencyProblem01Test {
@@ -70,4 +75,121 @@ public class LatencyProblem01Test {
                 .expectComplete()
                 .verify();
     }
+
+    @Test
+    public void given_reactorNonBlockingSolution_when_executeMethod_then_expectedResultsTest() {
+
+        loadStubs();
+
+        LatencyProblem01 problem = new LatencyProblem01(getDefaultConfig());
+
+        StepVerifier
+                .create(problem.reactorNonBlockingSolution())
+                .expectNext(new BigInteger("78179288397447443426"))
+                .expectComplete()
+                .verify();
+    }
+
+    @Test
+    public void given_truncatedList_when_reactorNonBlockingSolution_then_wholeListDroppedTest() {
+
+        loadStubs();
+        //Nike and Nemesis arrive before the body is cut
+        wireMockServer.stubFor(get(urlEqualTo("/greek"))
+                .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                        .withStatus(200)
+                        .withBody("[\"Nike\", \"Nemesis\", \"Zeus\"")));
+
+        LatencyProblem01 problem = new LatencyProblem01(getDefaultConfig());
+
+        StepVerifier
+                .create(problem.reactorNonBlockingSolution())
+                .expectNext(new BigInteger("78179218227231210"))
+                .expectComplete()
+                .verify();
+    }
+
+    @Test
+    public void given_reactorCachedSolution_when_subscribeTwice_then_listsFetchedOnceTest() {
+
+        List.of("greek", "roman", "nordic").forEach(god ->
+                wireMockServer.stubFor(get(urlEqualTo("/" + god))
+                        .willReturn(aResponse().withHeader("Content-Type", "application/json")
+                                .withHeader("Cache-Control", "max-age=60")
+                                .withStatus(200)
+                                .withBodyFile("latency-problem1/" + god + ".json"))));
+
+        LatencyProblem01 problem = new LatencyProblem01(getDefaultConfig());
+
+        StepVerifier
+                .create(problem.reactorCachedSolution().repeat(1))
+                .expectNext(new BigInteger("78179288397447443426"))
+                .expectNext(new BigInteger("78179288397447443426"))
+                .expectComplete()
+                .verify();
+
+        wireMockServer.verify(3, getRequestedFor(urlMatching("/(greek|roman|nordic)")));
+    }
+
+    @Test
+    public void given_loopbackTransport_when_executeSolutions_then_sameResultsWithoutNetworkTest() throws Exception {
+
+        LoopbackTransport transport = new LoopbackTransport();
+        for (String god : List.of("greek", "roman", "nordic")) {
+            transport.respond("http://loopback/" + god, LoopbackTransport
+                    .ok("application/json", LatencyProblem01Benchmark.fixture("latency-problem1/" + god + ".json"))
+                    .withLatency(() -> Duration.ofMillis(5)));
+        }
+        List<String> listOfGods = List.of("http://loopback/greek", "http://loopback/roman", "http://loopback/nordic");
+
+        LatencyProblem01 problem = new LatencyProblem01(new LatencyProblem01.Config(listOfGods, 2, transport));
+
+        StepVerifier
+                .create(problem.reactorSolution())
+                .expectNext(new BigInteger("78179288397447443426"))
+                .expectComplete()
+                .verify();
+        StepVerifier
+                .create(problem.reactorNonBlockingSolution())
+                .expectNext(new BigInteger("78179288397447443426"))
+                .expectComplete()
+                .verify();
+
+        then(transport.requests()).isEqualTo(6);
+        wireMockServer.verify(0, getRequestedFor(urlMatching(".*")));
+    }
+
+    @Test
+    public void given_deadlineInContext_when_fetchMono_then_onlyTheRemainingBudgetIsUsedTest() throws Exception {
+
+        LoopbackTransport transport = new LoopbackTransport();
+        transport.respond("http://loopback/greek", LoopbackTransport
+                .ok("application/json", LatencyProblem01Benchmark.fixture("latency-problem1/greek.json"))
+                .withLatency(() -> Duration.ofSeconds(5)));
+
+        Duration elapsed = StepVerifier
+                .create(ReactorCurl.fetchMonoVia.apply(transport).apply(new URL("http://loopback/greek"))
+                        .subscriberContext(ReactorCurl.deadline(Duration.ofMillis(200))))
+                .expectError(TimeoutException.class)
+                .verify(Duration.ofSeconds(2));
+
+        then(elapsed).isLessThan(Duration.ofSeconds(1));
+    }
+
+    @Test
+    public void given_tricklingFlux_when_timeout_then_budgetOfTheWholeSubscriptionTest() throws Exception {
+
+        URL url = new URL("http://loopback/greek");
+        AdaptiveTimeout timeouts = new AdaptiveTimeout(AdaptiveTimeout.config(Duration.ofMillis(300)));
+
+        //Every element arrives before the timeout, the whole stream does not
+        Duration elapsed = StepVerifier
+                .create(Flux.interval(Duration.ofMillis(100)).take(20)
+                        .transform(ReactorCurl.timeout(timeouts, url)))
+                .thenConsumeWhile(element -> true)
+                .expectError(TimeoutException.class)
+                .verify(Duration.ofSeconds(2));
+
+        then(elapsed).isLessThan(Duration.ofSeconds(1));
+    }
 }
@@ -0,0 +1,40 @@
+package org.fundamentals.latency;
+
+import java.net.URL;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+public class LatencyProblem02Benchmark {
+
+    @State(Scope.Benchmark)
+    public static class St {
+
+        URL url;
+
+        @Setup
+        public void setup() throws Exception {
+            url = new URL("http://localhost:8090/wiki/Zeus");
+        }
+    }
+
+    @Benchmark
+    public int fetchAndLength(St st) {
+
+        return SimpleCurl.fetch.apply(st.url).length();
+    }
+
+    @Benchmark
+    public long countOnly(St st) {
+
+        return SimpleCurl.fetchLength.apply(st.url);
+    }
+
+    @Benchmark
+    public long contentLength(St st) {
+
+        return SimpleCurl.fetchContentLength.apply(st.url);
+    }
+
+}
@@ -77,4 +77,17 @@ public class LatencyProblem02Test {
                 .verify();
     }
 
+    @Test
+    public void given_reactorNonBlockingSolution_when_executeMethod_then_expectedResultsTest() {
+
+        loadStubs();
+
+        LatencyProblem02 problem = new LatencyProblem02(getDefaultConfig());
+
+        StepVerifier
+                .create(problem.reactorNonBlockingSolution())
+                .expectNext("Apollo")
+                .expectComplete()
+                .verify();
+    }
 }
@@ -50,6 +50,11 @@ public class LatencyProblemBenchmarkTest {
                 .willReturn(aResponse().withHeader("Content-Type", "application/json")
                         .withStatus(200)
                         .withBodyFile("nordic.json")));
+
+        wireMockServer.stubFor(get(urlEqualTo("/wiki/Zeus"))
+                .willReturn(aResponse().withHeader("Content-Type", "text/html; charset=utf-8")
+                        .withStatus(200)
+                        .withBodyFile("latency-problem2/zeus.html")));
     }
 
     @Tag("performance")
@@ -60,6 +65,7 @@ public class LatencyProblemBenchmarkTest {
 
         Options options = new OptionsBuilder()
                 .include(LatencyProblem01Benchmark.class.getSimpleName())
+                .include(LatencyProblem02Benchmark.class.getSimpleName())
                 .resultFormat(ResultFormatType.JSON)
                 .result("target/jmh-results-latency.json")
                 //.verbosity(VerboseMode.EXTRA)
@@ -3,11 +3,13 @@ package org.fundamentals.latency;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.reactivex.Observable;
+import io.reactivex.Single;
 import io.vavr.control.Try;
 import lombok.extern.slf4j.Slf4j;
 
 import java.math.BigInteger;
 import java.net.URL;
+import java.time.Duration;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.function.Consumer;
@@ -35,11 +37,14 @@ public class LatencyProblem01 {
     private List<String> listOfGods;
     private ExecutorService executor;
     private int TIMEOUT;
+    //Learns the latency of every list, TIMEOUT is the ceiling
+    private AdaptiveTimeout timeouts;
 
     public LatencyProblem01(List<String> listOfGods, ExecutorService executor, int timeout) {
         this.listOfGods = listOfGods;
         this.executor = executor;
         this.TIMEOUT = timeout;
+        this.timeouts = new AdaptiveTimeout(AdaptiveTimeout.config(Duration.ofSeconds(timeout)));
     }
 
     Function<String, URL> toURL = address -> Try.of(() ->
@@ -92,4 +97,28 @@ public class LatencyProblem01 {
 
         return rxFetchListAsync.apply(listOfGods);
     }
+
+    Function<String, List<String>> serialize = param -> Try.of(() -> {
+        ObjectMapper objectMapper = new ObjectMapper();
+        List<String> deserializedData = objectMapper.readValue(param, new TypeReference<List<String>>() {});
+        return deserializedData;
+    }).getOrElseThrow(ex -> {
+        LOGGER.error("Bad Serialization process", ex);
+        throw new RuntimeException(ex);
+    });
+
+    Function<String, Observable<String>> rxFetchNonBlocking = address -> Single.just(address)
+            .map(toURL::apply)
+            .flatMap(url -> RxCurl.fetchSingleTimed.apply(timeouts).apply(url))
+            .onErrorReturnItem("[]")
+            .flatMapObservable(response -> Observable.fromIterable(serialize.apply(response)));
+
+    public Single<BigInteger> rxJavaNonBlockingSolution() {
+
+        return Observable.fromIterable(listOfGods)
+                .flatMap(rxFetchNonBlocking::apply)
+                .filter(godStartingByn::test)
+                .map(s -> toDigits.andThen(concatDigits).andThen(BigInteger::new).apply(s))
+                .reduce(BigInteger.ZERO, BigInteger::add);
+    }
 }
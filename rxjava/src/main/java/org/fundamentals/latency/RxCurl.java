@@ -0,0 +1,39 @@
+package org.fundamentals.latency;
+
+import io.reactivex.Single;
+import java.net.URL;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * RxJava adapters for the non blocking functions of SimpleCurl.
+ * The request is sent on subscription and it is cancelled
+ * if the subscriber disposes.
+ */
+public class RxCurl {
+
+    static Function<URL, Single<String>> fetchSingle = url -> single(() -> SimpleCurl.fetchAsync.apply(url));
+
+    /**
+     * fetchSingle with the timeout learnt for the upstream (see AdaptiveTimeout).
+     */
+    static Function<AdaptiveTimeout, Function<URL, Single<String>>> fetchSingleTimed = timeouts -> url ->
+            single(() -> timeouts.orTimeout(url, SimpleCurl.fetchAsync.apply(url)));
+
+    private static <T> Single<T> single(Supplier<CompletableFuture<T>> request) {
+        return Single.create(emitter -> {
+            CompletableFuture<T> future = request.get();
+            emitter.setCancellable(() -> future.cancel(true));
+            future.whenComplete((response, ex) -> {
+                if (Objects.isNull(ex)) {
+                    emitter.onSuccess(response);
+                } else {
+                    emitter.tryOnError(ex);
+                }
+            });
+        });
+    }
+
+}